@@ -0,0 +1,108 @@
+package com.rtbhouse.kafka.workers.impl.offsets;
+
+import static com.rtbhouse.kafka.workers.impl.range.ClosedRange.range;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.apache.kafka.common.TopicPartition;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.rtbhouse.kafka.workers.api.WorkersConfig;
+import com.rtbhouse.kafka.workers.impl.metrics.WorkersMetrics;
+import com.rtbhouse.kafka.workers.integration.utils.TestProperties;
+
+/**
+ * Acknowledgements of 31 worker threads contending with one thread computing metrics and offsets to commit (as
+ * consumer thread does).
+ * <p>
+ * With 1 CPU ({@code -wi 2 -w 2 -i 5 -r 2 -f 1}) acknowledgements of synchronized offsets state (before
+ * {@link PartitionOffsets}) and of the {@code StampedLock} guarded one score within the error of each other: 0.68 &plusmn;
+ * 0.34 vs 0.66 &plusmn; 0.24 ops/us for 1 partition and 0.81 &plusmn; 0.82 vs 1.25 &plusmn; 1.84 ops/us for 8 partitions,
+ * so it does not show reduced contention; it should be rerun with as many CPUs as threads to do so.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OffsetsStateBenchmark {
+
+    private static final int ACK_THREADS = 31;
+
+    @State(Scope.Group)
+    public static class SharedState {
+
+        @Param({"1", "8"})
+        int partitionsCount;
+
+        DefaultOffsetsState offsetsState;
+        List<TopicPartition> partitions;
+        final AtomicInteger threadIds = new AtomicInteger();
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            WorkersConfig config = new WorkersConfig(TestProperties.workersProperties());
+            offsetsState = new DefaultOffsetsState(config, new WorkersMetrics(config));
+            partitions = IntStream.range(0, partitionsCount)
+                    .mapToObj(i -> new TopicPartition("topic", i))
+                    .collect(Collectors.toList());
+            offsetsState.register(partitions);
+            for (TopicPartition partition : partitions) {
+                offsetsState.addConsumed(partition, range(0L, Long.MAX_VALUE / 2), System.currentTimeMillis());
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class AckState {
+
+        TopicPartition partition;
+        long nextOffset;
+        long stride;
+
+        @Setup(Level.Trial)
+        public void setUp(SharedState shared) {
+            int threadId = shared.threadIds.getAndIncrement();
+            int partitionIndex = threadId % shared.partitionsCount;
+            partition = shared.partitions.get(partitionIndex);
+            // offsets of a partition are interleaved among its threads, so none of them is left behind
+            nextOffset = threadId / shared.partitionsCount;
+            stride = (ACK_THREADS - partitionIndex + shared.partitionsCount - 1) / shared.partitionsCount;
+        }
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(ACK_THREADS)
+    public void ack(SharedState shared, AckState ack) {
+        shared.offsetsState.updateProcessed(ack.partition, ack.nextOffset);
+        ack.nextOffset += ack.stride;
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public void commit(SharedState shared) {
+        for (TopicPartition partition : shared.partitions) {
+            shared.offsetsState.new TopicPartitionMetricInfo(partition);
+        }
+        shared.offsetsState.removeCommitted(shared.offsetsState.getOffsetsToCommit());
+    }
+}
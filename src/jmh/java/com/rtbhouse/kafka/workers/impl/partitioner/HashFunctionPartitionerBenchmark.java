@@ -0,0 +1,91 @@
+package com.rtbhouse.kafka.workers.impl.partitioner;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.utils.Utils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.rtbhouse.kafka.workers.api.partitioner.HashFunctionPartitioner;
+import com.rtbhouse.kafka.workers.api.partitioner.WorkerPartitioner;
+
+/**
+ * Compares the former murmur2 partitioner (building {@code key + ":" + partition} string) with its allocation-free
+ * replacement and with hashing of serialized keys. Run with {@code -prof gc} to see allocation rates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class HashFunctionPartitionerBenchmark {
+
+    private static final int SUBPARTITIONS = 16;
+    private static final int RECORDS = 1024;
+
+    @Param({"16", "64"})
+    int keyLength;
+
+    private final WorkerPartitioner<String, byte[]> legacyPartitioner = new HashFunctionPartitioner<>(
+            record -> (long) Utils.toPositive(Utils.murmur2((record.key() + ":" + record.partition())
+                    .getBytes(Charset.forName("UTF-8")))),
+            SUBPARTITIONS);
+    private final WorkerPartitioner<String, byte[]> murmur2Partitioner =
+            HashFunctionPartitioner.newMurmur2Partitioner(SUBPARTITIONS);
+    private final WorkerPartitioner<byte[], byte[]> keyBytesPartitioner =
+            HashFunctionPartitioner.newMurmur2KeyBytesPartitioner(SUBPARTITIONS);
+
+    private ConsumerRecord<String, byte[]>[] stringRecords;
+    private ConsumerRecord<byte[], byte[]>[] bytesRecords;
+    private int index;
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        stringRecords = new ConsumerRecord[RECORDS];
+        bytesRecords = new ConsumerRecord[RECORDS];
+        for (int i = 0; i < RECORDS; i++) {
+            StringBuilder key = new StringBuilder();
+            while (key.length() < keyLength) {
+                key.append(Integer.toHexString(i * 31 + key.length()));
+            }
+            key.setLength(keyLength);
+            stringRecords[i] = new ConsumerRecord<>("topic", i % 8, i, key.toString(), null);
+            bytesRecords[i] = new ConsumerRecord<>("topic", i % 8, i, key.toString().getBytes(StandardCharsets.UTF_8), null);
+        }
+    }
+
+    private int nextIndex() {
+        index = (index + 1) & (RECORDS - 1);
+        return index;
+    }
+
+    @Benchmark
+    public int legacyMurmur2() {
+        return legacyPartitioner.subpartition(stringRecords[nextIndex()]);
+    }
+
+    @Benchmark
+    public int murmur2() {
+        return murmur2Partitioner.subpartition(stringRecords[nextIndex()]);
+    }
+
+    @Benchmark
+    public int murmur2KeyBytes() {
+        return keyBytesPartitioner.subpartition(bytesRecords[nextIndex()]);
+    }
+}
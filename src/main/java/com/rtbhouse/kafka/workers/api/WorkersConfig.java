@@ -2,6 +2,7 @@ package com.rtbhouse.kafka.workers.api;
 
 import static com.google.common.base.Preconditions.checkState;
 
+import java.io.File;
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
 import java.util.Collection;
@@ -9,6 +10,9 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.Collectors;
 
 import org.apache.kafka.clients.CommonClientConfigs;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
@@ -22,6 +26,10 @@ import org.apache.kafka.common.metrics.MetricsReporter;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
+import com.rtbhouse.kafka.workers.api.metrics.MetricsRecordingLevel;
+import com.rtbhouse.kafka.workers.api.partitioner.ElasticWorkerPartitioner;
+import com.rtbhouse.kafka.workers.api.record.QueueCompressionType;
+import com.rtbhouse.kafka.workers.api.record.RecordFilter;
 import com.rtbhouse.kafka.workers.api.record.RecordProcessingGuarantee;
 import com.rtbhouse.kafka.workers.api.record.weigher.Weigher;
 import com.rtbhouse.kafka.workers.api.task.WorkerTask;
@@ -68,6 +76,16 @@ public class WorkersConfig extends AbstractConfig {
     private static final String CONSUMER_PROCESSING_TIMEOUT_MS_DOC = "The timeout in milliseconds for record to be successfully processed.";
     private static final long CONSUMER_PROCESSING_TIMEOUT_MS_DEFAULT = Duration.of(5, ChronoUnit.MINUTES).toMillis();
 
+    /**
+     * The maximum size in bytes of committed offsets metadata which describes offsets processed out of order (0 disables
+     * it).
+     */
+    public static final String CONSUMER_COMMIT_METADATA_MAX_BYTES = "consumer.commit.metadata.max.bytes";
+    private static final String CONSUMER_COMMIT_METADATA_MAX_BYTES_DOC = "The maximum size in bytes of committed offsets" +
+            " metadata which describes offsets processed out of order (0 disables it). Should not exceed broker's" +
+            " offset.metadata.max.bytes.";
+    private static final int CONSUMER_COMMIT_METADATA_MAX_BYTES_DEFAULT = 0;
+
     /**
      * The number of retries in case of retriable commit failed exception.
      */
@@ -75,6 +93,26 @@ public class WorkersConfig extends AbstractConfig {
     private static final String CONSUMER_MAX_RETRIABLE_FAILURES_DOC = "The number of retries in case of retriable commit failed exception.";
     private static final int CONSUMER_MAX_RETRIABLE_FAILURES_DEFAULT = 3;
 
+    /**
+     * The minimum time in milliseconds a partition paused by queue limits stays paused.
+     */
+    public static final String CONSUMER_MIN_PAUSE_MS = "consumer.min.pause.ms";
+    private static final String CONSUMER_MIN_PAUSE_MS_DOC = "The minimum time in milliseconds a partition paused by" +
+            " queue limits stays paused, so queues hovering around their limits do not flip their partitions between" +
+            " paused and resumed (0 disables it).";
+    private static final long CONSUMER_MIN_PAUSE_MS_DEFAULT = 0L;
+
+    /**
+     * Whether paused partitions are resumed as soon as their queues are expected to drain by the time the next fetch
+     * arrives.
+     */
+    public static final String CONSUMER_PREDICTIVE_RESUME = "consumer.predictive.resume";
+    private static final String CONSUMER_PREDICTIVE_RESUME_DOC = "Whether paused partitions are resumed (before their" +
+            " queues drain to queue.resume.ratio) as soon as their queues are expected to drain by the time the next" +
+            " fetch arrives, judging by their drain rates and the average fetch latency, and have room for a whole" +
+            " fetch of max.partition.fetch.bytes.";
+    private static final boolean CONSUMER_PREDICTIVE_RESUME_DEFAULT = false;
+
     /**
      * The number of {@link WorkerThread}s per one {@link KafkaWorkers} instance.
      */
@@ -112,12 +150,112 @@ public class WorkersConfig extends AbstractConfig {
     private static final String PUNCTUATOR_INTERVAL_MS_DOC = "The frequency in milliseconds that punctuate method is called.";
     private static final long PUNCTUATOR_INTERVAL_MS_DEFAULT = Duration.of(1, ChronoUnit.SECONDS).toMillis();
 
+    /**
+     * The interval in milliseconds of updating the cached clock used internally (0 means system clock is used directly).
+     */
+    public static final String CLOCK_TICK_MS = "clock.tick.ms";
+    private static final String CLOCK_TICK_MS_DOC = "The interval in milliseconds of updating the cached clock used" +
+            " internally (0 means system clock is used directly).";
+    private static final long CLOCK_TICK_MS_DEFAULT = 0L;
+
+    /**
+     * The frequency in milliseconds that subpartitions counts are checked when {@link ElasticWorkerPartitioner} is used.
+     */
+    public static final String ELASTIC_SUBPARTITIONS_CHECK_INTERVAL_MS = "elastic.subpartitions.check.interval.ms";
+    private static final String ELASTIC_SUBPARTITIONS_CHECK_INTERVAL_MS_DOC = "The frequency in milliseconds that" +
+            " subpartitions counts are checked when ElasticWorkerPartitioner is used.";
+    private static final long ELASTIC_SUBPARTITIONS_CHECK_INTERVAL_MS_DEFAULT = Duration.of(10, ChronoUnit.SECONDS).toMillis();
+
+    /**
+     * The consumer lag of a partition at which its subpartitions count is raised to the maximum.
+     */
+    public static final String ELASTIC_SUBPARTITIONS_SCALE_UP_LAG = "elastic.subpartitions.scale.up.lag";
+    private static final String ELASTIC_SUBPARTITIONS_SCALE_UP_LAG_DOC = "The consumer lag of a partition at which its" +
+            " subpartitions count is raised to the maximum.";
+    private static final long ELASTIC_SUBPARTITIONS_SCALE_UP_LAG_DEFAULT = 100_000L;
+
+    /**
+     * The number of consumed but not processed records of a partition at which its subpartitions count is raised to the
+     * maximum.
+     */
+    public static final String ELASTIC_SUBPARTITIONS_SCALE_UP_BACKLOG = "elastic.subpartitions.scale.up.backlog";
+    private static final String ELASTIC_SUBPARTITIONS_SCALE_UP_BACKLOG_DOC = "The number of consumed but not processed" +
+            " records of a partition at which its subpartitions count is raised to the maximum.";
+    private static final long ELASTIC_SUBPARTITIONS_SCALE_UP_BACKLOG_DEFAULT = 10_000L;
+
+    /**
+     * The consumer lag plus the number of consumed but not processed records of a partition at which its subpartitions
+     * count is lowered back to the minimum.
+     */
+    public static final String ELASTIC_SUBPARTITIONS_SCALE_DOWN_LAG = "elastic.subpartitions.scale.down.lag";
+    private static final String ELASTIC_SUBPARTITIONS_SCALE_DOWN_LAG_DOC = "The consumer lag plus the number of consumed" +
+            " but not processed records of a partition at which its subpartitions count is lowered back to the minimum.";
+    private static final long ELASTIC_SUBPARTITIONS_SCALE_DOWN_LAG_DEFAULT = 1_000L;
+
+    /**
+     * The number of keys tracked per partition to detect hot keys (0 disables the detection).
+     */
+    public static final String HOT_KEYS_SKETCH_CAPACITY = "hot.keys.sketch.capacity";
+    private static final String HOT_KEYS_SKETCH_CAPACITY_DOC = "The number of keys tracked per partition to detect hot" +
+            " keys (0 disables the detection).";
+    private static final int HOT_KEYS_SKETCH_CAPACITY_DEFAULT = 0;
+
+    /**
+     * The minimum share of records of a partition with the same key for the key to be considered hot.
+     */
+    public static final String HOT_KEYS_MIN_SHARE = "hot.keys.min.share";
+    private static final String HOT_KEYS_MIN_SHARE_DOC = "The minimum share of records of a partition with the same" +
+            " key for the key to be considered hot.";
+    private static final double HOT_KEYS_MIN_SHARE_DEFAULT = 0.1;
+
+    /**
+     * The time window after which hot keys are determined and counts of tracked keys are halved.
+     */
+    public static final String HOT_KEYS_WINDOW_MS = "hot.keys.window.ms";
+    private static final String HOT_KEYS_WINDOW_MS_DOC = "The time window after which hot keys are determined and counts" +
+            " of tracked keys are halved.";
+    private static final long HOT_KEYS_WINDOW_MS_DEFAULT = Duration.of(10, ChronoUnit.SECONDS).toMillis();
+
+    /**
+     * The number of additional subpartitions of every partition dedicated to its hot keys (0 disables hot keys routing).
+     * Requires hot keys detection to be enabled.
+     */
+    public static final String HOT_KEYS_SUBPARTITIONS = "hot.keys.subpartitions";
+    private static final String HOT_KEYS_SUBPARTITIONS_DOC = "The number of additional subpartitions of every partition" +
+            " dedicated to its hot keys (0 disables hot keys routing). Requires hot keys detection to be enabled.";
+    private static final int HOT_KEYS_SUBPARTITIONS_DEFAULT = 0;
+
     public static final String RECORD_KEY_WEIGHER_CLASS = "record.key.weigher";
     private static final String RECORD_KEY_WEIGHER_CLASS_DOC = "TODO";
 
     public static final String RECORD_VALUE_WEIGHER_CLASS = "record.value.weigher";
     private static final String RECORD_VALUE_WEIGHER_CLASS_DOC = "TODO";
 
+    /**
+     * A {@link RecordFilter} which filters consumed records before they are queued.
+     */
+    public static final String RECORD_FILTER_CLASS = "record.filter";
+    private static final String RECORD_FILTER_CLASS_DOC = "A class implementing RecordFilter which filters consumed" +
+            " records before they are queued. Offsets of filtered out records are marked as processed right away.";
+
+    /**
+     * The capacity of the pool of reusable records (0 disables pooling).
+     */
+    public static final String RECORD_POOL_SIZE = "record.pool.size";
+    private static final String RECORD_POOL_SIZE_DOC = "The capacity of the pool of reusable WorkerRecords (0 disables" +
+            " pooling). Pooled records are reused once they are acknowledged, so tasks must not access them afterwards." +
+            " RecordStatusObservers are never pooled.";
+    private static final int RECORD_POOL_SIZE_DEFAULT = 0;
+
+    /**
+     * Whether released records are checked instead of being reused.
+     */
+    public static final String RECORD_POOL_DEBUG = "record.pool.debug";
+    private static final String RECORD_POOL_DEBUG_DOC = "Whether pooled records are marked as released (instead of" +
+            " being reused) once they are acknowledged, so any later access to them throws IllegalStateException." +
+            " Meant for detecting tasks which use records after acknowledging them.";
+    private static final boolean RECORD_POOL_DEBUG_DEFAULT = false;
+
     public static final String QUEUE_TOTAL_SIZE_HEAP_RATIO = "queue.total.size.heap.ratio";
     private static final String QUEUE_TOTAL_SIZE_HEAP_RATIO_DOC = "Ratio of queue total size to heap size.";
     private static final double QUEUE_TOTAL_SIZE_HEAP_RATIO_DEFAULT = 0.5;
@@ -129,6 +267,107 @@ public class WorkersConfig extends AbstractConfig {
     private static final String QUEUE_RESUME_RATIO_DOC = "The minimum ratio of used to total queue size for partition resuming.";
     private static final double QUEUE_RESUME_RATIO_DEFAULT = 0.9;
 
+    /**
+     * The maximum number of records in a single queue before its partition is paused (0 disables the limit).
+     */
+    public static final String QUEUE_MAX_RECORDS = "queue.max.records";
+    private static final String QUEUE_MAX_RECORDS_DOC = "The maximum number of records in a single queue before its" +
+            " partition is paused (0 disables the limit). The partition is resumed when queue.resume.ratio of it is" +
+            " not exceeded.";
+    private static final int QUEUE_MAX_RECORDS_DEFAULT = 0;
+
+    /**
+     * The maximum age of the oldest record in a single queue before its partition is paused (0 disables the limit).
+     */
+    public static final String QUEUE_MAX_AGE_MS = "queue.max.age.ms";
+    private static final String QUEUE_MAX_AGE_MS_DOC = "The maximum time since the oldest record in a single queue" +
+            " was consumed before its partition is paused (0 disables the limit). The partition is resumed when" +
+            " queue.resume.ratio of it is not exceeded.";
+    private static final long QUEUE_MAX_AGE_MS_DEFAULT = 0L;
+
+    /**
+     * The guaranteed share of an equal split of the total queue size for every queue (1 disables adaptive sizing).
+     */
+    public static final String QUEUE_ADAPTIVE_MIN_SHARE = "queue.adaptive.min.share";
+    private static final String QUEUE_ADAPTIVE_MIN_SHARE_DOC = "The guaranteed share of an equal split of the total" +
+            " queue size for every queue (1 disables adaptive sizing). The rest of the total size is periodically" +
+            " redistributed between queues proportionally to their drain rates.";
+    private static final double QUEUE_ADAPTIVE_MIN_SHARE_DEFAULT = 1.0;
+
+    /**
+     * The occupancy of a tenured heap pool after GC above which queue limits are scaled down (0 disables the check).
+     */
+    public static final String QUEUE_HEAP_PRESSURE_OCCUPANCY_RATIO = "queue.heap.pressure.occupancy.ratio";
+    private static final String QUEUE_HEAP_PRESSURE_OCCUPANCY_RATIO_DOC = "The occupancy of a tenured heap pool" +
+            " (e.g. old gen) after GC above which queue limits are scaled down (0 disables the check).";
+    private static final double QUEUE_HEAP_PRESSURE_OCCUPANCY_RATIO_DEFAULT = 0.0;
+
+    /**
+     * The ratio of GC time to time since the previous GC above which queue limits are scaled down (0 disables the check).
+     */
+    public static final String QUEUE_HEAP_PRESSURE_GC_TIME_RATIO = "queue.heap.pressure.gc.time.ratio";
+    private static final String QUEUE_HEAP_PRESSURE_GC_TIME_RATIO_DOC = "The ratio of GC time to time since the" +
+            " previous GC above which queue limits are scaled down (0 disables the check).";
+    private static final double QUEUE_HEAP_PRESSURE_GC_TIME_RATIO_DEFAULT = 0.0;
+
+    /**
+     * Topics whose queued records are coalesced by key.
+     */
+    public static final String QUEUE_COALESCING_TOPICS = "queue.coalescing.topics";
+    private static final String QUEUE_COALESCING_TOPICS_DOC = "Topics (e.g. compacted or state-update ones) whose" +
+            " queued records are coalesced by key: a record supersedes a queued record of the same key and subpartition" +
+            " which was not taken by its task yet. Offsets of superseded records are marked as processed.";
+    private static final String QUEUE_COALESCING_TOPICS_DEFAULT = "";
+
+    /**
+     * Compression of queued record values (none, lz4).
+     */
+    public static final String QUEUE_COMPRESSION_TYPE = "queue.compression.type";
+    private static final String QUEUE_COMPRESSION_TYPE_DOC = "Compression of queued record values (none, lz4). Only" +
+            " byte array and Bytes values are compressed, queue sizes reflect their compressed sizes.";
+    private static final String QUEUE_COMPRESSION_TYPE_DEFAULT = QueueCompressionType.NONE.name();
+
+    /**
+     * The total size of direct memory for queued records stored off-heap (0 disables off-heap storage).
+     */
+    public static final String QUEUE_OFFHEAP_TOTAL_SIZE_BYTES = "queue.offheap.total.size.bytes";
+    private static final String QUEUE_OFFHEAP_TOTAL_SIZE_BYTES_DOC = "The total size of direct memory for queued records" +
+            " stored off-heap (0 disables off-heap storage). Only records with byte array keys and values are stored" +
+            " off-heap, other ones (or all of them when the budget is exhausted) stay on the heap.";
+    private static final long QUEUE_OFFHEAP_TOTAL_SIZE_BYTES_DEFAULT = 0L;
+
+    /**
+     * The size of a single slab of off-heap memory (and the maximum size of a record stored off-heap).
+     */
+    public static final String QUEUE_OFFHEAP_SLAB_SIZE_BYTES = "queue.offheap.slab.size.bytes";
+    private static final String QUEUE_OFFHEAP_SLAB_SIZE_BYTES_DOC = "The size of a single slab of off-heap memory" +
+            " (and the maximum size of a record stored off-heap).";
+    private static final int QUEUE_OFFHEAP_SLAB_SIZE_BYTES_DEFAULT = 1024 * 1024;
+
+    /**
+     * The total size of memory-mapped segment files for records spilled from full queues (0 disables spilling).
+     */
+    public static final String QUEUE_SPILL_TOTAL_SIZE_BYTES = "queue.spill.total.size.bytes";
+    private static final String QUEUE_SPILL_TOTAL_SIZE_BYTES_DOC = "The total size of memory-mapped segment files" +
+            " for records spilled from full queues (0 disables spilling). When spilling is enabled, partitions are" +
+            " paused only after this budget is exhausted. Only records with byte array keys and values are spilled.";
+    private static final long QUEUE_SPILL_TOTAL_SIZE_BYTES_DEFAULT = 0L;
+
+    /**
+     * The size of a single spill segment file (and the maximum size of a spilled record).
+     */
+    public static final String QUEUE_SPILL_SEGMENT_SIZE_BYTES = "queue.spill.segment.size.bytes";
+    private static final String QUEUE_SPILL_SEGMENT_SIZE_BYTES_DOC = "The size of a single spill segment file" +
+            " (and the maximum size of a spilled record).";
+    private static final int QUEUE_SPILL_SEGMENT_SIZE_BYTES_DEFAULT = 64 * 1024 * 1024;
+
+    /**
+     * The directory of spill segment files (java.io.tmpdir if empty).
+     */
+    public static final String QUEUE_SPILL_DIRECTORY = "queue.spill.directory";
+    private static final String QUEUE_SPILL_DIRECTORY_DOC = "The directory of spill segment files (java.io.tmpdir if empty).";
+    private static final String QUEUE_SPILL_DIRECTORY_DEFAULT = "";
+
     /**
      * A list of {@link MetricsReporter}s which report {@code KafkaWorkers}'s metrics.
      */
@@ -136,6 +375,49 @@ public class WorkersConfig extends AbstractConfig {
     private static final String METRIC_REPORTER_CLASSES_DOC = CommonClientConfigs.METRIC_REPORTER_CLASSES_DOC;
     private static final String METRIC_REPORTER_CLASSES_DEFAULT = "";
 
+    /**
+     * The highest level of recorded metrics (info, debug, trace). Per-record offset metrics are not recorded with the
+     * default info level, trace level records all of them.
+     */
+    public static final String METRICS_RECORDING_LEVEL = "metrics.recording.level";
+    private static final String METRICS_RECORDING_LEVEL_DOC = "The highest level of recorded metrics (info, debug, trace)." +
+            " Debug metrics are recorded for every consumed record and trace ones for every record of every subpartition." +
+            " Per-record offset metrics are not recorded with the default info level.";
+    private static final String METRICS_RECORDING_LEVEL_DEFAULT = MetricsRecordingLevel.INFO.name();
+
+    /**
+     * The fraction of records whose per-record (debug and trace) metrics are recorded.
+     */
+    public static final String METRICS_SAMPLING_RATIO = "metrics.sampling.ratio";
+    private static final String METRICS_SAMPLING_RATIO_DOC = "The fraction of records whose per-record (debug and trace)" +
+            " metrics are recorded. Records are sampled randomly.";
+    private static final double METRICS_SAMPLING_RATIO_DEFAULT = 1.0;
+
+    /**
+     * The port of HTTP server exporting metrics in OpenMetrics (Prometheus) text format (0 disables the exporter).
+     */
+    public static final String METRICS_PROMETHEUS_PORT = "metrics.prometheus.port";
+    private static final String METRICS_PROMETHEUS_PORT_DOC = "The port of HTTP server exporting metrics in OpenMetrics" +
+            " (Prometheus) text format at /metrics path (0 disables the exporter).";
+    private static final int METRICS_PROMETHEUS_PORT_DEFAULT = 0;
+
+    /**
+     * A list of regular expressions of exported metrics names (all metrics are exported if empty).
+     */
+    public static final String METRICS_PROMETHEUS_INCLUDE = "metrics.prometheus.include";
+    private static final String METRICS_PROMETHEUS_INCLUDE_DOC = "A list of regular expressions of exported metrics" +
+            " names given as <group>.<name> (e.g. worker-thread.processed-offset.topic-0.1.value). All metrics are" +
+            " exported if it is empty.";
+    private static final String METRICS_PROMETHEUS_INCLUDE_DEFAULT = "";
+
+    /**
+     * A list of regular expressions of metrics names which are not exported.
+     */
+    public static final String METRICS_PROMETHEUS_EXCLUDE = "metrics.prometheus.exclude";
+    private static final String METRICS_PROMETHEUS_EXCLUDE_DOC = "A list of regular expressions of metrics names" +
+            " (given as <group>.<name>) which are not exported even if they are included.";
+    private static final String METRICS_PROMETHEUS_EXCLUDE_DEFAULT = "";
+
     private static final ConfigDef CONFIG;
 
     static {
@@ -159,11 +441,28 @@ public class WorkersConfig extends AbstractConfig {
                         CONSUMER_PROCESSING_TIMEOUT_MS_DEFAULT,
                         Importance.MEDIUM,
                         CONSUMER_PROCESSING_TIMEOUT_MS_DOC)
+                .define(CONSUMER_COMMIT_METADATA_MAX_BYTES,
+                        Type.INT,
+                        CONSUMER_COMMIT_METADATA_MAX_BYTES_DEFAULT,
+                        ConfigDef.Range.atLeast(0),
+                        Importance.LOW,
+                        CONSUMER_COMMIT_METADATA_MAX_BYTES_DOC)
                 .define(CONSUMER_MAX_RETRIABLE_FAILURES,
                         Type.INT,
                         CONSUMER_MAX_RETRIABLE_FAILURES_DEFAULT,
                         Importance.LOW,
                         CONSUMER_MAX_RETRIABLE_FAILURES_DOC)
+                .define(CONSUMER_MIN_PAUSE_MS,
+                        Type.LONG,
+                        CONSUMER_MIN_PAUSE_MS_DEFAULT,
+                        ConfigDef.Range.atLeast(0),
+                        Importance.LOW,
+                        CONSUMER_MIN_PAUSE_MS_DOC)
+                .define(CONSUMER_PREDICTIVE_RESUME,
+                        Type.BOOLEAN,
+                        CONSUMER_PREDICTIVE_RESUME_DEFAULT,
+                        Importance.LOW,
+                        CONSUMER_PREDICTIVE_RESUME_DOC)
                 .define(WORKER_THREADS_NUM,
                         Type.INT,
                         WORKER_THREADS_NUM_DEFAULT,
@@ -196,6 +495,60 @@ public class WorkersConfig extends AbstractConfig {
                         PUNCTUATOR_INTERVAL_MS_DEFAULT,
                         Importance.MEDIUM,
                         PUNCTUATOR_INTERVAL_MS_DOC)
+                .define(CLOCK_TICK_MS,
+                        Type.LONG,
+                        CLOCK_TICK_MS_DEFAULT,
+                        ConfigDef.Range.atLeast(0),
+                        Importance.LOW,
+                        CLOCK_TICK_MS_DOC)
+                .define(ELASTIC_SUBPARTITIONS_CHECK_INTERVAL_MS,
+                        Type.LONG,
+                        ELASTIC_SUBPARTITIONS_CHECK_INTERVAL_MS_DEFAULT,
+                        ConfigDef.Range.atLeast(0),
+                        Importance.LOW,
+                        ELASTIC_SUBPARTITIONS_CHECK_INTERVAL_MS_DOC)
+                .define(ELASTIC_SUBPARTITIONS_SCALE_UP_LAG,
+                        Type.LONG,
+                        ELASTIC_SUBPARTITIONS_SCALE_UP_LAG_DEFAULT,
+                        ConfigDef.Range.atLeast(0),
+                        Importance.MEDIUM,
+                        ELASTIC_SUBPARTITIONS_SCALE_UP_LAG_DOC)
+                .define(ELASTIC_SUBPARTITIONS_SCALE_UP_BACKLOG,
+                        Type.LONG,
+                        ELASTIC_SUBPARTITIONS_SCALE_UP_BACKLOG_DEFAULT,
+                        ConfigDef.Range.atLeast(0),
+                        Importance.MEDIUM,
+                        ELASTIC_SUBPARTITIONS_SCALE_UP_BACKLOG_DOC)
+                .define(ELASTIC_SUBPARTITIONS_SCALE_DOWN_LAG,
+                        Type.LONG,
+                        ELASTIC_SUBPARTITIONS_SCALE_DOWN_LAG_DEFAULT,
+                        ConfigDef.Range.atLeast(0),
+                        Importance.MEDIUM,
+                        ELASTIC_SUBPARTITIONS_SCALE_DOWN_LAG_DOC)
+                .define(HOT_KEYS_SKETCH_CAPACITY,
+                        Type.INT,
+                        HOT_KEYS_SKETCH_CAPACITY_DEFAULT,
+                        ConfigDef.Range.atLeast(0),
+                        Importance.LOW,
+                        HOT_KEYS_SKETCH_CAPACITY_DOC)
+                .define(HOT_KEYS_MIN_SHARE,
+                        Type.DOUBLE,
+                        HOT_KEYS_MIN_SHARE_DEFAULT,
+                        ConfigDef.Range.between(0, 1),
+                        Importance.LOW,
+                        HOT_KEYS_MIN_SHARE_DOC)
+                .define(HOT_KEYS_WINDOW_MS,
+                        Type.LONG,
+                        HOT_KEYS_WINDOW_MS_DEFAULT,
+                        ConfigDef.Range.atLeast(0),
+                        Importance.LOW,
+                        HOT_KEYS_WINDOW_MS_DOC)
+                .define(HOT_KEYS_SUBPARTITIONS,
+                        Type.INT,
+                        HOT_KEYS_SUBPARTITIONS_DEFAULT,
+                        ConfigDef.Range.atLeast(0),
+                        Importance.LOW,
+                        HOT_KEYS_SUBPARTITIONS_DOC)
                 .define(RECORD_KEY_WEIGHER_CLASS,
                         Type.CLASS,
                         Importance.HIGH,
@@ -204,6 +557,22 @@ public class WorkersConfig extends AbstractConfig {
                         Type.CLASS,
                         Importance.HIGH,
                         RECORD_VALUE_WEIGHER_CLASS_DOC)
+                .define(RECORD_FILTER_CLASS,
+                        Type.CLASS,
+                        null,
+                        Importance.LOW,
+                        RECORD_FILTER_CLASS_DOC)
+                .define(RECORD_POOL_SIZE,
+                        Type.INT,
+                        RECORD_POOL_SIZE_DEFAULT,
+                        ConfigDef.Range.atLeast(0),
+                        Importance.LOW,
+                        RECORD_POOL_SIZE_DOC)
+                .define(RECORD_POOL_DEBUG,
+                        Type.BOOLEAN,
+                        RECORD_POOL_DEBUG_DEFAULT,
+                        Importance.LOW,
+                        RECORD_POOL_DEBUG_DOC)
                 .define(QUEUE_TOTAL_SIZE_HEAP_RATIO,
                         Type.DOUBLE,
                         QUEUE_TOTAL_SIZE_HEAP_RATIO_DEFAULT,
@@ -224,6 +593,122 @@ public class WorkersConfig extends AbstractConfig {
                         },
                         Importance.MEDIUM,
                         QUEUE_RESUME_RATIO_DOC)
+                .define(QUEUE_MAX_RECORDS,
+                        Type.INT,
+                        QUEUE_MAX_RECORDS_DEFAULT,
+                        ConfigDef.Range.atLeast(0),
+                        Importance.LOW,
+                        QUEUE_MAX_RECORDS_DOC)
+                .define(QUEUE_MAX_AGE_MS,
+                        Type.LONG,
+                        QUEUE_MAX_AGE_MS_DEFAULT,
+                        ConfigDef.Range.atLeast(0),
+                        Importance.LOW,
+                        QUEUE_MAX_AGE_MS_DOC)
+                .define(QUEUE_ADAPTIVE_MIN_SHARE,
+                        Type.DOUBLE,
+                        QUEUE_ADAPTIVE_MIN_SHARE_DEFAULT,
+                        ConfigDef.Range.between(0, 1),
+                        Importance.LOW,
+                        QUEUE_ADAPTIVE_MIN_SHARE_DOC)
+                .define(QUEUE_HEAP_PRESSURE_OCCUPANCY_RATIO,
+                        Type.DOUBLE,
+                        QUEUE_HEAP_PRESSURE_OCCUPANCY_RATIO_DEFAULT,
+                        ConfigDef.Range.between(0, 1),
+                        Importance.LOW,
+                        QUEUE_HEAP_PRESSURE_OCCUPANCY_RATIO_DOC)
+                .define(QUEUE_HEAP_PRESSURE_GC_TIME_RATIO,
+                        Type.DOUBLE,
+                        QUEUE_HEAP_PRESSURE_GC_TIME_RATIO_DEFAULT,
+                        ConfigDef.Range.between(0, 1),
+                        Importance.LOW,
+                        QUEUE_HEAP_PRESSURE_GC_TIME_RATIO_DOC)
+                .define(QUEUE_COALESCING_TOPICS,
+                        Type.LIST,
+                        QUEUE_COALESCING_TOPICS_DEFAULT,
+                        Importance.LOW,
+                        QUEUE_COALESCING_TOPICS_DOC)
+                .define(QUEUE_COMPRESSION_TYPE,
+                        Type.STRING,
+                        QUEUE_COMPRESSION_TYPE_DEFAULT,
+                        (name, value) -> {
+                            try {
+                                QueueCompressionType.fromString(value.toString());
+                            } catch (IllegalArgumentException e) {
+                                throw new ConfigException(name, value, "Unsupported value: " + value);
+                            }
+                        },
+                        Importance.LOW,
+                        QUEUE_COMPRESSION_TYPE_DOC)
+                .define(QUEUE_OFFHEAP_TOTAL_SIZE_BYTES,
+                        Type.LONG,
+                        QUEUE_OFFHEAP_TOTAL_SIZE_BYTES_DEFAULT,
+                        ConfigDef.Range.atLeast(0),
+                        Importance.LOW,
+                        QUEUE_OFFHEAP_TOTAL_SIZE_BYTES_DOC)
+                .define(QUEUE_OFFHEAP_SLAB_SIZE_BYTES,
+                        Type.INT,
+                        QUEUE_OFFHEAP_SLAB_SIZE_BYTES_DEFAULT,
+                        ConfigDef.Range.atLeast(1024),
+                        Importance.LOW,
+                        QUEUE_OFFHEAP_SLAB_SIZE_BYTES_DOC)
+                .define(QUEUE_SPILL_TOTAL_SIZE_BYTES,
+                        Type.LONG,
+                        QUEUE_SPILL_TOTAL_SIZE_BYTES_DEFAULT,
+                        ConfigDef.Range.atLeast(0),
+                        Importance.LOW,
+                        QUEUE_SPILL_TOTAL_SIZE_BYTES_DOC)
+                .define(QUEUE_SPILL_SEGMENT_SIZE_BYTES,
+                        Type.INT,
+                        QUEUE_SPILL_SEGMENT_SIZE_BYTES_DEFAULT,
+                        ConfigDef.Range.atLeast(1024),
+                        Importance.LOW,
+                        QUEUE_SPILL_SEGMENT_SIZE_BYTES_DOC)
+                .define(QUEUE_SPILL_DIRECTORY,
+                        Type.STRING,
+                        QUEUE_SPILL_DIRECTORY_DEFAULT,
+                        Importance.LOW,
+                        QUEUE_SPILL_DIRECTORY_DOC)
+                .define(METRICS_RECORDING_LEVEL,
+                        Type.STRING,
+                        METRICS_RECORDING_LEVEL_DEFAULT,
+                        (name, value) -> {
+                            try {
+                                MetricsRecordingLevel.fromString(value.toString());
+                            } catch (IllegalArgumentException e) {
+                                throw new ConfigException(name, value, "Unsupported value: " + value);
+                            }
+                        },
+                        Importance.LOW,
+                        METRICS_RECORDING_LEVEL_DOC)
+                .define(METRICS_SAMPLING_RATIO,
+                        Type.DOUBLE,
+                        METRICS_SAMPLING_RATIO_DEFAULT,
+                        (name, value) -> {
+                            if (value == null || (double)value <= 0 || (double)value > 1) {
+                                throw new ConfigException(name, value, "Value should be in range (0, 1]");
+                            }
+                        },
+                        Importance.LOW,
+                        METRICS_SAMPLING_RATIO_DOC)
+                .define(METRICS_PROMETHEUS_PORT,
+                        Type.INT,
+                        METRICS_PROMETHEUS_PORT_DEFAULT,
+                        ConfigDef.Range.between(0, 65535),
+                        Importance.LOW,
+                        METRICS_PROMETHEUS_PORT_DOC)
+                .define(METRICS_PROMETHEUS_INCLUDE,
+                        Type.LIST,
+                        METRICS_PROMETHEUS_INCLUDE_DEFAULT,
+                        WorkersConfig::validatePatterns,
+                        Importance.LOW,
+                        METRICS_PROMETHEUS_INCLUDE_DOC)
+                .define(METRICS_PROMETHEUS_EXCLUDE,
+                        Type.LIST,
+                        METRICS_PROMETHEUS_EXCLUDE_DEFAULT,
+                        WorkersConfig::validatePatterns,
+                        Importance.LOW,
+                        METRICS_PROMETHEUS_EXCLUDE_DOC)
                 .define(METRIC_REPORTER_CLASSES,
                         Type.LIST,
                         METRIC_REPORTER_CLASSES_DEFAULT,
@@ -242,6 +727,16 @@ public class WorkersConfig extends AbstractConfig {
     public WorkersConfig(final Map<?, ?> props) {
         super(CONFIG, removePrefixAndOverride(props, "kafka.workers."));
         checkConfigFinals(CONSUMER_PREFIX, CONSUMER_CONFIG_FINALS);
+        checkState(getHotKeysSubpartitions() == 0 || getHotKeysSketchCapacity() > 0,
+                "Config [%s] requires [%s] to be positive", HOT_KEYS_SUBPARTITIONS, HOT_KEYS_SKETCH_CAPACITY);
+        checkState(getQueueOffHeapTotalSizeBytes() == 0L
+                        || getQueueOffHeapTotalSizeBytes() >= getQueueOffHeapSlabSizeBytes(),
+                "Config [%s] should be 0 or at least [%s]", QUEUE_OFFHEAP_TOTAL_SIZE_BYTES, QUEUE_OFFHEAP_SLAB_SIZE_BYTES);
+        checkState(getQueueSpillTotalSizeBytes() == 0L
+                        || getQueueSpillTotalSizeBytes() >= getQueueSpillSegmentSizeBytes(),
+                "Config [%s] should be 0 or at least [%s]", QUEUE_SPILL_TOTAL_SIZE_BYTES, QUEUE_SPILL_SEGMENT_SIZE_BYTES);
+        checkState(getQueueSpillTotalSizeBytes() == 0L || getQueueSpillDirectory().isDirectory(),
+                "Config [%s] should be an existing directory", QUEUE_SPILL_DIRECTORY);
     }
 
     @SuppressWarnings("unchecked")
@@ -311,6 +806,39 @@ public class WorkersConfig extends AbstractConfig {
         return RecordProcessingGuarantee.fromString(getString(WORKER_PROCESSING_GUARANTEE));
     }
 
+    public MetricsRecordingLevel getMetricsRecordingLevel() {
+        return MetricsRecordingLevel.fromString(getString(METRICS_RECORDING_LEVEL));
+    }
+
+    public double getMetricsSamplingRatio() {
+        return getDouble(METRICS_SAMPLING_RATIO);
+    }
+
+    public int getMetricsPrometheusPort() {
+        return getInt(METRICS_PROMETHEUS_PORT);
+    }
+
+    public List<Pattern> getMetricsPrometheusInclude() {
+        return patterns(getList(METRICS_PROMETHEUS_INCLUDE));
+    }
+
+    public List<Pattern> getMetricsPrometheusExclude() {
+        return patterns(getList(METRICS_PROMETHEUS_EXCLUDE));
+    }
+
+    private static List<Pattern> patterns(List<String> regexes) {
+        return regexes.stream().map(Pattern::compile).collect(Collectors.toUnmodifiableList());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void validatePatterns(String name, Object value) {
+        try {
+            patterns((List<String>) value);
+        } catch (PatternSyntaxException e) {
+            throw new ConfigException(name, value, "Invalid regular expression: " + e.getMessage());
+        }
+    }
+
     public Duration getShutdownTimeout() {
         return Duration.ofMillis(getLong(WORKER_SHUTDOWN_TIMEOUT_MS));
     }
@@ -319,6 +847,55 @@ public class WorkersConfig extends AbstractConfig {
         return getDouble(QUEUE_TOTAL_SIZE_HEAP_RATIO);
     }
 
+    public int getQueueMaxRecords() {
+        return getInt(QUEUE_MAX_RECORDS);
+    }
+
+    public long getQueueMaxAgeMs() {
+        return getLong(QUEUE_MAX_AGE_MS);
+    }
+
+    public double getQueueAdaptiveMinShare() {
+        return getDouble(QUEUE_ADAPTIVE_MIN_SHARE);
+    }
+
+    public double getQueueHeapPressureOccupancyRatio() {
+        return getDouble(QUEUE_HEAP_PRESSURE_OCCUPANCY_RATIO);
+    }
+
+    public double getQueueHeapPressureGcTimeRatio() {
+        return getDouble(QUEUE_HEAP_PRESSURE_GC_TIME_RATIO);
+    }
+
+    public List<String> getQueueCoalescingTopics() {
+        return getList(QUEUE_COALESCING_TOPICS);
+    }
+
+    public QueueCompressionType getQueueCompressionType() {
+        return QueueCompressionType.fromString(getString(QUEUE_COMPRESSION_TYPE));
+    }
+
+    public long getQueueOffHeapTotalSizeBytes() {
+        return getLong(QUEUE_OFFHEAP_TOTAL_SIZE_BYTES);
+    }
+
+    public int getQueueOffHeapSlabSizeBytes() {
+        return getInt(QUEUE_OFFHEAP_SLAB_SIZE_BYTES);
+    }
+
+    public long getQueueSpillTotalSizeBytes() {
+        return getLong(QUEUE_SPILL_TOTAL_SIZE_BYTES);
+    }
+
+    public int getQueueSpillSegmentSizeBytes() {
+        return getInt(QUEUE_SPILL_SEGMENT_SIZE_BYTES);
+    }
+
+    public File getQueueSpillDirectory() {
+        String directory = getString(QUEUE_SPILL_DIRECTORY);
+        return new File(directory.isEmpty() ? System.getProperty("java.io.tmpdir") : directory);
+    }
+
     public <T> Weigher<T> getRecordKeyWeigher() {
         //noinspection unchecked
         return getConfiguredInstance(RECORD_KEY_WEIGHER_CLASS, Weigher.class);
@@ -329,6 +906,22 @@ public class WorkersConfig extends AbstractConfig {
         return getConfiguredInstance(RECORD_VALUE_WEIGHER_CLASS, Weigher.class);
     }
 
+    /**
+     * Returns configured record filter or null if records are not filtered.
+     */
+    public <K, V> RecordFilter<K, V> getRecordFilter() {
+        //noinspection unchecked
+        return getConfiguredInstance(RECORD_FILTER_CLASS, RecordFilter.class);
+    }
+
+    public int getRecordPoolSize() {
+        return getInt(RECORD_POOL_SIZE);
+    }
+
+    public boolean getRecordPoolDebug() {
+        return getBoolean(RECORD_POOL_DEBUG);
+    }
+
     public Duration getConsumerPollTimeout() {
         return Duration.ofMillis(getLong(WorkersConfig.CONSUMER_POLL_TIMEOUT_MS));
     }
@@ -340,4 +933,62 @@ public class WorkersConfig extends AbstractConfig {
     public long getConsumerCommitIntervalMs() {
         return getLong(WorkersConfig.CONSUMER_COMMIT_INTERVAL_MS);
     }
+
+    public long getConsumerMinPauseMs() {
+        return getLong(WorkersConfig.CONSUMER_MIN_PAUSE_MS);
+    }
+
+    public boolean getConsumerPredictiveResume() {
+        return getBoolean(WorkersConfig.CONSUMER_PREDICTIVE_RESUME);
+    }
+
+    /**
+     * Returns max.partition.fetch.bytes of the underlying {@link KafkaConsumer} (configured or default one).
+     */
+    public int getConsumerMaxPartitionFetchBytes() {
+        Object value = getConsumerConfigs().get(ConsumerConfig.MAX_PARTITION_FETCH_BYTES_CONFIG);
+        return value != null
+                ? Integer.parseInt(value.toString())
+                : ConsumerConfig.DEFAULT_MAX_PARTITION_FETCH_BYTES;
+    }
+
+    public long getClockTickMs() {
+        return getLong(WorkersConfig.CLOCK_TICK_MS);
+    }
+
+    public int getConsumerCommitMetadataMaxBytes() {
+        return getInt(WorkersConfig.CONSUMER_COMMIT_METADATA_MAX_BYTES);
+    }
+
+    public long getElasticSubpartitionsCheckIntervalMs() {
+        return getLong(WorkersConfig.ELASTIC_SUBPARTITIONS_CHECK_INTERVAL_MS);
+    }
+
+    public long getElasticSubpartitionsScaleUpLag() {
+        return getLong(WorkersConfig.ELASTIC_SUBPARTITIONS_SCALE_UP_LAG);
+    }
+
+    public long getElasticSubpartitionsScaleUpBacklog() {
+        return getLong(WorkersConfig.ELASTIC_SUBPARTITIONS_SCALE_UP_BACKLOG);
+    }
+
+    public long getElasticSubpartitionsScaleDownLag() {
+        return getLong(WorkersConfig.ELASTIC_SUBPARTITIONS_SCALE_DOWN_LAG);
+    }
+
+    public int getHotKeysSketchCapacity() {
+        return getInt(WorkersConfig.HOT_KEYS_SKETCH_CAPACITY);
+    }
+
+    public double getHotKeysMinShare() {
+        return getDouble(WorkersConfig.HOT_KEYS_MIN_SHARE);
+    }
+
+    public long getHotKeysWindowMs() {
+        return getLong(WorkersConfig.HOT_KEYS_WINDOW_MS);
+    }
+
+    public int getHotKeysSubpartitions() {
+        return getInt(WorkersConfig.HOT_KEYS_SUBPARTITIONS);
+    }
 }
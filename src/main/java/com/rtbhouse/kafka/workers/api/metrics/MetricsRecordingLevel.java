@@ -0,0 +1,37 @@
+package com.rtbhouse.kafka.workers.api.metrics;
+
+/**
+ * Level of details of recorded metrics. Metrics of higher levels are not even registered (and their values are not
+ * computed) unless they are enabled.
+ */
+public enum MetricsRecordingLevel {
+    /**
+     * Metrics recorded per partition or per poll (paused partitions, committed offsets, queue sizes etc.)
+     */
+    INFO,
+
+    /**
+     * Additionally metrics recorded for every consumed record (consumed offsets, input records sizes)
+     */
+    DEBUG,
+
+    /**
+     * Additionally metrics recorded for every record of every subpartition (accepting, accepted, processing and
+     * processed offsets)
+     */
+    TRACE;
+
+    public static MetricsRecordingLevel fromString(String string) {
+        if (string != null) {
+            return MetricsRecordingLevel.valueOf(string.toUpperCase());
+        }
+        throw new IllegalArgumentException();
+    }
+
+    /**
+     * Returns true if metrics of given level should be recorded when this level is configured.
+     */
+    public boolean shouldRecord(MetricsRecordingLevel level) {
+        return level.compareTo(this) <= 0;
+    }
+}
@@ -0,0 +1,65 @@
+package com.rtbhouse.kafka.workers.api.partitioner;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.function.ToLongFunction;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+
+/**
+ * Hash based {@link ElasticWorkerPartitioner} which uses from {@code minCount} up to {@code maxCount} sub-partitions
+ * for every {@link TopicPartition}.
+ */
+public class ElasticHashFunctionPartitioner<K, V> implements ElasticWorkerPartitioner<K, V> {
+
+    /**
+     * Elastic counterpart of {@link HashFunctionPartitioner#newMurmur2Partitioner(int)}.
+     */
+    public static <K, V> ElasticHashFunctionPartitioner<K, V> newMurmur2Partitioner(int minCount, int maxCount) {
+        return new ElasticHashFunctionPartitioner<>(HashFunctionPartitioner::murmur2Hash, minCount, maxCount);
+    }
+
+    /**
+     * Elastic counterpart of {@link HashFunctionPartitioner#newMurmur2KeyBytesPartitioner(int)}.
+     */
+    public static <K, V> ElasticHashFunctionPartitioner<K, V> newMurmur2KeyBytesPartitioner(int minCount, int maxCount) {
+        return new ElasticHashFunctionPartitioner<>(HashFunctionPartitioner::murmur2KeyBytesHash, minCount, maxCount);
+    }
+
+    private final ToLongFunction<ConsumerRecord<K, V>> hashFunction;
+
+    private final int minCount;
+
+    private final int maxCount;
+
+    public ElasticHashFunctionPartitioner(ToLongFunction<ConsumerRecord<K, V>> hashFunction, int minCount, int maxCount) {
+        this.hashFunction = hashFunction;
+        this.minCount = minCount;
+        this.maxCount = maxCount;
+        verify();
+    }
+
+    private void verify() {
+        checkNotNull(hashFunction, "hash function cannot be null");
+        checkState(minCount > 0, "minCount [%s] has to be positive", minCount);
+        checkState(maxCount >= minCount, "maxCount [%s] cannot be lower than minCount [%s]", maxCount, minCount);
+    }
+
+    @Override
+    public int subpartition(ConsumerRecord<K, V> consumerRecord, int count) {
+        return Math.floorMod(hashFunction.applyAsLong(consumerRecord), count);
+    }
+
+    @Override
+    public int count(TopicPartition topicPartition) {
+        return minCount;
+    }
+
+    @Override
+    public int maxCount(TopicPartition topicPartition) {
+        return maxCount;
+    }
+
+}
@@ -0,0 +1,47 @@
+package com.rtbhouse.kafka.workers.api.partitioner;
+
+import static com.rtbhouse.kafka.workers.impl.pool.TopicPartitionPool.getTopicPartition;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+
+/**
+ * {@link WorkerPartitioner} whose count of sub-partitions could be changed while a {@link TopicPartition} is assigned.
+ * <p>
+ * Every partition starts with {@link #count(TopicPartition)} sub-partitions. When its consumer lag or the backlog of
+ * consumed but not processed records exceeds configured thresholds ({@code elastic.subpartitions.*}) the count is
+ * raised to {@link #maxCount(TopicPartition)} and it is lowered back once the partition catches up. Before the count
+ * is changed, the partition is paused until all its consumed records are processed, so records with the same key
+ * remain processed sequentially even though they could be moved to another {@link WorkerSubpartition}.
+ */
+public interface ElasticWorkerPartitioner<K, V> extends WorkerPartitioner<K, V> {
+
+    /**
+     * Determines the sub-partition id for given {@link ConsumerRecord} and the current count of sub-partitions.
+     *
+     * @param consumerRecord
+     *            consumer record read by internal consumer
+     * @param count
+     *            current number of sub-partitions of the record's {@link TopicPartition}
+     *
+     * @return an integer between 0 and count-1
+     */
+    int subpartition(ConsumerRecord<K, V> consumerRecord, int count);
+
+    @Override
+    default int subpartition(ConsumerRecord<K, V> consumerRecord) {
+        return subpartition(consumerRecord,
+                count(getTopicPartition(consumerRecord.topic(), consumerRecord.partition())));
+    }
+
+    /**
+     * Returns the maximum number of sub-partitions for given {@link TopicPartition} used when it lags behind.
+     *
+     * @param topicPartition
+     *            given partition to determine maximum number of its subpartitions
+     *
+     * @return an integer greater than or equal to {@link #count(TopicPartition)}
+     */
+    int maxCount(TopicPartition topicPartition);
+
+}
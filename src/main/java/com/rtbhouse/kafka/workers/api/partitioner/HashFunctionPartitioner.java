@@ -1,33 +1,86 @@
 package com.rtbhouse.kafka.workers.api.partitioner;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
-import java.nio.charset.Charset;
+import java.nio.ByteBuffer;
 import java.util.function.Function;
+import java.util.function.ToLongFunction;
 
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.utils.Bytes;
 import org.apache.kafka.common.utils.Utils;
 
+import com.rtbhouse.kafka.workers.impl.partitioner.Murmur2;
+
 public class HashFunctionPartitioner<K, V> implements WorkerPartitioner<K, V> {
 
+    private static final byte[] EMPTY_KEY = new byte[0];
+
+    /**
+     * Hashes {@code key.toString() + ":" + partition} with murmur2. String keys are hashed without building
+     * intermediate strings and byte arrays.
+     */
     public static <K, V> HashFunctionPartitioner<K, V> newMurmur2Partitioner(int subpartitionCount) {
-        return new HashFunctionPartitioner<>(
+        return newHashFunctionPartitioner(
                 HashFunctionPartitioner::murmur2Hash,
                 subpartitionCount);
     }
 
-    private static <K, V> long murmur2Hash(ConsumerRecord<K, V> record) {
-        String keyWithPartition = record.key().toString() + ":" + record.partition();
-        return Utils.toPositive(Utils.murmur2(keyWithPartition.getBytes(Charset.forName("UTF-8"))));
+    /**
+     * Hashes serialized keys with murmur2 seeded by the record's partition, so it does not allocate at all. Keys have
+     * to be deserialized as {@code byte[]}, {@link ByteBuffer} or {@link Bytes}.
+     * <p>
+     * Distribution of keys differs from the one given by {@link #newMurmur2Partitioner(int)}, which should be kept
+     * as long as already assigned subpartitions matter (e.g. for migrations of stateful tasks).
+     */
+    public static <K, V> HashFunctionPartitioner<K, V> newMurmur2KeyBytesPartitioner(int subpartitionCount) {
+        return newHashFunctionPartitioner(
+                HashFunctionPartitioner::murmur2KeyBytesHash,
+                subpartitionCount);
+    }
+
+    /**
+     * Creates partitioner for the given hash function returning primitive (non-negative) values.
+     */
+    public static <K, V> HashFunctionPartitioner<K, V> newHashFunctionPartitioner(
+            ToLongFunction<ConsumerRecord<K, V>> hashFunction, int subpartitionCount) {
+        return new HashFunctionPartitioner<>(subpartitionCount, hashFunction);
+    }
+
+    static <K, V> long murmur2Hash(ConsumerRecord<K, V> record) {
+        K key = record.key();
+        CharSequence keyString = key instanceof CharSequence ? (CharSequence) key : key.toString();
+        return Utils.toPositive(Murmur2.hashUtf8WithSuffix(keyString, record.partition()));
+    }
+
+    static <K, V> long murmur2KeyBytesHash(ConsumerRecord<K, V> record) {
+        K key = record.key();
+        int seed = Murmur2.DEFAULT_SEED ^ record.partition();
+        if (key instanceof byte[]) {
+            return Utils.toPositive(Murmur2.hash((byte[]) key, seed));
+        } else if (key instanceof Bytes) {
+            return Utils.toPositive(Murmur2.hash(((Bytes) key).get(), seed));
+        } else if (key instanceof ByteBuffer) {
+            return Utils.toPositive(Murmur2.hash((ByteBuffer) key, seed));
+        } else {
+            checkArgument(key == null, "key type [%s] is not supported, byte[], ByteBuffer or Bytes expected",
+                    key != null ? key.getClass().getName() : null);
+            return Utils.toPositive(Murmur2.hash(EMPTY_KEY, seed));
+        }
     }
 
     private final int subpartitionCount;
 
-    private final Function<ConsumerRecord<K, V>, Long> hashFunction;
+    private final ToLongFunction<ConsumerRecord<K, V>> hashFunction;
 
     public HashFunctionPartitioner(Function<ConsumerRecord<K, V>, Long> hashFunction, int subpartitionCount) {
+        this(subpartitionCount, hashFunction != null ? hashFunction::apply : null);
+    }
+
+    private HashFunctionPartitioner(int subpartitionCount, ToLongFunction<ConsumerRecord<K, V>> hashFunction) {
         this.hashFunction = hashFunction;
         this.subpartitionCount = subpartitionCount;
         verify();
@@ -40,7 +93,7 @@ public class HashFunctionPartitioner<K, V> implements WorkerPartitioner<K, V> {
 
     @Override
     public int subpartition(ConsumerRecord<K, V> consumerRecord) {
-        return (int) (hashFunction.apply(consumerRecord) % subpartitionCount);
+        return Math.floorMod(hashFunction.applyAsLong(consumerRecord), subpartitionCount);
     }
 
     @Override
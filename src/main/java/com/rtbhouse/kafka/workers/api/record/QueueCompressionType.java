@@ -0,0 +1,23 @@
+package com.rtbhouse.kafka.workers.api.record;
+
+/**
+ * Compression of record values (byte arrays or {@link org.apache.kafka.common.utils.Bytes}) kept in internal queues.
+ */
+public enum QueueCompressionType {
+    /**
+     * Values are queued as they were deserialized
+     */
+    NONE,
+
+    /**
+     * Values are compressed with LZ4 when they are queued and decompressed when they are taken by their WorkerTask
+     */
+    LZ4;
+
+    public static QueueCompressionType fromString(String string) {
+        if (string != null) {
+            return QueueCompressionType.valueOf(string.toUpperCase());
+        }
+        throw new IllegalArgumentException();
+    }
+}
@@ -0,0 +1,18 @@
+package com.rtbhouse.kafka.workers.api.record;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+
+import com.rtbhouse.kafka.workers.api.task.WorkerTask;
+
+/**
+ * Filters consumed records before they are queued. Filtered out records are not passed to any {@link WorkerTask} and
+ * their offsets are marked as processed right away. The filter is called by the consumer thread for every consumed
+ * record, so it should be cheap (e.g. check only headers or the key of a record).
+ */
+public interface RecordFilter<K, V> {
+
+    /**
+     * @return true if given record should be queued and processed
+     */
+    boolean accept(ConsumerRecord<K, V> record);
+}
@@ -0,0 +1,28 @@
+package com.rtbhouse.kafka.workers.api.record;
+
+import java.util.Collection;
+
+import com.rtbhouse.kafka.workers.api.task.WorkerTask;
+import com.rtbhouse.kafka.workers.impl.record.RecordStatusObserverImpl;
+
+/**
+ * Utility methods for reporting status of many {@link WorkerRecord}s at once.
+ */
+public final class RecordStatusObservers {
+
+    private RecordStatusObservers() {
+    }
+
+    /**
+     * Equivalent of calling {@link RecordStatusObserver#onSuccess()} on every given observer, but consecutive offsets
+     * from the same partition are acknowledged as a single range. It should be preferred by {@link WorkerTask}s which
+     * flush records in batches.
+     *
+     * @param observers
+     *            observers of successfully processed records
+     */
+    public static void onSuccess(Collection<? extends RecordStatusObserver> observers) {
+        RecordStatusObserverImpl.onSuccess(observers);
+    }
+
+}
@@ -1,70 +1,115 @@
 package com.rtbhouse.kafka.workers.api.record;
 
-import static com.rtbhouse.kafka.workers.impl.pool.TopicPartitionPool.getTopicPartition;
-
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.record.TimestampType;
 
 import com.rtbhouse.kafka.workers.api.partitioner.WorkerSubpartition;
 
 public class WorkerRecord<K, V> {
 
-    private final ConsumerRecord<K, V> record;
-    private final int subpartition;
+    // not final, so records could be reused when record pooling is enabled
+    private ConsumerRecord<K, V> record;
+    private WorkerSubpartition workerSubpartition;
+    private long consumedAtNanos;
 
     public WorkerRecord(ConsumerRecord<K, V> record, int subpartition) {
+        this(record, WorkerSubpartition.getInstance(record.topic(), record.partition(), subpartition));
+    }
+
+    public WorkerRecord(ConsumerRecord<K, V> record, WorkerSubpartition workerSubpartition) {
+        this(record, workerSubpartition, 0L);
+    }
+
+    public WorkerRecord(ConsumerRecord<K, V> record, WorkerSubpartition workerSubpartition, long consumedAtNanos) {
         this.record = record;
-        this.subpartition = subpartition;
+        this.workerSubpartition = workerSubpartition;
+        this.consumedAtNanos = consumedAtNanos;
+    }
+
+    /**
+     * Reinitializes the record to wrap given consumer record, so it could be reused instead of allocating a new one.
+     */
+    protected void reset(ConsumerRecord<K, V> record, WorkerSubpartition workerSubpartition, long consumedAtNanos) {
+        this.record = record;
+        this.workerSubpartition = workerSubpartition;
+        this.consumedAtNanos = consumedAtNanos;
+    }
+
+    /**
+     * Returns the wrapped consumer record. All accessors of the record go through it.
+     */
+    protected ConsumerRecord<K, V> consumerRecord() {
+        return record;
     }
 
     public WorkerSubpartition workerSubpartition() {
-        return WorkerSubpartition.getInstance(record.topic(), record.partition(), subpartition);
+        return workerSubpartition;
     }
 
     public TopicPartition topicPartition() {
-        return getTopicPartition(record.topic(), record.partition());
+        return workerSubpartition().topicPartition();
     }
 
     public String topic() {
-        return record.topic();
+        return consumerRecord().topic();
     }
 
     public int partition() {
-        return record.partition();
+        return consumerRecord().partition();
     }
 
     public int subpartition() {
-        return subpartition;
+        return workerSubpartition().subpartition();
     }
 
     public long offset() {
-        return record.offset();
+        return consumerRecord().offset();
     }
 
     public long timestamp() {
-        return record.timestamp();
+        return consumerRecord().timestamp();
+    }
+
+    public TimestampType timestampType() {
+        return consumerRecord().timestampType();
     }
 
     public Headers headers() {
-        return record.headers();
+        return consumerRecord().headers();
     }
 
     public K key() {
-        return record.key();
+        return consumerRecord().key();
     }
 
     public V value() {
-        return record.value();
+        return consumerRecord().value();
+    }
+
+    /**
+     * Returns {@link System#nanoTime()} of polling the record from Kafka (0 if it is not known).
+     */
+    public long consumedAtNanos() {
+        return consumedAtNanos;
     }
 
     public int serializedSize() {
-        return record.serializedKeySize() + record.serializedValueSize();
+        return consumerRecord().serializedKeySize() + consumerRecord().serializedValueSize();
+    }
+
+    public int serializedKeySize() {
+        return consumerRecord().serializedKeySize();
+    }
+
+    public int serializedValueSize() {
+        return consumerRecord().serializedValueSize();
     }
 
     @Override
     public String toString() {
-        return "WorkerRecord(record = " + record + ", subpartition = " + subpartition + ")";
+        return "WorkerRecord(record = " + consumerRecord() + ", subpartition = " + subpartition() + ")";
     }
 
 }
@@ -14,6 +14,7 @@ import static com.rtbhouse.kafka.workers.impl.metrics.WorkersMetrics.WORKER_THRE
 import static com.rtbhouse.kafka.workers.impl.metrics.WorkersMetrics.WORKER_THREAD_METRIC_GROUP;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
+import java.io.IOException;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -32,8 +33,12 @@ import com.rtbhouse.kafka.workers.api.WorkersConfig;
 import com.rtbhouse.kafka.workers.api.WorkersException;
 import com.rtbhouse.kafka.workers.api.partitioner.WorkerPartitioner;
 import com.rtbhouse.kafka.workers.api.task.WorkerTaskFactory;
+import com.rtbhouse.kafka.workers.impl.clock.ClockThread;
+import com.rtbhouse.kafka.workers.impl.clock.CoarseWorkersClock;
+import com.rtbhouse.kafka.workers.impl.clock.WorkersClock;
 import com.rtbhouse.kafka.workers.impl.consumer.ConsumerThread;
 import com.rtbhouse.kafka.workers.impl.errors.BadStatusException;
+import com.rtbhouse.kafka.workers.impl.metrics.PrometheusExporter;
 import com.rtbhouse.kafka.workers.impl.metrics.WorkersMetrics;
 import com.rtbhouse.kafka.workers.impl.offsets.DefaultOffsetsState;
 import com.rtbhouse.kafka.workers.impl.offsets.OffsetsState;
@@ -54,6 +59,7 @@ public class KafkaWorkersImpl<K, V> implements Partitioned {
     private final SubpartitionSupplier<K, V> subpartitionSupplier;
     private final RecordWeigher<K, V> recordWeigher;
     private final ShutdownCallback callback;
+    private final WorkersClock clock;
 
     private final TaskManager<K, V> taskManager;
     private final QueuesManager<K, V> queueManager;
@@ -63,6 +69,10 @@ public class KafkaWorkersImpl<K, V> implements Partitioned {
     private final List<WorkerThread<K, V>> workerThreads = new ArrayList<>();
     private PunctuatorThread<K, V> punctuatorThread;
     private ConsumerThread<K, V> consumerThread;
+    private ClockThread clockThread;
+
+    // not null only when metrics exporter is enabled
+    private PrometheusExporter prometheusExporter;
 
     private ShutdownListenerThread shutdownThread;
     private final Object shutdownLock = new Object();
@@ -80,12 +90,13 @@ public class KafkaWorkersImpl<K, V> implements Partitioned {
         this.config = config;
         this.metrics = new WorkersMetrics(config);
         this.taskFactory = taskFactory;
-        this.subpartitionSupplier = new SubpartitionSupplier<>(partitioner);
+        this.subpartitionSupplier = new SubpartitionSupplier<>(partitioner, config.getHotKeysSubpartitions());
         this.callback = callback;
-        this.offsetsState = new DefaultOffsetsState(this.config, this.metrics);
+        this.clock = config.getClockTickMs() > 0 ? new CoarseWorkersClock(WorkersClock.system()) : WorkersClock.system();
+        this.offsetsState = new DefaultOffsetsState(this.config, this.metrics, this.clock);
         this.recordWeigher = new RecordWeigher<>(this.config.getRecordKeyWeigher(), this.config.getRecordValueWeigher());
         this.taskManager = new TaskManager<>(config, this.metrics, this.taskFactory, this.subpartitionSupplier,
-                this.workerThreads, this.offsetsState);
+                this.workerThreads, this.offsetsState, this.clock);
         this.queueManager = new QueuesManager<>(config, this.metrics, this.subpartitionSupplier, this.taskManager,
                 this.recordWeigher);
     }
@@ -94,18 +105,33 @@ public class KafkaWorkersImpl<K, V> implements Partitioned {
         setStatus(STARTING);
         logger.info("kafka workers starting");
 
+        // started before any threads, so a port conflict fails fast
+        if (config.getMetricsPrometheusPort() > 0) {
+            prometheusExporter = new PrometheusExporter(config, metrics);
+            try {
+                prometheusExporter.start();
+            } catch (IOException e) {
+                throw new WorkersException("could not start metrics exporter", e);
+            }
+        }
+
         final int workerThreadsNum = config.getInt(WorkersConfig.WORKER_THREADS_NUM);
-        consumerThread = new ConsumerThread<>(config, metrics, this, queueManager, subpartitionSupplier, offsetsState, recordWeigher);
+        consumerThread = new ConsumerThread<>(config, metrics, this, queueManager, subpartitionSupplier, offsetsState, recordWeigher,
+                clock);
         for (int i = 0; i < workerThreadsNum; i++) {
-            workerThreads.add(new WorkerThread<>(i, config, metrics, this,  taskManager, queueManager, offsetsState));
+            workerThreads.add(new WorkerThread<>(i, config, metrics, this,  taskManager, queueManager, offsetsState, clock));
         }
         punctuatorThread = new PunctuatorThread<>(config, metrics, this, workerThreads);
+        if (clock instanceof CoarseWorkersClock) {
+            clockThread = new ClockThread(config, metrics, this, (CoarseWorkersClock) clock);
+        }
 
         // number of threads includes:
         // - configurable amount of worker threads
         // - plus one consumer thread
         // - plus one punctuator thread
-        final int allThreadsNum = workerThreadsNum + 2;
+        // - plus optional clock thread
+        final int allThreadsNum = workerThreadsNum + 2 + (clockThread != null ? 1 : 0);
         executor = new ThreadPoolExecutor(allThreadsNum, allThreadsNum,
                 0L, TimeUnit.MILLISECONDS,
                 new LinkedBlockingQueue<>());
@@ -114,6 +140,9 @@ public class KafkaWorkersImpl<K, V> implements Partitioned {
             executor.execute(workerThread);
         }
         executor.execute(punctuatorThread);
+        if (clockThread != null) {
+            executor.execute(clockThread);
+        }
 
         setStatus(STARTED);
         logger.info("kafka workers started");
@@ -149,6 +178,9 @@ public class KafkaWorkersImpl<K, V> implements Partitioned {
         // firstly stop threads processing
         consumerThread.shutdown();
         punctuatorThread.shutdown();
+        if (clockThread != null) {
+            clockThread.shutdown();
+        }
         for (WorkerThread<K, V> workerThread : workerThreads) {
             workerThread.shutdown();
         }
@@ -187,6 +219,15 @@ public class KafkaWorkersImpl<K, V> implements Partitioned {
         }
         closeThreadResources(consumerThread);
         closeThreadResources(punctuatorThread);
+        if (clockThread != null) {
+            closeThreadResources(clockThread);
+        }
+
+        queueManager.close();
+
+        if (prometheusExporter != null) {
+            prometheusExporter.stop();
+        }
 
         if (callback != null) {
             callback.onShutdown(exception);
@@ -206,6 +247,7 @@ public class KafkaWorkersImpl<K, V> implements Partitioned {
     @Override
     public void register(Collection<TopicPartition> partitions) throws InterruptedException {
         logger.info("partitions registered: {}", partitions);
+        subpartitionSupplier.register(partitions);
         consumerThread.register(partitions);
         offsetsState.register(partitions);
         queueManager.register(partitions);
@@ -219,6 +261,21 @@ public class KafkaWorkersImpl<K, V> implements Partitioned {
         queueManager.unregister(partitions);
         consumerThread.unregister(partitions);
         offsetsState.unregister(partitions);
+        subpartitionSupplier.unregister(partitions);
+    }
+
+    /**
+     * Changes subpartitions count of an assigned partition. Should be called only when all consumed records of the
+     * partition are processed (see {@link com.rtbhouse.kafka.workers.impl.partitioner.ElasticSubpartitionsController}).
+     */
+    public void resize(TopicPartition partition, int count) throws InterruptedException {
+        logger.info("partition: {} resized to {} subpartitions", partition, count);
+        List<TopicPartition> partitions = List.of(partition);
+        taskManager.unregister(partitions);
+        queueManager.unregister(partitions);
+        subpartitionSupplier.resize(partition, count);
+        queueManager.register(partitions);
+        taskManager.register(partitions);
     }
 
     private void setStatus(Status newStatus) {
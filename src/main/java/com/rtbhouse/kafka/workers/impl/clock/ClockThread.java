@@ -0,0 +1,43 @@
+package com.rtbhouse.kafka.workers.impl.clock;
+
+import com.rtbhouse.kafka.workers.api.WorkersConfig;
+import com.rtbhouse.kafka.workers.impl.AbstractWorkersThread;
+import com.rtbhouse.kafka.workers.impl.KafkaWorkersImpl;
+import com.rtbhouse.kafka.workers.impl.metrics.WorkersMetrics;
+
+public class ClockThread extends AbstractWorkersThread {
+
+    private final CoarseWorkersClock clock;
+    private final long tickMs;
+
+    public ClockThread(
+            WorkersConfig config,
+            WorkersMetrics metrics,
+            KafkaWorkersImpl<?, ?> workers,
+            CoarseWorkersClock clock) {
+        super("clock-thread", config, metrics, workers);
+        this.clock = clock;
+        this.tickMs = config.getClockTickMs();
+    }
+
+    @Override
+    public void init() {
+        clock.tick();
+    }
+
+    @Override
+    public void process() throws InterruptedException {
+        Thread.sleep(tickMs);
+        clock.tick();
+    }
+
+    @Override
+    public void finish() {
+        clock.stop();
+    }
+
+    @Override
+    public void close() {
+    }
+
+}
@@ -0,0 +1,32 @@
+package com.rtbhouse.kafka.workers.impl.clock;
+
+/**
+ * Clock which returns cached time updated periodically by {@link ClockThread}, so reading it does not query
+ * system time (as long as ticking is not stopped). Its precision is limited by the tick interval.
+ */
+public class CoarseWorkersClock implements WorkersClock {
+
+    private final WorkersClock source;
+
+    private volatile long millis;
+    private volatile boolean stopped = false;
+
+    public CoarseWorkersClock(WorkersClock source) {
+        this.source = source;
+        this.millis = source.millis();
+    }
+
+    @Override
+    public long millis() {
+        // after ticking is stopped (e.g. during shutdown) the source is used directly
+        return stopped ? source.millis() : millis;
+    }
+
+    public void tick() {
+        millis = source.millis();
+    }
+
+    public void stop() {
+        stopped = true;
+    }
+}
@@ -0,0 +1,16 @@
+package com.rtbhouse.kafka.workers.impl.clock;
+
+import java.time.Instant;
+
+/**
+ * Source of time used by internal components. Timestamps are milliseconds since epoch kept as primitive longs to avoid
+ * {@link Instant} allocations on hot paths.
+ */
+public interface WorkersClock {
+
+    long millis();
+
+    static WorkersClock system() {
+        return System::currentTimeMillis;
+    }
+}
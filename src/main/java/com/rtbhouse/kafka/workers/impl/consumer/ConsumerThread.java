@@ -1,42 +1,63 @@
 package com.rtbhouse.kafka.workers.impl.consumer;
 
 import java.time.Duration;
-import java.time.Instant;
+import java.util.ArrayDeque;
 import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
 import org.apache.kafka.clients.consumer.OffsetAndMetadata;
 import org.apache.kafka.clients.consumer.OffsetCommitCallback;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
 import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.common.metrics.Sensor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.collect.Streams;
+import com.google.common.collect.Sets;
 import com.rtbhouse.kafka.workers.api.WorkersConfig;
 import com.rtbhouse.kafka.workers.api.WorkersException;
-import com.rtbhouse.kafka.workers.api.partitioner.WorkerSubpartition;
+import com.rtbhouse.kafka.workers.api.record.RecordFilter;
 import com.rtbhouse.kafka.workers.api.record.WorkerRecord;
 import com.rtbhouse.kafka.workers.impl.AbstractWorkersThread;
 import com.rtbhouse.kafka.workers.impl.KafkaWorkersImpl;
 import com.rtbhouse.kafka.workers.impl.Partitioned;
+import com.rtbhouse.kafka.workers.impl.clock.WorkersClock;
+import com.rtbhouse.kafka.workers.impl.metrics.LatencyHistogram;
+import com.rtbhouse.kafka.workers.impl.metrics.PartitionMetrics;
 import com.rtbhouse.kafka.workers.impl.metrics.WorkersMetrics;
 import com.rtbhouse.kafka.workers.impl.offsets.OffsetsState;
+import com.rtbhouse.kafka.workers.impl.offsets.ProcessedOffsetsMetadata;
+import com.rtbhouse.kafka.workers.impl.partitioner.ElasticSubpartitionsController;
+import com.rtbhouse.kafka.workers.impl.partitioner.HotKeysDetector;
+import com.rtbhouse.kafka.workers.impl.partitioner.SpaceSavingSketch;
 import com.rtbhouse.kafka.workers.impl.partitioner.SubpartitionSupplier;
+import com.rtbhouse.kafka.workers.impl.partitioner.SubpartitionSupplier.RegisteredSubpartitions;
 import com.rtbhouse.kafka.workers.impl.queues.QueuesManager;
-import com.rtbhouse.kafka.workers.impl.range.RangeUtils;
+import com.rtbhouse.kafka.workers.impl.range.ClosedRange;
+import com.rtbhouse.kafka.workers.impl.range.ClosedRangesBuilder;
+import com.rtbhouse.kafka.workers.impl.record.ObjectPool;
+import com.rtbhouse.kafka.workers.impl.record.PooledWorkerRecord;
 import com.rtbhouse.kafka.workers.impl.record.weigher.RecordWeigher;
 
 public class ConsumerThread<K, V> extends AbstractWorkersThread implements Partitioned {
 
     private static final Logger logger = LoggerFactory.getLogger(ConsumerThread.class);
 
+    // per partition lag of the consumer position behind the high watermark (as known from the last fetch)
+    private static final String RECORDS_LAG_METRIC = "records-lag";
+    private static final String FETCH_MANAGER_METRIC_GROUP = "consumer-fetch-manager-metrics";
+    private static final String FETCH_LATENCY_AVG_METRIC = "fetch-latency-avg";
+
     private final Duration consumerPollTimeout;
     private final Duration consumerProcessingTimeout;
     private final long consumerCommitIntervalMs;
@@ -48,8 +69,47 @@ public class ConsumerThread<K, V> extends AbstractWorkersThread implements Parti
     private final ConsumerRebalanceListenerImpl<K, V> listener;
     private final OffsetCommitCallback commitCallback;
     private final RecordWeigher<K, V> recordWeigher;
+    private final WorkersClock clock;
+
+    // not null only when ElasticWorkerPartitioner is used
+    private final ElasticSubpartitionsController<K, V> elasticSubpartitionsController;
+
+    // not null only when hot keys detection is enabled
+    private final HotKeysDetector<K, V> hotKeysDetector;
+
+    // null if records are not filtered
+    private final RecordFilter<K, V> recordFilter;
+
+    // null if records are not pooled
+    private final ObjectPool<PooledWorkerRecord<K, V>> recordPool;
+
+    // queued records of coalescing topics are accessed by the consumer thread, so they are never pooled
+    private final Set<String> coalescingTopics;
+
+    // offsets of filtered out, already processed and superseded records of the current partition, reused for every
+    // partition
+    private final ClosedRangesBuilder skippedRanges = new ClosedRangesBuilder();
+
+    // partitions paused until their records are processed, so their subpartitioning could be changed
+    private final DrainingPartitions drainingPartitions;
+
+    private final FlowController flowController;
 
-    private long commitTime = System.currentTimeMillis();
+    // offsets processed out of order by the previous owner of a partition (read from committed metadata)
+    private final Map<TopicPartition, Deque<ClosedRange>> processedBeforeAssignment = new HashMap<>();
+
+    // metrics of assigned partitions resolved once during registration
+    private final Map<TopicPartition, PartitionMetrics> partitionMetrics = new HashMap<>();
+
+    // null if debug metrics are not recorded
+    private Sensor inputRecordsSizeSensor;
+
+    private Sensor pauseTimeSensor;
+
+    // resolved once the consumer registers it, null before
+    private Metric fetchLatencyMetric;
+
+    private long commitTime;
 
     public ConsumerThread(
             WorkersConfig config,
@@ -58,7 +118,8 @@ public class ConsumerThread<K, V> extends AbstractWorkersThread implements Parti
             QueuesManager<K, V> queuesManager,
             SubpartitionSupplier<K, V> subpartitionSupplier,
             OffsetsState offsetsState,
-            RecordWeigher<K, V> recordWeigher) {
+            RecordWeigher<K, V> recordWeigher,
+            WorkersClock clock) {
         super("consumer-thread", config, metrics, workers);
 
         this.consumerPollTimeout = config.getConsumerPollTimeout();
@@ -70,18 +131,37 @@ public class ConsumerThread<K, V> extends AbstractWorkersThread implements Parti
         this.offsetsState = offsetsState;
         this.consumer = new KafkaConsumer<>(config.getConsumerConfigs());
         this.listener = new ConsumerRebalanceListenerImpl<>(workers);
-        this.commitCallback = new OffsetCommitCallbackImpl(config, this, offsetsState, metrics);
+        this.commitCallback = new OffsetCommitCallbackImpl(config, this, offsetsState, clock);
         this.recordWeigher = recordWeigher;
+        this.clock = clock;
+        this.commitTime = clock.millis();
+        this.elasticSubpartitionsController = subpartitionSupplier.elasticPartitioner()
+                .map(partitioner -> new ElasticSubpartitionsController<>(config, partitioner, subpartitionSupplier,
+                        offsetsState, clock))
+                .orElse(null);
+        this.hotKeysDetector = config.getHotKeysSketchCapacity() > 0
+                ? new HotKeysDetector<>(config, metrics, subpartitionSupplier, clock)
+                : null;
+        this.drainingPartitions = new DrainingPartitions(offsetsState);
+        this.flowController = new FlowController(config, queuesManager, clock);
+        this.recordFilter = config.getRecordFilter();
+        boolean poolDebug = config.getRecordPoolDebug();
+        this.recordPool = config.getRecordPoolSize() > 0
+                ? new ObjectPool<>(config.getRecordPoolSize(), pool -> new PooledWorkerRecord<>(pool, poolDebug))
+                : null;
+        this.coalescingTopics = Set.copyOf(config.getQueueCoalescingTopics());
     }
 
     @Override
     public void init() {
         metrics.addConsumerThreadMetrics();
+        inputRecordsSizeSensor = metrics.sensor(WorkersMetrics.INPUT_RECORDS_SIZE_SENSOR);
+        pauseTimeSensor = metrics.sensor(WorkersMetrics.PAUSE_TIME_SENSOR);
         consumer.subscribe(config.getList(WorkersConfig.CONSUMER_TOPICS), listener);
     }
 
     @Override
-    public void process() {
+    public void process() throws InterruptedException {
         ConsumerRecords<K, V> records;
         try {
             records = consumer.poll(consumerPollTimeout);
@@ -94,15 +174,73 @@ public class ConsumerThread<K, V> extends AbstractWorkersThread implements Parti
         }
         listener.rethrowExceptionCaughtDuringRebalance();
 
-        addConsumedRanges(records);
-
+        long consumedAtMs = clock.millis();
+        // single timestamp for the whole poll, queue wait latencies are measured from it
+        long consumedAtNanos = System.nanoTime();
         long pollRecordsTotalSize = 0L;
-        for (ConsumerRecord<K, V> record : records) {
-            WorkerSubpartition subpartition = subpartitionSupplier.subpartition(record);
-            WorkerRecord<K, V> workerRecord = new WorkerRecord<>(record, subpartition.subpartition());
-            queuesManager.push(subpartition, workerRecord);
-            pollRecordsTotalSize += recordWeigher.weigh(workerRecord);
-            updateInputRecordMetrics(workerRecord);
+        // records are handled partition by partition, so subpartitions are resolved without any per record lookups
+        for (TopicPartition partition : records.partitions()) {
+            List<ConsumerRecord<K, V>> partitionRecords = records.records(partition);
+            addConsumedRanges(partition, partitionRecords, consumedAtMs);
+
+            RegisteredSubpartitions subpartitions = subpartitionSupplier.registeredSubpartitions(partition);
+            Deque<ClosedRange> processedRanges = processedBeforeAssignment.get(partition);
+            SpaceSavingSketch sketch = hotKeysDetector != null ? hotKeysDetector.sketch(partition) : null;
+            PartitionMetrics metricsOfPartition = partitionMetrics.get(partition);
+            LatencyHistogram kafkaToConsumedLatency = metricsOfPartition.kafkaToConsumedLatency();
+            ObjectPool<PooledWorkerRecord<K, V>> recordPool = coalescingTopics.contains(partition.topic())
+                    ? null
+                    : this.recordPool;
+            for (ConsumerRecord<K, V> record : partitionRecords) {
+                // filtered out records are skipped before any per record work (even weighing)
+                if (recordFilter != null && !recordFilter.accept(record)) {
+                    skippedRanges.add(record.offset());
+                    continue;
+                }
+                // as well as records processed by the previous owner of the partition
+                if (processedRanges != null && wasProcessedBeforeAssignment(processedRanges, record.offset())) {
+                    skippedRanges.add(record.offset());
+                    continue;
+                }
+                int subpartitionId;
+                if (sketch != null && record.key() != null) {
+                    int keyHash = SubpartitionSupplier.keyHash(record.key());
+                    sketch.offer(keyHash);
+                    subpartitionId = subpartitionSupplier.subpartitionId(subpartitions, record, keyHash);
+                } else {
+                    subpartitionId = subpartitionSupplier.subpartitionId(subpartitions, record);
+                }
+                WorkerRecord<K, V> workerRecord = recordPool != null
+                        ? recordPool.take().init(record, subpartitionSupplier.subpartition(subpartitionId),
+                                consumedAtNanos)
+                        : new WorkerRecord<>(record, subpartitionSupplier.subpartition(subpartitionId),
+                                consumedAtNanos);
+                // weighed before pushing, as a pooled record could be processed and reused right after it is queued
+                long recordSize = recordWeigher.weigh(workerRecord);
+                WorkerRecord<K, V> supersededRecord = queuesManager.push(subpartitionId, workerRecord);
+                if (supersededRecord != null) {
+                    // superseded in order of their successors (possibly consumed by previous polls)
+                    skippedRanges.add(supersededRecord.offset());
+                }
+                pollRecordsTotalSize += recordSize;
+                if (inputRecordsSizeSensor != null && metrics.shouldSample()) {
+                    inputRecordsSizeSensor.record(recordSize);
+                }
+                if (kafkaToConsumedLatency != null && record.timestamp() >= 0L
+                        && metrics.shouldSample()) {
+                    kafkaToConsumedLatency.recordMillis(Math.max(0L, consumedAtMs - record.timestamp()));
+                }
+            }
+            // records are ordered by offset, so the last one is the consumed offset of the partition
+            long lastOffset = partitionRecords.get(partitionRecords.size() - 1).offset();
+            metricsOfPartition.consumedOffset().record(lastOffset);
+            metricsOfPartition.recordConsumed(partitionRecords.get(0).offset(), lastOffset, consumedAtMs);
+            if (processedRanges != null && processedRanges.isEmpty()) {
+                processedBeforeAssignment.remove(partition);
+            }
+            if (!skippedRanges.isEmpty()) {
+                skippedRanges.drain(range -> offsetsState.updateProcessed(partition, range));
+            }
         }
         metrics.recordSensor(WorkersMetrics.KAFKA_POLL_RECORDS_COUNT_SENSOR, records.count());
         metrics.recordSensor(WorkersMetrics.KAFKA_POLL_RECORDS_SIZE_SENSOR, pollRecordsTotalSize);
@@ -112,50 +250,159 @@ public class ConsumerThread<K, V> extends AbstractWorkersThread implements Parti
         if (!partitionsToPause.isEmpty()) {
             consumer.pause(partitionsToPause);
             logger.warn("paused partitions: {}", partitionsToPause);
-            for (TopicPartition partition : partitionsToPause) {
-                metrics.recordSensor(WorkersMetrics.PAUSED_PARTITIONS_METRIC, partition, 1L);
-            }
+            partitionsToPause.forEach(this::recordPaused);
         }
 
-        Set<TopicPartition> partitionsToResume = queuesManager.getPartitionsToResume(consumer.paused());
+        // draining partitions are resumed only when all their records are processed
+        Set<TopicPartition> partitionsToResume = flowController.partitionsToResume(
+                Sets.difference(consumer.paused(), drainingPartitions.partitions()), fetchLatencyMs());
         if (!partitionsToResume.isEmpty()) {
             consumer.resume(partitionsToResume);
             logger.info("resumed partitions: {}", partitionsToResume);
-            for (TopicPartition partition : partitionsToResume) {
-                metrics.recordSensor(WorkersMetrics.PAUSED_PARTITIONS_METRIC, partition, 0L);
-            }
+            partitionsToResume.forEach(this::recordResumed);
         }
 
+        if (elasticSubpartitionsController != null && elasticSubpartitionsController.shouldCheckNow()) {
+            resizeSubpartitions();
+        }
+        if (hotKeysDetector != null && hotKeysDetector.shouldCheckNow()) {
+            routeHotKeys();
+        }
+        applyDrainedActions();
+
         if (shouldCommitNow()) {
             timeoutRecords();
             commitAsync();
+            recordLags();
         }
     }
 
-    private void updateInputRecordMetrics(WorkerRecord<K, V> workerRecord) {
-        metrics.recordSensor(WorkersMetrics.CONSUMED_OFFSET_METRIC, workerRecord.topicPartition(), workerRecord.offset());
-        metrics.recordSensor(WorkersMetrics.INPUT_RECORDS_SIZE_SENSOR, recordWeigher.weigh(workerRecord));
+    private void recordPaused(TopicPartition partition) {
+        if (flowController.paused(partition)) {
+            partitionMetrics.get(partition).recordPaused();
+        }
     }
 
-    private void addConsumedRanges(ConsumerRecords<K, V> records) {
-        Instant consumedAt = Instant.now();
+    private void recordResumed(TopicPartition partition) {
+        pauseTimeSensor.record(flowController.resumed(partition));
+        partitionMetrics.get(partition).recordResumed();
+    }
 
-        @SuppressWarnings("UnstableApiUsage")
-        Map<TopicPartition, List<Long>> offsetsMap = Streams.stream(records)
-                .collect(Collectors.groupingBy(this::topicPartition, Collectors.mapping(
-                        ConsumerRecord::offset,
-                        Collectors.toList()
-                )));
+    /**
+     * Returns the average latency of fetch requests as reported by the consumer (NaN if it is not known yet).
+     */
+    private double fetchLatencyMs() {
+        if (fetchLatencyMetric == null) {
+            for (Map.Entry<MetricName, ? extends Metric> entry : consumer.metrics().entrySet()) {
+                MetricName name = entry.getKey();
+                if (FETCH_LATENCY_AVG_METRIC.equals(name.name()) && FETCH_MANAGER_METRIC_GROUP.equals(name.group())) {
+                    fetchLatencyMetric = entry.getValue();
+                    break;
+                }
+            }
+            if (fetchLatencyMetric == null) {
+                return Double.NaN;
+            }
+        }
+        Object latency = fetchLatencyMetric.metricValue();
+        return latency instanceof Double ? (Double) latency : Double.NaN;
+    }
 
-        offsetsMap.forEach((partition, offsets) -> {
-            RangeUtils.rangesFromLongs(offsets).forEach(
-                    range -> offsetsState.addConsumed(partition, range, consumedAt)
-            );
-        });
+    private void recordLags() {
+        cachedLags().forEach((partition, lag) -> partitionMetrics.get(partition).recordLag(lag));
     }
 
-    private TopicPartition topicPartition(ConsumerRecord<K, V> record) {
-        return new TopicPartition(record.topic(), record.partition());
+    /**
+     * Returns lags of assigned partitions as cached by the consumer (records-lag metrics), so no requests to brokers
+     * are sent. Partitions whose lag is not known yet are skipped.
+     */
+    private Map<TopicPartition, Long> cachedLags() {
+        // consumer replaces dots in topic names of its metrics tags
+        Map<TopicPartition, TopicPartition> partitionsByTags = new HashMap<>();
+        partitionMetrics.keySet().forEach(partition -> partitionsByTags.put(
+                new TopicPartition(partition.topic().replace('.', '_'), partition.partition()), partition));
+        Map<TopicPartition, Long> lags = new HashMap<>();
+        for (Map.Entry<MetricName, ? extends Metric> entry : consumer.metrics().entrySet()) {
+            MetricName name = entry.getKey();
+            if (!RECORDS_LAG_METRIC.equals(name.name()) || !FETCH_MANAGER_METRIC_GROUP.equals(name.group())
+                    || !name.tags().containsKey("topic") || !name.tags().containsKey("partition")) {
+                continue;
+            }
+            Object lag = entry.getValue().metricValue();
+            TopicPartition partition = partitionsByTags.get(new TopicPartition(name.tags().get("topic"),
+                    Integer.parseInt(name.tags().get("partition"))));
+            if (partition != null && lag instanceof Double && !((Double) lag).isNaN()) {
+                lags.put(partition, ((Double) lag).longValue());
+            }
+        }
+        return lags;
+    }
+
+    private void resizeSubpartitions() {
+        Map<TopicPartition, Long> lags = cachedLags();
+        lags.keySet().removeAll(drainingPartitions.partitions());
+        if (lags.isEmpty()) {
+            return;
+        }
+        Map<TopicPartition, Integer> partitionsToResize = elasticSubpartitionsController.partitionsToResize(lags);
+        partitionsToResize.forEach((partition, count) -> drain(partition, () -> {
+            workers.resize(partition, count);
+            partitionMetrics.get(partition).subpartitionsCount().record(count);
+        }));
+    }
+
+    private void routeHotKeys() {
+        Map<TopicPartition, int[]> hotKeysToRoute = hotKeysDetector.hotKeysToRoute(drainingPartitions.partitions());
+        hotKeysToRoute.forEach((partition, hotKeys) -> drain(partition,
+                () -> subpartitionSupplier.routeHotKeys(partition, hotKeys)));
+    }
+
+    private void drain(TopicPartition partition, DrainingPartitions.DrainedAction action) {
+        // paused until all consumed records are processed to keep records with the same key ordered
+        consumer.pause(List.of(partition));
+        logger.info("paused partition to drain: {}", partition);
+        recordPaused(partition);
+        drainingPartitions.add(partition, action);
+    }
+
+    private void applyDrainedActions() throws InterruptedException {
+        for (Map.Entry<TopicPartition, DrainingPartitions.DrainedAction> entry : drainingPartitions.pollDrained()
+                .entrySet()) {
+            TopicPartition partition = entry.getKey();
+            entry.getValue().run();
+            // queues of the partition are empty now (it is paused again if total size limit is exceeded)
+            consumer.resume(List.of(partition));
+            logger.info("resumed drained partition: {}", partition);
+            recordResumed(partition);
+        }
+    }
+
+    private void addConsumedRanges(TopicPartition partition, List<ConsumerRecord<K, V>> records, long consumedAtMs) {
+        // records of a partition are ordered by offset, so consecutive ones are merged into ranges
+        long lowerOffset = -1L;
+        long upperOffset = -1L;
+        for (ConsumerRecord<K, V> record : records) {
+            long offset = record.offset();
+            if (lowerOffset >= 0 && offset == upperOffset + 1) {
+                upperOffset = offset;
+                continue;
+            }
+            if (lowerOffset >= 0) {
+                offsetsState.addConsumed(partition, ClosedRange.range(lowerOffset, upperOffset), consumedAtMs);
+            }
+            lowerOffset = offset;
+            upperOffset = offset;
+        }
+        if (lowerOffset >= 0) {
+            offsetsState.addConsumed(partition, ClosedRange.range(lowerOffset, upperOffset), consumedAtMs);
+        }
+    }
+
+    private boolean wasProcessedBeforeAssignment(Deque<ClosedRange> ranges, long offset) {
+        while (!ranges.isEmpty() && ranges.getFirst().upperEndpoint() < offset) {
+            ranges.removeFirst();
+        }
+        return !ranges.isEmpty() && ranges.getFirst().lowerEndpoint() <= offset;
     }
 
     @Override
@@ -174,8 +421,32 @@ public class ConsumerThread<K, V> extends AbstractWorkersThread implements Parti
     @Override
     public void register(Collection<TopicPartition> topicPartitions) {
         for (TopicPartition partition : topicPartitions) {
-            metrics.addConsumerThreadPartitionMetrics(partition);
+            PartitionMetrics metricsOfPartition = metrics.addConsumerThreadPartitionMetrics(partition);
+            metricsOfPartition.subpartitionsCount().record(subpartitionSupplier.registeredSubpartitions(partition).count());
+            partitionMetrics.put(partition, metricsOfPartition);
+        }
+        if (hotKeysDetector != null) {
+            hotKeysDetector.register(topicPartitions);
+        }
+        readProcessedBeforeAssignment(topicPartitions);
+    }
+
+    private void readProcessedBeforeAssignment(Collection<TopicPartition> topicPartitions) {
+        if (config.getConsumerCommitMetadataMaxBytes() == 0 || topicPartitions.isEmpty()) {
+            return;
         }
+        Map<TopicPartition, OffsetAndMetadata> committed = consumer.committed(new HashSet<>(topicPartitions));
+        committed.forEach((partition, offsetAndMetadata) -> {
+            if (offsetAndMetadata != null) {
+                List<ClosedRange> ranges = ProcessedOffsetsMetadata.decode(offsetAndMetadata.offset(),
+                        offsetAndMetadata.metadata());
+                if (!ranges.isEmpty()) {
+                    logger.info("partition: {} has {} ranges processed above committed offset: {}",
+                            partition, ranges.size(), offsetAndMetadata.offset());
+                    processedBeforeAssignment.put(partition, new ArrayDeque<>(ranges));
+                }
+            }
+        });
     }
 
     @Override
@@ -185,7 +456,21 @@ public class ConsumerThread<K, V> extends AbstractWorkersThread implements Parti
 
         for (TopicPartition partition : topicPartitions) {
             metrics.removeConsumerThreadPartitionMetrics(partition);
+            partitionMetrics.remove(partition);
+            processedBeforeAssignment.remove(partition);
+        }
+        flowController.unregister(topicPartitions);
+        if (hotKeysDetector != null) {
+            hotKeysDetector.unregister(topicPartitions);
         }
+        drainingPartitions.unregister(topicPartitions);
+    }
+
+    /**
+     * Returns metrics of the given partition or null if it is not assigned anymore.
+     */
+    PartitionMetrics partitionMetrics(TopicPartition partition) {
+        return partitionMetrics.get(partition);
     }
 
     private void commitSync() {
@@ -203,8 +488,8 @@ public class ConsumerThread<K, V> extends AbstractWorkersThread implements Parti
     }
 
     private void timeoutRecords() {
-        Instant minConsumedAt = Instant.now().minus(consumerProcessingTimeout);
-        offsetsState.timeoutRecordsConsumedBefore(minConsumedAt);
+        long minConsumedAtMs = clock.millis() - consumerProcessingTimeout.toMillis();
+        offsetsState.timeoutRecordsConsumedBefore(minConsumedAtMs);
     }
 
     private void commitAsync() {
@@ -216,7 +501,7 @@ public class ConsumerThread<K, V> extends AbstractWorkersThread implements Parti
     }
 
     private boolean shouldCommitNow() {
-        long currentTime = System.currentTimeMillis();
+        long currentTime = clock.millis();
         if (currentTime - commitTime > consumerCommitIntervalMs) {
             commitTime = currentTime;
             return true;
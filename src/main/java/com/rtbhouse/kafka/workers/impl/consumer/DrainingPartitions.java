@@ -0,0 +1,72 @@
+package com.rtbhouse.kafka.workers.impl.consumer;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.kafka.common.TopicPartition;
+
+import com.rtbhouse.kafka.workers.impl.offsets.OffsetsState;
+
+/**
+ * Partitions which are paused until all their consumed offsets are processed, so their subpartitioning could be
+ * changed (by given actions) without processing records with the same key concurrently. Used only by the consumer
+ * thread.
+ */
+class DrainingPartitions {
+
+    interface DrainedAction {
+
+        void run() throws InterruptedException;
+    }
+
+    private final OffsetsState offsetsState;
+
+    private final Map<TopicPartition, DrainedAction> actions = new LinkedHashMap<>();
+
+    DrainingPartitions(OffsetsState offsetsState) {
+        this.offsetsState = offsetsState;
+    }
+
+    void add(TopicPartition partition, DrainedAction action) {
+        checkState(!actions.containsKey(partition), "partition [%s] is being drained already", partition);
+        actions.put(partition, action);
+    }
+
+    boolean contains(TopicPartition partition) {
+        return actions.containsKey(partition);
+    }
+
+    Set<TopicPartition> partitions() {
+        return Collections.unmodifiableSet(actions.keySet());
+    }
+
+    /**
+     * Returns (and forgets) actions of partitions which have all consumed offsets processed.
+     */
+    Map<TopicPartition, DrainedAction> pollDrained() {
+        if (actions.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<TopicPartition, DrainedAction> drained = new LinkedHashMap<>();
+        Iterator<Map.Entry<TopicPartition, DrainedAction>> iterator = actions.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<TopicPartition, DrainedAction> entry = iterator.next();
+            if (offsetsState.getNotProcessedCount(entry.getKey()) == 0L) {
+                drained.put(entry.getKey(), entry.getValue());
+                iterator.remove();
+            }
+        }
+        return drained;
+    }
+
+    void unregister(Collection<TopicPartition> partitions) {
+        partitions.forEach(actions::remove);
+    }
+
+}
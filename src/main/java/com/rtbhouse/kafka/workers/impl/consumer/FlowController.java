@@ -0,0 +1,99 @@
+package com.rtbhouse.kafka.workers.impl.consumer;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.kafka.common.TopicPartition;
+
+import com.google.common.collect.Sets;
+import com.rtbhouse.kafka.workers.api.WorkersConfig;
+import com.rtbhouse.kafka.workers.impl.clock.WorkersClock;
+import com.rtbhouse.kafka.workers.impl.queues.QueuesManager;
+
+/**
+ * Decides which partitions paused by queue limits are resumed and tracks how long partitions are paused. Used only by
+ * the consumer thread.
+ * <p>
+ * Every resume discards records prefetched for a partition and costs new fetch round trips, so a partition stays
+ * paused for at least consumer.min.pause.ms (hysteresis) instead of flipping whenever its queues hover around their
+ * limits. With predictive resume a partition is resumed before its queues drain to queue.resume.ratio, as soon as they
+ * are expected to be empty when records of the next fetch arrive (judging by their drain rates and the average fetch
+ * latency) and have room for a whole fetch of max.partition.fetch.bytes.
+ */
+class FlowController {
+
+    private final QueuesManager<?, ?> queuesManager;
+    private final WorkersClock clock;
+    private final long minPauseMs;
+    private final boolean predictiveResume;
+    private final long maxPartitionFetchBytes;
+
+    // pause times of paused partitions
+    private final Map<TopicPartition, Long> pausedAtMs = new HashMap<>();
+
+    FlowController(WorkersConfig config, QueuesManager<?, ?> queuesManager, WorkersClock clock) {
+        this(queuesManager, clock, config.getConsumerMinPauseMs(), config.getConsumerPredictiveResume(),
+                config.getConsumerMaxPartitionFetchBytes());
+    }
+
+    FlowController(QueuesManager<?, ?> queuesManager, WorkersClock clock, long minPauseMs, boolean predictiveResume,
+            long maxPartitionFetchBytes) {
+        this.queuesManager = queuesManager;
+        this.clock = clock;
+        this.minPauseMs = minPauseMs;
+        this.predictiveResume = predictiveResume;
+        this.maxPartitionFetchBytes = maxPartitionFetchBytes;
+    }
+
+    /**
+     * Returns true if given partition was not paused yet.
+     */
+    boolean paused(TopicPartition partition) {
+        return pausedAtMs.putIfAbsent(partition, clock.millis()) == null;
+    }
+
+    /**
+     * Returns time in milliseconds given partition was paused for (0 if it was not paused).
+     */
+    long resumed(TopicPartition partition) {
+        Long pausedAt = pausedAtMs.remove(partition);
+        return pausedAt != null ? Math.max(0L, clock.millis() - pausedAt) : 0L;
+    }
+
+    /**
+     * Returns given paused partitions which should be resumed.
+     *
+     * @param fetchLatencyMs
+     *            the average latency of fetch requests (NaN if it is not known yet, which disables predictive resume)
+     */
+    Set<TopicPartition> partitionsToResume(Set<TopicPartition> pausedPartitions, double fetchLatencyMs) {
+        Set<TopicPartition> candidates = pausedPartitions;
+        if (minPauseMs > 0L) {
+            long now = clock.millis();
+            candidates = Sets.filter(pausedPartitions, partition -> {
+                Long pausedAt = pausedAtMs.get(partition);
+                return pausedAt == null || now - pausedAt >= minPauseMs;
+            });
+        }
+        if (candidates.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<TopicPartition> partitionsToResume = queuesManager.getPartitionsToResume(candidates);
+        if (!predictiveResume || Double.isNaN(fetchLatencyMs) || partitionsToResume.size() == candidates.size()) {
+            return partitionsToResume;
+        }
+        Set<TopicPartition> partitionsToResumeEarly = queuesManager.getPartitionsToResumeEarly(
+                Sets.difference(candidates, partitionsToResume), (long) fetchLatencyMs, maxPartitionFetchBytes);
+        return partitionsToResumeEarly.isEmpty()
+                ? partitionsToResume
+                : Sets.union(partitionsToResume, partitionsToResumeEarly);
+    }
+
+    void unregister(Collection<TopicPartition> partitions) {
+        partitions.forEach(pausedAtMs::remove);
+    }
+
+}
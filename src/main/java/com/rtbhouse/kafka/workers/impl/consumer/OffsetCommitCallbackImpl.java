@@ -11,8 +11,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.rtbhouse.kafka.workers.api.WorkersConfig;
+import com.rtbhouse.kafka.workers.impl.clock.WorkersClock;
 import com.rtbhouse.kafka.workers.impl.errors.FailedCommitException;
-import com.rtbhouse.kafka.workers.impl.metrics.WorkersMetrics;
+import com.rtbhouse.kafka.workers.impl.metrics.PartitionMetrics;
 import com.rtbhouse.kafka.workers.impl.offsets.OffsetsState;
 
 public class OffsetCommitCallbackImpl implements OffsetCommitCallback {
@@ -23,7 +24,7 @@ public class OffsetCommitCallbackImpl implements OffsetCommitCallback {
 
     private final ConsumerThread<?, ?> consumerThread;
     private final OffsetsState offsetsState;
-    private final WorkersMetrics metrics;
+    private final WorkersClock clock;
 
     private final AtomicInteger failuresInRow = new AtomicInteger();
 
@@ -31,13 +32,13 @@ public class OffsetCommitCallbackImpl implements OffsetCommitCallback {
             WorkersConfig config,
             ConsumerThread<?, ?> consumerThread,
             OffsetsState offsetsState,
-            WorkersMetrics metrics) {
+            WorkersClock clock) {
 
         this.maxFailuresInRow = config.getInt(WorkersConfig.CONSUMER_MAX_RETRIABLE_FAILURES);
 
         this.consumerThread = consumerThread;
         this.offsetsState = offsetsState;
-        this.metrics = metrics;
+        this.clock = clock;
     }
 
     @Override
@@ -60,10 +61,14 @@ public class OffsetCommitCallbackImpl implements OffsetCommitCallback {
         } else {
             logger.debug("commit succeeded, offsets: {}", offsets);
             failuresInRow.set(0);
+            long committedAtMs = clock.millis();
             for (Map.Entry<TopicPartition, OffsetAndMetadata> entry : offsets.entrySet()) {
-                TopicPartition partition = entry.getKey();
-                long offset = entry.getValue().offset();
-                metrics.recordSensor(WorkersMetrics.COMMITTED_OFFSET_METRIC, partition, offset);
+                // callbacks of async commits could be completed after the partition was revoked
+                PartitionMetrics partitionMetrics = consumerThread.partitionMetrics(entry.getKey());
+                if (partitionMetrics != null) {
+                    partitionMetrics.committedOffset().record(entry.getValue().offset());
+                    partitionMetrics.recordCommitted(entry.getValue().offset(), committedAtMs);
+                }
             }
             offsetsState.removeCommitted(offsets);
         }
@@ -0,0 +1,33 @@
+package com.rtbhouse.kafka.workers.impl.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.kafka.common.metrics.Measurable;
+import org.apache.kafka.common.metrics.MetricConfig;
+
+/**
+ * Metric reporting a counter which could be incremented and decremented by different threads (e.g. records
+ * dispatched by a worker thread and acknowledged asynchronously).
+ */
+public class CounterMetric implements Measurable {
+
+    private final AtomicLong value = new AtomicLong();
+
+    public void increment() {
+        value.incrementAndGet();
+    }
+
+    public void decrement() {
+        value.decrementAndGet();
+    }
+
+    public long value() {
+        return value.get();
+    }
+
+    @Override
+    public double measure(MetricConfig config, long now) {
+        return value.get();
+    }
+
+}
@@ -0,0 +1,107 @@
+package com.rtbhouse.kafka.workers.impl.metrics;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies in microseconds with log-linear buckets (as HdrHistogram): values below 16 are
+ * counted exactly and every following power of two is split into 16 buckets, so quantiles are reported with at most
+ * 1/16 relative error. Values above 2^40 us are counted in the last bucket.
+ * <p>
+ * Every recording thread gets its own counts which are written only by that thread (without CAS) and merged when the
+ * histogram is read. Counts are cumulative since the histogram was created.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40;
+
+    static final int BUCKETS = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final List<AtomicLongArray> recorders = new CopyOnWriteArrayList<>();
+
+    private final ThreadLocal<AtomicLongArray> recorder = ThreadLocal.withInitial(() -> {
+        AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        recorders.add(counts);
+        return counts;
+    });
+
+    public void record(long micros) {
+        AtomicLongArray counts = recorder.get();
+        int index = bucketIndex(micros);
+        // counts are written only by the current thread, so ordered write is enough
+        counts.lazySet(index, counts.get(index) + 1);
+    }
+
+    public void recordNanos(long nanos) {
+        record(nanos / 1_000L);
+    }
+
+    public void recordMillis(long millis) {
+        record(millis * 1_000L);
+    }
+
+    /**
+     * Returns counts of all buckets merged from all recording threads.
+     */
+    public long[] counts() {
+        long[] counts = new long[BUCKETS];
+        for (AtomicLongArray recorderCounts : recorders) {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] += recorderCounts.get(i);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Returns the upper bound of the bucket containing given quantile of recorded values (0 if nothing was recorded).
+     */
+    public static long quantile(long[] counts, double quantile) {
+        long total = count(counts);
+        if (total == 0L) {
+            return 0L;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(quantile * total));
+        long cumulativeCount = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            cumulativeCount += counts[i];
+            if (cumulativeCount >= rank) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    public static long count(long[] counts) {
+        long total = 0L;
+        for (long count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) Math.max(0L, value);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int shift = exponent - SUB_BUCKET_BITS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        int subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+
+}
@@ -0,0 +1,28 @@
+package com.rtbhouse.kafka.workers.impl.metrics;
+
+import java.util.Map;
+
+/**
+ * Family and labels of a metric group named after a topic, partition, subpartition etc., e.g. the
+ * {@code consumer-thread.committed-offset.my-topic-0} group is of {@code consumer-thread.committed-offset} family
+ * with {@code topic="my-topic"} and {@code partition="0"} labels. Names are not parsed, as topics could contain dots.
+ */
+class MetricGroupLabels {
+
+    private final String family;
+    private final Map<String, String> labels;
+
+    MetricGroupLabels(String family, Map<String, String> labels) {
+        this.family = family;
+        this.labels = labels;
+    }
+
+    String family() {
+        return family;
+    }
+
+    Map<String, String> labels() {
+        return labels;
+    }
+
+}
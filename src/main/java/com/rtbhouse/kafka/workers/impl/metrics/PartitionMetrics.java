@@ -0,0 +1,119 @@
+package com.rtbhouse.kafka.workers.impl.metrics;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Consumer thread metrics of a single partition registered by
+ * {@link WorkersMetrics#addConsumerThreadPartitionMetrics}. Used only by the consumer thread (commit callbacks are
+ * completed by it too).
+ */
+public class PartitionMetrics {
+
+    private static final int MAX_CONSUMED_BATCHES = 1024;
+
+    private final ValueMetric paused = new ValueMetric();
+    private final ValueMetric pauses = new ValueMetric();
+    private final ValueMetric consumedOffset = new ValueMetric();
+    private final ValueMetric committedOffset = new ValueMetric();
+    private final ValueMetric subpartitionsCount = new ValueMetric();
+    private final ValueMetric consumerLag = new ValueMetric();
+    private final ValueMetric endToEndLag = new ValueMetric();
+
+    // next offsets to consume and to commit, -1 until the first records are consumed
+    private long position = -1L;
+    private long commitWatermark = -1L;
+
+    // latency histograms of the topic, null if debug metrics are not recorded
+    private final LatencyHistogram kafkaToConsumedLatency;
+    private final LatencyHistogram consumedToCommittedLatency;
+
+    // last offsets and consumption times of polled batches which are not committed yet
+    private final Deque<long[]> consumedBatches = new ArrayDeque<>();
+
+    PartitionMetrics(LatencyHistogram kafkaToConsumedLatency, LatencyHistogram consumedToCommittedLatency) {
+        this.kafkaToConsumedLatency = kafkaToConsumedLatency;
+        this.consumedToCommittedLatency = consumedToCommittedLatency;
+    }
+
+    public ValueMetric paused() {
+        return paused;
+    }
+
+    /**
+     * Returns the number of times the partition was paused (so flips between paused and resumed state could be
+     * tracked).
+     */
+    public ValueMetric pauses() {
+        return pauses;
+    }
+
+    public void recordPaused() {
+        paused.record(1L);
+        pauses.record(pauses.value() + 1);
+    }
+
+    public void recordResumed() {
+        paused.record(0L);
+    }
+
+    public ValueMetric consumedOffset() {
+        return consumedOffset;
+    }
+
+    public ValueMetric committedOffset() {
+        return committedOffset;
+    }
+
+    public ValueMetric subpartitionsCount() {
+        return subpartitionsCount;
+    }
+
+    public ValueMetric consumerLag() {
+        return consumerLag;
+    }
+
+    public ValueMetric endToEndLag() {
+        return endToEndLag;
+    }
+
+    /**
+     * Returns histogram of time between appending records to Kafka (their timestamps) and consuming them or null if
+     * debug metrics are not recorded.
+     */
+    public LatencyHistogram kafkaToConsumedLatency() {
+        return kafkaToConsumedLatency;
+    }
+
+    public void recordConsumed(long firstOffset, long lastOffset, long consumedAtMs) {
+        if (commitWatermark < 0L) {
+            // consumption of an assigned partition starts from its committed offset
+            commitWatermark = firstOffset;
+        }
+        position = lastOffset + 1;
+        // if commits stall only the oldest batches are tracked, as they have the highest latencies
+        if (consumedToCommittedLatency != null && consumedBatches.size() < MAX_CONSUMED_BATCHES) {
+            consumedBatches.addLast(new long[] { lastOffset, consumedAtMs });
+        }
+    }
+
+    public void recordCommitted(long committedOffset, long committedAtMs) {
+        commitWatermark = committedOffset;
+        while (!consumedBatches.isEmpty() && consumedBatches.peekFirst()[0] < committedOffset) {
+            consumedToCommittedLatency.recordMillis(committedAtMs - consumedBatches.pollFirst()[1]);
+        }
+    }
+
+    /**
+     * Records lag of the consumer position behind the end offset of the partition and the end-to-end lag: the number
+     * of records which are not committed yet (from the commit watermark to the end offset).
+     */
+    public void recordLag(long lag) {
+        if (position < 0L) {
+            return;
+        }
+        consumerLag.record(lag);
+        endToEndLag.record(position + lag - commitWatermark);
+    }
+
+}
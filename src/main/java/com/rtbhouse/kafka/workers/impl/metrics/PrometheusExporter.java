@@ -0,0 +1,229 @@
+package com.rtbhouse.kafka.workers.impl.metrics;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rtbhouse.kafka.workers.api.WorkersConfig;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Exports {@link WorkersMetrics} in OpenMetrics text format at /metrics path of the JDK built-in HTTP server. Every
+ * metric is exported as a gauge named after its group and name (e.g. {@code kafka_workers_worker_threads_count}),
+ * metric tags become labels. Groups named after a topic, partition or subpartition (or a worker thread) are exported
+ * as one family with {@code topic}, {@code partition} and {@code subpartition} (or {@code thread}) labels, e.g.
+ * {@code kafka_workers_consumer_thread_committed_offset_value{topic="my-topic",partition="0"}}.
+ * <p>
+ * Series are grouped by family before they are written, as every family should be described once. Metric names
+ * (given as {@code <group>.<name>}) could be filtered by include and exclude regular expressions, e.g. to drop
+ * high-cardinality subpartition metrics.
+ */
+public class PrometheusExporter {
+
+    private static final Logger logger = LoggerFactory.getLogger(PrometheusExporter.class);
+
+    static final String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+
+    private static final String NAME_PREFIX = "kafka_workers_";
+
+    private final WorkersMetrics metrics;
+    private final int port;
+    private final List<Pattern> includes;
+    private final List<Pattern> excludes;
+
+    private HttpServer server;
+
+    public PrometheusExporter(WorkersConfig config, WorkersMetrics metrics) {
+        this(metrics, config.getMetricsPrometheusPort(), config.getMetricsPrometheusInclude(),
+                config.getMetricsPrometheusExclude());
+    }
+
+    PrometheusExporter(WorkersMetrics metrics, int port, List<Pattern> includes, List<Pattern> excludes) {
+        this.metrics = metrics;
+        this.port = port;
+        this.includes = includes;
+        this.excludes = excludes;
+    }
+
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/metrics", this::handle);
+        server.start();
+        logger.info("metrics exported at port: {}", port());
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            // chunked response, as its length is not known in advance
+            exchange.sendResponseHeaders(200, 0);
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), UTF_8))) {
+                write(writer);
+            }
+        } catch (IOException e) {
+            logger.warn("could not export metrics", e);
+        }
+    }
+
+    void write(Writer writer) throws IOException {
+        // sorted by name, so families are written in the same order by every scrape
+        Map<String, List<Series>> families = new TreeMap<>();
+        StringBuilder name = new StringBuilder();
+        for (Map.Entry<MetricName, ? extends Metric> entry : metrics.metrics().entrySet()) {
+            MetricName metricName = entry.getKey();
+            Object value = entry.getValue().metricValue();
+            if (!(value instanceof Number) || !shouldExport(fullName(metricName))) {
+                continue;
+            }
+            MetricGroupLabels groupLabels = metrics.groupLabels(metricName.group());
+            Map<String, String> labels = new LinkedHashMap<>();
+            name.setLength(0);
+            if (groupLabels != null) {
+                appendName(name, groupLabels.family(), metricName.name());
+                groupLabels.labels().forEach((label, labelValue) -> labels.put(sanitized(label), labelValue));
+            } else {
+                appendName(name, metricName.group(), metricName.name());
+            }
+            metricName.tags().forEach((tag, tagValue) -> labels.put(sanitized(tag), tagValue));
+            families.computeIfAbsent(name.toString(), k -> new ArrayList<>())
+                    .add(new Series(labels, ((Number) value).doubleValue()));
+        }
+
+        for (Map.Entry<String, List<Series>> family : families.entrySet()) {
+            writer.append("# TYPE ").append(family.getKey()).append(" gauge\n");
+            // names differing only in sanitized characters could collide, but a series could be written only once
+            Set<Map<String, String>> writtenLabels = new HashSet<>();
+            for (Series series : family.getValue()) {
+                if (!writtenLabels.add(series.labels)) {
+                    logger.debug("skipping duplicated series of family: {}, labels: {}", family.getKey(),
+                            series.labels);
+                    continue;
+                }
+                writer.append(family.getKey());
+                writeLabels(writer, series.labels);
+                writer.append(' ');
+                writeValue(writer, series.value);
+                writer.append('\n');
+            }
+        }
+        writer.append("# EOF\n");
+    }
+
+    private static String fullName(MetricName metricName) {
+        return metricName.group().isEmpty() ? metricName.name() : metricName.group() + "." + metricName.name();
+    }
+
+    boolean shouldExport(String fullName) {
+        if (!includes.isEmpty() && includes.stream().noneMatch(pattern -> pattern.matcher(fullName).matches())) {
+            return false;
+        }
+        return excludes.stream().noneMatch(pattern -> pattern.matcher(fullName).matches());
+    }
+
+    private static void appendName(StringBuilder builder, String group, String name) {
+        builder.append(NAME_PREFIX);
+        if (!group.isEmpty()) {
+            builder.append(sanitized(group)).append('_');
+        }
+        builder.append(sanitized(name));
+    }
+
+    private static String sanitized(String name) {
+        StringBuilder builder = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            boolean valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+            builder.append(valid ? c : '_');
+        }
+        return builder.toString();
+    }
+
+
+    private static void writeLabels(Writer writer, Map<String, String> tags) throws IOException {
+        if (tags.isEmpty()) {
+            return;
+        }
+        writer.append('{');
+        boolean first = true;
+        for (Map.Entry<String, String> tag : tags.entrySet()) {
+            if (!first) {
+                writer.append(',');
+            }
+            first = false;
+            writer.append(tag.getKey());
+            writer.append("=\"");
+            writeEscaped(writer, tag.getValue());
+            writer.append('"');
+        }
+        writer.append('}');
+    }
+
+    private static void writeEscaped(Writer writer, String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                writer.append('\\').append(c);
+            } else if (c == '\n') {
+                writer.append("\\n");
+            } else {
+                writer.append(c);
+            }
+        }
+    }
+
+    private static void writeValue(Writer writer, double value) throws IOException {
+        if (Double.isNaN(value)) {
+            writer.append("NaN");
+        } else if (Double.isInfinite(value)) {
+            writer.append(value > 0 ? "+Inf" : "-Inf");
+        } else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            writer.append(Long.toString((long) value));
+        } else {
+            writer.append(Double.toString(value));
+        }
+    }
+
+    private static class Series {
+
+        private final Map<String, String> labels;
+        private final double value;
+
+        Series(Map<String, String> labels, double value) {
+            this.labels = labels;
+            this.value = value;
+        }
+    }
+
+}
@@ -0,0 +1,56 @@
+package com.rtbhouse.kafka.workers.impl.metrics;
+
+/**
+ * Latency histograms of the worker side stages of records of a single subpartition registered by
+ * {@link WorkersMetrics#addRecordLatencies}. Values are recorded to histograms of the topic and optionally (with trace
+ * metrics) to histograms of the subpartition itself.
+ */
+public class RecordLatencies {
+
+    private final LatencyHistogram queueWait;
+    private final LatencyHistogram process;
+    private final LatencyHistogram processToSuccess;
+
+    // null if trace metrics are not recorded
+    private final RecordLatencies subpartitionLatencies;
+
+    RecordLatencies(LatencyHistogram queueWait, LatencyHistogram process, LatencyHistogram processToSuccess,
+            RecordLatencies subpartitionLatencies) {
+        this.queueWait = queueWait;
+        this.process = process;
+        this.processToSuccess = processToSuccess;
+        this.subpartitionLatencies = subpartitionLatencies;
+    }
+
+    /**
+     * Records time between pushing a record to its queue and polling it by a worker thread.
+     */
+    public void recordQueueWait(long nanos) {
+        queueWait.recordNanos(nanos);
+        if (subpartitionLatencies != null) {
+            subpartitionLatencies.recordQueueWait(nanos);
+        }
+    }
+
+    /**
+     * Records duration of {@link com.rtbhouse.kafka.workers.api.task.WorkerTask#process} call.
+     */
+    public void recordProcess(long nanos) {
+        process.recordNanos(nanos);
+        if (subpartitionLatencies != null) {
+            subpartitionLatencies.recordProcess(nanos);
+        }
+    }
+
+    /**
+     * Records time between starting to process a record and marking it as successfully processed (which differs from
+     * the process duration for asynchronous tasks).
+     */
+    public void recordProcessToSuccess(long nanos) {
+        processToSuccess.recordNanos(nanos);
+        if (subpartitionLatencies != null) {
+            subpartitionLatencies.recordProcessToSuccess(nanos);
+        }
+    }
+
+}
@@ -0,0 +1,41 @@
+package com.rtbhouse.kafka.workers.impl.metrics;
+
+/**
+ * Metrics of a single subpartition registered by {@link WorkersMetrics#addWorkerThreadSubpartitionMetrics} and held by
+ * its task, so recording them per record does not build any metric names.
+ */
+public class SubpartitionMetrics {
+
+    private final ValueMetric acceptingOffset = new ValueMetric();
+    private final ValueMetric acceptedOffset = new ValueMetric();
+    private final ValueMetric processingOffset = new ValueMetric();
+    private final ValueMetric processedOffset = new ValueMetric();
+
+    // CPU time of the task, added only by the worker thread which currently runs it
+    private volatile long cpuTimeNanos;
+
+    public ValueMetric acceptingOffset() {
+        return acceptingOffset;
+    }
+
+    public ValueMetric acceptedOffset() {
+        return acceptedOffset;
+    }
+
+    public ValueMetric processingOffset() {
+        return processingOffset;
+    }
+
+    public ValueMetric processedOffset() {
+        return processedOffset;
+    }
+
+    public void addCpuTime(long nanos) {
+        cpuTimeNanos += nanos;
+    }
+
+    public long cpuTimeNanos() {
+        return cpuTimeNanos;
+    }
+
+}
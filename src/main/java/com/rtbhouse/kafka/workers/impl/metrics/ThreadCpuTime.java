@@ -0,0 +1,35 @@
+package com.rtbhouse.kafka.workers.impl.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * CPU time of threads as given by {@link ThreadMXBean} if the JVM supports (and has enabled) its measurement.
+ */
+public final class ThreadCpuTime {
+
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+    private static final boolean SUPPORTED = THREAD_MX_BEAN.isThreadCpuTimeSupported()
+            && THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported()
+            && THREAD_MX_BEAN.isThreadCpuTimeEnabled();
+
+    private ThreadCpuTime() {
+    }
+
+    public static boolean isSupported() {
+        return SUPPORTED;
+    }
+
+    public static long currentThreadNanos() {
+        return THREAD_MX_BEAN.getCurrentThreadCpuTime();
+    }
+
+    /**
+     * Returns CPU time of the thread with given id or -1 if it is not alive.
+     */
+    public static long threadNanos(long threadId) {
+        return THREAD_MX_BEAN.getThreadCpuTime(threadId);
+    }
+
+}
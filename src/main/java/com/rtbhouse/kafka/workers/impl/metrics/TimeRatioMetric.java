@@ -0,0 +1,43 @@
+package com.rtbhouse.kafka.workers.impl.metrics;
+
+import java.util.function.LongSupplier;
+
+import org.apache.kafka.common.metrics.Measurable;
+import org.apache.kafka.common.metrics.MetricConfig;
+
+/**
+ * Metric reporting the fraction of wall-clock time spent in an activity (given as total nanoseconds) since the
+ * previous measurement, so recording it costs nothing besides accumulating the total. Measurements closer than a
+ * second (e.g. by several reporters) return the previous ratio.
+ */
+class TimeRatioMetric implements Measurable {
+
+    private static final long MIN_WINDOW_NANOS = 1_000_000_000L;
+
+    private final LongSupplier totalNanos;
+
+    private long lastTotalNanos;
+    private long lastMeasureNanos;
+    private double lastRatio;
+
+    TimeRatioMetric(LongSupplier totalNanos) {
+        this.totalNanos = totalNanos;
+        this.lastTotalNanos = totalNanos.getAsLong();
+        this.lastMeasureNanos = System.nanoTime();
+    }
+
+    @Override
+    public synchronized double measure(MetricConfig config, long now) {
+        long currentTotalNanos = totalNanos.getAsLong();
+        long currentNanos = System.nanoTime();
+        long elapsedNanos = currentNanos - lastMeasureNanos;
+        if (elapsedNanos < MIN_WINDOW_NANOS) {
+            return lastRatio;
+        }
+        lastRatio = (double) (currentTotalNanos - lastTotalNanos) / elapsedNanos;
+        lastTotalNanos = currentTotalNanos;
+        lastMeasureNanos = currentNanos;
+        return lastRatio;
+    }
+
+}
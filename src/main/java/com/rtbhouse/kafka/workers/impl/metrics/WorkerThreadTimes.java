@@ -0,0 +1,36 @@
+package com.rtbhouse.kafka.workers.impl.metrics;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Total nanoseconds spent by a worker thread in its activities. Times are added only by the worker thread itself
+ * (without CAS) and read by metrics reporters.
+ */
+public class WorkerThreadTimes {
+
+    public enum Activity {
+        ACCEPT,
+        PROCESS,
+        PUNCTUATE,
+        WAIT,
+        SLEEP;
+
+        String metricName() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final AtomicLongArray totalNanos = new AtomicLongArray(Activity.values().length);
+
+    public void add(Activity activity, long nanos) {
+        int index = activity.ordinal();
+        // written only by the worker thread, so ordered write is enough
+        totalNanos.lazySet(index, totalNanos.get(index) + nanos);
+    }
+
+    public long totalNanos(Activity activity) {
+        return totalNanos.get(activity.ordinal());
+    }
+
+}
@@ -6,16 +6,25 @@ import static com.rtbhouse.kafka.workers.impl.offsets.OffsetStatus.PROCESSED;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongSupplier;
 import java.util.stream.Stream;
 
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
 import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.metrics.JmxReporter;
+import org.apache.kafka.common.metrics.Measurable;
 import org.apache.kafka.common.metrics.MetricConfig;
 import org.apache.kafka.common.metrics.Metrics;
 import org.apache.kafka.common.metrics.MetricsReporter;
 import org.apache.kafka.common.metrics.Sensor;
 import org.apache.kafka.common.metrics.stats.Avg;
 import org.apache.kafka.common.metrics.stats.Count;
+import org.apache.kafka.common.metrics.stats.CumulativeCount;
 import org.apache.kafka.common.metrics.stats.Max;
 import org.apache.kafka.common.metrics.stats.Min;
 import org.apache.kafka.common.metrics.stats.Rate;
@@ -23,10 +32,16 @@ import org.apache.kafka.common.metrics.stats.Value;
 import org.apache.kafka.common.utils.Time;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.rtbhouse.kafka.workers.api.WorkersConfig;
+import com.rtbhouse.kafka.workers.api.metrics.MetricsRecordingLevel;
 import com.rtbhouse.kafka.workers.api.partitioner.WorkerSubpartition;
 import com.rtbhouse.kafka.workers.impl.offsets.DefaultOffsetsState;
+import com.rtbhouse.kafka.workers.impl.queues.HeapPressureMonitor;
+import com.rtbhouse.kafka.workers.impl.queues.QueueLimit;
 import com.rtbhouse.kafka.workers.impl.queues.QueuesManager;
+import com.rtbhouse.kafka.workers.impl.queues.RecordsQueue;
+import com.rtbhouse.kafka.workers.impl.queues.offheap.SlabPool;
 import com.rtbhouse.kafka.workers.impl.task.WorkerThread;
 
 public class WorkersMetrics {
@@ -34,25 +49,51 @@ public class WorkersMetrics {
     public static final String JMX_PREFIX = "kafka.workers";
 
     public static final String PAUSED_PARTITIONS_METRIC = "consumer-thread.paused-partitions";
+    public static final String PARTITION_PAUSES_METRIC = "consumer-thread.partition-pauses";
     public static final String CONSUMED_OFFSET_METRIC = "consumer-thread.consumed-offset";
     public static final String COMMITTED_OFFSET_METRIC = "consumer-thread.committed-offset";
+    public static final String SUBPARTITIONS_COUNT_METRIC = "consumer-thread.subpartitions-count";
+    public static final String CONSUMER_LAG_METRIC = "consumer-thread.consumer-lag";
+    public static final String END_TO_END_LAG_METRIC = "consumer-thread.end-to-end-lag";
+    public static final String HOT_KEYS_COUNT_METRIC = "consumer-thread.hot-keys.count";
+    public static final String HOT_KEYS_MAX_SHARE_METRIC = "consumer-thread.hot-keys.max-share";
+    public static final String HOT_KEYS_ROUTED_METRIC = "consumer-thread.hot-keys.routed";
 
     public static final String INPUT_RECORDS_SIZE_SENSOR = "consumer-thread.input-records.serialized-size";
     public static final String KAFKA_POLL_RECORDS_COUNT_SENSOR = "consumer-thread.poll.records.count";
     public static final String KAFKA_POLL_RECORDS_SIZE_SENSOR = "consumer-thread.poll.records.serialized-size";
+    public static final String PAUSE_TIME_SENSOR = "consumer-thread.pause-time.ms";
 
     public static final String ACCEPTING_OFFSET_METRIC = "worker-thread.accepting-offset";
     public static final String ACCEPTED_OFFSET_METRIC = "worker-thread.accepted-offset";
     public static final String PROCESSING_OFFSET_METRIC = "worker-thread.processing-offset";
     public static final String PROCESSED_OFFSET_METRIC = "worker-thread.processed-offset";
+    public static final String IN_FLIGHT_RECORDS_METRIC = "worker-thread.in-flight-records";
+    public static final String TASK_CPU_TIME_METRIC = "worker-thread.task-cpu-time.ms";
+
+    public static final String KAFKA_TO_CONSUMED_LATENCY = "latency.kafka-to-consumed";
+    public static final String QUEUE_WAIT_LATENCY = "latency.queue-wait";
+    public static final String PROCESS_LATENCY = "latency.process";
+    public static final String PROCESS_TO_SUCCESS_LATENCY = "latency.process-to-success";
+    public static final String CONSUMED_TO_COMMITTED_LATENCY = "latency.consumed-to-committed";
 
     public static final String QUEUES_TOTAL_SIZE_LIMIT_METRIC = "queues-manager.queues-total-size-limit.bytes";
     public static final String QUEUES_TOTAL_SIZE_METRIC = "queues-manager.queues-total-size.bytes";
+    public static final String QUEUES_OFFHEAP_SIZE_LIMIT_METRIC = "queues-manager.queues-offheap-size-limit.bytes";
+    public static final String QUEUES_OFFHEAP_SIZE_METRIC = "queues-manager.queues-offheap-size.bytes";
+    public static final String QUEUES_SPILL_SIZE_LIMIT_METRIC = "queues-manager.queues-spill-size-limit.bytes";
+    public static final String QUEUES_SPILL_SIZE_METRIC = "queues-manager.queues-spill-size.bytes";
+    public static final String QUEUES_SIZE_SCALE_METRIC = "queues-manager.queues-size-scale";
     public static final String QUEUE_SIZE_LIMIT_METRIC = "queues-manager.queue-size-limit.bytes";
+    public static final String QUEUE_SIZE_RECORDS_METRIC = "queues-manager.queue-size.records";
+    public static final String QUEUE_SIZE_BYTES_METRIC = "queues-manager.queue-size.bytes";
+    public static final String QUEUE_OLDEST_RECORD_AGE_METRIC = "queues-manager.queue-oldest-record-age.ms";
+    public static final String QUEUE_PAUSES_METRIC = "queues-manager.queue-pauses";
 
     public static final String WORKER_THREAD_METRIC_GROUP = "worker-threads";
     public static final String WORKER_THREAD_COUNT_METRIC_NAME = "count";
     public static final String WORKER_THREAD_TASK_COUNT_METRIC_NAME = "task-count";
+    public static final String WORKER_THREAD_CPU_METRIC_NAME = "cpu";
 
     public static final String OFFSETS_CONSUMED_COUNT = "offsets.consumed.count";
     public static final String OFFSETS_PROCESSED_COUNT = "offsets.processed.count";
@@ -66,20 +107,56 @@ public class WorkersMetrics {
             OFFSET_RANGES_PROCESSED_COUNT
     );
 
+    private static final Map<String, Double> LATENCY_QUANTILES = ImmutableMap.of(
+            "p50-us", 0.5,
+            "p90-us", 0.9,
+            "p99-us", 0.99,
+            "p999-us", 0.999,
+            "max-us", 1.0
+    );
+
     private final Metrics metrics;
 
+    private final MetricsRecordingLevel recordingLevel;
+
+    // labels of groups named after topics, partitions, subpartitions etc., so exported metrics could be aggregated
+    private final Map<String, MetricGroupLabels> groupLabels = new ConcurrentHashMap<>();
+
+    // latency histograms of topics are shared by all their partitions and subpartitions
+    private final Map<String, LatencyHistogram> topicLatencyHistograms = new ConcurrentHashMap<>();
+
+    // per-record metrics are recorded for one in samplingInterval records (on average)
+    private final long samplingInterval;
+
     public WorkersMetrics(WorkersConfig config) {
         List<MetricsReporter> reporters = config.getConfiguredInstances(WorkersConfig.METRIC_REPORTER_CLASSES, MetricsReporter.class);
         reporters.add(new JmxReporter(JMX_PREFIX));
-        this.metrics = new Metrics(new MetricConfig(), reporters, Time.SYSTEM);
+        this.recordingLevel = config.getMetricsRecordingLevel();
+        this.samplingInterval = Math.max(1L, Math.round(1.0 / config.getMetricsSamplingRatio()));
+        this.metrics = new Metrics(new MetricConfig().recordLevel(recordingLevel == MetricsRecordingLevel.INFO
+                ? Sensor.RecordingLevel.INFO
+                : Sensor.RecordingLevel.DEBUG), reporters, Time.SYSTEM);
+    }
+
+    public boolean shouldRecord(MetricsRecordingLevel level) {
+        return recordingLevel.shouldRecord(level);
+    }
+
+    /**
+     * Returns true if per-record metrics should be recorded for the current record. Records are drawn randomly, as
+     * sampling by offsets would skip whole subpartitions when records are subpartitioned by offsets too.
+     */
+    public boolean shouldSample() {
+        return samplingInterval == 1L || ThreadLocalRandom.current().nextLong(samplingInterval) == 0L;
     }
 
     public void addConsumerThreadMetrics() {
         Stream.of(
-                metrics.sensor(INPUT_RECORDS_SIZE_SENSOR),
+                shouldRecord(MetricsRecordingLevel.DEBUG) ? metrics.sensor(INPUT_RECORDS_SIZE_SENSOR) : null,
                 metrics.sensor(KAFKA_POLL_RECORDS_COUNT_SENSOR),
-                metrics.sensor(KAFKA_POLL_RECORDS_SIZE_SENSOR)
-        ).forEach(
+                metrics.sensor(KAFKA_POLL_RECORDS_SIZE_SENSOR),
+                metrics.sensor(PAUSE_TIME_SENSOR)
+        ).filter(Objects::nonNull).forEach(
                 sensor -> {
                     checkState(sensor.add(metrics.metricName("min", sensor.name()), new Min()));
                     checkState(sensor.add(metrics.metricName("max", sensor.name()), new Max()));
@@ -93,46 +170,210 @@ public class WorkersMetrics {
         Stream.of(
                 INPUT_RECORDS_SIZE_SENSOR,
                 KAFKA_POLL_RECORDS_COUNT_SENSOR,
-                KAFKA_POLL_RECORDS_SIZE_SENSOR
+                KAFKA_POLL_RECORDS_SIZE_SENSOR,
+                PAUSE_TIME_SENSOR
         ).forEach(metrics::removeSensor);
     }
 
-    public void addConsumerThreadPartitionMetrics(TopicPartition partition) {
-        addSensor(PAUSED_PARTITIONS_METRIC, partition);
-        addSensor(CONSUMED_OFFSET_METRIC, partition);
-        addSensor(COMMITTED_OFFSET_METRIC, partition);
+    /**
+     * Returns view of all registered metrics.
+     */
+    public Map<MetricName, ? extends Metric> metrics() {
+        return metrics.metrics();
+    }
+
+    /**
+     * Returns sensor with given name or null if it was not added (e.g. because of its recording level).
+     */
+    public Sensor sensor(String name) {
+        return metrics.getSensor(name);
+    }
+
+    public PartitionMetrics addConsumerThreadPartitionMetrics(TopicPartition partition) {
+        PartitionMetrics partitionMetrics = shouldRecord(MetricsRecordingLevel.DEBUG)
+                ? new PartitionMetrics(topicLatencyHistogram(KAFKA_TO_CONSUMED_LATENCY, partition.topic()),
+                        topicLatencyHistogram(CONSUMED_TO_COMMITTED_LATENCY, partition.topic()))
+                : new PartitionMetrics(null, null);
+        addValueMetric(nameWithPartition(PAUSED_PARTITIONS_METRIC, partition), partitionMetrics.paused());
+        addValueMetric(nameWithPartition(PARTITION_PAUSES_METRIC, partition), partitionMetrics.pauses());
+        if (shouldRecord(MetricsRecordingLevel.DEBUG)) {
+            addValueMetric(nameWithPartition(CONSUMED_OFFSET_METRIC, partition), partitionMetrics.consumedOffset());
+        }
+        addValueMetric(nameWithPartition(COMMITTED_OFFSET_METRIC, partition), partitionMetrics.committedOffset());
+        addValueMetric(nameWithPartition(SUBPARTITIONS_COUNT_METRIC, partition), partitionMetrics.subpartitionsCount());
+        addValueMetric(nameWithPartition(CONSUMER_LAG_METRIC, partition), partitionMetrics.consumerLag());
+        addValueMetric(nameWithPartition(END_TO_END_LAG_METRIC, partition), partitionMetrics.endToEndLag());
+        return partitionMetrics;
     }
 
     public void removeConsumerThreadPartitionMetrics(TopicPartition partition) {
-        removeSensor(PAUSED_PARTITIONS_METRIC, partition);
-        removeSensor(CONSUMED_OFFSET_METRIC, partition);
-        removeSensor(COMMITTED_OFFSET_METRIC, partition);
+        removeValueMetric(nameWithPartition(PAUSED_PARTITIONS_METRIC, partition));
+        removeValueMetric(nameWithPartition(PARTITION_PAUSES_METRIC, partition));
+        removeValueMetric(nameWithPartition(CONSUMED_OFFSET_METRIC, partition));
+        removeValueMetric(nameWithPartition(COMMITTED_OFFSET_METRIC, partition));
+        removeValueMetric(nameWithPartition(SUBPARTITIONS_COUNT_METRIC, partition));
+        removeValueMetric(nameWithPartition(CONSUMER_LAG_METRIC, partition));
+        removeValueMetric(nameWithPartition(END_TO_END_LAG_METRIC, partition));
     }
 
-    public void addWorkerThreadSubpartitionMetrics(WorkerSubpartition subpartition) {
-        addSensor(ACCEPTING_OFFSET_METRIC, subpartition);
-        addSensor(ACCEPTED_OFFSET_METRIC, subpartition);
-        addSensor(PROCESSING_OFFSET_METRIC, subpartition);
-        addSensor(PROCESSED_OFFSET_METRIC, subpartition);
+    public void addHotKeysMetrics(TopicPartition partition) {
+        addSensor(HOT_KEYS_COUNT_METRIC, partition);
+        addSensor(HOT_KEYS_MAX_SHARE_METRIC, partition);
+        addSensor(HOT_KEYS_ROUTED_METRIC, partition);
+    }
+
+    public void removeHotKeysMetrics(TopicPartition partition) {
+        removeSensor(HOT_KEYS_COUNT_METRIC, partition);
+        removeSensor(HOT_KEYS_MAX_SHARE_METRIC, partition);
+        removeSensor(HOT_KEYS_ROUTED_METRIC, partition);
+    }
+
+    /**
+     * Returns metrics of given subpartition or null if trace metrics are not recorded.
+     */
+    public SubpartitionMetrics addWorkerThreadSubpartitionMetrics(WorkerSubpartition subpartition) {
+        if (!shouldRecord(MetricsRecordingLevel.TRACE)) {
+            return null;
+        }
+        SubpartitionMetrics subpartitionMetrics = new SubpartitionMetrics();
+        addValueMetric(nameWithSubpartition(ACCEPTING_OFFSET_METRIC, subpartition), subpartitionMetrics.acceptingOffset());
+        addValueMetric(nameWithSubpartition(ACCEPTED_OFFSET_METRIC, subpartition), subpartitionMetrics.acceptedOffset());
+        addValueMetric(nameWithSubpartition(PROCESSING_OFFSET_METRIC, subpartition), subpartitionMetrics.processingOffset());
+        addValueMetric(nameWithSubpartition(PROCESSED_OFFSET_METRIC, subpartition), subpartitionMetrics.processedOffset());
+        if (ThreadCpuTime.isSupported()) {
+            addValueMetric(nameWithSubpartition(TASK_CPU_TIME_METRIC, subpartition),
+                    (config, now) -> subpartitionMetrics.cpuTimeNanos() / 1_000_000.0);
+        }
+        return subpartitionMetrics;
     }
 
     public void removeWorkerThreadSubpartitionMetrics(WorkerSubpartition subpartition) {
-        removeSensor(ACCEPTING_OFFSET_METRIC, subpartition);
-        removeSensor(ACCEPTED_OFFSET_METRIC, subpartition);
-        removeSensor(PROCESSING_OFFSET_METRIC, subpartition);
-        removeSensor(PROCESSED_OFFSET_METRIC, subpartition);
+        if (!shouldRecord(MetricsRecordingLevel.TRACE)) {
+            return;
+        }
+        removeValueMetric(nameWithSubpartition(ACCEPTING_OFFSET_METRIC, subpartition));
+        removeValueMetric(nameWithSubpartition(ACCEPTED_OFFSET_METRIC, subpartition));
+        removeValueMetric(nameWithSubpartition(PROCESSING_OFFSET_METRIC, subpartition));
+        removeValueMetric(nameWithSubpartition(PROCESSED_OFFSET_METRIC, subpartition));
+        removeValueMetric(nameWithSubpartition(TASK_CPU_TIME_METRIC, subpartition));
+    }
+
+    /**
+     * Returns counter of records of given subpartition which are being processed (passed to its task but not marked
+     * as processed yet) or null if debug metrics are not recorded.
+     */
+    public CounterMetric addInFlightRecordsMetric(WorkerSubpartition subpartition) {
+        if (!shouldRecord(MetricsRecordingLevel.DEBUG)) {
+            return null;
+        }
+        CounterMetric inFlightRecords = new CounterMetric();
+        addValueMetric(nameWithSubpartition(IN_FLIGHT_RECORDS_METRIC, subpartition), inFlightRecords);
+        return inFlightRecords;
+    }
+
+    public void removeInFlightRecordsMetric(WorkerSubpartition subpartition) {
+        if (!shouldRecord(MetricsRecordingLevel.DEBUG)) {
+            return;
+        }
+        removeValueMetric(nameWithSubpartition(IN_FLIGHT_RECORDS_METRIC, subpartition));
+    }
+
+    /**
+     * Returns latency histograms of given subpartition or null if debug metrics are not recorded. Histograms of the
+     * subpartition itself are added only if trace metrics are recorded.
+     */
+    public RecordLatencies addRecordLatencies(WorkerSubpartition subpartition) {
+        if (!shouldRecord(MetricsRecordingLevel.DEBUG)) {
+            return null;
+        }
+        String topic = subpartition.topicPartition().topic();
+        RecordLatencies subpartitionLatencies = shouldRecord(MetricsRecordingLevel.TRACE)
+                ? new RecordLatencies(
+                        addLatencyHistogram(nameWithSubpartition(QUEUE_WAIT_LATENCY, subpartition)),
+                        addLatencyHistogram(nameWithSubpartition(PROCESS_LATENCY, subpartition)),
+                        addLatencyHistogram(nameWithSubpartition(PROCESS_TO_SUCCESS_LATENCY, subpartition)),
+                        null)
+                : null;
+        return new RecordLatencies(
+                topicLatencyHistogram(QUEUE_WAIT_LATENCY, topic),
+                topicLatencyHistogram(PROCESS_LATENCY, topic),
+                topicLatencyHistogram(PROCESS_TO_SUCCESS_LATENCY, topic),
+                subpartitionLatencies);
+    }
+
+    public void removeRecordLatencies(WorkerSubpartition subpartition) {
+        if (!shouldRecord(MetricsRecordingLevel.TRACE)) {
+            return;
+        }
+        removeLatencyHistogram(nameWithSubpartition(QUEUE_WAIT_LATENCY, subpartition));
+        removeLatencyHistogram(nameWithSubpartition(PROCESS_LATENCY, subpartition));
+        removeLatencyHistogram(nameWithSubpartition(PROCESS_TO_SUCCESS_LATENCY, subpartition));
+    }
+
+    private LatencyHistogram topicLatencyHistogram(String name, String topic) {
+        return topicLatencyHistograms.computeIfAbsent(labeledGroup(name, ImmutableMap.of("topic", topic), topic),
+                this::addLatencyHistogram);
+    }
+
+    private LatencyHistogram addLatencyHistogram(String name) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        metrics.addMetric(metrics.metricName("count", name),
+                (config, now) -> LatencyHistogram.count(histogram.counts()));
+        LATENCY_QUANTILES.forEach((metricName, quantile) -> metrics.addMetric(metrics.metricName(metricName, name),
+                (config, now) -> LatencyHistogram.quantile(histogram.counts(), quantile)));
+        return histogram;
+    }
+
+    private void removeLatencyHistogram(String name) {
+        metrics.removeMetric(metrics.metricName("count", name));
+        LATENCY_QUANTILES.keySet().forEach(metricName -> metrics.removeMetric(metrics.metricName(metricName, name)));
+        groupLabels.remove(name);
+    }
+
+    private void addValueMetric(String name, Measurable measurable) {
+        // the same metric name as of Value stat of a sensor, so reported metrics are not changed
+        metrics.addMetric(metrics.metricName("value", name), measurable);
+    }
+
+    private void removeValueMetric(String name) {
+        metrics.removeMetric(metrics.metricName("value", name));
+        groupLabels.remove(name);
     }
 
     public void addSensor(String name, TopicPartition partition) {
-        addSensor(name + "." + partition);
+        addSensor(nameWithPartition(name, partition));
     }
 
-    public void addSensor(String name, WorkerSubpartition subpartition) {
-        addSensor(nameWithSubpartition(name, subpartition));
+    private String nameWithPartition(String name, TopicPartition partition) {
+        return labeledGroup(name, ImmutableMap.of(
+                "topic", partition.topic(),
+                "partition", Integer.toString(partition.partition())),
+                partition.toString());
     }
 
     private String nameWithSubpartition(String name, WorkerSubpartition subpartition) {
-        return String.format("%s.%s.%d", name, subpartition.topicPartition(), subpartition.subpartition());
+        TopicPartition partition = subpartition.topicPartition();
+        return labeledGroup(name, ImmutableMap.of(
+                "topic", partition.topic(),
+                "partition", Integer.toString(partition.partition()),
+                "subpartition", Integer.toString(subpartition.subpartition())),
+                partition + "." + subpartition.subpartition());
+    }
+
+    /**
+     * Returns the name of the group of given family with given suffix, remembering the labels it stands for.
+     */
+    private String labeledGroup(String family, Map<String, String> labels, String suffix) {
+        String group = family + "." + suffix;
+        groupLabels.computeIfAbsent(group, key -> new MetricGroupLabels(family, labels));
+        return group;
+    }
+
+    /**
+     * Returns the family and labels of given group or null if it is not named after a topic, partition etc.
+     */
+    MetricGroupLabels groupLabels(String group) {
+        return groupLabels.get(group);
     }
 
     public void addSensor(String name) {
@@ -141,11 +382,11 @@ public class WorkersMetrics {
     }
 
     public void recordSensor(String name, TopicPartition partition, long value) {
-        recordSensor(name + "." + partition, value);
+        recordSensor(nameWithPartition(name, partition), value);
     }
 
-    public void recordSensor(String name, WorkerSubpartition subpartition, long value) {
-        recordSensor(nameWithSubpartition(name, subpartition), value);
+    public void recordSensor(String name, TopicPartition partition, double value) {
+        metrics.sensor(nameWithPartition(name, partition)).record(value);
     }
 
     public void recordSensor(String name, long value) {
@@ -153,15 +394,12 @@ public class WorkersMetrics {
     }
 
     public void removeSensor(String name, TopicPartition partition) {
-        removeSensor(name + "." + partition);
-    }
-
-    public void removeSensor(String name, WorkerSubpartition subpartition) {
-        removeSensor(nameWithSubpartition(name, subpartition));
+        removeSensor(nameWithPartition(name, partition));
     }
 
     public void removeSensor(String name) {
         metrics.removeSensor(name);
+        groupLabels.remove(name);
     }
 
     public void addSizeMetric(String group, String name, Collection<?> collection) {
@@ -178,16 +416,43 @@ public class WorkersMetrics {
 
         metrics.addMetric(metrics.metricName(WORKER_THREAD_TASK_COUNT_METRIC_NAME, group),
                 (config, now) -> workerThread.getTasksCount());
+
+        WorkerThreadTimes times = workerThread.times();
+        for (WorkerThreadTimes.Activity activity : WorkerThreadTimes.Activity.values()) {
+            addTimeMetrics(group, activity.metricName(), () -> times.totalNanos(activity));
+        }
+        if (ThreadCpuTime.isSupported()) {
+            long threadId = workerThread.getId();
+            addTimeMetrics(group, WORKER_THREAD_CPU_METRIC_NAME,
+                    () -> Math.max(0L, ThreadCpuTime.threadNanos(threadId)));
+        }
+    }
+
+    private void addTimeMetrics(String group, String name, LongSupplier totalNanos) {
+        metrics.addMetric(metrics.metricName(name + "-time-total.ms", group),
+                (config, now) -> totalNanos.getAsLong() / 1_000_000.0);
+        metrics.addMetric(metrics.metricName(name + "-ratio", group), new TimeRatioMetric(totalNanos));
+    }
+
+    private void removeTimeMetrics(String group, String name) {
+        metrics.removeMetric(metrics.metricName(name + "-time-total.ms", group));
+        metrics.removeMetric(metrics.metricName(name + "-ratio", group));
     }
 
     private <K, V> String workerThreadGroup(WorkerThread<K, V> workerThread) {
-        return WORKER_THREAD_METRIC_GROUP + "." + workerThread.getName();
+        return labeledGroup(WORKER_THREAD_METRIC_GROUP, ImmutableMap.of("thread", workerThread.getName()),
+                workerThread.getName());
     }
 
     public <K, V> void removeWorkerThreadMetrics(WorkerThread<K, V> workerThread) {
         String group = workerThreadGroup(workerThread);
 
         metrics.removeMetric(metrics.metricName(WORKER_THREAD_TASK_COUNT_METRIC_NAME, group));
+        for (WorkerThreadTimes.Activity activity : WorkerThreadTimes.Activity.values()) {
+            removeTimeMetrics(group, activity.metricName());
+        }
+        removeTimeMetrics(group, WORKER_THREAD_CPU_METRIC_NAME);
+        groupLabels.remove(group);
     }
 
     public void addOffsetsStateCurrentMetrics(DefaultOffsetsState offsetsState, TopicPartition partition) {
@@ -205,12 +470,13 @@ public class WorkersMetrics {
     }
 
     private String offsetsStateCurrInfosPartitionGroup(TopicPartition partition) {
-        return "offsets-state.curr-infos." + partition;
+        return nameWithPartition("offsets-state.curr-infos", partition);
     }
 
     public void removeOffsetsStateCurrentMetrics(TopicPartition partition) {
         String group = offsetsStateCurrInfosPartitionGroup(partition);
         ALL_OFFSETS_STATE_METRIC_NAMES.forEach(name -> metrics.removeMetric(metrics.metricName(name, group)));
+        groupLabels.remove(group);
     }
 
     public void addOffsetsStateMaxMetrics(DefaultOffsetsState offsetsState, TopicPartition partition) {
@@ -228,12 +494,13 @@ public class WorkersMetrics {
     }
 
     private String offsetsStateMaxPartitionGroup(TopicPartition partition) {
-        return "offsets-state.max-ranges." + partition;
+        return nameWithPartition("offsets-state.max-ranges", partition);
     }
 
     public void removeOffsetsStateMaxMetrics(TopicPartition partition) {
         String group = offsetsStateMaxPartitionGroup(partition);
         ALL_OFFSETS_STATE_METRIC_NAMES.forEach(name -> metrics.removeMetric(metrics.metricName(name, group)));
+        groupLabels.remove(group);
     }
 
     public <K, V> void addQueuesManagerMetrics(QueuesManager<K, V> queuesManager) {
@@ -241,5 +508,65 @@ public class WorkersMetrics {
         addSensor(QUEUE_SIZE_LIMIT_METRIC);
         metrics.addMetric(metrics.metricName(QUEUES_TOTAL_SIZE_METRIC, ""),
                 (conf, now) -> queuesManager.getTotalSizeInBytes());
+        for (QueueLimit limit : QueueLimit.values()) {
+            Sensor sensor = metrics.sensor(queuePausesName(limit));
+            sensor.add(metrics.metricName("total", sensor.name()), new CumulativeCount());
+        }
+    }
+
+    /**
+     * Counts pauses of queues (and so their partitions) caused by exceeding given limit.
+     */
+    public void recordQueuePause(QueueLimit limit) {
+        metrics.sensor(queuePausesName(limit)).record();
+    }
+
+    private String queuePausesName(QueueLimit limit) {
+        return labeledGroup(QUEUE_PAUSES_METRIC, ImmutableMap.of("limit", limit.metricSuffix()), limit.metricSuffix());
+    }
+
+    public void addHeapPressureMetrics(HeapPressureMonitor heapPressureMonitor) {
+        metrics.addMetric(metrics.metricName(QUEUES_SIZE_SCALE_METRIC, ""),
+                (conf, now) -> heapPressureMonitor.scale());
+    }
+
+    public void addOffHeapMetrics(SlabPool slabPool) {
+        addSensor(QUEUES_OFFHEAP_SIZE_LIMIT_METRIC);
+        metrics.addMetric(metrics.metricName(QUEUES_OFFHEAP_SIZE_METRIC, ""),
+                (conf, now) -> slabPool.usedBytes());
+    }
+
+    public void addSpillMetrics(SlabPool spillPool) {
+        addSensor(QUEUES_SPILL_SIZE_LIMIT_METRIC);
+        metrics.addMetric(metrics.metricName(QUEUES_SPILL_SIZE_METRIC, ""),
+                (conf, now) -> spillPool.usedBytes());
+    }
+
+    /**
+     * Adds metrics of the queue of given subpartition (only if debug metrics are recorded). They are computed when
+     * metrics are read, so recording them does not cost anything.
+     */
+    public <K, V> void addQueueMetrics(WorkerSubpartition subpartition, RecordsQueue<K, V> queue) {
+        if (!shouldRecord(MetricsRecordingLevel.DEBUG)) {
+            return;
+        }
+        addValueMetric(nameWithSubpartition(QUEUE_SIZE_RECORDS_METRIC, subpartition),
+                (config, now) -> queue.getSizeInRecords());
+        addValueMetric(nameWithSubpartition(QUEUE_SIZE_BYTES_METRIC, subpartition),
+                (config, now) -> queue.getSizeInBytes());
+        addValueMetric(nameWithSubpartition(QUEUE_SIZE_LIMIT_METRIC, subpartition),
+                (config, now) -> queue.getSizeBytesToPause());
+        addValueMetric(nameWithSubpartition(QUEUE_OLDEST_RECORD_AGE_METRIC, subpartition),
+                (config, now) -> queue.getOldestRecordAgeMs());
+    }
+
+    public void removeQueueMetrics(WorkerSubpartition subpartition) {
+        if (!shouldRecord(MetricsRecordingLevel.DEBUG)) {
+            return;
+        }
+        removeValueMetric(nameWithSubpartition(QUEUE_SIZE_RECORDS_METRIC, subpartition));
+        removeValueMetric(nameWithSubpartition(QUEUE_SIZE_BYTES_METRIC, subpartition));
+        removeValueMetric(nameWithSubpartition(QUEUE_SIZE_LIMIT_METRIC, subpartition));
+        removeValueMetric(nameWithSubpartition(QUEUE_OLDEST_RECORD_AGE_METRIC, subpartition));
     }
 }
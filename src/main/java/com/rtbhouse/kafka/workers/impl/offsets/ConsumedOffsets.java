@@ -6,7 +6,6 @@ import static com.rtbhouse.kafka.workers.impl.range.ClosedRange.range;
 import static com.rtbhouse.kafka.workers.impl.range.ClosedRange.singleElementRange;
 import static java.util.Comparator.comparing;
 
-import java.time.Instant;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
@@ -17,10 +16,14 @@ import com.rtbhouse.kafka.workers.impl.collection.CollectionUtils;
 import com.rtbhouse.kafka.workers.impl.collection.RandomAccessArrayDeque;
 import com.rtbhouse.kafka.workers.impl.range.ClosedRange;
 
+/**
+ * Not thread safe, guarded by the lock of enclosing {@link PartitionOffsets}.
+ */
 class ConsumedOffsets {
     private final RandomAccessArrayDeque<ConsumedOffsetRange> consumedRanges = new RandomAccessArrayDeque<>();
+    private long elementsCount;
 
-    synchronized Optional<Long> getMinExistingElement(ClosedRange range) {
+    Optional<Long> getMinExistingElement(ClosedRange range) {
         Optional<ConsumedOffsetRange> prevRange = floor(range);
         if (prevRange.isPresent()) {
             if (range.lowerEndpoint() <= prevRange.get().upperEndpoint()) {
@@ -38,6 +41,23 @@ class ConsumedOffsets {
         return Optional.empty();
     }
 
+    /**
+     * Returns the least element of the given range which is not enclosed by consumed ranges. Consecutive consumed
+     * ranges (e.g. coming from subsequent polls) are treated as a continuous one.
+     */
+    Optional<Long> getMinMissingElement(ClosedRange range) {
+        long element = range.lowerEndpoint();
+        Optional<ConsumedOffsetRange> enclosingRange = floor(singleElementRange(element));
+        while (enclosingRange.isPresent() && element <= enclosingRange.get().upperEndpoint()) {
+            element = enclosingRange.get().upperEndpoint() + 1;
+            if (element > range.upperEndpoint()) {
+                return Optional.empty();
+            }
+            enclosingRange = floor(singleElementRange(element));
+        }
+        return Optional.of(element);
+    }
+
     private Optional<ConsumedOffsetRange> floor(ClosedRange range) {
         return Optional.ofNullable(CollectionUtils.floorBinarySearch(consumedRanges, range,
                 comparing(ClosedRange::lowerEndpoint)));
@@ -48,27 +68,28 @@ class ConsumedOffsets {
                 comparing(ClosedRange::lowerEndpoint)));
     }
 
-    synchronized void addConsumedRange(ConsumedOffsetRange range) {
+    void addConsumedRange(ConsumedOffsetRange range) {
         if (!consumedRanges.isEmpty()) {
             ConsumedOffsetRange lastRange = consumedRanges.getLast();
             checkState(range.lowerEndpoint() > lastRange.upperEndpoint(),
                     "condition not met [range.lowerEndpoint() > lastRange.upperEndpoint()]: " +
                             "lastRange [%s], range [%s]", lastRange, range);
-            checkState(!range.getConsumedAt().isBefore(lastRange.getConsumedAt()),
+            checkState(range.getConsumedAtMs() >= lastRange.getConsumedAtMs(),
                     "condition not met [range.consumedAt >= lastRange.consumedAt]: " +
                             "lastRange [%s], range [%s]", lastRange, range);
         }
 
         consumedRanges.addLast(range);
+        elementsCount += range.size();
     }
 
-    synchronized boolean contains(long offset) {
+    boolean contains(long offset) {
         return floor(singleElementRange(offset))
                 .map(range -> offset <= range.upperEndpoint())
                 .orElse(false);
     }
 
-    synchronized Optional<ConsumedOffsetRange> getFirst() {
+    Optional<ConsumedOffsetRange> getFirst() {
         try {
             return Optional.of(consumedRanges.getFirst());
         } catch (NoSuchElementException e) {
@@ -76,15 +97,19 @@ class ConsumedOffsets {
         }
     }
 
-    synchronized int size() {
+    int size() {
         return consumedRanges.size();
     }
 
-    synchronized List<ConsumedOffsetRange> getRanges() {
+    long elementsCount() {
+        return elementsCount;
+    }
+
+    List<ConsumedOffsetRange> getRanges() {
         return ImmutableList.copyOf(consumedRanges);
     }
 
-    synchronized Optional<ClosedRange> removeMaximumHeadRange(ClosedRange processedRange) {
+    Optional<ClosedRange> removeMaximumHeadRange(ClosedRange processedRange) {
         if (consumedRanges.isEmpty()) {
             return Optional.empty();
         }
@@ -107,6 +132,7 @@ class ConsumedOffsets {
             range = it.next();
             if (range.upperEndpoint() <= maxOffset) {
                 it.remove();
+                elementsCount -= range.size();
                 maxRemoved = range.upperEndpoint();
             } else {
                 break;
@@ -116,34 +142,35 @@ class ConsumedOffsets {
         if (range != null && range.lowerEndpoint() <= maxOffset && maxOffset < range.upperEndpoint()) {
             it.remove();
             consumedRanges.addFirst(range.shrinkFromLeft(maxOffset + 1));
+            elementsCount -= maxOffset + 1 - range.lowerEndpoint();
             maxRemoved = maxOffset;
         }
 
         return Optional.ofNullable(maxRemoved);
     }
 
-    synchronized void removeElementsLowerOrEqual(long maxOffset) {
+    void removeElementsLowerOrEqual(long maxOffset) {
         doRemoveElementsLowerOrEqual(maxOffset);
     }
 
     static class ConsumedOffsetRange implements ClosedRange {
         private final ClosedRange range;
-        private final Instant consumedAt;
+        private final long consumedAtMs;
 
-        ConsumedOffsetRange(ClosedRange range, Instant consumedAt) {
+        ConsumedOffsetRange(ClosedRange range, long consumedAtMs) {
             this.range = range;
-            this.consumedAt = consumedAt;
+            this.consumedAtMs = consumedAtMs;
         }
 
-        Instant getConsumedAt() {
-            return consumedAt;
+        long getConsumedAtMs() {
+            return consumedAtMs;
         }
 
         @Override
         public String toString() {
             return "ConsumedOffsetRange{" +
                     "range=" + range +
-                    ", consumedAt=" + consumedAt +
+                    ", consumedAtMs=" + consumedAtMs +
                     '}';
         }
 
@@ -163,7 +190,7 @@ class ConsumedOffsets {
 
         ConsumedOffsetRange shrinkFromLeft(long newLowerEndpoint) {
             checkArgument(newLowerEndpoint >= range.lowerEndpoint());
-            return new ConsumedOffsetRange(range(newLowerEndpoint, range.upperEndpoint()), consumedAt);
+            return new ConsumedOffsetRange(range(newLowerEndpoint, range.upperEndpoint()), consumedAtMs);
         }
 
         @Override
@@ -3,16 +3,18 @@ package com.rtbhouse.kafka.workers.impl.offsets;
 import static com.google.common.base.Preconditions.checkState;
 import static com.rtbhouse.kafka.workers.impl.offsets.OffsetStatus.CONSUMED;
 import static com.rtbhouse.kafka.workers.impl.offsets.OffsetStatus.PROCESSED;
-import static com.rtbhouse.kafka.workers.impl.util.TimeUtils.age;
-import static com.rtbhouse.kafka.workers.impl.util.TimeUtils.isOlderThan;
 
 import java.time.Duration;
-import java.time.Instant;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -25,6 +27,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.rtbhouse.kafka.workers.api.WorkersConfig;
+import com.rtbhouse.kafka.workers.impl.clock.WorkersClock;
 import com.rtbhouse.kafka.workers.impl.errors.BadOffsetException;
 import com.rtbhouse.kafka.workers.impl.errors.ProcessingTimeoutException;
 import com.rtbhouse.kafka.workers.impl.metrics.WorkersMetrics;
@@ -32,27 +35,34 @@ import com.rtbhouse.kafka.workers.impl.offsets.ConsumedOffsets.ConsumedOffsetRan
 import com.rtbhouse.kafka.workers.impl.range.ClosedRange;
 import com.rtbhouse.kafka.workers.impl.range.SortedRanges;
 
-@SuppressWarnings("SynchronizationOnLocalVariableOrMethodParameter")
 public class DefaultOffsetsState implements OffsetsState {
 
     private static final Logger logger = LoggerFactory.getLogger(DefaultOffsetsState.class);
 
+    // the number of timed out ranges listed in ProcessingTimeoutException message
+    private static final int MAX_REPORTED_TIMED_OUT_RANGES = 10;
+
     private final Duration metricInfoMaxDelay;
     private final Duration computeMetricsDurationWarn;
     private final Duration lastMetricInfoMaxAge;
     private final long lastMetricInfosMaxSize;
+    private final int commitMetadataMaxBytes;
     private final WorkersMetrics metrics;
+    private final WorkersClock clock;
 
-    private final Map<TopicPartition, ConsumedOffsets> consumedOffsetsMap = new ConcurrentHashMap<>();
-
-    private final Map<TopicPartition, SortedRanges> processedOffsetsMap = new ConcurrentHashMap<>();
+    private final Map<TopicPartition, PartitionOffsets> partitionOffsetsMap = new ConcurrentHashMap<>();
 
     private final Map<TopicPartition, TopicPartitionMetricInfo> currMetricInfos = new ConcurrentHashMap<>();
 
     private final Map<TopicPartition, Deque<TopicPartitionMetricInfo>> lastMetricInfos = new ConcurrentHashMap<>();
 
     public DefaultOffsetsState(WorkersConfig config, WorkersMetrics metrics) {
+        this(config, metrics, WorkersClock.system());
+    }
+
+    public DefaultOffsetsState(WorkersConfig config, WorkersMetrics metrics, WorkersClock clock) {
         this.metrics = metrics;
+        this.clock = clock;
 
         this.metricInfoMaxDelay = Duration.ofMillis(getLongFromConfig(config, "offsets-state.metric-info.delay.ms", 1_000L));
         this.computeMetricsDurationWarn = Duration.ofMillis(getLongFromConfig(config, "offsets-state.metric-infos.compute.warn.ms",
@@ -60,10 +70,15 @@ public class DefaultOffsetsState implements OffsetsState {
         this.lastMetricInfoMaxAge = Duration.ofMillis(getLongFromConfig(config, "offsets-state.last-metric-infos.max.age.ms",
                 30_000L));
         this.lastMetricInfosMaxSize = getLongFromConfig(config, "offsets-state.last-metric-infos.max.size", 100L);
+        this.commitMetadataMaxBytes = config.getConsumerCommitMetadataMaxBytes();
         checkState(!metricInfoMaxDelay.isNegative());
         checkState(!computeMetricsDurationWarn.isNegative());
     }
 
+    private boolean isOlderThan(long timeMs, Duration maxAge) {
+        return timeMs + maxAge.toMillis() < clock.millis();
+    }
+
     private static long getLongFromConfig(WorkersConfig config, String key, long defaultValue) {
         return Optional
                 .ofNullable(config.originals().get(key))
@@ -94,8 +109,7 @@ public class DefaultOffsetsState implements OffsetsState {
     @Override
     public void register(Collection<TopicPartition> partitions) {
         for (TopicPartition partition : partitions) {
-            consumedOffsetsMap.put(partition, new ConsumedOffsets());
-            processedOffsetsMap.put(partition, new SortedRanges());
+            partitionOffsetsMap.put(partition, new PartitionOffsets());
 
             metrics.addOffsetsStateCurrentMetrics(this, partition);
             metrics.addOffsetsStateMaxMetrics(this, partition);
@@ -105,8 +119,7 @@ public class DefaultOffsetsState implements OffsetsState {
     @Override
     public void unregister(Collection<TopicPartition> partitions) {
         for (TopicPartition partition : partitions) {
-            consumedOffsetsMap.remove(partition);
-            processedOffsetsMap.remove(partition);
+            partitionOffsetsMap.remove(partition);
 
             metrics.removeOffsetsStateCurrentMetrics(partition);
             metrics.removeOffsetsStateMaxMetrics(partition);
@@ -114,66 +127,104 @@ public class DefaultOffsetsState implements OffsetsState {
     }
 
     @Override
-    public void addConsumed(TopicPartition partition, ClosedRange range, Instant consumedAt) {
-        ConsumedOffsets consumedOffsets = consumedOffsetsMap.get(partition);
+    public void addConsumed(TopicPartition partition, ClosedRange range, long consumedAtMs) {
+        PartitionOffsets partitionOffsets = partitionOffsetsMap.get(partition);
 
-        if (consumedOffsets == null) {
+        if (partitionOffsets == null) {
             logger.warn("Aborting addConsumed for partition [{}] (partition probably unregistered)", partition);
             return;
         }
 
-        //noinspection SynchronizationOnLocalVariableOrMethodParameter
-        synchronized (consumedOffsets) {
+        ConsumedOffsetRange consumedRange = new ConsumedOffsetRange(range, consumedAtMs);
+        long stamp = partitionOffsets.writeLock();
+        try {
+            ConsumedOffsets consumedOffsets = partitionOffsets.consumedOffsets();
             Optional<Long> minExistingElement = consumedOffsets.getMinExistingElement(range);
             if (minExistingElement.isPresent()) {
                 throw new BadOffsetException("Offset: " + minExistingElement.get() + " for partition: " + partition
                         + " was consumed before");
             }
-            consumedOffsets.addConsumedRange(new ConsumedOffsetRange(range, consumedAt));
+            consumedOffsets.addConsumedRange(consumedRange);
+            partitionOffsets.inFlightRanges().add(consumedRange);
+        } finally {
+            partitionOffsets.unlockWrite(stamp);
         }
 
         computeMetricInfo(partition);
     }
 
     @Override
-    public void updateProcessed(TopicPartition partition, long offset) {
-        ConsumedOffsets consumedOffsets = consumedOffsetsMap.get(partition);
-        SortedRanges processedOffsets = processedOffsetsMap.get(partition);
-
-        // unregister() method call may cause consumedOffsets or processedOffsets is null
-        if (consumedOffsets == null) {
-            logger.warn("Aborting updateProcessed({}, {}) because consumedOffsets == null (partition probably unregistered)",
-                    partition, offset);
+    public void updateProcessed(TopicPartition partition, ClosedRange range) {
+        PartitionOffsets partitionOffsets = partitionOffsetsMap.get(partition);
+
+        // unregister() method call may cause partitionOffsets is null
+        if (partitionOffsets == null) {
+            logger.warn("Aborting updateProcessed({}, {}) because partitionOffsets == null (partition probably unregistered)",
+                    partition, range);
             return;
         }
-        if (processedOffsets == null) {
-            logger.warn("Aborting updateProcessed({}, {}) because processedOffsets == null (partition probably unregistered)",
-                    partition, offset);
-            return;
+
+        // the whole range is validated and merged at once, so its cost does not depend on the range size
+        long stamp = partitionOffsets.writeLock();
+        try {
+            checkNotProcessedAndConsumed(partition, partitionOffsets, range);
+            partitionOffsets.processedOffsets().add(range);
+        } finally {
+            partitionOffsets.unlockWrite(stamp);
         }
 
-        synchronized (consumedOffsets) {
-            synchronized (processedOffsets) {
-                if (processedOffsets.containsSingleElement(offset)) {
-                    throw new BadOffsetException("Offset: " + offset + " for partition: " + partition + " was processed before");
-                }
+        computeMetricInfo(partition);
+    }
 
-                if (!consumedOffsets.contains(offset)) {
-                    throw new BadOffsetException("Offset: " + offset + " for partition: " + partition + " was not consumed before");
-                }
-                processedOffsets.addSingleElement(offset);
+    @Override
+    public void updateProcessed(TopicPartition partition, List<ClosedRange> ranges) {
+        PartitionOffsets partitionOffsets = partitionOffsetsMap.get(partition);
+
+        // unregister() method call may cause partitionOffsets is null
+        if (partitionOffsets == null) {
+            logger.warn("Aborting updateProcessed({}, {}) because partitionOffsets == null (partition probably unregistered)",
+                    partition, ranges);
+            return;
+        }
+
+        // all ranges are validated before any of them is added, so a failing update has no side effects
+        long stamp = partitionOffsets.writeLock();
+        try {
+            for (ClosedRange range : ranges) {
+                checkNotProcessedAndConsumed(partition, partitionOffsets, range);
+            }
+            for (ClosedRange range : ranges) {
+                partitionOffsets.processedOffsets().add(range);
             }
+        } finally {
+            partitionOffsets.unlockWrite(stamp);
         }
 
         computeMetricInfo(partition);
     }
 
+    // should be called under the partition write lock
+    private static void checkNotProcessedAndConsumed(TopicPartition partition, PartitionOffsets partitionOffsets,
+                                                     ClosedRange range) {
+        Optional<Long> minProcessedElement = partitionOffsets.processedOffsets().getMinExistingElement(range);
+        if (minProcessedElement.isPresent()) {
+            throw new BadOffsetException("Offset: " + minProcessedElement.get() + " for partition: " + partition
+                    + " was processed before");
+        }
+
+        Optional<Long> minNotConsumedElement = partitionOffsets.consumedOffsets().getMinMissingElement(range);
+        if (minNotConsumedElement.isPresent()) {
+            throw new BadOffsetException("Offset: " + minNotConsumedElement.get() + " for partition: " + partition
+                    + " was not consumed before");
+        }
+    }
+
     private void computeMetricInfo(TopicPartition partition) {
         if (!shouldComputeMetricInfo(partition)) {
             return;
         }
 
-        Instant start = Instant.now();
+        long startMs = clock.millis();
         TopicPartitionMetricInfo currInfo = this.new TopicPartitionMetricInfo(partition);
         currMetricInfos.put(partition, currInfo);
         lastMetricInfos.compute(partition, (key, value) ->
@@ -184,9 +235,9 @@ public class DefaultOffsetsState implements OffsetsState {
                             return v;
                         })
                         .orElse(new ArrayDeque<>(ImmutableList.of(currInfo))));
-        if (isOlderThan(start, computeMetricsDurationWarn)) {
+        if (isOlderThan(startMs, computeMetricsDurationWarn)) {
             logger.warn("Computing MetricInfo for partition [{}] took too long [{}] ms",
-                    partition, Duration.between(start, Instant.now()).toMillis());
+                    partition, clock.millis() - startMs);
         }
     }
 
@@ -205,39 +256,81 @@ public class DefaultOffsetsState implements OffsetsState {
     }
 
     @Override
-    public void timeoutRecordsConsumedBefore(Instant minConsumedAt) {
-        for (TopicPartition partition : getPartitions()) {
-            ConsumedOffsets consumedOffsets = consumedOffsetsMap.get(partition);
-            SortedRanges processedOffsets = processedOffsetsMap.get(partition);
+    public void timeoutRecordsConsumedBefore(long minConsumedAtMs) {
 
-            if (consumedOffsets == null || processedOffsets == null) {
-                return;
-            }
+        List<TimedOutRange> timedOutRanges = new ArrayList<>();
+        partitionOffsetsMap.forEach((partition, partitionOffsets) ->
+                addTimedOutRanges(partition, partitionOffsets, minConsumedAtMs, timedOutRanges));
+        if (timedOutRanges.isEmpty()) {
+            return;
+        }
 
-            synchronized (consumedOffsets) {
-                synchronized (processedOffsets) {
-                    removeProcessedOffsetsFromHeadConsumedOffsets(consumedOffsets, processedOffsets);
-                    consumedOffsets.getFirst().ifPresent(consumedFirstRange ->
-                            checkConsumedOffsetsTimeout(partition, consumedFirstRange, minConsumedAt));
+        timedOutRanges.sort(Comparator.comparingLong(timedOutRange -> timedOutRange.consumedAtMs));
+        Map<TopicPartition, List<ClosedRange>> timedOutOffsets = new LinkedHashMap<>();
+        int reportedRangesCount = 0;
+        int notReportedRangesCount = 0;
+        for (TimedOutRange timedOutRange : timedOutRanges) {
+            for (ClosedRange notProcessedRange : timedOutRange.notProcessedRanges) {
+                if (reportedRangesCount < MAX_REPORTED_TIMED_OUT_RANGES) {
+                    timedOutOffsets.computeIfAbsent(timedOutRange.partition, k -> new ArrayList<>())
+                            .add(notProcessedRange);
+                    reportedRangesCount++;
+                } else {
+                    notReportedRangesCount++;
                 }
             }
         }
+
+        TimedOutRange oldestRange = timedOutRanges.get(0);
+        throw new ProcessingTimeoutException(
+                String.format("Offset [%s] for partition [%s] exceeded timeout: consumedAt [%s], age [%s ms], "
+                                + "all timed out offsets: %s%s",
+                        oldestRange.notProcessedRanges.get(0).lowerEndpoint(), oldestRange.partition,
+                        oldestRange.consumedAtMs, clock.millis() - oldestRange.consumedAtMs, timedOutOffsets,
+                        notReportedRangesCount > 0 ? " and " + notReportedRangesCount + " more ranges" : "")
+        );
     }
 
-    private void checkConsumedOffsetsTimeout(TopicPartition partition,
-            ConsumedOffsetRange consumedRange,
-            Instant minConsumedAt) {
-
-        if (minConsumedAt != null) {
-            long minConsumedOffset = consumedRange.lowerEndpoint();
-            Instant consumedAt = consumedRange.getConsumedAt();
-            if (consumedAt.isBefore(minConsumedAt)) {
-                throw new ProcessingTimeoutException(
-                        String.format("Offset [%s] for partition [%s] exceeded timeout: consumedAt [%s], age [%s ms]",
-                                minConsumedOffset, partition, consumedAt.toEpochMilli(), age(consumedAt).toMillis())
-                );
+    private void addTimedOutRanges(TopicPartition partition, PartitionOffsets partitionOffsets, long minConsumedAtMs,
+                                   List<TimedOutRange> timedOutRanges) {
+        List<ConsumedOffsetRange> timedOutInFlightRanges = new ArrayList<>();
+        long stamp = partitionOffsets.writeLock();
+        try {
+            // only timed out ranges and already processed ones (which would never time out) are visited
+            Queue<ConsumedOffsetRange> inFlightRanges = partitionOffsets.inFlightRanges();
+            ConsumedOffsetRange inFlightRange;
+            while ((inFlightRange = inFlightRanges.peek()) != null) {
+                boolean timedOut = inFlightRange.getConsumedAtMs() < minConsumedAtMs;
+                List<ClosedRange> notProcessedRanges = getNotProcessedRanges(partitionOffsets, inFlightRange);
+                if (!timedOut && !notProcessedRanges.isEmpty()) {
+                    break;
+                }
+                inFlightRanges.poll();
+                if (!notProcessedRanges.isEmpty()) {
+                    timedOutInFlightRanges.add(inFlightRange);
+                    timedOutRanges.add(new TimedOutRange(partition, inFlightRange.getConsumedAtMs(),
+                            notProcessedRanges));
+                }
             }
+            // still in flight, so they should be reported again if the exception is ignored
+            inFlightRanges.addAll(timedOutInFlightRanges);
+        } finally {
+            partitionOffsets.unlockWrite(stamp);
+        }
+    }
+
+    // should be called under the partition lock
+    private static List<ClosedRange> getNotProcessedRanges(PartitionOffsets partitionOffsets,
+                                                           ConsumedOffsetRange inFlightRange) {
+        // offsets lower than the first consumed one were already processed and committed
+        Optional<ConsumedOffsetRange> consumedFirstRange = partitionOffsets.consumedOffsets().getFirst();
+        if (consumedFirstRange.isEmpty()
+                || consumedFirstRange.get().lowerEndpoint() > inFlightRange.upperEndpoint()) {
+            return ImmutableList.of();
         }
+        long lowerEndpoint = Math.max(inFlightRange.lowerEndpoint(), consumedFirstRange.get().lowerEndpoint());
+        return partitionOffsets.processedOffsets().missingRanges(
+                ClosedRange.range(lowerEndpoint, inFlightRange.upperEndpoint()));
     }
 
     @Override
@@ -246,9 +339,9 @@ public class DefaultOffsetsState implements OffsetsState {
         ImmutableMap.Builder<TopicPartition, OffsetAndMetadata> builder = ImmutableMap.builder();
 
         for (TopicPartition partition : getPartitions()) {
-            Long offsetToCommit = getOffsetToCommit(partition);
+            OffsetAndMetadata offsetToCommit = getOffsetToCommit(partition);
             if (offsetToCommit != null) {
-                builder.put(partition, new OffsetAndMetadata(offsetToCommit + 1));
+                builder.put(partition, offsetToCommit);
             }
             computeMetricInfo(partition);
         }
@@ -257,47 +350,78 @@ public class DefaultOffsetsState implements OffsetsState {
     }
 
     private Set<TopicPartition> getPartitions() {
-        return ImmutableSet.copyOf(consumedOffsetsMap.keySet());
+        return ImmutableSet.copyOf(partitionOffsetsMap.keySet());
     }
 
-    private Long getOffsetToCommit(TopicPartition partition) {
-        ConsumedOffsets consumedOffsets = consumedOffsetsMap.get(partition);
-        SortedRanges processedOffsets = processedOffsetsMap.get(partition);
+    private OffsetAndMetadata getOffsetToCommit(TopicPartition partition) {
+        PartitionOffsets partitionOffsets = partitionOffsetsMap.get(partition);
 
-        if (consumedOffsets == null || processedOffsets == null) {
+        if (partitionOffsets == null) {
             logger.warn("Aborting getOffsetToCommit for partition [{}] (partition probably unregistered), returning null", partition);
             return null;
         }
 
-        synchronized (consumedOffsets) {
-            synchronized (processedOffsets) {
+        long stamp = partitionOffsets.writeLock();
+        try {
+            ConsumedOffsets consumedOffsets = partitionOffsets.consumedOffsets();
+            SortedRanges processedOffsets = partitionOffsets.processedOffsets();
 
-                removeProcessedOffsetsFromHeadConsumedOffsets(consumedOffsets, processedOffsets);
-                ConsumedOffsetRange consumedFirstRange = consumedOffsets.getFirst().orElse(null);
+            removeProcessedOffsetsFromHeadConsumedOffsets(consumedOffsets, processedOffsets);
+            ConsumedOffsetRange consumedFirstRange = consumedOffsets.getFirst().orElse(null);
 
-                if (consumedFirstRange != null) {
-                    return processedOffsets.floorElement(consumedFirstRange.lowerEndpoint() - 1)
-                            .orElse(null);
-                } else {
-                    return processedOffsets.getLast()
-                            .map(ClosedRange::upperEndpoint)
-                            .orElse(null);
-                }
+            if (consumedFirstRange == null) {
+                return processedOffsets.getLast()
+                        .map(range -> new OffsetAndMetadata(range.upperEndpoint() + 1))
+                        .orElse(null);
             }
+
+            Optional<Long> watermark = processedOffsets.floorElement(consumedFirstRange.lowerEndpoint() - 1);
+            long offsetToCommit = watermark.map(offset -> offset + 1).orElse(consumedFirstRange.lowerEndpoint());
+            // offsets processed above the first not processed one are passed in metadata, so they could be
+            // skipped after rebalance
+            String metadata = commitMetadataMaxBytes > 0
+                    ? ProcessedOffsetsMetadata.encode(offsetToCommit, processedOffsets.tailRanges(offsetToCommit),
+                            commitMetadataMaxBytes)
+                    : "";
+            if (watermark.isEmpty() && metadata.isEmpty()) {
+                return null;
+            }
+            return new OffsetAndMetadata(offsetToCommit, metadata);
+        } finally {
+            partitionOffsets.unlockWrite(stamp);
         }
     }
 
+    // should be called under the partition write lock
     private void removeProcessedOffsetsFromHeadConsumedOffsets(ConsumedOffsets consumedOffsets, SortedRanges processedOffsets) {
-        synchronized (consumedOffsets) {
-            synchronized (processedOffsets) {
-                for (ClosedRange processedOffset : processedOffsets) {
-                    Optional<ClosedRange> removed = consumedOffsets.removeMaximumHeadRange(processedOffset);
-
-                    if (removed.isEmpty() || removed.get().upperEndpoint() < processedOffset.upperEndpoint()) {
-                        break;
-                    }
+        for (ClosedRange processedOffset : processedOffsets) {
+            Optional<ClosedRange> removed = consumedOffsets.removeMaximumHeadRange(processedOffset);
+
+            if (removed.isEmpty() || removed.get().upperEndpoint() < processedOffset.upperEndpoint()) {
+                break;
+            }
+        }
+    }
+
+    @Override
+    public long getNotProcessedCount(TopicPartition partition) {
+        PartitionOffsets partitionOffsets = partitionOffsetsMap.get(partition);
+        if (partitionOffsets == null) {
+            return 0L;
+        }
+
+        long stamp = partitionOffsets.readLock();
+        try {
+            // processed offsets below the first consumed one are not taken into account, so counts cannot be subtracted
+            long notProcessedCount = 0L;
+            for (ConsumedOffsetRange consumedRange : partitionOffsets.consumedOffsets().getRanges()) {
+                for (ClosedRange missingRange : partitionOffsets.processedOffsets().missingRanges(consumedRange)) {
+                    notProcessedCount += missingRange.size();
                 }
             }
+            return notProcessedCount;
+        } finally {
+            partitionOffsets.unlockRead(stamp);
         }
     }
 
@@ -308,70 +432,61 @@ public class DefaultOffsetsState implements OffsetsState {
     }
 
     private void removeCommitted(TopicPartition partition, OffsetAndMetadata offsetAndMetadata) {
-        ConsumedOffsets consumedOffsets = consumedOffsetsMap.get(partition);
-        SortedRanges processedOffsets = processedOffsetsMap.get(partition);
-        if (consumedOffsets == null || processedOffsets == null) {
+        PartitionOffsets partitionOffsets = partitionOffsetsMap.get(partition);
+        if (partitionOffsets == null) {
             logger.warn("Aborting removeCommitted for partition [{}] (partition probably unregistered)", partition);
             return;
         }
 
-        synchronized (consumedOffsets) {
-            synchronized (processedOffsets) {
-                long maxOffsetToRemove = offsetAndMetadata.offset() - 1;
-                consumedOffsets.removeElementsLowerOrEqual(maxOffsetToRemove);
-                processedOffsets.removeElementsLowerOrEqual(maxOffsetToRemove);
+        long stamp = partitionOffsets.writeLock();
+        try {
+            long maxOffsetToRemove = offsetAndMetadata.offset() - 1;
+            partitionOffsets.consumedOffsets().removeElementsLowerOrEqual(maxOffsetToRemove);
+            partitionOffsets.processedOffsets().removeElementsLowerOrEqual(maxOffsetToRemove);
+            // committed ranges are dropped from the head only (the ones consumed later are dropped once they get there),
+            // so the cost does not depend on the number of ranges in flight
+            Queue<ConsumedOffsetRange> inFlightRanges = partitionOffsets.inFlightRanges();
+            while (!inFlightRanges.isEmpty() && inFlightRanges.peek().upperEndpoint() <= maxOffsetToRemove) {
+                inFlightRanges.poll();
             }
+        } finally {
+            partitionOffsets.unlockWrite(stamp);
         }
 
         computeMetricInfo(partition);
     }
 
+    private static class TimedOutRange {
+
+        private final TopicPartition partition;
+        private final long consumedAtMs;
+        private final List<ClosedRange> notProcessedRanges;
+
+        TimedOutRange(TopicPartition partition, long consumedAtMs, List<ClosedRange> notProcessedRanges) {
+            this.partition = partition;
+            this.consumedAtMs = consumedAtMs;
+            this.notProcessedRanges = notProcessedRanges;
+        }
+    }
+
     public class TopicPartitionMetricInfo {
 
-        private final Instant computedAt = Instant.now();
+        private final long computedAt = clock.millis();
         private final Map<OffsetStatus, Long> offsetStatusCounts;
         private final Map<OffsetStatus, Integer> offsetRangesStatusCounts;
 
         TopicPartitionMetricInfo(TopicPartition partition) {
-            ConsumedOffsets consumedRanges = consumedOffsetsMap.get(partition);
-            SortedRanges processedRanges = processedOffsetsMap.get(partition);
-
-            Object consumedRangesLock = consumedRanges != null ? consumedRanges : new Object();
-            Object processedRangesLock = processedRanges != null ? processedRanges : new Object();
-
-            //noinspection SynchronizationOnLocalVariableOrMethodParameter
-            synchronized (consumedRangesLock) {
-                //noinspection SynchronizationOnLocalVariableOrMethodParameter
-                synchronized (processedRangesLock) {
-                    this.offsetStatusCounts = calculateOffsetStatusCounts(consumedRanges, processedRanges);
-                    this.offsetRangesStatusCounts = calculateOffsetRangesStatusCounts(consumedRanges, processedRanges);
-                }
-            }
-        }
-
-        private Map<OffsetStatus, Integer> calculateOffsetRangesStatusCounts(ConsumedOffsets consumedRanges,
-                                                                             SortedRanges processedOffsetRanges) {
-            return ImmutableMap.of(
-                    CONSUMED, Optional.ofNullable(consumedRanges).map(ConsumedOffsets::size).orElse(0),
-                    PROCESSED, Optional.ofNullable(processedOffsetRanges).map(SortedRanges::size).orElse(0)
+            // counts are read optimistically, so computing metrics does not block acknowledgements
+            PartitionOffsets.Counts counts = Optional.ofNullable(partitionOffsetsMap.get(partition))
+                    .map(PartitionOffsets::getCounts)
+                    .orElse(PartitionOffsets.Counts.EMPTY);
+            this.offsetStatusCounts = ImmutableMap.of(
+                    CONSUMED, counts.consumedOffsetsCount,
+                    PROCESSED, counts.processedOffsetsCount
             );
-        }
-
-        private Map<OffsetStatus, Long> calculateOffsetStatusCounts(ConsumedOffsets consumedRanges,
-                                                                    Collection<ClosedRange> processedRanges) {
-            long consumedOffsetsCount = Optional.ofNullable(consumedRanges)
-                    .map(ConsumedOffsets::getRanges)
-                    .orElse(ImmutableList.of()).stream()
-                        .mapToLong(ConsumedOffsetRange::size)
-                        .sum();
-
-            long processedOffsetsCount = Optional.ofNullable(processedRanges).orElse(ImmutableList.of()).stream()
-                    .mapToLong(ClosedRange::size)
-                    .sum();
-
-            return ImmutableMap.of(
-                CONSUMED, consumedOffsetsCount,
-                PROCESSED, processedOffsetsCount
+            this.offsetRangesStatusCounts = ImmutableMap.of(
+                    CONSUMED, counts.consumedRangesCount,
+                    PROCESSED, counts.processedRangesCount
             );
         }
 
@@ -1,6 +1,7 @@
 package com.rtbhouse.kafka.workers.impl.offsets;
 
 import java.time.Instant;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.kafka.clients.consumer.OffsetAndMetadata;
@@ -15,17 +16,40 @@ public interface OffsetsState extends Partitioned {
         addConsumed(partition, ClosedRange.singleElementRange(offset), consumedAt);
     }
 
-    void addConsumed(TopicPartition partition, ClosedRange range, Instant consumedAt);
+    default void addConsumed(TopicPartition partition, ClosedRange range, Instant consumedAt) {
+        addConsumed(partition, range, consumedAt.toEpochMilli());
+    }
+
+    void addConsumed(TopicPartition partition, ClosedRange range, long consumedAtMs);
 
     default void addConsumed(TopicPartition partition, ClosedRange range) {
-        addConsumed(partition, range, Instant.now());
+        addConsumed(partition, range, System.currentTimeMillis());
+    }
+
+    default void updateProcessed(TopicPartition partition, long offset) {
+        updateProcessed(partition, ClosedRange.singleElementRange(offset));
     }
 
-    void updateProcessed(TopicPartition partition, long offset);
+    void updateProcessed(TopicPartition partition, ClosedRange range);
 
-    void timeoutRecordsConsumedBefore(Instant minConsumedAt);
+    /**
+     * Marks given sorted, disjoint ranges as processed at once: either all of them are updated or (if any of them was
+     * processed or was not consumed before) none of them.
+     */
+    void updateProcessed(TopicPartition partition, List<ClosedRange> ranges);
+
+    default void timeoutRecordsConsumedBefore(Instant minConsumedAt) {
+        timeoutRecordsConsumedBefore(minConsumedAt.toEpochMilli());
+    }
+
+    void timeoutRecordsConsumedBefore(long minConsumedAtMs);
 
     Map<TopicPartition, OffsetAndMetadata> getOffsetsToCommit();
 
+    /**
+     * Returns the number of consumed but not yet processed offsets of given partition (0 for not registered ones).
+     */
+    long getNotProcessedCount(TopicPartition partition);
+
     void removeCommitted(Map<TopicPartition, OffsetAndMetadata> offsetsAndMetadata);
 }
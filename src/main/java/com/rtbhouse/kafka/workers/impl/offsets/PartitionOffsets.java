@@ -0,0 +1,99 @@
+package com.rtbhouse.kafka.workers.impl.offsets;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.locks.StampedLock;
+
+import com.rtbhouse.kafka.workers.impl.offsets.ConsumedOffsets.ConsumedOffsetRange;
+import com.rtbhouse.kafka.workers.impl.range.SortedRanges;
+
+/**
+ * Consumed, in-flight and processed offsets of a single partition guarded by one {@link StampedLock}. Neither
+ * {@link ConsumedOffsets}, {@link SortedRanges} nor the queue of in-flight ranges synchronize internally, so they
+ * should be accessed only between lock and unlock calls. Offsets and ranges counts are refreshed on every write unlock,
+ * so they can be read optimistically (without blocking writers) by {@link #getCounts()}.
+ */
+class PartitionOffsets {
+
+    private final StampedLock lock = new StampedLock();
+
+    private final ConsumedOffsets consumedOffsets = new ConsumedOffsets();
+
+    private final SortedRanges processedOffsets = new SortedRanges();
+
+    // consumed ranges ordered by consumedAt, so timed out ones are found without scanning all of them (committed and
+    // processed ones are dropped once they get to the head)
+    private final Queue<ConsumedOffsetRange> inFlightRanges = new PriorityQueue<>(
+            Comparator.comparingLong(ConsumedOffsetRange::getConsumedAtMs));
+
+    private long consumedOffsetsCount;
+    private int consumedRangesCount;
+    private long processedOffsetsCount;
+    private int processedRangesCount;
+
+    ConsumedOffsets consumedOffsets() {
+        return consumedOffsets;
+    }
+
+    SortedRanges processedOffsets() {
+        return processedOffsets;
+    }
+
+    Queue<ConsumedOffsetRange> inFlightRanges() {
+        return inFlightRanges;
+    }
+
+    long writeLock() {
+        return lock.writeLock();
+    }
+
+    void unlockWrite(long stamp) {
+        consumedOffsetsCount = consumedOffsets.elementsCount();
+        consumedRangesCount = consumedOffsets.size();
+        processedOffsetsCount = processedOffsets.elementsCount();
+        processedRangesCount = processedOffsets.size();
+        lock.unlockWrite(stamp);
+    }
+
+    long readLock() {
+        return lock.readLock();
+    }
+
+    void unlockRead(long stamp) {
+        lock.unlockRead(stamp);
+    }
+
+    Counts getCounts() {
+        long stamp = lock.tryOptimisticRead();
+        Counts counts = new Counts(consumedOffsetsCount, consumedRangesCount, processedOffsetsCount,
+                processedRangesCount);
+        if (lock.validate(stamp)) {
+            return counts;
+        }
+
+        stamp = lock.readLock();
+        try {
+            return new Counts(consumedOffsetsCount, consumedRangesCount, processedOffsetsCount, processedRangesCount);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    static class Counts {
+
+        static final Counts EMPTY = new Counts(0L, 0, 0L, 0);
+
+        final long consumedOffsetsCount;
+        final int consumedRangesCount;
+        final long processedOffsetsCount;
+        final int processedRangesCount;
+
+        Counts(long consumedOffsetsCount, int consumedRangesCount, long processedOffsetsCount, int processedRangesCount) {
+            this.consumedOffsetsCount = consumedOffsetsCount;
+            this.consumedRangesCount = consumedRangesCount;
+            this.processedOffsetsCount = processedOffsetsCount;
+            this.processedRangesCount = processedRangesCount;
+        }
+    }
+}
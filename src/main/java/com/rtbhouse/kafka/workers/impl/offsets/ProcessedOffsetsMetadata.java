@@ -0,0 +1,77 @@
+package com.rtbhouse.kafka.workers.impl.offsets;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.rtbhouse.kafka.workers.impl.range.ClosedRange.range;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.ImmutableList;
+import com.rtbhouse.kafka.workers.impl.range.ClosedRange;
+
+/**
+ * Encodes offsets processed out of order (above committed offset) into {@code OffsetAndMetadata.metadata()} so they
+ * could be skipped by the next owner of the partition.
+ * <p>
+ * Format: {@code "kw1:" gap "." length ("," gap "." length)*}, where gap is the distance from the end of the previous
+ * range (committed offset for the first one) and both numbers are base 36 encoded. Ranges which do not fit into the
+ * size limit are dropped (they will be reprocessed, as it was without metadata).
+ */
+public final class ProcessedOffsetsMetadata {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProcessedOffsetsMetadata.class);
+
+    static final String PREFIX = "kw1:";
+
+    private static final int RADIX = Character.MAX_RADIX;
+
+    private ProcessedOffsetsMetadata() {
+    }
+
+    public static String encode(long committedOffset, Iterable<ClosedRange> processedRanges, int maxBytes) {
+        StringBuilder builder = new StringBuilder(PREFIX);
+        long nextOffset = committedOffset;
+        for (ClosedRange processedRange : processedRanges) {
+            checkArgument(processedRange.lowerEndpoint() >= nextOffset,
+                    "ranges should be sorted and above committed offset [%s]: %s", committedOffset, processedRange);
+            String entry = (builder.length() > PREFIX.length() ? "," : "")
+                    + Long.toString(processedRange.lowerEndpoint() - nextOffset, RADIX)
+                    + "."
+                    + Long.toString(processedRange.size(), RADIX);
+            // metadata is ASCII only so its length in chars equals its length in bytes
+            if (builder.length() + entry.length() > maxBytes) {
+                break;
+            }
+            builder.append(entry);
+            nextOffset = processedRange.upperEndpoint() + 1;
+        }
+        return builder.length() > PREFIX.length() ? builder.toString() : "";
+    }
+
+    public static List<ClosedRange> decode(long committedOffset, String metadata) {
+        if (metadata == null || !metadata.startsWith(PREFIX) || metadata.length() == PREFIX.length()) {
+            return ImmutableList.of();
+        }
+
+        ImmutableList.Builder<ClosedRange> builder = ImmutableList.builder();
+        long nextOffset = committedOffset;
+        try {
+            for (String entry : metadata.substring(PREFIX.length()).split(",")) {
+                int separator = entry.indexOf('.');
+                long gap = Long.parseLong(entry.substring(0, separator), RADIX);
+                long length = Long.parseLong(entry.substring(separator + 1), RADIX);
+                checkArgument(gap >= 0 && length > 0, "bad entry: %s", entry);
+                long lowerEndpoint = nextOffset + gap;
+                builder.add(range(lowerEndpoint, lowerEndpoint + length - 1));
+                nextOffset = lowerEndpoint + length;
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Ignoring malformed processed offsets metadata [{}] for committed offset [{}]",
+                    metadata, committedOffset, e);
+            return ImmutableList.of();
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,100 @@
+package com.rtbhouse.kafka.workers.impl.partitioner;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rtbhouse.kafka.workers.api.WorkersConfig;
+import com.rtbhouse.kafka.workers.api.partitioner.ElasticWorkerPartitioner;
+import com.rtbhouse.kafka.workers.impl.clock.WorkersClock;
+import com.rtbhouse.kafka.workers.impl.offsets.OffsetsState;
+
+/**
+ * Decides when subpartitions count of partitions should be changed for {@link ElasticWorkerPartitioner}. It is used
+ * only by the consumer thread, so it is not thread-safe.
+ * <p>
+ * The count is raised to its maximum when consumer lag or the number of consumed but not processed offsets (backlog)
+ * of a partition reaches its threshold. It is lowered back to the minimum when the sum of both drops to the scale
+ * down threshold. A partition whose count should be changed has to be paused and resized only after all its consumed
+ * offsets are processed (drained), so records with the same key are never processed concurrently by old and new
+ * subpartitions.
+ */
+public class ElasticSubpartitionsController<K, V> {
+
+    private static final Logger logger = LoggerFactory.getLogger(ElasticSubpartitionsController.class);
+
+    private final ElasticWorkerPartitioner<K, V> partitioner;
+    private final SubpartitionSupplier<K, V> subpartitionSupplier;
+    private final OffsetsState offsetsState;
+    private final WorkersClock clock;
+
+    private final long checkIntervalMs;
+    private final long scaleUpLag;
+    private final long scaleUpBacklog;
+    private final long scaleDownLag;
+
+    private long checkTime;
+
+    public ElasticSubpartitionsController(
+            WorkersConfig config,
+            ElasticWorkerPartitioner<K, V> partitioner,
+            SubpartitionSupplier<K, V> subpartitionSupplier,
+            OffsetsState offsetsState,
+            WorkersClock clock) {
+        this.partitioner = partitioner;
+        this.subpartitionSupplier = subpartitionSupplier;
+        this.offsetsState = offsetsState;
+        this.clock = clock;
+        this.checkIntervalMs = config.getElasticSubpartitionsCheckIntervalMs();
+        this.scaleUpLag = config.getElasticSubpartitionsScaleUpLag();
+        this.scaleUpBacklog = config.getElasticSubpartitionsScaleUpBacklog();
+        this.scaleDownLag = config.getElasticSubpartitionsScaleDownLag();
+        this.checkTime = clock.millis();
+    }
+
+    public boolean shouldCheckNow() {
+        long currentTime = clock.millis();
+        if (currentTime - checkTime > checkIntervalMs) {
+            checkTime = currentTime;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns partitions whose subpartitions count should be changed with their target counts. Lags are the ones cached
+     * by the consumer (so checking them does not send any requests), partitions without known lag are not given.
+     */
+    public Map<TopicPartition, Integer> partitionsToResize(Map<TopicPartition, Long> lags) {
+        Map<TopicPartition, Integer> partitionsToResize = new LinkedHashMap<>();
+        lags.forEach((partition, lag) -> {
+            int count = subpartitionSupplier.registeredSubpartitions(partition).baseCount();
+            int targetCount = targetCount(partition, count, Math.max(0L, lag),
+                    offsetsState.getNotProcessedCount(partition));
+            if (targetCount != count) {
+                partitionsToResize.put(partition, targetCount);
+            }
+        });
+        return partitionsToResize;
+    }
+
+    private int targetCount(TopicPartition partition, int count, long lag, long backlog) {
+        int minCount = partitioner.count(partition);
+        int maxCount = partitioner.maxCount(partition);
+        if (count < maxCount && (lag >= scaleUpLag || backlog >= scaleUpBacklog)) {
+            logger.info("partition: {} lags behind (lag: {}, backlog: {}), subpartitions count: {} -> {}",
+                    partition, lag, backlog, count, maxCount);
+            return maxCount;
+        }
+        if (count > minCount && lag + backlog <= scaleDownLag) {
+            logger.info("partition: {} caught up (lag: {}, backlog: {}), subpartitions count: {} -> {}",
+                    partition, lag, backlog, count, minCount);
+            return minCount;
+        }
+        return count;
+    }
+
+}
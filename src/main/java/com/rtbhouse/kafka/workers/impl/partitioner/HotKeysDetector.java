@@ -0,0 +1,134 @@
+package com.rtbhouse.kafka.workers.impl.partitioner;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rtbhouse.kafka.workers.api.WorkersConfig;
+import com.rtbhouse.kafka.workers.impl.Partitioned;
+import com.rtbhouse.kafka.workers.impl.clock.WorkersClock;
+import com.rtbhouse.kafka.workers.impl.metrics.WorkersMetrics;
+
+/**
+ * Keeps {@link SpaceSavingSketch} of record keys for every registered partition and reports keys whose share of the
+ * partition's records is at least {@code hot.keys.min.share} as hot. Sketches are evaluated and decayed once per
+ * {@code hot.keys.window.ms}. Used only by the consumer thread, so it is not thread-safe.
+ * <p>
+ * When hot keys subpartitions are enabled, it also determines which keys should be routed to them. A key stops being
+ * routed when its share drops below half of the minimum one, so routing does not change back and forth for keys close
+ * to the threshold (every change requires the partition to be drained).
+ */
+public class HotKeysDetector<K, V> implements Partitioned {
+
+    private static final Logger logger = LoggerFactory.getLogger(HotKeysDetector.class);
+
+    private final WorkersMetrics metrics;
+    private final SubpartitionSupplier<K, V> subpartitionSupplier;
+    private final WorkersClock clock;
+
+    private final int sketchCapacity;
+    private final double minShare;
+    private final long windowMs;
+
+    private final Map<TopicPartition, SpaceSavingSketch> sketches = new HashMap<>();
+
+    private long windowTime;
+
+    public HotKeysDetector(
+            WorkersConfig config,
+            WorkersMetrics metrics,
+            SubpartitionSupplier<K, V> subpartitionSupplier,
+            WorkersClock clock) {
+        this.metrics = metrics;
+        this.subpartitionSupplier = subpartitionSupplier;
+        this.clock = clock;
+        this.sketchCapacity = config.getHotKeysSketchCapacity();
+        this.minShare = config.getHotKeysMinShare();
+        this.windowMs = config.getHotKeysWindowMs();
+        this.windowTime = clock.millis();
+    }
+
+    @Override
+    public void register(Collection<TopicPartition> partitions) {
+        for (TopicPartition partition : partitions) {
+            sketches.put(partition, new SpaceSavingSketch(sketchCapacity));
+            metrics.addHotKeysMetrics(partition);
+        }
+    }
+
+    @Override
+    public void unregister(Collection<TopicPartition> partitions) {
+        for (TopicPartition partition : partitions) {
+            sketches.remove(partition);
+            metrics.removeHotKeysMetrics(partition);
+        }
+    }
+
+    /**
+     * Returns sketch of the given partition which should be offered key hashes of all its consumed records.
+     */
+    public SpaceSavingSketch sketch(TopicPartition partition) {
+        return sketches.get(partition);
+    }
+
+    public boolean shouldCheckNow() {
+        long currentTime = clock.millis();
+        if (currentTime - windowTime > windowMs) {
+            windowTime = currentTime;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Records hot keys metrics, decays sketches and returns partitions (except the skipped ones) whose hot keys routing
+     * should be changed with key hashes to route.
+     */
+    public Map<TopicPartition, int[]> hotKeysToRoute(Set<TopicPartition> skippedPartitions) {
+        Map<TopicPartition, int[]> hotKeysToRoute = new LinkedHashMap<>();
+        sketches.forEach((partition, sketch) -> {
+            int[] heavyHitters = sketch.heavyHitters(minShare);
+            metrics.recordSensor(WorkersMetrics.HOT_KEYS_COUNT_METRIC, partition, heavyHitters.length);
+            metrics.recordSensor(WorkersMetrics.HOT_KEYS_MAX_SHARE_METRIC, partition, sketch.maxShare());
+
+            if (subpartitionSupplier.hotKeysSubpartitions() > 0 && !skippedPartitions.contains(partition)) {
+                int[] routedKeys = subpartitionSupplier.registeredSubpartitions(partition).hotKeys();
+                int[] hotKeys = hotKeys(sketch, routedKeys, heavyHitters);
+                if (!sameKeys(routedKeys, hotKeys)) {
+                    logger.info("partition: {} hot keys changed: {} -> {}", partition,
+                            Arrays.toString(routedKeys), Arrays.toString(hotKeys));
+                    hotKeysToRoute.put(partition, hotKeys);
+                }
+                metrics.recordSensor(WorkersMetrics.HOT_KEYS_ROUTED_METRIC, partition, routedKeys.length);
+            }
+            sketch.decay();
+        });
+        return hotKeysToRoute;
+    }
+
+    private int[] hotKeys(SpaceSavingSketch sketch, int[] routedKeys, int[] heavyHitters) {
+        // already routed keys keep their positions (and subpartitions) as long as they are hot enough
+        IntStream stillHotKeys = Arrays.stream(routedKeys)
+                .filter(key -> sketch.share(key) >= minShare / 2);
+        IntStream newHotKeys = Arrays.stream(heavyHitters)
+                .filter(key -> Arrays.stream(routedKeys).noneMatch(routedKey -> routedKey == key));
+        return IntStream.concat(stillHotKeys, newHotKeys).toArray();
+    }
+
+    private static boolean sameKeys(int[] keys1, int[] keys2) {
+        int[] sortedKeys1 = keys1.clone();
+        int[] sortedKeys2 = keys2.clone();
+        Arrays.sort(sortedKeys1);
+        Arrays.sort(sortedKeys2);
+        return Arrays.equals(sortedKeys1, sortedKeys2);
+    }
+
+}
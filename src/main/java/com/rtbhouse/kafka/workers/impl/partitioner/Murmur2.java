@@ -0,0 +1,236 @@
+package com.rtbhouse.kafka.workers.impl.partitioner;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Allocation-free variants of the 32-bit murmur2 hash used by Kafka (see
+ * {@link org.apache.kafka.common.utils.Utils#murmur2(byte[])}). For the default seed all of them return exactly the
+ * same values as Kafka's implementation does for the equivalent byte array.
+ */
+public final class Murmur2 {
+
+    public static final int DEFAULT_SEED = 0x9747b28c;
+
+    private static final int M = 0x5bd1e995;
+    private static final int R = 24;
+
+    private Murmur2() {
+    }
+
+    public static int hash(byte[] data, int seed) {
+        return hash(data, 0, data.length, seed);
+    }
+
+    public static int hash(byte[] data, int offset, int length, int seed) {
+        int h = seed ^ length;
+        int end = offset + (length & ~3);
+        for (int i = offset; i < end; i += 4) {
+            int k = (data[i] & 0xff)
+                    + ((data[i + 1] & 0xff) << 8)
+                    + ((data[i + 2] & 0xff) << 16)
+                    + ((data[i + 3] & 0xff) << 24);
+            h = mix(h, k);
+        }
+
+        switch (length & 3) {
+            case 3:
+                h ^= (data[end + 2] & 0xff) << 16;
+            case 2:
+                h ^= (data[end + 1] & 0xff) << 8;
+            case 1:
+                h ^= data[end] & 0xff;
+                h *= M;
+            default:
+        }
+
+        return finish(h);
+    }
+
+    /**
+     * Hashes remaining bytes of the given buffer without changing its position.
+     */
+    public static int hash(ByteBuffer buffer, int seed) {
+        if (buffer.hasArray()) {
+            return hash(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining(), seed);
+        }
+
+        int length = buffer.remaining();
+        int h = seed ^ length;
+        int start = buffer.position();
+        int end = start + (length & ~3);
+        for (int i = start; i < end; i += 4) {
+            int k = (buffer.get(i) & 0xff)
+                    + ((buffer.get(i + 1) & 0xff) << 8)
+                    + ((buffer.get(i + 2) & 0xff) << 16)
+                    + ((buffer.get(i + 3) & 0xff) << 24);
+            h = mix(h, k);
+        }
+
+        switch (length & 3) {
+            case 3:
+                h ^= (buffer.get(end + 2) & 0xff) << 16;
+            case 2:
+                h ^= (buffer.get(end + 1) & 0xff) << 8;
+            case 1:
+                h ^= buffer.get(end) & 0xff;
+                h *= M;
+            default:
+        }
+
+        return finish(h);
+    }
+
+    /**
+     * Returns the same value as {@code Utils.murmur2((value + ":" + number).getBytes(UTF_8))} but encodes the string
+     * on the fly instead of building it.
+     */
+    public static int hashUtf8WithSuffix(CharSequence value, int number) {
+        int numberLength = decimalLength(number);
+        int length = utf8Length(value) + 1 + numberLength;
+
+        // bytes are packed into the word little-endian, the word is mixed when it is full
+        int h = DEFAULT_SEED ^ length;
+        int word = 0;
+        int wordBytes = 0;
+
+        int charsLength = value.length();
+        for (int i = 0; i < charsLength; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                word |= c << (wordBytes << 3);
+                if (++wordBytes == 4) {
+                    h = mix(h, word);
+                    word = 0;
+                    wordBytes = 0;
+                }
+                continue;
+            }
+
+            int codePoint;
+            int encodedLength;
+            if (c < 0x800) {
+                codePoint = c;
+                encodedLength = 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < charsLength
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                codePoint = Character.toCodePoint(c, value.charAt(++i));
+                encodedLength = 4;
+            } else if (Character.isSurrogate(c)) {
+                // unpaired surrogates are replaced by '?' as String.getBytes() does
+                codePoint = '?';
+                encodedLength = 1;
+            } else {
+                codePoint = c;
+                encodedLength = 3;
+            }
+
+            for (int j = 0; j < encodedLength; j++) {
+                word |= utf8Byte(codePoint, encodedLength, j) << (wordBytes << 3);
+                if (++wordBytes == 4) {
+                    h = mix(h, word);
+                    word = 0;
+                    wordBytes = 0;
+                }
+            }
+        }
+
+        word |= ':' << (wordBytes << 3);
+        if (++wordBytes == 4) {
+            h = mix(h, word);
+            word = 0;
+            wordBytes = 0;
+        }
+
+        long remaining = number;
+        if (remaining < 0) {
+            word |= '-' << (wordBytes << 3);
+            if (++wordBytes == 4) {
+                h = mix(h, word);
+                word = 0;
+                wordBytes = 0;
+            }
+            remaining = -remaining;
+        }
+        for (long divisor = tenToThePowerOf(decimalLength(remaining) - 1); divisor > 0; divisor /= 10) {
+            word |= ('0' + (int) (remaining / divisor % 10)) << (wordBytes << 3);
+            if (++wordBytes == 4) {
+                h = mix(h, word);
+                word = 0;
+                wordBytes = 0;
+            }
+        }
+
+        if (wordBytes > 0) {
+            h ^= word;
+            h *= M;
+        }
+
+        return finish(h);
+    }
+
+    private static int mix(int h, int k) {
+        k *= M;
+        k ^= k >>> R;
+        k *= M;
+        h *= M;
+        h ^= k;
+        return h;
+    }
+
+    private static int finish(int h) {
+        h ^= h >>> 13;
+        h *= M;
+        h ^= h >>> 15;
+        return h;
+    }
+
+    private static int utf8Byte(int codePoint, int encodedLength, int index) {
+        if (encodedLength == 1) {
+            return codePoint;
+        }
+        int shift = 6 * (encodedLength - 1 - index);
+        if (index == 0) {
+            int prefix = (0xff00 >> encodedLength) & 0xff;
+            return prefix | (codePoint >> shift);
+        }
+        return 0x80 | ((codePoint >> shift) & 0x3f);
+    }
+
+    private static int utf8Length(CharSequence value) {
+        int charsLength = value.length();
+        int length = 0;
+        for (int i = 0; i < charsLength; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < charsLength
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length += 1;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static int decimalLength(long number) {
+        int length = number < 0 ? 2 : 1;
+        for (long remaining = Math.abs(number) / 10; remaining > 0; remaining /= 10) {
+            length++;
+        }
+        return length;
+    }
+
+    private static long tenToThePowerOf(int exponent) {
+        long result = 1;
+        for (int i = 0; i < exponent; i++) {
+            result *= 10;
+        }
+        return result;
+    }
+}
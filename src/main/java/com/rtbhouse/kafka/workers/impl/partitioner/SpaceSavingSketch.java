@@ -0,0 +1,207 @@
+package com.rtbhouse.kafka.workers.impl.partitioner;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Space-Saving heavy hitters sketch (Metwally et al.) of 32-bit key hashes. It keeps at most {@code capacity}
+ * counters in a min-heap indexed by an open addressing hash table, so every update takes O(log capacity) time and
+ * does not allocate. A key not tracked yet replaces the least frequent one and inherits its count as the maximum
+ * overestimation error, which guarantees that every key with frequency above {@code total / capacity} is tracked.
+ * <p>
+ * Counts could be halved by {@link #decay()}, so the sketch follows recent traffic. Not thread-safe.
+ */
+public class SpaceSavingSketch {
+
+    private static final int EMPTY = -1;
+
+    private final int capacity;
+
+    // min-heap ordered by counts
+    private final int[] keys;
+    private final long[] counts;
+    private final long[] errors;
+    private int size;
+    private long total;
+
+    // key hash -> heap position, linear probing with twice the capacity of slots
+    private final int[] slotKeys;
+    private final int[] slotPositions;
+    private final int slotsMask;
+
+    public SpaceSavingSketch(int capacity) {
+        checkArgument(capacity > 0, "capacity [%s] has to be positive", capacity);
+        this.capacity = capacity;
+        this.keys = new int[capacity];
+        this.counts = new long[capacity];
+        this.errors = new long[capacity];
+        int slots = Integer.highestOneBit(capacity) << 2;
+        this.slotKeys = new int[slots];
+        this.slotPositions = new int[slots];
+        this.slotsMask = slots - 1;
+        Arrays.fill(slotPositions, EMPTY);
+    }
+
+    public void offer(int key) {
+        total++;
+        int slot = findSlot(key);
+        int position = slotPositions[slot];
+        if (position != EMPTY) {
+            counts[position]++;
+            siftDown(position);
+        } else if (size < capacity) {
+            position = size++;
+            keys[position] = key;
+            counts[position] = 1L;
+            errors[position] = 0L;
+            putSlot(slot, key, position);
+            siftUp(position);
+        } else {
+            // the least frequent key is replaced, its count is the upper bound of the new key's error
+            removeSlot(keys[0]);
+            keys[0] = key;
+            errors[0] = counts[0];
+            counts[0]++;
+            putSlot(findSlot(key), key, 0);
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Halves all counts, so older records weigh less than recent ones.
+     */
+    public void decay() {
+        total >>>= 1;
+        for (int position = 0; position < size; position++) {
+            // halving keeps the heap order
+            counts[position] >>>= 1;
+            errors[position] >>>= 1;
+        }
+    }
+
+    public long total() {
+        return total;
+    }
+
+    /**
+     * Returns hashes of keys whose guaranteed share (count decreased by its error) is at least {@code minShare}, the
+     * most frequent ones first.
+     */
+    public int[] heavyHitters(double minShare) {
+        long minCount = (long) Math.ceil(minShare * total);
+        return Arrays.stream(positionsByCount())
+                .filter(position -> total > 0 && guaranteedCount(position) >= Math.max(1L, minCount))
+                .map(position -> keys[position])
+                .toArray();
+    }
+
+    /**
+     * Returns the guaranteed share of the given key (0 if it is not tracked).
+     */
+    public double share(int key) {
+        int position = slotPositions[findSlot(key)];
+        return position == EMPTY || total == 0 ? 0.0 : (double) guaranteedCount(position) / total;
+    }
+
+    public double maxShare() {
+        double maxShare = 0.0;
+        for (int position = 0; position < size; position++) {
+            maxShare = Math.max(maxShare, total == 0 ? 0.0 : (double) guaranteedCount(position) / total);
+        }
+        return maxShare;
+    }
+
+    private long guaranteedCount(int position) {
+        return counts[position] - errors[position];
+    }
+
+    private int[] positionsByCount() {
+        return IntStream.range(0, size)
+                .boxed()
+                .sorted((position1, position2) -> Long.compare(guaranteedCount(position2), guaranteedCount(position1)))
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    private void siftUp(int position) {
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (counts[parent] <= counts[position]) {
+                break;
+            }
+            swap(position, parent);
+            position = parent;
+        }
+    }
+
+    private void siftDown(int position) {
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && counts[child + 1] < counts[child]) {
+                child++;
+            }
+            if (counts[position] <= counts[child]) {
+                break;
+            }
+            swap(position, child);
+            position = child;
+        }
+    }
+
+    private void swap(int position1, int position2) {
+        int key1 = keys[position1];
+        long count1 = counts[position1];
+        long error1 = errors[position1];
+        keys[position1] = keys[position2];
+        counts[position1] = counts[position2];
+        errors[position1] = errors[position2];
+        keys[position2] = key1;
+        counts[position2] = count1;
+        errors[position2] = error1;
+        slotPositions[findSlot(keys[position1])] = position1;
+        slotPositions[findSlot(keys[position2])] = position2;
+    }
+
+    // returns the slot of the given key or the empty slot where it should be put
+    private int findSlot(int key) {
+        int slot = mix(key) & slotsMask;
+        while (slotPositions[slot] != EMPTY && slotKeys[slot] != key) {
+            slot = (slot + 1) & slotsMask;
+        }
+        return slot;
+    }
+
+    private void putSlot(int slot, int key, int position) {
+        slotKeys[slot] = key;
+        slotPositions[slot] = position;
+    }
+
+    private void removeSlot(int key) {
+        int slot = findSlot(key);
+        slotPositions[slot] = EMPTY;
+        // following entries of the cluster are shifted back, so lookups never stop at the removed slot
+        int next = (slot + 1) & slotsMask;
+        while (slotPositions[next] != EMPTY) {
+            int ideal = mix(slotKeys[next]) & slotsMask;
+            if (((next - ideal) & slotsMask) >= ((next - slot) & slotsMask)) {
+                slotKeys[slot] = slotKeys[next];
+                slotPositions[slot] = slotPositions[next];
+                slotPositions[next] = EMPTY;
+                slot = next;
+            }
+            next = (next + 1) & slotsMask;
+        }
+    }
+
+    private static int mix(int key) {
+        // keys are hashes already, but their low bits could be biased (e.g. String.hashCode())
+        int h = key * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+}
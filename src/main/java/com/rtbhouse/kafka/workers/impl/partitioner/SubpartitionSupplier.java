@@ -1,25 +1,170 @@
 package com.rtbhouse.kafka.workers.impl.partitioner;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
 import static com.rtbhouse.kafka.workers.impl.pool.TopicPartitionPool.getTopicPartition;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.utils.Bytes;
 
+import com.rtbhouse.kafka.workers.api.partitioner.ElasticWorkerPartitioner;
 import com.rtbhouse.kafka.workers.api.partitioner.WorkerPartitioner;
 import com.rtbhouse.kafka.workers.api.partitioner.WorkerSubpartition;
+import com.rtbhouse.kafka.workers.impl.Partitioned;
 import com.rtbhouse.kafka.workers.impl.errors.BadSubpartitionException;
 
-public class SubpartitionSupplier<K, V> {
+/**
+ * Besides determining subpartitions with {@link WorkerPartitioner} it assigns dense integer ids to all subpartitions
+ * of registered partitions. Ids are reused after partitions are unregistered, so they could be used as indexes of
+ * arrays (queues, tasks etc.) instead of map lookups for every record.
+ * <p>
+ * Subpartitions count of a registered partition could be changed by {@link #resize(TopicPartition, int)} when
+ * {@link ElasticWorkerPartitioner} is used.
+ * <p>
+ * Optionally every partition gets additional subpartitions (following the ones given by {@link WorkerPartitioner})
+ * dedicated to hot keys set by {@link #routeHotKeys(TopicPartition, int[])}, so records of the most frequent keys do
+ * not share queues with other ones.
+ */
+public class SubpartitionSupplier<K, V> implements Partitioned {
+
+    private static final int[] NO_HOT_KEYS = new int[0];
 
     private final WorkerPartitioner<K, V> partitioner;
 
+    // not null only for elastic partitioners which are given the current subpartitions count
+    private final ElasticWorkerPartitioner<K, V> elasticPartitioner;
+
+    private final int hotKeysSubpartitions;
+
+    private final Map<TopicPartition, RegisteredSubpartitions> registered = new ConcurrentHashMap<>();
+
+    private final BitSet usedIds = new BitSet();
+
+    private volatile WorkerSubpartition[] subpartitionsById = new WorkerSubpartition[0];
+
     public SubpartitionSupplier(WorkerPartitioner<K, V> partitioner) {
+        this(partitioner, 0);
+    }
+
+    public SubpartitionSupplier(WorkerPartitioner<K, V> partitioner, int hotKeysSubpartitions) {
+        checkArgument(hotKeysSubpartitions >= 0, "hotKeysSubpartitions [%s] cannot be negative", hotKeysSubpartitions);
         this.partitioner = partitioner;
+        this.hotKeysSubpartitions = hotKeysSubpartitions;
+        this.elasticPartitioner = partitioner instanceof ElasticWorkerPartitioner
+                ? (ElasticWorkerPartitioner<K, V>) partitioner
+                : null;
+    }
+
+    @Override
+    public synchronized void register(Collection<TopicPartition> topicPartitions) {
+        WorkerSubpartition[] newSubpartitionsById = subpartitionsById.clone();
+        for (TopicPartition topicPartition : topicPartitions) {
+            if (registered.containsKey(topicPartition)) {
+                // already assigned ids are kept
+                continue;
+            }
+            newSubpartitionsById = register(topicPartition, partitioner.count(topicPartition), NO_HOT_KEYS,
+                    newSubpartitionsById);
+        }
+        subpartitionsById = newSubpartitionsById;
+    }
+
+    private WorkerSubpartition[] register(TopicPartition topicPartition, int baseCount, int[] hotKeys,
+            WorkerSubpartition[] newSubpartitionsById) {
+        int count = baseCount + hotKeysSubpartitions;
+        WorkerSubpartition[] subpartitions = new WorkerSubpartition[count];
+        int[] ids = new int[count];
+        for (int subpartition = 0; subpartition < count; subpartition++) {
+            int id = usedIds.nextClearBit(0);
+            usedIds.set(id);
+            if (id >= newSubpartitionsById.length) {
+                newSubpartitionsById = Arrays.copyOf(newSubpartitionsById, Math.max(id + 1, 2 * newSubpartitionsById.length));
+            }
+            subpartitions[subpartition] = WorkerSubpartition.getInstance(topicPartition, subpartition);
+            ids[subpartition] = id;
+            newSubpartitionsById[id] = subpartitions[subpartition];
+        }
+        registered.put(topicPartition, new RegisteredSubpartitions(subpartitions, ids, baseCount, hotKeys));
+        return newSubpartitionsById;
+    }
+
+    @Override
+    public synchronized void unregister(Collection<TopicPartition> topicPartitions) {
+        WorkerSubpartition[] newSubpartitionsById = subpartitionsById.clone();
+        for (TopicPartition topicPartition : topicPartitions) {
+            unregister(topicPartition, newSubpartitionsById);
+        }
+        subpartitionsById = newSubpartitionsById;
+    }
+
+    private void unregister(TopicPartition topicPartition, WorkerSubpartition[] newSubpartitionsById) {
+        RegisteredSubpartitions subpartitions = registered.remove(topicPartition);
+        if (subpartitions != null) {
+            for (int id : subpartitions.ids) {
+                usedIds.clear(id);
+                newSubpartitionsById[id] = null;
+            }
+        }
+    }
+
+    /**
+     * Changes subpartitions count of a registered partition. Ids of its previous subpartitions are released (and could
+     * be reused), so queues and tasks of the partition have to be unregistered before and registered again after.
+     */
+    public synchronized void resize(TopicPartition topicPartition, int count) {
+        checkState(elasticPartitioner != null, "partitioner [%s] is not elastic", partitioner);
+        checkState(registered.containsKey(topicPartition), "partition [%s] is not registered", topicPartition);
+        checkState(count > 0 && count <= elasticPartitioner.maxCount(topicPartition),
+                "invalid subpartitions count [%s] for partition [%s]", count, topicPartition);
+        int[] hotKeys = registered.get(topicPartition).hotKeys;
+        WorkerSubpartition[] newSubpartitionsById = subpartitionsById.clone();
+        unregister(topicPartition, newSubpartitionsById);
+        subpartitionsById = register(topicPartition, count, hotKeys, newSubpartitionsById);
+    }
+
+    /**
+     * Routes records with given key hashes (see {@link #keyHash(Object)}) of a registered partition to its hot keys
+     * subpartitions (i-th key to (i mod hot keys subpartitions)-th one). Similarly to resizing, it should be done only
+     * when all consumed records of the partition are processed.
+     */
+    public synchronized void routeHotKeys(TopicPartition topicPartition, int[] hotKeys) {
+        checkState(hotKeysSubpartitions > 0, "hot keys subpartitions are disabled");
+        RegisteredSubpartitions subpartitions = registeredSubpartitions(topicPartition);
+        registered.put(topicPartition, new RegisteredSubpartitions(subpartitions.subpartitions, subpartitions.ids,
+                subpartitions.baseCount, hotKeys.clone()));
+    }
+
+    public int hotKeysSubpartitions() {
+        return hotKeysSubpartitions;
+    }
+
+    /**
+     * Hash of a record key used to detect and route hot keys. Serialized keys are hashed by their content.
+     */
+    public static int keyHash(Object key) {
+        if (key instanceof byte[]) {
+            return Murmur2.hash((byte[]) key, Murmur2.DEFAULT_SEED);
+        } else if (key instanceof Bytes) {
+            return Murmur2.hash(((Bytes) key).get(), Murmur2.DEFAULT_SEED);
+        } else if (key instanceof ByteBuffer) {
+            return Murmur2.hash((ByteBuffer) key, Murmur2.DEFAULT_SEED);
+        }
+        return key.hashCode();
+    }
+
+    public Optional<ElasticWorkerPartitioner<K, V>> elasticPartitioner() {
+        return Optional.ofNullable(elasticPartitioner);
     }
 
     public WorkerSubpartition subpartition(ConsumerRecord<K, V> record) {
@@ -32,6 +177,54 @@ public class SubpartitionSupplier<K, V> {
         return WorkerSubpartition.getInstance(topicPartition, subpartition);
     }
 
+    /**
+     * Returns id of the subpartition determined for given record of a registered partition without any lookups.
+     */
+    public int subpartitionId(RegisteredSubpartitions subpartitions, ConsumerRecord<K, V> record) {
+        int subpartition = elasticPartitioner != null
+                ? elasticPartitioner.subpartition(record, subpartitions.baseCount)
+                : partitioner.subpartition(record);
+        if (subpartition < 0 || subpartition >= subpartitions.baseCount) {
+            throw new BadSubpartitionException("Invalid subpartition: " + subpartition);
+        }
+        return subpartitions.ids[subpartition];
+    }
+
+    /**
+     * Returns id of the subpartition for given record whose key hash is already computed, records with hot keys are
+     * routed to dedicated subpartitions.
+     */
+    public int subpartitionId(RegisteredSubpartitions subpartitions, ConsumerRecord<K, V> record, int keyHash) {
+        int[] hotKeys = subpartitions.hotKeys;
+        for (int i = 0; i < hotKeys.length; i++) {
+            if (hotKeys[i] == keyHash) {
+                return subpartitions.ids[subpartitions.baseCount + i % hotKeysSubpartitions];
+            }
+        }
+        return subpartitionId(subpartitions, record);
+    }
+
+    public RegisteredSubpartitions registeredSubpartitions(TopicPartition topicPartition) {
+        RegisteredSubpartitions subpartitions = registered.get(topicPartition);
+        checkState(subpartitions != null, "partition [%s] is not registered", topicPartition);
+        return subpartitions;
+    }
+
+    public int subpartitionId(WorkerSubpartition subpartition) {
+        return registeredSubpartitions(subpartition.topicPartition()).ids[subpartition.subpartition()];
+    }
+
+    public WorkerSubpartition subpartition(int id) {
+        return subpartitionsById[id];
+    }
+
+    /**
+     * Returns upper bound (exclusive) of ids of all registered subpartitions.
+     */
+    public int maxSubpartitionsCount() {
+        return subpartitionsById.length;
+    }
+
     public List<WorkerSubpartition> subpartitions(TopicPartition topicPartition) {
         return subpartitions(Arrays.asList(topicPartition));
     }
@@ -40,11 +233,54 @@ public class SubpartitionSupplier<K, V> {
         // generates all WorkerSubpartition(s) associated with given TopicPartition(s)
         List<WorkerSubpartition> workerSubpartitions = new ArrayList<>();
         for (TopicPartition topicPartition : topicPartitions) {
-            for (int subpartition = 0; subpartition < partitioner.count(topicPartition); subpartition++) {
+            RegisteredSubpartitions subpartitions = registered.get(topicPartition);
+            int count = subpartitions != null
+                    ? subpartitions.count()
+                    : partitioner.count(topicPartition) + hotKeysSubpartitions;
+            for (int subpartition = 0; subpartition < count; subpartition++) {
                 workerSubpartitions.add(WorkerSubpartition.getInstance(topicPartition, subpartition));
             }
         }
         return workerSubpartitions;
     }
 
+    /**
+     * Subpartitions of a registered partition with their ids, both indexed by subpartition number. The first
+     * {@link #baseCount()} of them are determined by {@link WorkerPartitioner}, the rest is dedicated to hot keys.
+     */
+    public static class RegisteredSubpartitions {
+
+        private final WorkerSubpartition[] subpartitions;
+        private final int[] ids;
+        private final int baseCount;
+        private final int[] hotKeys;
+
+        RegisteredSubpartitions(WorkerSubpartition[] subpartitions, int[] ids, int baseCount, int[] hotKeys) {
+            this.subpartitions = subpartitions;
+            this.ids = ids;
+            this.baseCount = baseCount;
+            this.hotKeys = hotKeys;
+        }
+
+        public int count() {
+            return ids.length;
+        }
+
+        public int baseCount() {
+            return baseCount;
+        }
+
+        public int[] hotKeys() {
+            return hotKeys.clone();
+        }
+
+        public WorkerSubpartition subpartition(int subpartition) {
+            return subpartitions[subpartition];
+        }
+
+        public int id(int subpartition) {
+            return ids[subpartition];
+        }
+    }
+
 }
@@ -0,0 +1,177 @@
+package com.rtbhouse.kafka.workers.impl.queues;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.GcInfo;
+
+/**
+ * Scales queue limits down under heap pressure, so intake slows before long GC pauses or OOME. Pressure is reported
+ * (from GC notifications) when occupancy of a tenured heap pool after a GC of a collector managing that pool exceeds
+ * its threshold or when the ratio of GC time to time since the previous GC of the same collector exceeds its
+ * threshold. Every GC is handled once: the scale is halved if it reports pressure (down to {@link #MIN_SCALE}) and
+ * doubled back after every major GC without pressure or after {@link #RECOVERY_MINOR_GCS} consecutive minor GCs
+ * without pressure (young collections do not change tenured pools, so a single one does not prove the pressure is
+ * gone).
+ * <p>
+ * Occupancy is not checked after GCs of collectors not managing any tenured pool (e.g. young GCs of Parallel GC), as
+ * usage of tenured pools after their last collection would be stale then.
+ */
+public class HeapPressureMonitor implements NotificationListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(HeapPressureMonitor.class);
+
+    static final double MIN_SCALE = 1.0 / 16;
+
+    static final int RECOVERY_MINOR_GCS = 8;
+
+    private final double occupancyThreshold;
+    private final double gcTimeThreshold;
+
+    // names of tenured heap pools managed by every collector (collectors managing only young pools are absent)
+    private final Map<String, List<String>> tenuredPoolsByCollector = new HashMap<>();
+    private final List<NotificationEmitter> emitters = new ArrayList<>();
+
+    private volatile double scale = 1.0;
+
+    // end times of the previous GCs of every collector, updated only by the notification thread
+    private final Map<String, Long> lastGcEndTimesMs = new HashMap<>();
+
+    // minor GCs without pressure since the last pressure event or scale recovery
+    private int pressureFreeMinorGcs;
+
+    /**
+     * @param occupancyThreshold ratio of used to max size of a tenured pool after GC (0 disables the check)
+     * @param gcTimeThreshold ratio of GC time to time since the previous GC (0 disables the check)
+     */
+    public HeapPressureMonitor(double occupancyThreshold, double gcTimeThreshold) {
+        this.occupancyThreshold = occupancyThreshold;
+        this.gcTimeThreshold = gcTimeThreshold;
+    }
+
+    public void start() {
+        // young pools are emptied by every GC, so only the remaining heap ones (e.g. old gen) are checked
+        Set<String> tenuredPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP && !pool.getName().contains("Eden")
+                        && !pool.getName().contains("Survivor"))
+                .map(MemoryPoolMXBean::getName)
+                .collect(Collectors.toSet());
+        for (GarbageCollectorMXBean garbageCollector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            monitorCollector(garbageCollector.getName(), Arrays.stream(garbageCollector.getMemoryPoolNames())
+                    .filter(tenuredPools::contains)
+                    .collect(Collectors.toList()));
+            addListener(garbageCollector);
+        }
+        logger.info("heap pressure monitored for pools: {}", tenuredPoolsByCollector);
+    }
+
+    void monitorCollector(String gcName, List<String> tenuredPoolNames) {
+        if (!tenuredPoolNames.isEmpty()) {
+            tenuredPoolsByCollector.put(gcName, tenuredPoolNames);
+        }
+    }
+
+    private void addListener(Object bean) {
+        if (bean instanceof NotificationEmitter) {
+            ((NotificationEmitter) bean).addNotificationListener(this, null, null);
+            emitters.add((NotificationEmitter) bean);
+        }
+    }
+
+    public void stop() {
+        for (NotificationEmitter emitter : emitters) {
+            try {
+                emitter.removeNotificationListener(this);
+            } catch (ListenerNotFoundException e) {
+                logger.warn("heap pressure listener not found", e);
+            }
+        }
+        emitters.clear();
+        tenuredPoolsByCollector.clear();
+    }
+
+    /**
+     * Returns the factor (from {@link #MIN_SCALE} to 1) which queue limits should be multiplied by.
+     */
+    public double scale() {
+        return scale;
+    }
+
+    @Override
+    public void handleNotification(Notification notification, Object handback) {
+        if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+            return;
+        }
+        GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from(
+                (CompositeData) notification.getUserData());
+        GcInfo gcInfo = info.getGcInfo();
+        onGc(info.getGcName(), info.getGcAction(), gcInfo.getStartTime(), gcInfo.getEndTime(),
+                gcInfo.getMemoryUsageAfterGc());
+    }
+
+    void onGc(String gcName, String gcAction, long startTimeMs, long endTimeMs,
+              Map<String, MemoryUsage> memoryUsageAfterGc) {
+        Long lastGcEndTimeMs = lastGcEndTimesMs.put(gcName, endTimeMs);
+        boolean gcTimeExceeded = gcTimeThreshold > 0.0 && lastGcEndTimeMs != null
+                && gcTimeRatio(endTimeMs - startTimeMs, endTimeMs - lastGcEndTimeMs) >= gcTimeThreshold;
+        boolean occupancyExceeded = occupancyExceeded(
+                tenuredPoolsByCollector.getOrDefault(gcName, List.of()), memoryUsageAfterGc);
+        // e.g. "end of major GC" or "end of minor GC"
+        onGc(gcTimeExceeded || occupancyExceeded, gcAction.contains("major"));
+    }
+
+    private boolean occupancyExceeded(List<String> tenuredPools, Map<String, MemoryUsage> memoryUsageAfterGc) {
+        if (occupancyThreshold <= 0.0) {
+            return false;
+        }
+        for (String pool : tenuredPools) {
+            MemoryUsage usage = memoryUsageAfterGc.get(pool);
+            if (usage != null && usage.getMax() > 0L && usage.getUsed() >= occupancyThreshold * usage.getMax()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static double gcTimeRatio(long gcTimeMs, long intervalMs) {
+        return intervalMs > 0L ? (double) gcTimeMs / intervalMs : 1.0;
+    }
+
+    synchronized void onGc(boolean pressure, boolean major) {
+        if (pressure) {
+            update(true);
+        } else if (major || ++pressureFreeMinorGcs >= RECOVERY_MINOR_GCS) {
+            update(false);
+        }
+    }
+
+    synchronized void update(boolean pressure) {
+        pressureFreeMinorGcs = 0;
+        double newScale = pressure ? Math.max(MIN_SCALE, scale / 2) : Math.min(1.0, scale * 2);
+        if (newScale != scale) {
+            logger.info("heap pressure: {}, queue limits scaled by: {}", pressure, newScale);
+            scale = newScale;
+        }
+    }
+
+}
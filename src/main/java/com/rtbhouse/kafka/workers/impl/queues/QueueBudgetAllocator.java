@@ -0,0 +1,46 @@
+package com.rtbhouse.kafka.workers.impl.queues;
+
+/**
+ * Splits the total size of queues between them similarly to credit-based flow control: every queue is guaranteed a
+ * minimum share of an equal split and the rest of the budget is granted proportionally to smoothed drain rates of
+ * queues. Busy queues are not paused early while idle ones (or stuck ones, whose backlog does not drain) keep only the
+ * guaranteed minimum. When nothing was drained recently the budget is split equally.
+ */
+class QueueBudgetAllocator {
+
+    static final double RATE_SMOOTHING = 0.5;
+
+    private final double minShareRatio;
+
+    QueueBudgetAllocator(double minShareRatio) {
+        this.minShareRatio = minShareRatio;
+    }
+
+    /**
+     * Sets size limits of all given (non-null) queues based on their bytes drained during the last given time.
+     */
+    void allocate(RecordsQueue<?, ?>[] queues, long totalBytes, long elapsedNanos) {
+        int count = 0;
+        double totalRate = 0.0;
+        for (RecordsQueue<?, ?> queue : queues) {
+            if (queue != null) {
+                count++;
+                totalRate += queue.updateDrainRate(elapsedNanos, RATE_SMOOTHING);
+            }
+        }
+        if (count == 0) {
+            return;
+        }
+        long equalShare = totalBytes / count;
+        long minShare = (long) (minShareRatio * equalShare);
+        long sharedBytes = totalBytes - count * minShare;
+        for (RecordsQueue<?, ?> queue : queues) {
+            if (queue != null) {
+                queue.setSizeBytesToPause(totalRate > 0.0
+                        ? minShare + (long) (sharedBytes * (queue.getDrainRate() / totalRate))
+                        : equalShare);
+            }
+        }
+    }
+
+}
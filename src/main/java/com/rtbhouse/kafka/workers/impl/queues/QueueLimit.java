@@ -0,0 +1,24 @@
+package com.rtbhouse.kafka.workers.impl.queues;
+
+/**
+ * Limits of queues which pause partitions when exceeded: the total one pauses all partitions, the other ones (of a
+ * single queue) pause its partition.
+ */
+public enum QueueLimit {
+
+    TOTAL_SIZE_BYTES("total-bytes"),
+    SIZE_BYTES("bytes"),
+    SIZE_RECORDS("records"),
+    OLDEST_RECORD_AGE("age");
+
+    private final String metricSuffix;
+
+    QueueLimit(String metricSuffix) {
+        this.metricSuffix = metricSuffix;
+    }
+
+    public String metricSuffix() {
+        return metricSuffix;
+    }
+
+}
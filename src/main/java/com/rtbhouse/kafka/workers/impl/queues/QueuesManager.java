@@ -1,16 +1,16 @@
 package com.rtbhouse.kafka.workers.impl.queues;
 
+import static com.rtbhouse.kafka.workers.impl.metrics.WorkersMetrics.QUEUES_OFFHEAP_SIZE_LIMIT_METRIC;
+import static com.rtbhouse.kafka.workers.impl.metrics.WorkersMetrics.QUEUES_SPILL_SIZE_LIMIT_METRIC;
 import static com.rtbhouse.kafka.workers.impl.metrics.WorkersMetrics.QUEUES_TOTAL_SIZE_LIMIT_METRIC;
 import static com.rtbhouse.kafka.workers.impl.metrics.WorkersMetrics.QUEUE_SIZE_LIMIT_METRIC;
 import static java.util.stream.Collectors.toUnmodifiableSet;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.List;
-import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.kafka.common.TopicPartition;
 import org.slf4j.Logger;
@@ -18,10 +18,18 @@ import org.slf4j.LoggerFactory;
 
 import com.rtbhouse.kafka.workers.api.WorkersConfig;
 import com.rtbhouse.kafka.workers.api.partitioner.WorkerSubpartition;
+import com.rtbhouse.kafka.workers.api.record.QueueCompressionType;
 import com.rtbhouse.kafka.workers.api.record.WorkerRecord;
 import com.rtbhouse.kafka.workers.impl.Partitioned;
 import com.rtbhouse.kafka.workers.impl.metrics.WorkersMetrics;
 import com.rtbhouse.kafka.workers.impl.partitioner.SubpartitionSupplier;
+import com.rtbhouse.kafka.workers.impl.queues.compression.CompressedWorkerRecord;
+import com.rtbhouse.kafka.workers.impl.queues.compression.Lz4ValueCompressor;
+import com.rtbhouse.kafka.workers.impl.queues.offheap.MappedSlabPool;
+import com.rtbhouse.kafka.workers.impl.queues.offheap.OffHeapWorkerRecord;
+import com.rtbhouse.kafka.workers.impl.queues.offheap.SlabPool;
+import com.rtbhouse.kafka.workers.impl.partitioner.SubpartitionSupplier.RegisteredSubpartitions;
+import com.rtbhouse.kafka.workers.impl.record.PooledWorkerRecord;
 import com.rtbhouse.kafka.workers.impl.record.weigher.RecordWeigher;
 import com.rtbhouse.kafka.workers.impl.task.TaskManager;
 
@@ -29,20 +37,43 @@ public class QueuesManager<K, V> implements Partitioned {
 
     private static final Logger logger = LoggerFactory.getLogger(QueuesManager.class);
 
+    private static final long ALLOCATION_INTERVAL_NANOS = 1_000_000_000L;
+
     private final WorkersConfig config;
 
     private final long queuesTotalSizeBytes;
-    private volatile long queueSizeBytesToPause;
-    private volatile long queueSizeBytesToResume;
+    private final double queueResumeRatio;
+
+    // 0 if the limit is disabled
+    private final int queueMaxRecords;
+    private final long queueMaxAgeMs;
+
+    // null if queue sizes are split equally
+    private final QueueBudgetAllocator budgetAllocator;
+    private long lastAllocationNanos;
 
     private final WorkersMetrics metrics;
     private final SubpartitionSupplier<K, V> subpartitionSupplier;
     private final TaskManager<K, V> taskManager;
     private final RecordWeigher<K, V> recordWeigher;
 
-    private final Map<WorkerSubpartition, RecordsQueue<K, V>> queues = new ConcurrentHashMap<>();
-    private final Map<WorkerSubpartition, Long> sizesInBytes = new ConcurrentHashMap<>();
-    private final Set<WorkerSubpartition> registeredSubpartitions = new HashSet<>();
+    // null if heap pressure is not monitored
+    private final HeapPressureMonitor heapPressureMonitor;
+
+    private final Set<String> coalescingTopics;
+
+    // null if values are not compressed
+    private final Lz4ValueCompressor valueCompressor;
+
+    // null if off-heap storage is disabled
+    private final SlabPool slabPool;
+
+    // null if spilling to disk is disabled
+    private final SlabPool spillPool;
+
+    // indexed by subpartition id (see SubpartitionSupplier), replaced on every (un)registration
+    private volatile RecordsQueue<K, V>[] queues = newQueues(0);
+    private int registeredSubpartitionsCount;
 
     public QueuesManager(
             WorkersConfig config,
@@ -57,26 +88,78 @@ public class QueuesManager<K, V> implements Partitioned {
         this.taskManager = taskManager;
         this.recordWeigher = recordWeigher;
         this.queuesTotalSizeBytes = (long)(Runtime.getRuntime().maxMemory() * config.getQueueTotalSizeBytesHeapRatio());
+        this.queueResumeRatio = config.getDouble(WorkersConfig.QUEUE_RESUME_RATIO);
+        this.queueMaxRecords = config.getQueueMaxRecords();
+        this.queueMaxAgeMs = config.getQueueMaxAgeMs();
+        this.budgetAllocator = config.getQueueAdaptiveMinShare() < 1.0
+                ? new QueueBudgetAllocator(config.getQueueAdaptiveMinShare())
+                : null;
+        this.heapPressureMonitor = config.getQueueHeapPressureOccupancyRatio() > 0.0
+                || config.getQueueHeapPressureGcTimeRatio() > 0.0
+                ? new HeapPressureMonitor(config.getQueueHeapPressureOccupancyRatio(),
+                        config.getQueueHeapPressureGcTimeRatio())
+                : null;
+        this.coalescingTopics = Set.copyOf(config.getQueueCoalescingTopics());
+        this.valueCompressor = config.getQueueCompressionType() == QueueCompressionType.LZ4
+                ? new Lz4ValueCompressor()
+                : null;
+        this.slabPool = config.getQueueOffHeapTotalSizeBytes() > 0L
+                ? new SlabPool(config.getQueueOffHeapTotalSizeBytes(), config.getQueueOffHeapSlabSizeBytes())
+                : null;
+        this.spillPool = config.getQueueSpillTotalSizeBytes() > 0L
+                ? new MappedSlabPool(config.getQueueSpillDirectory(), config.getQueueSpillTotalSizeBytes(),
+                        config.getQueueSpillSegmentSizeBytes())
+                : null;
 
         this.metrics.addQueuesManagerMetrics(this);
         this.metrics.recordSensor(QUEUES_TOTAL_SIZE_LIMIT_METRIC, queuesTotalSizeBytes);
+        if (heapPressureMonitor != null) {
+            heapPressureMonitor.start();
+            this.metrics.addHeapPressureMetrics(heapPressureMonitor);
+        }
+        if (slabPool != null) {
+            this.metrics.addOffHeapMetrics(slabPool);
+            this.metrics.recordSensor(QUEUES_OFFHEAP_SIZE_LIMIT_METRIC, slabPool.budgetBytes());
+        }
+        if (spillPool != null) {
+            this.metrics.addSpillMetrics(spillPool);
+            this.metrics.recordSensor(QUEUES_SPILL_SIZE_LIMIT_METRIC, spillPool.budgetBytes());
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <K, V> RecordsQueue<K, V>[] newQueues(int length) {
+        return (RecordsQueue<K, V>[]) new RecordsQueue[length];
     }
 
     @Override
     public void register(Collection<TopicPartition> topicPartitions) {
-        List<WorkerSubpartition> subpartitions = subpartitionSupplier.subpartitions(topicPartitions);
-        registeredSubpartitions.addAll(subpartitions);
-        for (WorkerSubpartition subpartition : subpartitions) {
-            queues.put(subpartition, new RecordsQueue<>());
-            sizesInBytes.put(subpartition, 0L);
+        RecordsQueue<K, V>[] newQueues = Arrays.copyOf(queues, subpartitionSupplier.maxSubpartitionsCount());
+        for (TopicPartition topicPartition : topicPartitions) {
+            RegisteredSubpartitions subpartitions = subpartitionSupplier.registeredSubpartitions(topicPartition);
+            for (int subpartition = 0; subpartition < subpartitions.count(); subpartition++) {
+                RecordsQueue<K, V> queue = new RecordsQueue<>(slabPool, spillPool,
+                        coalescingTopics.contains(topicPartition.topic()));
+                newQueues[subpartitions.id(subpartition)] = queue;
+                metrics.addQueueMetrics(subpartitions.subpartition(subpartition), queue);
+                registeredSubpartitionsCount++;
+            }
         }
+        queues = newQueues;
         computeQueueSizeToPauseAndResume();
     }
 
     private void computeQueueSizeToPauseAndResume() {
-        int numQueues = Math.max(1, registeredSubpartitions.size());
-        queueSizeBytesToPause = queuesTotalSizeBytes / numQueues;
-        queueSizeBytesToResume = (long)(config.getDouble(WorkersConfig.QUEUE_RESUME_RATIO) * queueSizeBytesToPause);
+        int numQueues = Math.max(1, registeredSubpartitionsCount);
+        long queueSizeBytesToPause = queuesTotalSizeBytes / numQueues;
+        long queueSizeBytesToResume = (long)(queueResumeRatio * queueSizeBytesToPause);
+        // (re)starts adaptive allocation from the equal split
+        for (RecordsQueue<K, V> queue : queues) {
+            if (queue != null) {
+                queue.setSizeBytesToPause(queueSizeBytesToPause);
+            }
+        }
+        lastAllocationNanos = System.nanoTime();
 
         int mega = 1024 * 1024;
         logger.info("queueTotalSizeBytesToPause = {} [{} MiB], queueSizeBytesToPause = {} [{} MiB], queueSizeBytesToResume = {} [{} MiB]",
@@ -89,34 +172,97 @@ public class QueuesManager<K, V> implements Partitioned {
 
     @Override
     public void unregister(Collection<TopicPartition> topicPartitions) {
-        List<WorkerSubpartition> subpartitions = subpartitionSupplier.subpartitions(topicPartitions);
-        registeredSubpartitions.removeAll(subpartitions);
-        for (WorkerSubpartition subpartition : subpartitions) {
-            queues.get(subpartition).clear();
-            sizesInBytes.put(subpartition, 0L);
+        // called before SubpartitionSupplier releases ids of given partitions
+        RecordsQueue<K, V>[] newQueues = queues.clone();
+        for (TopicPartition topicPartition : topicPartitions) {
+            RegisteredSubpartitions subpartitions = subpartitionSupplier.registeredSubpartitions(topicPartition);
+            for (int subpartition = 0; subpartition < subpartitions.count(); subpartition++) {
+                int id = subpartitions.id(subpartition);
+                newQueues[id].close();
+                newQueues[id] = null;
+                metrics.removeQueueMetrics(subpartitions.subpartition(subpartition));
+                registeredSubpartitionsCount--;
+            }
         }
+        queues = newQueues;
         computeQueueSizeToPauseAndResume();
     }
 
-    public WorkerRecord<K, V> poll(WorkerSubpartition subpartition) {
-        WorkerRecord<K, V> record = queues.get(subpartition).poll();
-        sizesInBytes.compute(subpartition, (key, value) -> value - recordWeigher.weigh(record));
+    public WorkerRecord<K, V> poll(int subpartitionId) {
+        RecordsQueue<K, V> queue = queues[subpartitionId];
+        WorkerRecord<K, V> record = queue.poll();
+        long weight = weigh(record);
+        queue.addSizeInBytes(-weight);
+        queue.addDrainedBytes(weight);
+        if (record instanceof OffHeapWorkerRecord) {
+            ((OffHeapWorkerRecord<K, V>) record).materialize();
+        } else if (record instanceof CompressedWorkerRecord) {
+            ((CompressedWorkerRecord<K, V>) record).decompress();
+        }
+        return record;
+    }
+
+    /**
+     * Returns true if given queue is not empty (its head could be a superseded record yet). Unlike {@link #peek} it does
+     * not change the queue, so it could be called by other threads than the worker thread of the queue.
+     */
+    public boolean hasRecords(int subpartitionId) {
+        return queues[subpartitionId].peek() != null;
+    }
+
+    /**
+     * Returns the head record of given queue dropping records superseded by newer ones of the same key. Called only by
+     * the worker thread of the queue.
+     */
+    public WorkerRecord<K, V> peek(int subpartitionId) {
+        RecordsQueue<K, V> queue = queues[subpartitionId];
+        WorkerRecord<K, V> record;
+        // records superseded by newer ones of the same key are dropped (their offsets are already processed)
+        while ((record = queue.peek()) != null && !queue.take(record)) {
+            queue.poll();
+            queue.addSizeInBytes(-weigh(record));
+            if (record instanceof OffHeapWorkerRecord) {
+                ((OffHeapWorkerRecord<K, V>) record).discard();
+            }
+        }
         return record;
     }
 
-    public WorkerRecord<K, V> peek(WorkerSubpartition subpartition) {
-        return queues.get(subpartition).peek();
+    /**
+     * Returns the queued record superseded by given one (if records of its topic are coalesced by key) or null. Offset
+     * of the superseded record should be marked as processed, as it will not be passed to its task.
+     */
+    public WorkerRecord<K, V> push(int subpartitionId, WorkerRecord<K, V> record) {
+        RecordsQueue<K, V> queue = queues[subpartitionId];
+        // records beyond the in-memory limit are spilled to disk instead of pausing the whole partition
+        boolean spill = spillPool != null && queue.getSizeInBytes() >= sizeBytesToPause(queue);
+        WorkerRecord<K, V> queuedRecord = queue.toQueued(record, spill);
+        if (queuedRecord == record && valueCompressor != null) {
+            queuedRecord = valueCompressor.compress(record);
+        }
+        // the record is registered as the latest one of its key before the worker thread could take it, and it is
+        // not accessed once queued, as a pooled record could be processed and reused right away
+        WorkerRecord<K, V> supersededRecord = queue.coalesce(record.key(), queuedRecord);
+        queue.addSizeInBytes(weigh(queuedRecord));
+        if (queuedRecord != record && record instanceof PooledWorkerRecord) {
+            // only its off-heap or compressed copy is queued
+            ((PooledWorkerRecord<K, V>) record).release();
+        }
+        queue.add(queuedRecord);
+        taskManager.notifyTask(subpartitionId);
+        return supersededRecord;
     }
 
-    public void push(WorkerSubpartition subpartition, WorkerRecord<K, V> record) {
-        queues.get(subpartition).add(record);
-        sizesInBytes.compute(subpartition, (key, value) -> value + recordWeigher.weigh(record));
-        taskManager.notifyTask(subpartition);
+    private long weigh(WorkerRecord<K, V> record) {
+        // only the heap part of off-heap records is counted (even if they were already materialized by peeking)
+        return record instanceof OffHeapWorkerRecord ? OffHeapWorkerRecord.HEAP_SIZE : recordWeigher.weigh(record);
     }
 
     public Set<TopicPartition> getPartitionsToPause(Set<TopicPartition> assigned, Set<TopicPartition> paused) {
+        allocateQueueSizes();
         Set<TopicPartition> partitionsToPause = new HashSet<>();
         long totalSizeBytes = getTotalSizeInBytes();
+        long queuesTotalSizeBytes = totalSizeBytesToPause();
         /*
           Each individual queue may exceed its limit with some margin. In the worst case scenario a single margin
           may have a size of consumer.kafka.max.partition.fetch.bytes. That's why we pause all partitions when
@@ -128,26 +274,98 @@ public class QueuesManager<K, V> implements Partitioned {
                     diffPctString(totalSizeBytes, queuesTotalSizeBytes));
             partitionsToPause.addAll(assigned);
             partitionsToPause.removeAll(paused);
+            partitionsToPause.forEach(partition -> metrics.recordQueuePause(QueueLimit.TOTAL_SIZE_BYTES));
             return partitionsToPause;
         }
-        for (WorkerSubpartition subpartition : subpartitionSupplier.subpartitions(assigned)) {
-            long queueSizeBytes = sizesInBytes.get(subpartition);
-            if (queueSizeBytes >= queueSizeBytesToPause && !paused.contains(subpartition.topicPartition())) {
-                logger.warn("size in bytes: {} for: {} (events count: {}) exceeded (limit: {} {})",
-                        queueSizeBytes, subpartition, queues.get(subpartition).size(),
-                        queueSizeBytesToPause, diffPctString(queueSizeBytes, queueSizeBytesToPause));
-                partitionsToPause.add(subpartition.topicPartition());
+        // records beyond byte limits are spilled, but records count and age limits still apply
+        boolean checkSizeBytes = !canSpill();
+        if (!checkSizeBytes && queueMaxRecords == 0 && queueMaxAgeMs == 0L) {
+            return partitionsToPause;
+        }
+        RecordsQueue<K, V>[] queues = this.queues;
+        for (TopicPartition topicPartition : assigned) {
+            if (paused.contains(topicPartition)) {
+                continue;
+            }
+            RegisteredSubpartitions subpartitions = subpartitionSupplier.registeredSubpartitions(topicPartition);
+            for (int subpartition = 0; subpartition < subpartitions.count(); subpartition++) {
+                RecordsQueue<K, V> queue = queues[subpartitions.id(subpartition)];
+                QueueLimit exceededLimit = exceededLimit(queue, checkSizeBytes, subpartitions.subpartition(subpartition));
+                if (exceededLimit != null) {
+                    // the first exceeded limit pauses the partition, so its pause is counted (and logged) once
+                    metrics.recordQueuePause(exceededLimit);
+                    partitionsToPause.add(topicPartition);
+                    break;
+                }
             }
         }
         return partitionsToPause;
     }
 
+    private QueueLimit exceededLimit(RecordsQueue<K, V> queue, boolean checkSizeBytes, WorkerSubpartition subpartition) {
+        long queueSizeBytes = queue.getSizeInBytes();
+        long queueSizeBytesToPause = sizeBytesToPause(queue);
+        if (checkSizeBytes && queueSizeBytes >= queueSizeBytesToPause) {
+            logger.warn("size in bytes: {} for: {} (events count: {}) exceeded (limit: {} {})",
+                    queueSizeBytes, subpartition, queue.getSizeInRecords(),
+                    queueSizeBytesToPause, diffPctString(queueSizeBytes, queueSizeBytesToPause));
+            return QueueLimit.SIZE_BYTES;
+        }
+        int queueSizeRecords = queue.getSizeInRecords();
+        if (queueMaxRecords > 0 && queueSizeRecords >= queueMaxRecords) {
+            logger.warn("size in records: {} for: {} exceeded (limit: {} {})",
+                    queueSizeRecords, subpartition,
+                    queueMaxRecords, diffPctString(queueSizeRecords, queueMaxRecords));
+            return QueueLimit.SIZE_RECORDS;
+        }
+        if (queueMaxAgeMs > 0L) {
+            long oldestRecordAgeMs = queue.getOldestRecordAgeMs();
+            if (oldestRecordAgeMs >= queueMaxAgeMs) {
+                logger.warn("oldest record age in ms: {} for: {} (events count: {}) exceeded (limit: {} {})",
+                        oldestRecordAgeMs, subpartition, queueSizeRecords,
+                        queueMaxAgeMs, diffPctString(oldestRecordAgeMs, queueMaxAgeMs));
+                return QueueLimit.OLDEST_RECORD_AGE;
+            }
+        }
+        return null;
+    }
+
+    private double sizeScale() {
+        return heapPressureMonitor != null ? heapPressureMonitor.scale() : 1.0;
+    }
+
+    private long totalSizeBytesToPause() {
+        return (long) (sizeScale() * queuesTotalSizeBytes);
+    }
+
+    private long sizeBytesToPause(RecordsQueue<K, V> queue) {
+        return (long) (sizeScale() * queue.getSizeBytesToPause());
+    }
+
+    private void allocateQueueSizes() {
+        long now = System.nanoTime();
+        if (now - lastAllocationNanos < ALLOCATION_INTERVAL_NANOS) {
+            return;
+        }
+        if (budgetAllocator != null) {
+            budgetAllocator.allocate(queues, queuesTotalSizeBytes, now - lastAllocationNanos);
+        } else {
+            // drain rates are used by predictive resume too
+            for (RecordsQueue<K, V> queue : queues) {
+                if (queue != null) {
+                    queue.updateDrainRate(now - lastAllocationNanos, QueueBudgetAllocator.RATE_SMOOTHING);
+                }
+            }
+        }
+        lastAllocationNanos = now;
+    }
+
     private String diffPctString(long a, long b) {
         return String.format("%+.2f%%", ((double) a / b - 1.0) * 100.0);
     }
 
     public Set<TopicPartition> getPartitionsToResume(Set<TopicPartition> pausedPartitions) {
-        if (getTotalSizeInBytes() >= queuesTotalSizeBytes) {
+        if (getTotalSizeInBytes() >= totalSizeBytesToPause()) {
             return Collections.emptySet();
         }
 
@@ -156,12 +374,79 @@ public class QueuesManager<K, V> implements Partitioned {
                 .collect(toUnmodifiableSet());
     }
 
+    private boolean canSpill() {
+        return spillPool != null && spillPool.usedBytes() < spillPool.budgetBytes();
+    }
+
     private boolean shouldBeResumed(TopicPartition topicPartition) {
-        return subpartitionSupplier.subpartitions(topicPartition).stream()
-                .allMatch(subpartition -> sizesInBytes.get(subpartition) <= queueSizeBytesToResume);
+        boolean checkSizeBytes = spillPool == null
+                || spillPool.usedBytes() > (long) (queueResumeRatio * spillPool.budgetBytes());
+        RecordsQueue<K, V>[] queues = this.queues;
+        RegisteredSubpartitions subpartitions = subpartitionSupplier.registeredSubpartitions(topicPartition);
+        for (int subpartition = 0; subpartition < subpartitions.count(); subpartition++) {
+            RecordsQueue<K, V> queue = queues[subpartitions.id(subpartition)];
+            if (checkSizeBytes && queue.getSizeInBytes() > (long) (queueResumeRatio * sizeBytesToPause(queue))) {
+                return false;
+            }
+            if (!isBelowCountAndAgeResumeLimits(queue)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isBelowCountAndAgeResumeLimits(RecordsQueue<K, V> queue) {
+        if (queueMaxRecords > 0 && queue.getSizeInRecords() > (long) (queueResumeRatio * queueMaxRecords)) {
+            return false;
+        }
+        return queueMaxAgeMs == 0L || queue.getOldestRecordAgeMs() <= (long) (queueResumeRatio * queueMaxAgeMs);
+    }
+
+    /**
+     * Returns given paused partitions which could be resumed before their queues drain to the resume ratio: all their
+     * queues are expected to be empty within given time (at their recent drain rates) and have room for a whole fetch
+     * of given size, so records fetched after resuming arrive just as the queues empty and do not pause the partition
+     * again.
+     */
+    public Set<TopicPartition> getPartitionsToResumeEarly(Set<TopicPartition> pausedPartitions, long drainTimeMs,
+            long fetchBytes) {
+        if (getTotalSizeInBytes() + fetchBytes >= totalSizeBytesToPause()) {
+            return Collections.emptySet();
+        }
+
+        return pausedPartitions.stream()
+                .filter(topicPartition -> shouldBeResumedEarly(topicPartition, drainTimeMs, fetchBytes))
+                .collect(toUnmodifiableSet());
+    }
+
+    private boolean shouldBeResumedEarly(TopicPartition topicPartition, long drainTimeMs, long fetchBytes) {
+        RecordsQueue<K, V>[] queues = this.queues;
+        RegisteredSubpartitions subpartitions = subpartitionSupplier.registeredSubpartitions(topicPartition);
+        for (int subpartition = 0; subpartition < subpartitions.count(); subpartition++) {
+            RecordsQueue<K, V> queue = queues[subpartitions.id(subpartition)];
+            long queueSizeBytes = queue.getSizeInBytes();
+            if (queueSizeBytes > queue.getDrainRate() * drainTimeMs / 1000.0
+                    || queueSizeBytes + fetchBytes > sizeBytesToPause(queue)
+                    || !isBelowCountAndAgeResumeLimits(queue)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void close() {
+        if (heapPressureMonitor != null) {
+            heapPressureMonitor.stop();
+        }
     }
 
     public long getTotalSizeInBytes() {
-        return sizesInBytes.values().stream().mapToLong(Long::longValue).sum();
+        long totalSizeInBytes = 0L;
+        for (RecordsQueue<K, V> queue : queues) {
+            if (queue != null) {
+                totalSizeInBytes += queue.getSizeInBytes();
+            }
+        }
+        return totalSizeInBytes;
     }
 }
@@ -1,11 +1,237 @@
 package com.rtbhouse.kafka.workers.impl.queues;
 
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.kafka.common.utils.Bytes;
 
 import com.rtbhouse.kafka.workers.api.record.WorkerRecord;
+import com.rtbhouse.kafka.workers.impl.queues.offheap.OffHeapRecordsWriter;
+import com.rtbhouse.kafka.workers.impl.queues.offheap.OffHeapWorkerRecord;
+import com.rtbhouse.kafka.workers.impl.queues.offheap.SlabPool;
 
 public class RecordsQueue<K, V> extends ConcurrentLinkedQueue<WorkerRecord<K, V>> {
 
     private static final long serialVersionUID = 1L;
 
+    // queued in place of null keys, which are never coalesced
+    private static final Object NO_KEY = new Object();
+
+    private final AtomicLong sizeInBytes = new AtomicLong();
+
+    // size() of ConcurrentLinkedQueue traverses all its elements
+    private final AtomicInteger sizeInRecords = new AtomicInteger();
+
+    // consume time of the head record kept by the queue, as the head could be taken, processed and released to its
+    // pool (and reused for another record) while it is read by the consumer thread, valid only if the queue is not empty
+    private volatile long headConsumedAtNanos;
+
+    private final AtomicLong drainedBytes = new AtomicLong();
+    private volatile long sizeBytesToPause;
+
+    // updated only by the consumer thread
+    private long lastDrainedBytes;
+    private double drainRate;
+
+    // null if off-heap storage is disabled
+    private final transient OffHeapRecordsWriter<K, V> offHeapWriter;
+
+    // null if spilling to disk is disabled
+    private final transient OffHeapRecordsWriter<K, V> spillWriter;
+
+    // the latest queued record of every key which was not taken by the worker thread yet, null if records are not
+    // coalesced by key
+    private final transient ConcurrentHashMap<Object, WorkerRecord<K, V>> latestRecords;
+
+    // coalescing keys of queued records in the same order, so the worker thread does not access (e.g. materialize)
+    // records to read their keys, null if records are not coalesced by key
+    private final transient ConcurrentLinkedQueue<Object> queuedKeys;
+
+    // the head record which was already taken from latestRecords (e.g. peeked but not accepted by its task)
+    private volatile WorkerRecord<K, V> takenHead;
+
+    public RecordsQueue() {
+        this(null, null, false);
+    }
+
+    public RecordsQueue(SlabPool offHeapPool, SlabPool spillPool, boolean coalescing) {
+        this.offHeapWriter = offHeapPool != null ? new OffHeapRecordsWriter<>(offHeapPool) : null;
+        this.spillWriter = spillPool != null ? new OffHeapRecordsWriter<>(spillPool) : null;
+        this.latestRecords = coalescing ? new ConcurrentHashMap<>() : null;
+        this.queuedKeys = coalescing ? new ConcurrentLinkedQueue<>() : null;
+    }
+
+    public long getSizeInBytes() {
+        return sizeInBytes.get();
+    }
+
+    void addSizeInBytes(long delta) {
+        sizeInBytes.addAndGet(delta);
+    }
+
+    void addDrainedBytes(long bytes) {
+        drainedBytes.addAndGet(bytes);
+    }
+
+    public long getSizeBytesToPause() {
+        return sizeBytesToPause;
+    }
+
+    void setSizeBytesToPause(long sizeBytesToPause) {
+        this.sizeBytesToPause = sizeBytesToPause;
+    }
+
+    /**
+     * Returns smoothed rate (in bytes per second) of taking records from the queue, updated by bytes drained during
+     * given time since the previous update.
+     */
+    double updateDrainRate(long elapsedNanos, double smoothing) {
+        long drained = drainedBytes.get();
+        double rate = (drained - lastDrainedBytes) * 1e9 / Math.max(1L, elapsedNanos);
+        lastDrainedBytes = drained;
+        drainRate = smoothing * rate + (1.0 - smoothing) * drainRate;
+        return drainRate;
+    }
+
+    double getDrainRate() {
+        return drainRate;
+    }
+
+    public int getSizeInRecords() {
+        return sizeInRecords.get();
+    }
+
+    /**
+     * Returns time in milliseconds since the oldest queued record was consumed (0 if the queue is empty).
+     */
+    public long getOldestRecordAgeMs() {
+        // 0 if it is not known
+        long consumedAtNanos = sizeInRecords.get() > 0 ? headConsumedAtNanos : 0L;
+        return consumedAtNanos != 0L ? (System.nanoTime() - consumedAtNanos) / 1_000_000L : 0L;
+    }
+
+    /**
+     * Returns given record spilled to disk (if requested) or moved off-heap (if possible) to be added to the queue.
+     * Spilled records stay in the queue as small stubs, so they are replayed in order with other records.
+     */
+    WorkerRecord<K, V> toQueued(WorkerRecord<K, V> record, boolean spill) {
+        if (spill && spillWriter != null) {
+            OffHeapWorkerRecord<K, V> spilledRecord = spillWriter.write(record);
+            if (spilledRecord != null) {
+                return spilledRecord;
+            }
+        }
+        if (offHeapWriter != null) {
+            OffHeapWorkerRecord<K, V> offHeapRecord = offHeapWriter.write(record);
+            if (offHeapRecord != null) {
+                return offHeapRecord;
+            }
+        }
+        return record;
+    }
+
+    /**
+     * Registers given queued record as the latest one of given key. Returns the previous record of the key if it is
+     * superseded (because it was not taken by the worker thread yet) or null otherwise. Called by the consumer thread
+     * just before the record is added to the queue.
+     */
+    WorkerRecord<K, V> coalesce(Object key, WorkerRecord<K, V> queuedRecord) {
+        if (latestRecords == null) {
+            return null;
+        }
+        Object coalescingKey = key != null ? coalescingKey(key) : NO_KEY;
+        queuedKeys.offer(coalescingKey);
+        return key != null ? latestRecords.put(coalescingKey, queuedRecord) : null;
+    }
+
+    /**
+     * Takes given head record by the worker thread. Returns false if the record was superseded by a newer record of
+     * its key, so it should be dropped.
+     */
+    boolean take(WorkerRecord<K, V> head) {
+        if (latestRecords == null || head == takenHead) {
+            return true;
+        }
+        Object key = queuedKeys.peek();
+        // the record is either taken here or superseded by coalesce(), never both
+        if (key != NO_KEY && !latestRecords.remove(key, head)) {
+            return false;
+        }
+        takenHead = head;
+        return true;
+    }
+
+    private static Object coalescingKey(Object key) {
+        // byte arrays do not implement equals() and hashCode()
+        return key instanceof byte[] ? Bytes.wrap((byte[]) key) : key;
+    }
+
+    /**
+     * Adds given record to the queue. Called only by the consumer thread.
+     */
+    @Override
+    public boolean offer(WorkerRecord<K, V> record) {
+        // read before the record is added, as it could be taken and reused right away
+        long consumedAtNanos = record.consumedAtNanos();
+        boolean added = super.offer(record);
+        if (sizeInRecords.getAndIncrement() == 0) {
+            // the record is the head now (unless it was already polled, which makes the queue empty again)
+            headConsumedAtNanos = consumedAtNanos;
+        }
+        return added;
+    }
+
+    /**
+     * Takes the head record from the queue. Called only by the worker thread of the queue.
+     */
+    @Override
+    public WorkerRecord<K, V> poll() {
+        WorkerRecord<K, V> record = super.poll();
+        if (record != null) {
+            if (sizeInRecords.decrementAndGet() > 0) {
+                // the next record is already added and it could be taken (and released) only by this thread
+                headConsumedAtNanos = super.peek().consumedAtNanos();
+            }
+            if (queuedKeys != null) {
+                queuedKeys.poll();
+            }
+            if (record == takenHead) {
+                takenHead = null;
+            }
+        }
+        return record;
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        sizeInBytes.set(0L);
+        sizeInRecords.set(0);
+        if (latestRecords != null) {
+            latestRecords.clear();
+            queuedKeys.clear();
+        }
+        takenHead = null;
+    }
+
+    /**
+     * Clears the queue and releases off-heap memory and spill segments of its records.
+     */
+    void close() {
+        for (WorkerRecord<K, V> record : this) {
+            if (record instanceof OffHeapWorkerRecord) {
+                ((OffHeapWorkerRecord<K, V>) record).discard();
+            }
+        }
+        if (offHeapWriter != null) {
+            offHeapWriter.close();
+        }
+        if (spillWriter != null) {
+            spillWriter.close();
+        }
+        clear();
+    }
+
 }
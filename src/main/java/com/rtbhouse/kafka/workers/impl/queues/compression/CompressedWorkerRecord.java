@@ -0,0 +1,56 @@
+package com.rtbhouse.kafka.workers.impl.queues.compression;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.utils.Bytes;
+
+import com.rtbhouse.kafka.workers.api.record.WorkerRecord;
+
+/**
+ * Queued record whose value is compressed with LZ4. The value is decompressed on the first access (or when the record
+ * is polled from its queue) by the worker thread.
+ */
+public class CompressedWorkerRecord<K, V> extends WorkerRecord<K, V> {
+
+    private final int valueLength;
+    private final int compressedValueLength;
+    private final boolean bytesValue;
+
+    // released after decompression
+    private byte[] compressedValue;
+    private V value;
+
+    CompressedWorkerRecord(WorkerRecord<K, V> record, byte[] compressedValue, int valueLength, boolean bytesValue) {
+        super(new ConsumerRecord<>(record.topic(), record.partition(), record.offset(), record.timestamp(),
+                        record.timestampType(), null, record.serializedKeySize(), record.serializedValueSize(),
+                        record.key(), null, record.headers()),
+                record.workerSubpartition(), record.consumedAtNanos());
+        this.compressedValue = compressedValue;
+        this.compressedValueLength = compressedValue.length;
+        this.valueLength = valueLength;
+        this.bytesValue = bytesValue;
+    }
+
+    @Override
+    public V value() {
+        decompress();
+        return value;
+    }
+
+    /**
+     * Returns length of the compressed value (which is queued instead of the original one).
+     */
+    public int compressedValueLength() {
+        return compressedValueLength;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void decompress() {
+        if (compressedValue == null) {
+            return;
+        }
+        byte[] bytes = Lz4ValueCompressor.LZ4_FACTORY.fastDecompressor().decompress(compressedValue, valueLength);
+        value = (V) (bytesValue ? Bytes.wrap(bytes) : bytes);
+        compressedValue = null;
+    }
+
+}
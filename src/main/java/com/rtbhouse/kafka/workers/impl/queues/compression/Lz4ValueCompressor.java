@@ -0,0 +1,57 @@
+package com.rtbhouse.kafka.workers.impl.queues.compression;
+
+import java.util.Arrays;
+
+import org.apache.kafka.common.utils.Bytes;
+
+import com.rtbhouse.kafka.workers.api.record.WorkerRecord;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+
+/**
+ * Compresses values of queued records with LZ4 (from lz4-java used by kafka-clients). Only byte array and
+ * {@link Bytes} values are compressed, as other ones are not kept in their serialized form. Used only by the consumer
+ * thread, so its compression buffer is reused for all records.
+ */
+public class Lz4ValueCompressor {
+
+    // smaller values would not be shrunk enough to pay for their decompression
+    static final int MIN_VALUE_SIZE = 64;
+
+    static final LZ4Factory LZ4_FACTORY = LZ4Factory.fastestInstance();
+
+    private final LZ4Compressor compressor = LZ4_FACTORY.fastCompressor();
+
+    private byte[] buffer = new byte[0];
+
+    /**
+     * Returns given record with compressed value or the same record if its value could not be compressed.
+     */
+    public <K, V> WorkerRecord<K, V> compress(WorkerRecord<K, V> record) {
+        V value = record.value();
+        byte[] bytes;
+        if (value instanceof byte[]) {
+            bytes = (byte[]) value;
+        } else if (value instanceof Bytes) {
+            bytes = ((Bytes) value).get();
+        } else {
+            return record;
+        }
+        if (bytes.length < MIN_VALUE_SIZE) {
+            return record;
+        }
+
+        int maxCompressedLength = compressor.maxCompressedLength(bytes.length);
+        if (buffer.length < maxCompressedLength) {
+            buffer = new byte[maxCompressedLength];
+        }
+        int compressedLength = compressor.compress(bytes, 0, bytes.length, buffer, 0, buffer.length);
+        if (compressedLength >= bytes.length) {
+            return record;
+        }
+        return new CompressedWorkerRecord<>(record, Arrays.copyOf(buffer, compressedLength), bytes.length,
+                value instanceof Bytes);
+    }
+
+}
@@ -0,0 +1,49 @@
+package com.rtbhouse.kafka.workers.impl.queues.offheap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of slabs mapped from segment files in given directory, used to spill queued records to disk. Every segment file
+ * is removed right after it is mapped (where the platform allows it), so its disk space is reclaimed when the mapping
+ * is released even if the process is killed. Dirty pages are written back by the OS, records are never synced.
+ */
+public class MappedSlabPool extends SlabPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(MappedSlabPool.class);
+
+    private final File directory;
+
+    public MappedSlabPool(File directory, long budgetBytes, int segmentSize) {
+        super(budgetBytes, segmentSize);
+        this.directory = directory;
+    }
+
+    @Override
+    ByteBuffer allocate(int size) {
+        File file = null;
+        try {
+            file = File.createTempFile("kafka-workers-", ".segment", directory);
+            ByteBuffer buffer;
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+                randomAccessFile.setLength(size);
+                buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+            return buffer;
+        } catch (IOException e) {
+            logger.error("could not map segment file in: {}", directory, e);
+            return null;
+        } finally {
+            if (file != null && !file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+
+}
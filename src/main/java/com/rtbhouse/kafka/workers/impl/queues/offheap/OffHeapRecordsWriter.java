@@ -0,0 +1,123 @@
+package com.rtbhouse.kafka.workers.impl.queues.offheap;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.nio.ByteBuffer;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+
+import com.rtbhouse.kafka.workers.api.record.WorkerRecord;
+
+/**
+ * Appends records of a single queue to slabs taken from {@link SlabPool}. Records of a queue are polled in the same
+ * order, so slabs are released in order too. Used only by the consumer thread.
+ * <p>
+ * Only records with byte array (or null) keys and values could be stored, other ones (as well as records larger than
+ * a slab or records written when the off-heap budget is exhausted) should stay on the heap.
+ */
+public class OffHeapRecordsWriter<K, V> {
+
+    private static final int LENGTH_SIZE = Integer.BYTES;
+
+    // shared by consumer records of all off-heap records, their headers are stored off-heap
+    private static final Headers NO_HEADERS = new RecordHeaders();
+
+    static {
+        ((RecordHeaders) NO_HEADERS).setReadOnly();
+    }
+
+    private final SlabPool pool;
+
+    // referenced by the writer until it is full
+    private Slab slab;
+
+    public OffHeapRecordsWriter(SlabPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Returns the record stored off-heap or null if it could not be stored.
+     */
+    public OffHeapWorkerRecord<K, V> write(WorkerRecord<K, V> record) {
+        Object key = record.key();
+        Object value = record.value();
+        if (!isBytes(key) || !isBytes(value)) {
+            return null;
+        }
+        Headers headers = record.headers();
+        int length = size((byte[]) key) + size((byte[]) value) + LENGTH_SIZE;
+        for (Header header : headers) {
+            length += size(header.key().getBytes(UTF_8)) + size(header.value());
+        }
+        if (length > pool.slabSize() || !ensureRemaining(length)) {
+            return null;
+        }
+
+        ByteBuffer buffer = slab.writeBuffer();
+        int position = buffer.position();
+        writeBytes(buffer, (byte[]) key);
+        writeBytes(buffer, (byte[]) value);
+        buffer.putInt(headersCount(headers));
+        for (Header header : headers) {
+            writeBytes(buffer, header.key().getBytes(UTF_8));
+            writeBytes(buffer, header.value());
+        }
+        slab.retain();
+
+        ConsumerRecord<K, V> consumerRecord = new ConsumerRecord<>(record.topic(), record.partition(),
+                record.offset(), record.timestamp(), record.timestampType(), null, record.serializedKeySize(),
+                record.serializedValueSize(), null, null, NO_HEADERS);
+        return new OffHeapWorkerRecord<>(consumerRecord, record.workerSubpartition(), record.consumedAtNanos(), slab,
+                position, length);
+    }
+
+    private boolean ensureRemaining(int length) {
+        if (slab != null && slab.writeBuffer().remaining() >= length) {
+            return true;
+        }
+        if (slab != null) {
+            slab.release();
+        }
+        slab = pool.acquire();
+        return slab != null;
+    }
+
+    /**
+     * Releases the current slab, so it could be returned to the pool when all its records are released.
+     */
+    public void close() {
+        if (slab != null) {
+            slab.release();
+            slab = null;
+        }
+    }
+
+    private static boolean isBytes(Object object) {
+        return object == null || object instanceof byte[];
+    }
+
+    private static int size(byte[] bytes) {
+        return LENGTH_SIZE + (bytes != null ? bytes.length : 0);
+    }
+
+    private static int headersCount(Headers headers) {
+        int count = 0;
+        for (Header ignored : headers) {
+            count++;
+        }
+        return count;
+    }
+
+    private static void writeBytes(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+}
@@ -0,0 +1,106 @@
+package com.rtbhouse.kafka.workers.impl.queues.offheap;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.nio.ByteBuffer;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+
+import com.rtbhouse.kafka.workers.api.partitioner.WorkerSubpartition;
+import com.rtbhouse.kafka.workers.api.record.WorkerRecord;
+import com.rtbhouse.kafka.workers.api.record.weigher.WeigherHelpers;
+
+/**
+ * Queued record whose serialized key, value and headers are stored in a {@link Slab}. They are copied back to the heap
+ * on the first access (or when the record is polled from its queue) by the worker thread, which releases the slab.
+ */
+public class OffHeapWorkerRecord<K, V> extends WorkerRecord<K, V> {
+
+    /**
+     * Estimated heap size of a queued record (with its consumer record without key, value and headers).
+     */
+    public static final int HEAP_SIZE = WeigherHelpers.estimateInstanceSize(OffHeapWorkerRecord.class)
+            + WeigherHelpers.estimateInstanceSize(ConsumerRecord.class);
+
+    private final Slab slab;
+    private final int position;
+    private final int length;
+
+    private boolean materialized;
+    private K key;
+    private V value;
+    private Headers headers;
+
+    OffHeapWorkerRecord(ConsumerRecord<K, V> record, WorkerSubpartition workerSubpartition, long consumedAtNanos,
+            Slab slab, int position, int length) {
+        super(record, workerSubpartition, consumedAtNanos);
+        this.slab = slab;
+        this.position = position;
+        this.length = length;
+    }
+
+    @Override
+    public K key() {
+        materialize();
+        return key;
+    }
+
+    @Override
+    public V value() {
+        materialize();
+        return value;
+    }
+
+    @Override
+    public Headers headers() {
+        materialize();
+        return headers;
+    }
+
+    public int offHeapSize() {
+        return length;
+    }
+
+    /**
+     * Copies the record to the heap and releases its slab (if it was not done before).
+     */
+    @SuppressWarnings("unchecked")
+    public void materialize() {
+        if (materialized) {
+            return;
+        }
+        ByteBuffer buffer = slab.readBuffer(position);
+        key = (K) readBytes(buffer);
+        value = (V) readBytes(buffer);
+        headers = new RecordHeaders();
+        int headersCount = buffer.getInt();
+        for (int i = 0; i < headersCount; i++) {
+            headers.add(new String(readBytes(buffer), UTF_8), readBytes(buffer));
+        }
+        materialized = true;
+        slab.release();
+    }
+
+    /**
+     * Releases the slab of a record which will not be processed (e.g. because its partition was revoked).
+     */
+    public void discard() {
+        if (!materialized) {
+            materialized = true;
+            slab.release();
+        }
+    }
+
+    private static byte[] readBytes(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+}
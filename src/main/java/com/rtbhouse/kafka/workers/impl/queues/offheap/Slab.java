@@ -0,0 +1,48 @@
+package com.rtbhouse.kafka.workers.impl.queues.offheap;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Direct (or memory-mapped) buffer which records of a single queue are appended to. It is referenced by its writer (until the
+ * buffer is full) and by every record stored in it, so it is returned to {@link SlabPool} when all of them release it.
+ */
+final class Slab {
+
+    private final SlabPool pool;
+    private final ByteBuffer buffer;
+    private final AtomicInteger references = new AtomicInteger();
+
+    Slab(SlabPool pool, ByteBuffer buffer) {
+        this.pool = pool;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Returns buffer which is written only by the current writer of the slab.
+     */
+    ByteBuffer writeBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Returns independent view of the buffer for reading records from given position.
+     */
+    ByteBuffer readBuffer(int position) {
+        ByteBuffer readBuffer = buffer.duplicate();
+        readBuffer.position(position);
+        return readBuffer;
+    }
+
+    void retain() {
+        references.incrementAndGet();
+    }
+
+    void release() {
+        if (references.decrementAndGet() == 0) {
+            buffer.clear();
+            pool.release(this);
+        }
+    }
+
+}
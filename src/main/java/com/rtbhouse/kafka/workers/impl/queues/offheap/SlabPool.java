@@ -0,0 +1,79 @@
+package com.rtbhouse.kafka.workers.impl.queues.offheap;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of equally sized direct memory slabs which are allocated lazily up to the off-heap budget and reused after
+ * release, so direct memory is neither allocated nor freed per record.
+ */
+public class SlabPool {
+
+    private final int slabSize;
+    private final int maxSlabs;
+
+    private final Queue<Slab> freeSlabs = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger allocatedSlabs = new AtomicInteger();
+    private final AtomicInteger usedSlabs = new AtomicInteger();
+
+    public SlabPool(long budgetBytes, int slabSize) {
+        checkArgument(slabSize > 0 && budgetBytes >= slabSize,
+                "budget [%s] should be at least one slab [%s]", budgetBytes, slabSize);
+        this.slabSize = slabSize;
+        this.maxSlabs = (int) Math.min(Integer.MAX_VALUE, budgetBytes / slabSize);
+    }
+
+    /**
+     * Returns free slab referenced once (by its writer) or null if the budget is exhausted.
+     */
+    Slab acquire() {
+        Slab slab = freeSlabs.poll();
+        if (slab == null) {
+            int allocated;
+            do {
+                allocated = allocatedSlabs.get();
+                if (allocated >= maxSlabs) {
+                    return null;
+                }
+            } while (!allocatedSlabs.compareAndSet(allocated, allocated + 1));
+            ByteBuffer buffer = allocate(slabSize);
+            if (buffer == null) {
+                allocatedSlabs.decrementAndGet();
+                return null;
+            }
+            slab = new Slab(this, buffer);
+        }
+        usedSlabs.incrementAndGet();
+        slab.retain();
+        return slab;
+    }
+
+    /**
+     * Returns new buffer of given size or null if it could not be allocated.
+     */
+    ByteBuffer allocate(int size) {
+        return ByteBuffer.allocateDirect(size);
+    }
+
+    void release(Slab slab) {
+        usedSlabs.decrementAndGet();
+        freeSlabs.add(slab);
+    }
+
+    public int slabSize() {
+        return slabSize;
+    }
+
+    public long budgetBytes() {
+        return (long) maxSlabs * slabSize;
+    }
+
+    public long usedBytes() {
+        return (long) usedSlabs.get() * slabSize;
+    }
+
+}
@@ -0,0 +1,55 @@
+package com.rtbhouse.kafka.workers.impl.range;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Collects distinct offsets (in any order) in a primitive array and merges them into contiguous ranges when drained,
+ * so offsets are not boxed. Could be reused after its ranges are drained (the array is kept).
+ */
+public class ClosedRangesBuilder {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private long[] offsets = new long[INITIAL_CAPACITY];
+    private int size;
+
+    // false once an offset lower than the previous one is added
+    private boolean sorted = true;
+
+    public void add(long offset) {
+        if (size == offsets.length) {
+            offsets = Arrays.copyOf(offsets, size * 2);
+        }
+        if (size > 0 && offset < offsets[size - 1]) {
+            sorted = false;
+        }
+        offsets[size++] = offset;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Passes all ranges (in order) to given consumer and clears the builder.
+     */
+    public void drain(Consumer<ClosedRange> consumer) {
+        if (!sorted) {
+            Arrays.sort(offsets, 0, size);
+        }
+        int start = 0;
+        for (int i = 1; i <= size; i++) {
+            if (i == size || offsets[i] != offsets[i - 1] + 1) {
+                checkState(i == size || offsets[i] > offsets[i - 1], "offset %s added twice", offsets[i - 1]);
+                consumer.accept(ClosedRange.range(offsets[start], offsets[i - 1]));
+                start = i;
+            }
+        }
+        size = 0;
+        sorted = true;
+    }
+
+}
@@ -5,9 +5,9 @@ import static com.google.common.base.Preconditions.checkState;
 import static com.rtbhouse.kafka.workers.impl.range.ClosedRange.singleElementRange;
 
 import java.util.AbstractCollection;
-import java.util.Collection;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NavigableSet;
 import java.util.NoSuchElementException;
 import java.util.Optional;
@@ -16,13 +16,20 @@ import java.util.TreeSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Not thread safe, callers should synchronize externally.
+ */
 public class SortedRanges extends AbstractCollection<ClosedRange> {
 
     private static final Logger logger = LoggerFactory.getLogger(SortedRanges.class);
 
     private NavigableSet<ClosedRange> ranges = new TreeSet<>(Comparator.comparingLong(ClosedRange::lowerEndpoint));
 
-    public synchronized Optional<ClosedRange> getFirst() {
+    private long elementsCount;
+
+    public Optional<ClosedRange> getFirst() {
         try {
             return Optional.of(ranges.first());
         } catch (NoSuchElementException e) {
@@ -30,7 +37,7 @@ public class SortedRanges extends AbstractCollection<ClosedRange> {
         }
     }
 
-    public synchronized Optional<ClosedRange> getLast() {
+    public Optional<ClosedRange> getLast() {
         try {
             return Optional.of(ranges.last());
         } catch (NoSuchElementException e) {
@@ -39,11 +46,15 @@ public class SortedRanges extends AbstractCollection<ClosedRange> {
     }
 
     @Override
-    public synchronized int size() {
+    public int size() {
         return ranges.size();
     }
 
-    public synchronized Optional<Long> getMinExistingElement(ClosedRange range) {
+    public long elementsCount() {
+        return elementsCount;
+    }
+
+    public Optional<Long> getMinExistingElement(ClosedRange range) {
         checkNotNull(range);
         ClosedRange prevRange = ranges.floor(range);
         if (prevRange != null) {
@@ -63,11 +74,11 @@ public class SortedRanges extends AbstractCollection<ClosedRange> {
     }
 
     @Override
-    public synchronized boolean contains(Object range) {
+    public boolean contains(Object range) {
         return ranges.contains(range);
     }
 
-    public synchronized boolean containsSingleElement(long element) {
+    public boolean containsSingleElement(long element) {
         ClosedRange enclosingRange = ranges.floor(singleElementRange(element));
         if (enclosingRange != null && element <= enclosingRange.upperEndpoint()) {
             logger.debug("enclosingRange for [{}] is {} (contains: {})", element, enclosingRange, enclosingRange.contains(element));
@@ -77,11 +88,31 @@ public class SortedRanges extends AbstractCollection<ClosedRange> {
 
     @Override
     public Iterator<ClosedRange> iterator() {
-        return ranges.iterator();
+        Iterator<ClosedRange> it = ranges.iterator();
+        return new Iterator<>() {
+            private ClosedRange last;
+
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public ClosedRange next() {
+                last = it.next();
+                return last;
+            }
+
+            @Override
+            public void remove() {
+                it.remove();
+                elementsCount -= last.size();
+            }
+        };
     }
 
     @Override
-    public synchronized boolean add(ClosedRange range) {
+    public boolean add(ClosedRange range) {
         ClosedRange prevRange = ranges.floor(range);
         ClosedRange nextRange = ranges.ceiling(range);
 
@@ -95,6 +126,7 @@ public class SortedRanges extends AbstractCollection<ClosedRange> {
                     "condition not met [range.upperEndpoint() < nextRange.lowerEndpoint()]: %s, %s",
                     range, nextRange);
         }
+        elementsCount += range.size();
 
         if (prevRange != null && touchingRanges(prevRange, range)) {
             if (nextRange != null && touchingRanges(range, nextRange)) {
@@ -120,12 +152,12 @@ public class SortedRanges extends AbstractCollection<ClosedRange> {
         return range1.upperEndpoint() + 1 == range2.lowerEndpoint();
     }
 
-    public synchronized void addSingleElement(long element) {
+    public void addSingleElement(long element) {
         add(singleElementRange(element));
     }
 
     @Override
-    public synchronized boolean remove(Object o) {
+    public boolean remove(Object o) {
         ClosedRange range = (ClosedRange) o;
         ClosedRange enclosingRange = ranges.floor(range);
         if (enclosingRange == null || !enclosingRange.encloses(range)) {
@@ -134,6 +166,7 @@ public class SortedRanges extends AbstractCollection<ClosedRange> {
         }
 
         ranges.remove(enclosingRange);
+        elementsCount -= range.size();
         if (enclosingRange.lowerEndpoint() < range.lowerEndpoint()) {
             ranges.add(ClosedRange.range(enclosingRange.lowerEndpoint(), range.lowerEndpoint() - 1));
         }
@@ -144,17 +177,18 @@ public class SortedRanges extends AbstractCollection<ClosedRange> {
         return true;
     }
 
-    public synchronized boolean removeSingleElement(long element) {
+    public boolean removeSingleElement(long element) {
         return remove(singleElementRange(element));
     }
 
-    public synchronized void removeElementsLowerOrEqual(long maxElement) {
+    public void removeElementsLowerOrEqual(long maxElement) {
         Iterator<ClosedRange> it = ranges.iterator();
         ClosedRange range = null;
         while (it.hasNext()) {
             range = it.next();
             if (range.upperEndpoint() <= maxElement) {
                 it.remove();
+                elementsCount -= range.size();
             } else {
                 break;
             }
@@ -162,31 +196,44 @@ public class SortedRanges extends AbstractCollection<ClosedRange> {
 
         if (range != null && range.lowerEndpoint() <= maxElement && maxElement < range.upperEndpoint()) {
             it.remove();
+            elementsCount -= range.size();
             add(ClosedRange.range(maxElement + 1, range.upperEndpoint()));
         }
     }
 
     @Override
-    public synchronized boolean addAll(Collection<? extends ClosedRange> c) {
-        return super.addAll(c);
+    public void clear() {
+        ranges.clear();
+        elementsCount = 0;
     }
 
-    @Override
-    public synchronized boolean removeAll(Collection<?> c) {
-        return super.removeAll(c);
-    }
-
-    @Override
-    public synchronized boolean retainAll(Collection<?> c) {
-        return super.retainAll(c);
+    public List<ClosedRange> missingRanges(ClosedRange range) {
+        ImmutableList.Builder<ClosedRange> builder = ImmutableList.builder();
+        long nextElement = range.lowerEndpoint();
+        ClosedRange floorRange = ranges.floor(singleElementRange(nextElement));
+        if (floorRange != null && floorRange.upperEndpoint() >= nextElement) {
+            nextElement = floorRange.upperEndpoint() + 1;
+        }
+        for (ClosedRange existingRange : ranges.tailSet(singleElementRange(nextElement), true)) {
+            if (existingRange.lowerEndpoint() > range.upperEndpoint()) {
+                break;
+            }
+            if (existingRange.lowerEndpoint() > nextElement) {
+                builder.add(ClosedRange.range(nextElement, existingRange.lowerEndpoint() - 1));
+            }
+            nextElement = existingRange.upperEndpoint() + 1;
+        }
+        if (nextElement <= range.upperEndpoint()) {
+            builder.add(ClosedRange.range(nextElement, range.upperEndpoint()));
+        }
+        return builder.build();
     }
 
-    @Override
-    public synchronized void clear() {
-        super.clear();
+    public List<ClosedRange> tailRanges(long fromElement) {
+        return ImmutableList.copyOf(ranges.tailSet(singleElementRange(fromElement), true));
     }
 
-    public synchronized Optional<Long> floorElement(long element) {
+    public Optional<Long> floorElement(long element) {
         return Optional.ofNullable(ranges.floor(singleElementRange(element)))
                 .map(floorRange -> Long.min(element, floorRange.upperEndpoint()));
     }
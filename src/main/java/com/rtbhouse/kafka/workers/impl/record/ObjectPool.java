@@ -0,0 +1,57 @@
+package com.rtbhouse.kafka.workers.impl.record;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.function.Function;
+
+/**
+ * Bounded pool of reusable objects taken by a single owner thread (the first one which takes an object) and released by
+ * any thread, e.g. by the one which acknowledges a record asynchronously. Objects released by the owner go straight to
+ * its free list, the ones released by other threads are passed through an array-based queue and moved to the free list
+ * in bulk when it is empty, so neither taking nor releasing allocates anything once the pool is warmed up. Objects
+ * released to a full pool are left for GC.
+ */
+public class ObjectPool<T> {
+
+    private final int capacity;
+    private final Function<ObjectPool<T>, T> factory;
+
+    // accessed only by the owner thread
+    private final ArrayDeque<T> free;
+    private Thread owner;
+
+    private final ArrayBlockingQueue<T> released;
+
+    /**
+     * @param factory
+     *            creates new objects (bound to given pool) when there are no free ones
+     */
+    public ObjectPool(int capacity, Function<ObjectPool<T>, T> factory) {
+        this.capacity = capacity;
+        this.factory = factory;
+        this.free = new ArrayDeque<>(capacity);
+        this.released = new ArrayBlockingQueue<>(capacity);
+    }
+
+    public T take() {
+        if (owner == null) {
+            owner = Thread.currentThread();
+        }
+        T object = free.pollLast();
+        if (object == null && released.drainTo(free, capacity) > 0) {
+            object = free.pollLast();
+        }
+        return object != null ? object : factory.apply(this);
+    }
+
+    public void release(T object) {
+        if (Thread.currentThread() == owner) {
+            if (free.size() < capacity) {
+                free.addLast(object);
+            }
+        } else {
+            released.offer(object);
+        }
+    }
+
+}
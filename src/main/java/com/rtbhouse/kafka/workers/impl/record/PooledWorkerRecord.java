@@ -0,0 +1,70 @@
+package com.rtbhouse.kafka.workers.impl.record;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+
+import com.rtbhouse.kafka.workers.api.partitioner.WorkerSubpartition;
+import com.rtbhouse.kafka.workers.api.record.WorkerRecord;
+
+/**
+ * Record taken from an {@link ObjectPool} of the consumer thread and released back to it when it is acknowledged (or
+ * when it is replaced by its off-heap or compressed copy in a queue). In debug mode released records are never reused
+ * and every access to them throws {@link IllegalStateException}, so tasks which keep records after acknowledging them
+ * are detected.
+ */
+public class PooledWorkerRecord<K, V> extends WorkerRecord<K, V> {
+
+    private final ObjectPool<PooledWorkerRecord<K, V>> pool;
+    private final boolean debug;
+
+    private boolean released;
+
+    public PooledWorkerRecord(ObjectPool<PooledWorkerRecord<K, V>> pool, boolean debug) {
+        super(null, null, 0L);
+        this.pool = pool;
+        this.debug = debug;
+    }
+
+    public PooledWorkerRecord<K, V> init(ConsumerRecord<K, V> record, WorkerSubpartition workerSubpartition,
+            long consumedAtNanos) {
+        reset(record, workerSubpartition, consumedAtNanos);
+        released = false;
+        return this;
+    }
+
+    /**
+     * Releases the record to its pool. It must not be accessed afterwards.
+     */
+    public void release() {
+        if (debug) {
+            checkNotReleased();
+            released = true;
+            return;
+        }
+        // drops references to the consumer record, so it could be collected while the record is pooled
+        reset(null, null, 0L);
+        pool.release(this);
+    }
+
+    @Override
+    protected ConsumerRecord<K, V> consumerRecord() {
+        if (debug) {
+            checkNotReleased();
+        }
+        return super.consumerRecord();
+    }
+
+    @Override
+    public WorkerSubpartition workerSubpartition() {
+        if (debug) {
+            checkNotReleased();
+        }
+        return super.workerSubpartition();
+    }
+
+    private void checkNotReleased() {
+        if (released) {
+            throw new IllegalStateException("record was used after it was released (acknowledged)");
+        }
+    }
+
+}
@@ -1,5 +1,13 @@
 package com.rtbhouse.kafka.workers.impl.record;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.kafka.common.TopicPartition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -8,9 +16,15 @@ import com.rtbhouse.kafka.workers.api.partitioner.WorkerSubpartition;
 import com.rtbhouse.kafka.workers.api.record.RecordProcessingGuarantee;
 import com.rtbhouse.kafka.workers.api.record.RecordStatusObserver;
 import com.rtbhouse.kafka.workers.api.record.WorkerRecord;
+import com.rtbhouse.kafka.workers.impl.errors.BadOffsetException;
 import com.rtbhouse.kafka.workers.impl.errors.ProcessingFailureException;
+import com.rtbhouse.kafka.workers.impl.metrics.CounterMetric;
+import com.rtbhouse.kafka.workers.impl.metrics.RecordLatencies;
+import com.rtbhouse.kafka.workers.impl.metrics.SubpartitionMetrics;
 import com.rtbhouse.kafka.workers.impl.metrics.WorkersMetrics;
 import com.rtbhouse.kafka.workers.impl.offsets.OffsetsState;
+import com.rtbhouse.kafka.workers.impl.range.ClosedRange;
+import com.rtbhouse.kafka.workers.impl.task.WorkerTaskImpl;
 import com.rtbhouse.kafka.workers.impl.task.WorkerThread;
 
 public class RecordStatusObserverImpl<K, V> implements RecordStatusObserver {
@@ -19,36 +33,144 @@ public class RecordStatusObserverImpl<K, V> implements RecordStatusObserver {
 
     protected final WorkerSubpartition subpartition;
     protected final long offset;
+    protected final SubpartitionMetrics subpartitionMetrics;
     protected final Context<K, V> context;
 
+    // null if latency of the record is not recorded
+    protected final RecordLatencies recordLatencies;
+    protected final long createdAtNanos;
+
+    // null if in-flight records of the subpartition are not counted
+    protected final CounterMetric inFlightRecords;
+
+    // released to its pool once the record is acknowledged, null if the record is not pooled (or already released)
+    private PooledWorkerRecord<K, V> pooledRecord;
+
     public RecordStatusObserverImpl(
             WorkerRecord<K, V> record,
+            WorkerTaskImpl<K, V> task,
             Context<K, V> context
     ) {
-        this.subpartition = WorkerSubpartition.getInstance(record.topicPartition(), record.subpartition());
+        // observers are never pooled: tasks keep them (e.g. in asynchronous callbacks), so a reused observer could be
+        // acknowledged once more and mark an offset of another record as processed
+        this.pooledRecord = record instanceof PooledWorkerRecord ? (PooledWorkerRecord<K, V>) record : null;
+        this.subpartition = record.workerSubpartition();
         this.offset = record.offset();
+        this.subpartitionMetrics = task.subpartitionMetrics();
         this.context = context;
+        // observer is created just before the record is processed
+        this.inFlightRecords = task.inFlightRecords();
+        if (inFlightRecords != null) {
+            inFlightRecords.increment();
+        }
+        RecordLatencies recordLatencies = task.recordLatencies();
+        boolean latencySampled = recordLatencies != null && context.metrics.shouldSample();
+        this.recordLatencies = latencySampled ? recordLatencies : null;
+        this.createdAtNanos = latencySampled ? System.nanoTime() : 0L;
     }
 
     @Override
     public void onSuccess() {
         markRecordProcessed();
+        releaseRecord();
     }
 
     @Override
     public void onFailure(Exception exception) {
         if (RecordProcessingGuarantee.AT_LEAST_ONCE.equals(context.getRecordProcessingGuarantee())) {
+            // the record is not acknowledged, so it is not released: the failing task (or the one handling the
+            // shutdown) could still access it, and it is left for GC as its pool creates a new one when needed
             context.workerThread.shutdown(new ProcessingFailureException(
                     "record processing failed, subpartition: " + subpartition + " , offset: " + offset, exception));
         } else {
             logger.warn("record processing failed, subpartition: " + subpartition + "offset: " + offset, exception);
             markRecordProcessed();
+            releaseRecord();
+        }
+    }
+
+    /**
+     * Releases the record to its pool (if it is pooled) once it is acknowledged.
+     */
+    private void releaseRecord() {
+        if (pooledRecord != null) {
+            pooledRecord.release();
+            pooledRecord = null;
         }
     }
 
     private void markRecordProcessed() {
-        context.metrics.recordSensor(WorkersMetrics.PROCESSED_OFFSET_METRIC, subpartition, offset);
+        // offsets state is updated first, so metrics are not recorded for a rejected offset
         context.offsetsState.updateProcessed(subpartition.topicPartition(), offset);
+        if (inFlightRecords != null) {
+            inFlightRecords.decrement();
+        }
+        if (recordLatencies != null) {
+            recordLatencies.recordProcessToSuccess(System.nanoTime() - createdAtNanos);
+        }
+        if (subpartitionMetrics != null && context.metrics.shouldSample()) {
+            subpartitionMetrics.processedOffset().record(offset);
+        }
+    }
+
+    /**
+     * Marks all given observers as successfully processed. Offsets are grouped by partition and merged into
+     * contiguous ranges, so {@link OffsetsState} is updated once per range instead of once per record.
+     */
+    public static void onSuccess(Collection<? extends RecordStatusObserver> observers) {
+        Map<TopicPartition, List<RecordStatusObserverImpl<?, ?>>> observersByPartition = new HashMap<>();
+        for (RecordStatusObserver observer : observers) {
+            if (observer instanceof RecordStatusObserverImpl) {
+                RecordStatusObserverImpl<?, ?> observerImpl = (RecordStatusObserverImpl<?, ?>) observer;
+                observersByPartition.computeIfAbsent(observerImpl.subpartition.topicPartition(), k -> new ArrayList<>())
+                        .add(observerImpl);
+            } else {
+                observer.onSuccess();
+            }
+        }
+        observersByPartition.forEach(RecordStatusObserverImpl::markRecordsProcessed);
+    }
+
+    private static void markRecordsProcessed(TopicPartition partition, List<RecordStatusObserverImpl<?, ?>> observers) {
+        Context<?, ?> context = observers.get(0).context;
+        long[] offsets = new long[observers.size()];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = observers.get(i).offset;
+        }
+        Arrays.sort(offsets);
+        for (int i = 1; i < offsets.length; i++) {
+            if (offsets[i] == offsets[i - 1]) {
+                throw new BadOffsetException("Offset: " + offsets[i] + " for partition: " + partition
+                        + " was processed before");
+            }
+        }
+        List<ClosedRange> ranges = new ArrayList<>();
+        int start = 0;
+        for (int i = 1; i <= offsets.length; i++) {
+            if (i == offsets.length || offsets[i] != offsets[i - 1] + 1) {
+                ranges.add(ClosedRange.range(offsets[start], offsets[i - 1]));
+                start = i;
+            }
+        }
+        // offsets state validates all ranges before updating any of them, so metrics are recorded only once the whole
+        // batch is accepted and a failing batch has no side effects
+        context.offsetsState.updateProcessed(partition, ranges);
+
+        Map<SubpartitionMetrics, Long> maxOffsets = new HashMap<>();
+        long nowNanos = System.nanoTime();
+        for (RecordStatusObserverImpl<?, ?> observer : observers) {
+            if (observer.inFlightRecords != null) {
+                observer.inFlightRecords.decrement();
+            }
+            if (observer.recordLatencies != null) {
+                observer.recordLatencies.recordProcessToSuccess(nowNanos - observer.createdAtNanos);
+            }
+            if (observer.subpartitionMetrics != null) {
+                maxOffsets.merge(observer.subpartitionMetrics, observer.offset, Math::max);
+            }
+        }
+        maxOffsets.forEach((subpartitionMetrics, offset) -> subpartitionMetrics.processedOffset().record(offset));
+        observers.forEach(RecordStatusObserverImpl::releaseRecord);
     }
 
     public static class Context<K, V> {
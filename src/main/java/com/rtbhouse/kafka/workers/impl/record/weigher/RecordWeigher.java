@@ -9,11 +9,13 @@ import org.apache.kafka.common.header.Headers;
 import org.apache.kafka.common.header.internals.RecordHeader;
 import org.apache.kafka.common.header.internals.RecordHeaders;
 
+import com.rtbhouse.kafka.workers.api.partitioner.WorkerSubpartition;
 import com.rtbhouse.kafka.workers.api.record.WorkerRecord;
 import com.rtbhouse.kafka.workers.api.record.weigher.ByteArrayWeigher;
 import com.rtbhouse.kafka.workers.api.record.weigher.StringWeigher;
 import com.rtbhouse.kafka.workers.api.record.weigher.Weigher;
 import com.rtbhouse.kafka.workers.api.record.weigher.WeigherHelpers;
+import com.rtbhouse.kafka.workers.impl.queues.compression.CompressedWorkerRecord;
 
 public final class RecordWeigher<K, V> implements Weigher<WorkerRecord<K, V>> {
 
@@ -26,7 +28,8 @@ public final class RecordWeigher<K, V> implements Weigher<WorkerRecord<K, V>> {
             - OBJECT_INSTANCE_SIZE // record.key
             - OBJECT_INSTANCE_SIZE // record.value
             - StringWeigher.STRING_INSTANCE_SIZE // record.topic
-            - WeigherHelpers.estimateInstanceSize(Headers.class); // record.headers
+            - WeigherHelpers.estimateInstanceSize(Headers.class) // record.headers
+            - WeigherHelpers.estimateInstanceSize(WorkerSubpartition.class); // shared by all records of subpartition
 
     private static final int RECORD_HEADER_INSTANCE_SIZE = WeigherHelpers.estimateInstanceSize(RecordHeader.class)
             // subtract fields which size will be added separately
@@ -47,11 +50,19 @@ public final class RecordWeigher<K, V> implements Weigher<WorkerRecord<K, V>> {
     public long weigh(WorkerRecord<K, V> record) {
         return RECORD_INSTANCE_SIZE
                 + keyWeigher.weigh(record.key())
-                + valueWeigher.weigh(record.value())
+                + weighValue(record)
                 + StringWeigher.INSTANCE.weigh(record.topic())
                 + weigh(record.headers());
     }
 
+    private long weighValue(WorkerRecord<K, V> record) {
+        if (record instanceof CompressedWorkerRecord) {
+            // only the compressed value is queued (even if it was already decompressed by peeking the record)
+            return ByteArrayWeigher.INSTANCE.weight(((CompressedWorkerRecord<K, V>) record).compressedValueLength());
+        }
+        return valueWeigher.weigh(record.value());
+    }
+
     private long weigh(Headers headers) {
         long size = RECORD_HEADERS_INSTANCE_SIZE;
         for (Header header : headers) {
@@ -1,7 +1,7 @@
 package com.rtbhouse.kafka.workers.impl.task;
 
 import java.time.Duration;
-import java.time.Instant;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -15,6 +15,7 @@ import com.rtbhouse.kafka.workers.api.WorkersConfig;
 import com.rtbhouse.kafka.workers.api.partitioner.WorkerSubpartition;
 import com.rtbhouse.kafka.workers.api.task.WorkerTaskFactory;
 import com.rtbhouse.kafka.workers.impl.Partitioned;
+import com.rtbhouse.kafka.workers.impl.clock.WorkersClock;
 import com.rtbhouse.kafka.workers.impl.metrics.WorkersMetrics;
 import com.rtbhouse.kafka.workers.impl.offsets.OffsetsState;
 import com.rtbhouse.kafka.workers.impl.partitioner.SubpartitionSupplier;
@@ -30,10 +31,14 @@ public class TaskManager<K, V> implements Partitioned {
     private final SubpartitionSupplier<K, V> subpartitionSupplier;
     private final List<WorkerThread<K, V>> threads;
     private final OffsetsState offsetsState;
+    private final WorkersClock clock;
     private final Duration consumerProcessingTimeout;
 
     private final Map<WorkerSubpartition, WorkerTaskImpl<K, V>> partitionToTaskMap = new ConcurrentHashMap<>();
 
+    // indexed by subpartition id (see SubpartitionSupplier), replaced on every (un)registration
+    private volatile WorkerTaskImpl<K, V>[] tasksBySubpartitionId = newTasks(0);
+
     private final Object rebalanceLock = new Object();
 
     public TaskManager(
@@ -42,25 +47,36 @@ public class TaskManager<K, V> implements Partitioned {
             WorkerTaskFactory<K, V> taskFactory,
             SubpartitionSupplier<K, V> subpartitionSupplier,
             List<WorkerThread<K, V>> threads,
-            OffsetsState offsetsState) {
+            OffsetsState offsetsState,
+            WorkersClock clock) {
         this.config = config;
         this.metrics = metrics;
         this.taskFactory = taskFactory;
         this.subpartitionSupplier = subpartitionSupplier;
         this.threads = threads;
         this.offsetsState = offsetsState;
+        this.clock = clock;
         this.consumerProcessingTimeout = this.config.getConsumerProcessingTimeout();
     }
 
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <K, V> WorkerTaskImpl<K, V>[] newTasks(int length) {
+        return (WorkerTaskImpl<K, V>[]) new WorkerTaskImpl[length];
+    }
+
     @Override
     public void register(Collection<TopicPartition> topicPartitions) throws InterruptedException {
         stopThreads();
 
+        WorkerTaskImpl<K, V>[] newTasks = Arrays.copyOf(tasksBySubpartitionId, subpartitionSupplier.maxSubpartitionsCount());
         for (WorkerSubpartition subpartition : subpartitionSupplier.subpartitions(topicPartitions)) {
-            WorkerTaskImpl<K, V> task = new WorkerTaskImpl<>(taskFactory.createTask(config), metrics);
+            int subpartitionId = subpartitionSupplier.subpartitionId(subpartition);
+            WorkerTaskImpl<K, V> task = new WorkerTaskImpl<>(taskFactory.createTask(config), metrics, subpartitionId);
             task.init(subpartition, config);
             partitionToTaskMap.put(subpartition, task);
+            newTasks[subpartitionId] = task;
         }
+        tasksBySubpartitionId = newTasks;
 
         rebalanceTasks();
 
@@ -71,19 +87,22 @@ public class TaskManager<K, V> implements Partitioned {
     public void unregister(Collection<TopicPartition> topicPartitions) throws InterruptedException {
         stopThreads();
 
+        WorkerTaskImpl<K, V>[] newTasks = tasksBySubpartitionId.clone();
         for (WorkerSubpartition subpartition : subpartitionSupplier.subpartitions(topicPartitions)) {
             WorkerTaskImpl<K, V> task = partitionToTaskMap.get(subpartition);
             task.close();
             partitionToTaskMap.remove(subpartition);
+            newTasks[task.subpartitionId()] = null;
         }
+        tasksBySubpartitionId = newTasks;
 
         rebalanceTasks();
 
         startThreads();
     }
 
-    public void notifyTask(WorkerSubpartition subpartition) {
-        partitionToTaskMap.get(subpartition).notifyTask();
+    public void notifyTask(int subpartitionId) {
+        tasksBySubpartitionId[subpartitionId].notifyTask();
     }
 
     public void notifyTaskManager() {
@@ -115,7 +134,7 @@ public class TaskManager<K, V> implements Partitioned {
                 // timeout here is needed to check periodically whether some consumed records have timed out
                 // without it a deadlock can happen (when some processing threads are blocked)
                 rebalanceLock.wait(CHECK_TIMED_OUT_RECORDS_EVERY.toMillis());
-                offsetsState.timeoutRecordsConsumedBefore(Instant.now().minus(consumerProcessingTimeout));
+                offsetsState.timeoutRecordsConsumedBefore(clock.millis() - consumerProcessingTimeout.toMillis());
             }
         }
     }
@@ -5,6 +5,10 @@ import com.rtbhouse.kafka.workers.api.partitioner.WorkerSubpartition;
 import com.rtbhouse.kafka.workers.api.record.RecordStatusObserver;
 import com.rtbhouse.kafka.workers.api.record.WorkerRecord;
 import com.rtbhouse.kafka.workers.api.task.WorkerTask;
+import com.rtbhouse.kafka.workers.impl.metrics.CounterMetric;
+import com.rtbhouse.kafka.workers.impl.metrics.RecordLatencies;
+import com.rtbhouse.kafka.workers.impl.metrics.SubpartitionMetrics;
+import com.rtbhouse.kafka.workers.impl.metrics.ThreadCpuTime;
 import com.rtbhouse.kafka.workers.impl.metrics.WorkersMetrics;
 
 public class WorkerTaskImpl<K, V> implements WorkerTask<K, V> {
@@ -14,36 +18,79 @@ public class WorkerTaskImpl<K, V> implements WorkerTask<K, V> {
 
     private final WorkersMetrics metrics;
 
+    // dense id of the subpartition used for queues and tasks lookups (see SubpartitionSupplier)
+    private final int subpartitionId;
+
     // subpartition which is associated with given task in one-to-one relation
     private WorkerSubpartition subpartition;
 
+    // metrics of the subpartition resolved once during initialization (null if trace metrics are not recorded)
+    private SubpartitionMetrics subpartitionMetrics;
+
+    // null if debug metrics are not recorded
+    private RecordLatencies recordLatencies;
+
+    // CPU time of the task is measured only together with other trace metrics
+    private boolean measureCpuTime;
+
+    // records passed to the task but not marked as processed yet (null if debug metrics are not recorded)
+    private CounterMetric inFlightRecords;
+
     private WorkerThread<K, V> thread;
 
-    public WorkerTaskImpl(WorkerTask<K, V> task, WorkersMetrics metrics) {
+    public WorkerTaskImpl(WorkerTask<K, V> task, WorkersMetrics metrics, int subpartitionId) {
         this.task = task;
         this.metrics = metrics;
+        this.subpartitionId = subpartitionId;
     }
 
     @Override
     public void init(WorkerSubpartition subpartition, WorkersConfig config) {
         this.subpartition = subpartition;
-        metrics.addWorkerThreadSubpartitionMetrics(subpartition);
+        this.subpartitionMetrics = metrics.addWorkerThreadSubpartitionMetrics(subpartition);
+        this.recordLatencies = metrics.addRecordLatencies(subpartition);
+        this.inFlightRecords = metrics.addInFlightRecordsMetric(subpartition);
+        this.measureCpuTime = subpartitionMetrics != null && ThreadCpuTime.isSupported();
         task.init(subpartition, config);
     }
 
     @Override
     public boolean accept(WorkerRecord<K, V> record) {
-        metrics.recordSensor(WorkersMetrics.ACCEPTING_OFFSET_METRIC, subpartition, record.offset());
+        boolean sampled = subpartitionMetrics != null && metrics.shouldSample();
+        if (sampled) {
+            subpartitionMetrics.acceptingOffset().record(record.offset());
+        }
+        long cpuTime = measureCpuTime ? ThreadCpuTime.currentThreadNanos() : 0L;
         boolean accepted = task.accept(record);
-        if (accepted) {
-            metrics.recordSensor(WorkersMetrics.ACCEPTED_OFFSET_METRIC, subpartition, record.offset());
+        if (measureCpuTime) {
+            subpartitionMetrics.addCpuTime(ThreadCpuTime.currentThreadNanos() - cpuTime);
+        }
+        if (accepted && sampled) {
+            subpartitionMetrics.acceptedOffset().record(record.offset());
         }
         return accepted;
     }
 
     @Override
     public void process(WorkerRecord<K, V> record, RecordStatusObserver observer) {
-        metrics.recordSensor(WorkersMetrics.PROCESSING_OFFSET_METRIC, subpartition, record.offset());
+        if (subpartitionMetrics != null && metrics.shouldSample()) {
+            subpartitionMetrics.processingOffset().record(record.offset());
+        }
+        long cpuTime = measureCpuTime ? ThreadCpuTime.currentThreadNanos() : 0L;
+        if (recordLatencies != null && metrics.shouldSample()) {
+            long startNanos = System.nanoTime();
+            recordLatencies.recordQueueWait(startNanos - record.consumedAtNanos());
+            process(task, record, observer);
+            recordLatencies.recordProcess(System.nanoTime() - startNanos);
+        } else {
+            process(task, record, observer);
+        }
+        if (measureCpuTime) {
+            subpartitionMetrics.addCpuTime(ThreadCpuTime.currentThreadNanos() - cpuTime);
+        }
+    }
+
+    private static <K, V> void process(WorkerTask<K, V> task, WorkerRecord<K, V> record, RecordStatusObserver observer) {
         try {
             task.process(record, observer);
         } catch (Exception e) {
@@ -53,19 +100,41 @@ public class WorkerTaskImpl<K, V> implements WorkerTask<K, V> {
 
     @Override
     public void punctuate(long punctuateTime) {
+        long cpuTime = measureCpuTime ? ThreadCpuTime.currentThreadNanos() : 0L;
         task.punctuate(punctuateTime);
+        if (measureCpuTime) {
+            subpartitionMetrics.addCpuTime(ThreadCpuTime.currentThreadNanos() - cpuTime);
+        }
     }
 
     @Override
     public void close() {
         task.close();
         metrics.removeWorkerThreadSubpartitionMetrics(subpartition);
+        metrics.removeRecordLatencies(subpartition);
+        metrics.removeInFlightRecordsMetric(subpartition);
     }
 
     public WorkerSubpartition subpartition() {
         return subpartition;
     }
 
+    public SubpartitionMetrics subpartitionMetrics() {
+        return subpartitionMetrics;
+    }
+
+    public RecordLatencies recordLatencies() {
+        return recordLatencies;
+    }
+
+    public CounterMetric inFlightRecords() {
+        return inFlightRecords;
+    }
+
+    public int subpartitionId() {
+        return subpartitionId;
+    }
+
     public void setThread(WorkerThread<K, V> thread) {
         this.thread = thread;
     }
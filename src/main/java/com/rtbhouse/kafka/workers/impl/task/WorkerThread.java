@@ -13,6 +13,9 @@ import com.rtbhouse.kafka.workers.api.record.RecordStatusObserver;
 import com.rtbhouse.kafka.workers.api.record.WorkerRecord;
 import com.rtbhouse.kafka.workers.impl.AbstractWorkersThread;
 import com.rtbhouse.kafka.workers.impl.KafkaWorkersImpl;
+import com.rtbhouse.kafka.workers.impl.clock.WorkersClock;
+import com.rtbhouse.kafka.workers.impl.metrics.WorkerThreadTimes;
+import com.rtbhouse.kafka.workers.impl.metrics.WorkerThreadTimes.Activity;
 import com.rtbhouse.kafka.workers.impl.metrics.WorkersMetrics;
 import com.rtbhouse.kafka.workers.impl.offsets.OffsetsState;
 import com.rtbhouse.kafka.workers.impl.queues.QueuesManager;
@@ -31,9 +34,11 @@ public class WorkerThread<K, V> extends AbstractWorkersThread {
     private final QueuesManager<K, V> queueManager;
     private final List<WorkerTaskImpl<K, V>> tasks = new CopyOnWriteArrayList<>();
     private final RecordStatusObserverImpl.Context<K, V> recordStatusObserverThreadContext;
+    private final WorkersClock clock;
+    private final WorkerThreadTimes times = new WorkerThreadTimes();
 
     private volatile boolean waiting = false;
-    private volatile long punctuateTime = System.currentTimeMillis();
+    private volatile long punctuateTime;
 
     public WorkerThread(
             int workerId,
@@ -42,7 +47,8 @@ public class WorkerThread<K, V> extends AbstractWorkersThread {
             KafkaWorkersImpl<K, V> workers,
             TaskManager<K, V> taskManager,
             QueuesManager<K, V> queueManager,
-            OffsetsState offsetsState) {
+            OffsetsState offsetsState,
+            WorkersClock clock) {
         super("worker-thread-" + workerId, config, metrics, workers);
 
         this.workerId = workerId;
@@ -53,6 +59,8 @@ public class WorkerThread<K, V> extends AbstractWorkersThread {
         this.taskManager = taskManager;
         this.queueManager = queueManager;
         this.recordStatusObserverThreadContext = new RecordStatusObserverImpl.Context<>(metrics, config, offsetsState, this);
+        this.clock = clock;
+        this.punctuateTime = clock.millis();
     }
 
     @Override
@@ -64,32 +72,40 @@ public class WorkerThread<K, V> extends AbstractWorkersThread {
     @Override
     public void process() throws InterruptedException {
         int checkedTasksCount = 0, acceptedTasksCount = 0;
+        // every activity is timed from the end of the previous one, so only one nanoTime() call is needed per activity
+        long time = System.nanoTime();
         // gets tasks to process or blocks current thread in two cases:
         // 1. all assigned tasks have empty internal queues without any records to process (to avoid busy waiting)
         // 2. there are not any tasks assigned (e.g. because of tasks rebalance)
-        for (WorkerTaskImpl<K, V> task : getTasksToProcess()) {
-            WorkerRecord<K, V> peekRecord = queueManager.peek(task.subpartition());
+        List<WorkerTaskImpl<K, V>> tasksToProcess = getTasksToProcess();
+        time = addTime(Activity.WAIT, time);
+        for (WorkerTaskImpl<K, V> task : tasksToProcess) {
+            WorkerRecord<K, V> peekRecord = queueManager.peek(task.subpartitionId());
             if (peekRecord == null) {
                 throw new WorkersException("peekRecord is null");
             }
             checkedTasksCount++;
-            if (task.accept(peekRecord)) {
+            boolean accepted = task.accept(peekRecord);
+            time = addTime(Activity.ACCEPT, time);
+            if (accepted) {
                 acceptedTasksCount++;
-                WorkerRecord<K, V> pollRecord = queueManager.poll(task.subpartition());
+                WorkerRecord<K, V> pollRecord = queueManager.poll(task.subpartitionId());
                 if (pollRecord == null || !pollRecord.equals(peekRecord)) {
                     throw new WorkersException("peekRecord and pollRecord are different");
                 }
 
-                task.process(pollRecord, createRecordStatusObserver(pollRecord));
+                task.process(pollRecord, createRecordStatusObserver(task, pollRecord));
+                time = addTime(Activity.PROCESS, time);
             }
         }
 
         if (shouldPunctuateNow()) {
-            long currentTime = System.currentTimeMillis();
+            long currentTime = clock.millis();
             for (WorkerTaskImpl<K, V> task : tasks) {
                 task.punctuate(currentTime);
             }
             punctuateTime = currentTime;
+            addTime(Activity.PUNCTUATE, time);
 
         } else if (acceptedTasksCount == 0) {
             // all records are not accepted to process so thread goes to sleep (again to avoid busy waiting)
@@ -98,12 +114,23 @@ public class WorkerThread<K, V> extends AbstractWorkersThread {
             if (sleepMillis > 0) {
                 logger.debug("goes to sleep for {} ms because from {} peek records 0 is accepted", sleepMillis, checkedTasksCount);
                 Thread.sleep(sleepMillis);
+                addTime(Activity.SLEEP, time);
             }
         }
     }
 
-    private RecordStatusObserver createRecordStatusObserver(WorkerRecord<K, V> pollRecord) {
-        return new RecordStatusObserverImpl<>(pollRecord, recordStatusObserverThreadContext);
+    private long addTime(Activity activity, long startNanos) {
+        long endNanos = System.nanoTime();
+        times.add(activity, endNanos - startNanos);
+        return endNanos;
+    }
+
+    public WorkerThreadTimes times() {
+        return times;
+    }
+
+    private RecordStatusObserver createRecordStatusObserver(WorkerTaskImpl<K, V> task, WorkerRecord<K, V> pollRecord) {
+        return new RecordStatusObserverImpl<>(pollRecord, task, recordStatusObserverThreadContext);
     }
 
     @Override
@@ -149,7 +176,8 @@ public class WorkerThread<K, V> extends AbstractWorkersThread {
 
     public synchronized void notifyThread() {
         for (WorkerTaskImpl<K, V> task : tasks) {
-            if (queueManager.peek(task.subpartition()) != null) {
+            // called by other threads, so queues are only checked (superseded records are dropped by this thread)
+            if (queueManager.hasRecords(task.subpartitionId())) {
                 waiting = false;
                 // wakes thread up because at least one record was pushed to process
                 notify();
@@ -168,7 +196,7 @@ public class WorkerThread<K, V> extends AbstractWorkersThread {
     }
 
     private long remainingMsToPunctuate() {
-        long currentTime = System.currentTimeMillis();
+        long currentTime = clock.millis();
         return punctuatorIntervalMs - (currentTime - punctuateTime);
     }
 
@@ -179,7 +207,7 @@ public class WorkerThread<K, V> extends AbstractWorkersThread {
             int queues = 0;
             for (WorkerTaskImpl<K, V> task : tasks) {
                 queues++;
-                if (queueManager.peek(task.subpartition()) != null) {
+                if (queueManager.peek(task.subpartitionId()) != null) {
                     tasksToProcess.add(task);
                 }
             }
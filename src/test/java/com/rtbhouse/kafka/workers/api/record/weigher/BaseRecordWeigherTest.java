@@ -29,16 +29,16 @@ public class BaseRecordWeigherTest {
 
     @Test
     @Parameters({
-            "0, 0, 280",
-            "1, 0, 288",
-            "0, 1, 288",
-            "7, 0, 288",
-            "0, 7, 288",
-            "3, 4, 296",
-            "4, 3, 296",
-            "7, 7, 296",
-            "111, 222, 616",
-            "222, 111, 616"
+            "0, 0, 288",
+            "1, 0, 296",
+            "0, 1, 296",
+            "7, 0, 296",
+            "0, 7, 296",
+            "3, 4, 304",
+            "4, 3, 304",
+            "7, 7, 304",
+            "111, 222, 624",
+            "222, 111, 624"
     })
     public void shouldWeighByteArrays(int keyLength, int valueLength, long expectedWeight) {
         // given
@@ -52,16 +52,16 @@ public class BaseRecordWeigherTest {
 
     @Test
     @Parameters({
-            "0, 0, 344",
-            "1, 0, 352",
-            "0, 1, 352",
-            "7, 0, 352",
-            "0, 7, 352",
-            "3, 4, 360",
-            "4, 3, 360",
-            "7, 7, 360",
-            "111, 222, 680",
-            "222, 111, 680"
+            "0, 0, 352",
+            "1, 0, 360",
+            "0, 1, 360",
+            "7, 0, 360",
+            "0, 7, 360",
+            "3, 4, 368",
+            "4, 3, 368",
+            "7, 7, 368",
+            "111, 222, 688",
+            "222, 111, 688"
     })
     public void shouldWeighStrings(int keyLength, int valueLength, long expectedWeight) {
         // given
@@ -75,15 +75,15 @@ public class BaseRecordWeigherTest {
 
     @Test
     @Parameters({
-            "392, 1:1",
-            "392, 123:1234",
-            "392, 1234:123",
-            "400, 1:123456789",
-            "400, 123456789:1",
-            "408, 123456789:123456789",
-            "504, 1:1, 1:1",
-            "616, 1:1, 1:1, 12345678:12345678",
-            "632, 1:1, 1:1, 123456789:123456789"
+            "400, 1:1",
+            "400, 123:1234",
+            "400, 1234:123",
+            "408, 1:123456789",
+            "408, 123456789:1",
+            "416, 123456789:123456789",
+            "512, 1:1, 1:1",
+            "624, 1:1, 1:1, 12345678:12345678",
+            "640, 1:1, 1:1, 123456789:123456789"
     })
     public void shouldWeighHeaders(long expectedWeight, String[] headers) {
         // given
@@ -18,7 +18,7 @@ public class WeigherHelperTest {
             "java.lang.Long, 24",
             "java.lang.String, 48",
             "org.apache.kafka.common.header.internals.RecordHeaders, 40",
-            "com.rtbhouse.kafka.workers.api.record.WorkerRecord, 256"
+            "com.rtbhouse.kafka.workers.api.record.WorkerRecord, 376"
     })
     public void shouldEstimateInstanceSize(String className, int expectedSize) throws ClassNotFoundException {
         // given
@@ -0,0 +1,39 @@
+package com.rtbhouse.kafka.workers.impl.clock;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class CoarseWorkersClockTest {
+
+    @Test
+    public void shouldReturnTimeFromLastTick() {
+        //given
+        AtomicLong sourceMillis = new AtomicLong(10L);
+        CoarseWorkersClock clock = new CoarseWorkersClock(sourceMillis::get);
+
+        //when
+        sourceMillis.set(20L);
+
+        //then
+        assertThat(clock.millis()).isEqualTo(10L);
+        clock.tick();
+        assertThat(clock.millis()).isEqualTo(20L);
+    }
+
+    @Test
+    public void shouldReturnSourceTimeWhenStopped() {
+        //given
+        AtomicLong sourceMillis = new AtomicLong(10L);
+        CoarseWorkersClock clock = new CoarseWorkersClock(sourceMillis::get);
+
+        //when
+        clock.stop();
+        sourceMillis.set(20L);
+
+        //then
+        assertThat(clock.millis()).isEqualTo(20L);
+    }
+}
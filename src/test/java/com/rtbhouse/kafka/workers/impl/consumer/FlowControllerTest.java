@@ -0,0 +1,102 @@
+package com.rtbhouse.kafka.workers.impl.consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import com.rtbhouse.kafka.workers.impl.queues.QueuesManager;
+
+@RunWith(MockitoJUnitRunner.class)
+public class FlowControllerTest {
+
+    private static final TopicPartition PARTITION_0 = new TopicPartition("topic", 0);
+    private static final TopicPartition PARTITION_1 = new TopicPartition("topic", 1);
+
+    @Mock
+    private QueuesManager<byte[], byte[]> queuesManager;
+
+    private final AtomicLong now = new AtomicLong(1000L);
+
+    @Test
+    public void shouldKeepPartitionsPausedForMinimumTime() {
+
+        // given
+        FlowController flowController = new FlowController(queuesManager, now::get, 500L, false, 1024L);
+        when(queuesManager.getPartitionsToResume(any())).thenAnswer(invocation -> Set.copyOf(invocation.getArgument(0)));
+        flowController.paused(PARTITION_0);
+
+        // when
+        now.addAndGet(499L);
+
+        // then
+        assertThat(flowController.partitionsToResume(Set.of(PARTITION_0), Double.NaN)).isEmpty();
+
+        // when
+        now.addAndGet(1L);
+
+        // then
+        assertThat(flowController.partitionsToResume(Set.of(PARTITION_0), Double.NaN)).containsExactly(PARTITION_0);
+        assertThat(flowController.resumed(PARTITION_0)).isEqualTo(500L);
+    }
+
+    @Test
+    public void shouldResumePartitionsEarlyWhenTheirQueuesDrainBeforeNextFetch() {
+
+        // given
+        FlowController flowController = new FlowController(queuesManager, now::get, 0L, true, 1024L);
+        when(queuesManager.getPartitionsToResume(Set.of(PARTITION_0, PARTITION_1))).thenReturn(Set.of(PARTITION_0));
+        when(queuesManager.getPartitionsToResumeEarly(Set.of(PARTITION_1), 20L, 1024L)).thenReturn(Set.of(PARTITION_1));
+
+        // when
+        Set<TopicPartition> partitionsToResume = flowController.partitionsToResume(
+                Set.of(PARTITION_0, PARTITION_1), 20.5);
+
+        // then
+        assertThat(partitionsToResume).containsExactlyInAnyOrder(PARTITION_0, PARTITION_1);
+    }
+
+    @Test
+    public void shouldNotResumePartitionsEarlyWhenFetchLatencyIsNotKnown() {
+
+        // given
+        FlowController flowController = new FlowController(queuesManager, now::get, 0L, true, 1024L);
+        when(queuesManager.getPartitionsToResume(Set.of(PARTITION_0))).thenReturn(Set.of());
+
+        // when
+        Set<TopicPartition> partitionsToResume = flowController.partitionsToResume(Set.of(PARTITION_0), Double.NaN);
+
+        // then
+        assertThat(partitionsToResume).isEmpty();
+        verify(queuesManager, never()).getPartitionsToResumeEarly(any(), anyLong(), eq(1024L));
+    }
+
+    @Test
+    public void shouldCountOnlyNewPauses() {
+
+        // given
+        FlowController flowController = new FlowController(queuesManager, now::get, 0L, false, 1024L);
+
+        // when
+        boolean firstPause = flowController.paused(PARTITION_0);
+        boolean secondPause = flowController.paused(PARTITION_0);
+
+        // then
+        assertThat(firstPause).isTrue();
+        assertThat(secondPause).isFalse();
+        assertThat(flowController.resumed(PARTITION_1)).isEqualTo(0L);
+    }
+
+}
@@ -0,0 +1,74 @@
+package com.rtbhouse.kafka.workers.impl.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void shouldMapValuesToBucketsWithBoundedRelativeError() {
+
+        for (long value : new long[] { 0L, 1L, 15L, 16L, 17L, 31L, 32L, 1_000L, 123_456L, 1L << 40 }) {
+
+            // when
+            long upperBound = LatencyHistogram.upperBound(LatencyHistogram.bucketIndex(value));
+
+            // then
+            assertThat(upperBound).isGreaterThanOrEqualTo(value);
+            assertThat(upperBound - value).isLessThanOrEqualTo(value / 16);
+        }
+        assertThat(LatencyHistogram.bucketIndex(-1L)).isEqualTo(0);
+        assertThat(LatencyHistogram.bucketIndex(Long.MAX_VALUE)).isEqualTo(LatencyHistogram.BUCKETS - 1);
+    }
+
+    @Test
+    public void shouldReturnQuantiles() {
+
+        // given
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        // when
+        for (long micros = 1; micros <= 1000; micros++) {
+            histogram.record(micros);
+        }
+        long[] counts = histogram.counts();
+
+        // then
+        assertThat(LatencyHistogram.count(counts)).isEqualTo(1000L);
+        assertThat(LatencyHistogram.quantile(counts, 0.5)).isBetween(500L, 500L + 500L / 16);
+        assertThat(LatencyHistogram.quantile(counts, 0.99)).isBetween(990L, 990L + 990L / 16);
+        assertThat(LatencyHistogram.quantile(counts, 1.0)).isBetween(1000L, 1000L + 1000L / 16);
+        assertThat(LatencyHistogram.quantile(new long[LatencyHistogram.BUCKETS], 0.5)).isEqualTo(0L);
+    }
+
+    @Test
+    public void shouldMergeCountsOfAllThreads() throws InterruptedException {
+
+        // given
+        LatencyHistogram histogram = new LatencyHistogram();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            threads.add(new Thread(() -> {
+                for (int j = 0; j < 10_000; j++) {
+                    histogram.recordNanos(5_000L);
+                }
+            }));
+        }
+
+        // when
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long[] counts = histogram.counts();
+
+        // then
+        assertThat(LatencyHistogram.count(counts)).isEqualTo(40_000L);
+        assertThat(counts[LatencyHistogram.bucketIndex(5L)]).isEqualTo(40_000L);
+    }
+
+}
@@ -0,0 +1,65 @@
+package com.rtbhouse.kafka.workers.impl.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class PartitionMetricsTest {
+
+    @Test
+    public void shouldNotRecordLagBeforeAnyRecordsAreConsumed() {
+
+        // given
+        PartitionMetrics partitionMetrics = new PartitionMetrics(null, null);
+
+        // when
+        partitionMetrics.recordLag(100L);
+
+        // then
+        assertThat(partitionMetrics.consumerLag().value()).isEqualTo(0L);
+        assertThat(partitionMetrics.endToEndLag().value()).isEqualTo(0L);
+    }
+
+    @Test
+    public void shouldRecordEndToEndLagFromCommitWatermark() {
+
+        // given
+        PartitionMetrics partitionMetrics = new PartitionMetrics(null, null);
+
+        // when
+        partitionMetrics.recordConsumed(100L, 149L, 0L);
+        partitionMetrics.recordLag(50L);
+
+        // then
+        assertThat(partitionMetrics.consumerLag().value()).isEqualTo(50L);
+        assertThat(partitionMetrics.endToEndLag().value()).isEqualTo(100L);
+
+        // when
+        partitionMetrics.recordCommitted(130L, 0L);
+        partitionMetrics.recordConsumed(150L, 159L, 0L);
+        partitionMetrics.recordLag(40L);
+
+        // then
+        assertThat(partitionMetrics.consumerLag().value()).isEqualTo(40L);
+        assertThat(partitionMetrics.endToEndLag().value()).isEqualTo(70L);
+    }
+
+    @Test
+    public void shouldRecordConsumedToCommittedLatencyOfCommittedBatches() {
+
+        // given
+        LatencyHistogram consumedToCommittedLatency = new LatencyHistogram();
+        PartitionMetrics partitionMetrics = new PartitionMetrics(null, consumedToCommittedLatency);
+        partitionMetrics.recordConsumed(0L, 9L, 1000L);
+        partitionMetrics.recordConsumed(10L, 19L, 1500L);
+
+        // when
+        partitionMetrics.recordCommitted(10L, 2000L);
+
+        // then
+        long[] counts = consumedToCommittedLatency.counts();
+        assertThat(LatencyHistogram.count(counts)).isEqualTo(1L);
+        assertThat(LatencyHistogram.quantile(counts, 1.0)).isBetween(1_000_000L, 1_000_000L + 1_000_000L / 16);
+    }
+
+}
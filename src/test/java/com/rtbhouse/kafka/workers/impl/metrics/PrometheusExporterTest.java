@@ -0,0 +1,133 @@
+package com.rtbhouse.kafka.workers.impl.metrics;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Test;
+
+import com.rtbhouse.kafka.workers.api.WorkersConfig;
+import com.rtbhouse.kafka.workers.integration.utils.TestProperties;
+
+public class PrometheusExporterTest {
+
+    private static final String SIZE_LIMIT = "kafka_workers_queues_manager_queue_size_limit_bytes_value";
+    private static final String TOTAL_SIZE_LIMIT = "kafka_workers_queues_manager_queues_total_size_limit_bytes_value";
+    private static final String COMMITTED_OFFSET = "kafka_workers_consumer_thread_committed_offset_value";
+    private static final String COLLIDING = "kafka_workers_queues_manager_colliding_name_value";
+
+    private static WorkersMetrics createMetrics() {
+        WorkersMetrics metrics = new WorkersMetrics(new WorkersConfig(TestProperties.workersProperties()));
+        metrics.addSensor(WorkersMetrics.QUEUE_SIZE_LIMIT_METRIC);
+        metrics.addSensor(WorkersMetrics.QUEUES_TOTAL_SIZE_LIMIT_METRIC);
+        metrics.recordSensor(WorkersMetrics.QUEUE_SIZE_LIMIT_METRIC, 1024L);
+        metrics.recordSensor(WorkersMetrics.QUEUES_TOTAL_SIZE_LIMIT_METRIC, 4096L);
+        return metrics;
+    }
+
+    @Test
+    public void shouldWriteMetricsInOpenMetricsFormat() throws IOException {
+
+        // given
+        PrometheusExporter exporter = new PrometheusExporter(createMetrics(), 0, List.of(), List.of());
+        StringWriter writer = new StringWriter();
+
+        // when
+        exporter.write(writer);
+
+        // then
+        String output = writer.toString();
+        assertThat(output).contains("# TYPE " + SIZE_LIMIT + " gauge\n" + SIZE_LIMIT + " 1024\n");
+        assertThat(output).contains("# TYPE " + TOTAL_SIZE_LIMIT + " gauge\n" + TOTAL_SIZE_LIMIT + " 4096\n");
+        assertThat(output).endsWith("# EOF\n");
+    }
+
+    @Test
+    public void shouldFilterMetricsByNames() throws IOException {
+
+        // given
+        PrometheusExporter exporter = new PrometheusExporter(createMetrics(), 0,
+                List.of(Pattern.compile("queues-manager\\..*")),
+                List.of(Pattern.compile(".*total-size-limit.*")));
+        StringWriter writer = new StringWriter();
+
+        // when
+        exporter.write(writer);
+
+        // then
+        assertThat(writer.toString()).contains(SIZE_LIMIT).doesNotContain(TOTAL_SIZE_LIMIT);
+        assertThat(exporter.shouldExport("worker-threads.count")).isFalse();
+    }
+
+    @Test
+    public void shouldExportPartitionsAsLabelsOfOneFamily() throws IOException {
+
+        // given (topic names differing only in sanitized characters)
+        WorkersMetrics metrics = createMetrics();
+        metrics.addConsumerThreadPartitionMetrics(new TopicPartition("a.b", 0));
+        metrics.addConsumerThreadPartitionMetrics(new TopicPartition("a_b", 1));
+        PrometheusExporter exporter = new PrometheusExporter(metrics, 0, List.of(), List.of());
+        StringWriter writer = new StringWriter();
+
+        // when
+        exporter.write(writer);
+
+        // then
+        String output = writer.toString();
+        assertThat(output.split("# TYPE " + COMMITTED_OFFSET + " gauge\n", -1)).hasSize(2);
+        assertThat(output).contains(COMMITTED_OFFSET + "{topic=\"a.b\",partition=\"0\"} ");
+        assertThat(output).contains(COMMITTED_OFFSET + "{topic=\"a_b\",partition=\"1\"} ");
+        assertThat(output).doesNotContain("committed_offset_a");
+    }
+
+    @Test
+    public void shouldWriteCollidingSeriesOnce() throws IOException {
+
+        // given
+        WorkersMetrics metrics = createMetrics();
+        metrics.addSensor("queues-manager.colliding-name");
+        metrics.addSensor("queues-manager.colliding_name");
+        PrometheusExporter exporter = new PrometheusExporter(metrics, 0, List.of(), List.of());
+        StringWriter writer = new StringWriter();
+
+        // when
+        exporter.write(writer);
+
+        // then
+        String output = writer.toString();
+        assertThat(output.split(COLLIDING + " gauge\n", -1)).hasSize(2);
+        assertThat(output.split("\n" + COLLIDING + " ", -1)).hasSize(2);
+    }
+
+    @Test
+    public void shouldServeMetricsOverHttp() throws IOException {
+
+        // given
+        PrometheusExporter exporter = new PrometheusExporter(createMetrics(), 0, List.of(), List.of());
+        exporter.start();
+
+        try {
+            // when
+            HttpURLConnection connection = (HttpURLConnection) new URL(
+                    "http://localhost:" + exporter.port() + "/metrics").openConnection();
+
+            // then
+            assertThat(connection.getResponseCode()).isEqualTo(200);
+            assertThat(connection.getContentType()).isEqualTo(PrometheusExporter.CONTENT_TYPE);
+            try (InputStream inputStream = connection.getInputStream()) {
+                assertThat(new String(inputStream.readAllBytes(), UTF_8)).contains(SIZE_LIMIT + " 1024\n");
+            }
+        } finally {
+            exporter.stop();
+        }
+    }
+
+}
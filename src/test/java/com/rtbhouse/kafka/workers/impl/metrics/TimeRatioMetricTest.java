@@ -0,0 +1,31 @@
+package com.rtbhouse.kafka.workers.impl.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class TimeRatioMetricTest {
+
+    @Test
+    public void shouldMeasureRatioOfTimeSincePreviousMeasurement() throws InterruptedException {
+
+        // given
+        AtomicLong totalNanos = new AtomicLong();
+        TimeRatioMetric metric = new TimeRatioMetric(totalNanos::get);
+
+        // when
+        long startNanos = System.nanoTime();
+        Thread.sleep(1100L);
+        totalNanos.set((System.nanoTime() - startNanos) / 4);
+        double ratio = metric.measure(null, 0L);
+
+        // then
+        assertThat(ratio).isBetween(0.2, 0.25);
+        // measured again too early, so the previous ratio is returned
+        totalNanos.addAndGet(1_000_000_000L);
+        assertThat(metric.measure(null, 0L)).isEqualTo(ratio);
+    }
+
+}
@@ -0,0 +1,102 @@
+package com.rtbhouse.kafka.workers.impl.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Properties;
+
+import org.junit.Test;
+
+import com.rtbhouse.kafka.workers.api.WorkersConfig;
+import com.rtbhouse.kafka.workers.api.metrics.MetricsRecordingLevel;
+import com.rtbhouse.kafka.workers.api.partitioner.WorkerSubpartition;
+import com.rtbhouse.kafka.workers.impl.queues.RecordsQueue;
+import com.rtbhouse.kafka.workers.integration.utils.TestProperties;
+
+public class WorkersMetricsTest {
+
+    private static final WorkerSubpartition SUBPARTITION = WorkerSubpartition.getInstance("topic", 0, 1);
+
+    private static WorkersMetrics createMetrics(String recordingLevel, double samplingRatio) {
+        Properties properties = TestProperties.workersProperties();
+        properties.put(WorkersConfig.METRICS_RECORDING_LEVEL, recordingLevel);
+        properties.put(WorkersConfig.METRICS_SAMPLING_RATIO, samplingRatio);
+        return new WorkersMetrics(new WorkersConfig(properties));
+    }
+
+    @Test
+    public void shouldNotAddPerRecordMetricsByDefault() {
+
+        // given
+        WorkersMetrics metrics = new WorkersMetrics(new WorkersConfig(TestProperties.workersProperties()));
+
+        // when
+        metrics.addConsumerThreadMetrics();
+
+        // then
+        assertThat(metrics.shouldRecord(MetricsRecordingLevel.INFO)).isTrue();
+        assertThat(metrics.shouldRecord(MetricsRecordingLevel.DEBUG)).isFalse();
+        assertThat(metrics.sensor(WorkersMetrics.INPUT_RECORDS_SIZE_SENSOR)).isNull();
+        assertThat(metrics.sensor(WorkersMetrics.KAFKA_POLL_RECORDS_COUNT_SENSOR)).isNotNull();
+        assertThat(metrics.addWorkerThreadSubpartitionMetrics(SUBPARTITION)).isNull();
+        metrics.removeConsumerThreadMetrics();
+    }
+
+    @Test
+    public void shouldAddAllMetricsWithTraceLevel() {
+
+        // given
+        WorkersMetrics metrics = createMetrics("trace", 1.0);
+
+        // when
+        metrics.addConsumerThreadMetrics();
+        SubpartitionMetrics subpartitionMetrics = metrics.addWorkerThreadSubpartitionMetrics(SUBPARTITION);
+
+        // then
+        assertThat(metrics.sensor(WorkersMetrics.INPUT_RECORDS_SIZE_SENSOR)).isNotNull();
+        assertThat(subpartitionMetrics).isNotNull();
+        assertThat(metrics.shouldSample()).isTrue();
+        metrics.removeWorkerThreadSubpartitionMetrics(SUBPARTITION);
+        metrics.removeConsumerThreadMetrics();
+    }
+
+    @Test
+    public void shouldSampleRecordsRandomly() {
+
+        // given
+        WorkersMetrics metrics = createMetrics("debug", 0.25);
+
+        // when
+        int sampled = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (metrics.shouldSample()) {
+                sampled++;
+            }
+        }
+
+        // then
+        assertThat(metrics.shouldRecord(MetricsRecordingLevel.TRACE)).isFalse();
+        assertThat(sampled).isBetween(2_000, 3_000);
+    }
+
+    @Test
+    public void shouldAddQueueAndInFlightMetricsWithDebugLevel() {
+
+        // given
+        WorkersMetrics metrics = createMetrics("debug", 1.0);
+        RecordsQueue<byte[], byte[]> queue = new RecordsQueue<>();
+
+        // when
+        metrics.addQueueMetrics(SUBPARTITION, queue);
+        CounterMetric inFlightRecords = metrics.addInFlightRecordsMetric(SUBPARTITION);
+
+        // then
+        assertThat(inFlightRecords).isNotNull();
+        assertThat(metrics.addWorkerThreadSubpartitionMetrics(SUBPARTITION)).isNull();
+        metrics.removeQueueMetrics(SUBPARTITION);
+        metrics.removeInFlightRecordsMetric(SUBPARTITION);
+        // metrics could be added again after removal
+        metrics.addQueueMetrics(SUBPARTITION, queue);
+        assertThat(metrics.addInFlightRecordsMetric(SUBPARTITION)).isNotNull();
+    }
+
+}
@@ -1,9 +1,160 @@
 package com.rtbhouse.kafka.workers.impl.offsets;
 
+import static com.rtbhouse.kafka.workers.impl.offsets.OffsetStatus.CONSUMED;
+import static com.rtbhouse.kafka.workers.impl.offsets.OffsetStatus.PROCESSED;
+import static com.rtbhouse.kafka.workers.impl.range.ClosedRange.range;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Test;
+
+import com.rtbhouse.kafka.workers.api.WorkersConfig;
+import com.rtbhouse.kafka.workers.integration.utils.TestProperties;
+
 public class DefaultOffsetsStateTest extends OffsetsStateTest {
 
+    private static final int THREADS = 32;
+    private static final int PARTITIONS = 4;
+    private static final long OFFSETS_PER_THREAD = 10_000L;
+    private static final TopicPartition TOPIC_PARTITION = new TopicPartition("topic", 0);
+
     @Override
     OffsetsState createOffsetsStateSubject() {
         return new DefaultOffsetsState(config, mockMetrics);
     }
+
+    @Test
+    public void shouldUpdateProcessedOffsetsConcurrently() throws Exception {
+        //given
+        DefaultOffsetsState offsetsState = new DefaultOffsetsState(config, mockMetrics);
+        List<TopicPartition> partitions = IntStream.range(0, PARTITIONS)
+                .mapToObj(i -> new TopicPartition("topic", i))
+                .collect(Collectors.toList());
+        offsetsState.register(partitions);
+        long offsetsPerPartition = OFFSETS_PER_THREAD * THREADS / PARTITIONS;
+        for (TopicPartition partition : partitions) {
+            offsetsState.addConsumed(partition, range(0L, offsetsPerPartition - 1), 0L);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS + 1);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean done = new AtomicBoolean();
+        Map<TopicPartition, OffsetAndMetadata> committedOffsets = new ConcurrentHashMap<>();
+        try {
+            // metrics and commits are computed while offsets are being acknowledged
+            Future<?> reader = executor.submit(() -> {
+                while (!done.get()) {
+                    for (TopicPartition partition : partitions) {
+                        DefaultOffsetsState.TopicPartitionMetricInfo info = offsetsState.new TopicPartitionMetricInfo(partition);
+                        assertThat(info.getOffsetStatusCount(PROCESSED)).isBetween(0L, offsetsPerPartition);
+                    }
+                    commit(offsetsState, committedOffsets);
+                }
+            });
+
+            //when
+            List<Future<?>> writers = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                TopicPartition partition = partitions.get(thread % PARTITIONS);
+                long threadIndex = thread / PARTITIONS;
+                long stride = THREADS / PARTITIONS;
+                writers.add(executor.submit(() -> {
+                    start.await();
+                    for (long offset = threadIndex; offset < offsetsPerPartition; offset += stride) {
+                        offsetsState.updateProcessed(partition, offset);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> writer : writers) {
+                writer.get(60, TimeUnit.SECONDS);
+            }
+            done.set(true);
+            reader.get(60, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        //then
+        commit(offsetsState, committedOffsets);
+        for (TopicPartition partition : partitions) {
+            assertThat(committedOffsets.get(partition).offset()).isEqualTo(offsetsPerPartition);
+        }
+        for (TopicPartition partition : partitions) {
+            DefaultOffsetsState.TopicPartitionMetricInfo info = offsetsState.new TopicPartitionMetricInfo(partition);
+            assertThat(info.getOffsetStatusCount(CONSUMED)).isZero();
+            assertThat(info.getOffsetStatusCount(PROCESSED)).isZero();
+            assertThat(info.getOffsetRangesStatusCount(CONSUMED)).isZero();
+            assertThat(info.getOffsetRangesStatusCount(PROCESSED)).isZero();
+        }
+    }
+
+    @Test
+    public void shouldPassOffsetsProcessedOutOfOrderInMetadata() {
+
+        // given (consumed: [0-6], processed: [0-2], [4-6])
+        DefaultOffsetsState offsetsState = new DefaultOffsetsState(commitMetadataConfig(), mockMetrics);
+        offsetsState.register(List.of(TOPIC_PARTITION));
+        offsetsState.addConsumed(TOPIC_PARTITION, range(0L, 6L), 10L);
+        offsetsState.updateProcessed(TOPIC_PARTITION, range(0L, 2L));
+        offsetsState.updateProcessed(TOPIC_PARTITION, range(4L, 6L));
+
+        // when
+        Map<TopicPartition, OffsetAndMetadata> offsets = offsetsState.getOffsetsToCommit();
+
+        // then
+        assertThat(offsets).containsOnly(
+                entry(TOPIC_PARTITION, new OffsetAndMetadata(3L, "kw1:1.3"))
+        );
+        assertThat(ProcessedOffsetsMetadata.decode(3L, offsets.get(TOPIC_PARTITION).metadata()))
+                .containsExactly(range(4L, 6L));
+    }
+
+    @Test
+    public void shouldCommitFirstNotProcessedOffsetWithMetadata() {
+
+        // given (consumed: 0,1,2,3, processed: 1,2,3)
+        DefaultOffsetsState offsetsState = new DefaultOffsetsState(commitMetadataConfig(), mockMetrics);
+        offsetsState.register(List.of(TOPIC_PARTITION));
+        offsetsState.addConsumed(TOPIC_PARTITION, range(0L, 3L), 10L);
+        offsetsState.updateProcessed(TOPIC_PARTITION, range(1L, 3L));
+
+        // when
+        Map<TopicPartition, OffsetAndMetadata> offsets = offsetsState.getOffsetsToCommit();
+
+        // then (offset 0 is not committed, processed offsets are passed in metadata only)
+        assertThat(offsets).containsOnlyKeys(TOPIC_PARTITION);
+        assertThat(offsets.get(TOPIC_PARTITION).offset()).isEqualTo(0L);
+        assertThat(ProcessedOffsetsMetadata.decode(0L, offsets.get(TOPIC_PARTITION).metadata()))
+                .containsExactly(range(1L, 3L));
+    }
+
+    private static WorkersConfig commitMetadataConfig() {
+        Properties properties = TestProperties.workersProperties();
+        properties.put(WorkersConfig.CONSUMER_COMMIT_METADATA_MAX_BYTES, 4096);
+        return new WorkersConfig(properties);
+    }
+
+    private void commit(OffsetsState offsetsState, Map<TopicPartition, OffsetAndMetadata> committedOffsets) {
+        Map<TopicPartition, OffsetAndMetadata> offsetsToCommit = offsetsState.getOffsetsToCommit();
+        committedOffsets.putAll(offsetsToCommit);
+        offsetsState.removeCommitted(offsetsToCommit);
+    }
 }
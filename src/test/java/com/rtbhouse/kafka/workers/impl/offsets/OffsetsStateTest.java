@@ -219,6 +219,32 @@ public abstract class OffsetsStateTest {
         assertThat(offsets).isEmpty();
     }
 
+    @Test
+    public void shouldCountNotProcessedOffsets() throws InterruptedException {
+
+        // given (consumed: 0-9, 20-29, processed: 0-4, 6, 20-29)
+        Set<TopicPartition> partitions = ImmutableSet.of(TOPIC_PARTITION_0);
+        OffsetsState offsetsState = createOffsetsStateSubject();
+        offsetsState.register(partitions);
+        Instant consumedAt = Instant.ofEpochMilli(10L);
+        offsetsState.addConsumed(TOPIC_PARTITION_0, range(0L, 9L), consumedAt);
+        offsetsState.addConsumed(TOPIC_PARTITION_0, range(20L, 29L), consumedAt);
+        offsetsState.updateProcessed(TOPIC_PARTITION_0, range(0L, 4L));
+        offsetsState.updateProcessed(TOPIC_PARTITION_0, 6L);
+        offsetsState.updateProcessed(TOPIC_PARTITION_0, range(20L, 29L));
+
+        // then (offsets 5, 7, 8, 9 are not processed)
+        assertThat(offsetsState.getNotProcessedCount(TOPIC_PARTITION_0)).isEqualTo(4L);
+        assertThat(offsetsState.getNotProcessedCount(TOPIC_PARTITION_1)).isEqualTo(0L);
+
+        // when (already processed offsets are committed)
+        offsetsState.removeCommitted(offsetsState.getOffsetsToCommit());
+        offsetsState.updateProcessed(TOPIC_PARTITION_0, range(7L, 9L));
+
+        // then
+        assertThat(offsetsState.getNotProcessedCount(TOPIC_PARTITION_0)).isEqualTo(1L);
+    }
+
     @Test
     public void shouldNotUpdateNotConsumedOffset() throws InterruptedException {
 
@@ -263,6 +289,103 @@ public abstract class OffsetsStateTest {
         }).isInstanceOf(BadOffsetException.class).hasMessageContaining("Offset: 2 for partition: topic-0 was processed before");
     }
 
+    @Test
+    public void shouldNotUpdateAnyRangeOfFailingBatch() throws InterruptedException {
+
+        // given (consumed: [0-5], processed: [4-4], then [0-1], [3-4] at once!)
+        Set<TopicPartition> partitions = ImmutableSet.of(TOPIC_PARTITION_0);
+        OffsetsState offsetsState = createOffsetsStateSubject();
+        offsetsState.register(partitions);
+        offsetsState.addConsumed(TOPIC_PARTITION_0, range(0L, 5L), Instant.ofEpochMilli(10L));
+        offsetsState.updateProcessed(TOPIC_PARTITION_0, 4L);
+
+        assertThatThrownBy(() -> {
+            offsetsState.updateProcessed(TOPIC_PARTITION_0, List.of(range(0L, 1L), range(3L, 4L)));
+        }).isInstanceOf(BadOffsetException.class).hasMessageContaining("Offset: 4 for partition: topic-0 was processed before");
+
+        // then (the first range of the batch is not processed either)
+        assertThat(offsetsState.getNotProcessedCount(TOPIC_PARTITION_0)).isEqualTo(5L);
+        assertThat(offsetsState.getOffsetsToCommit()).isEmpty();
+    }
+
+    @Test
+    public void shouldUpdateOffsetsWithRanges() throws InterruptedException {
+
+        // given (consumed: [0-4], [5-9] in separate polls, processed: [3-7], [0-2])
+        Set<TopicPartition> partitions = ImmutableSet.of(TOPIC_PARTITION_0);
+        OffsetsState offsetsState = createOffsetsStateSubject();
+        offsetsState.register(partitions);
+        offsetsState.addConsumed(TOPIC_PARTITION_0, range(0L, 4L), Instant.ofEpochMilli(10L));
+        offsetsState.addConsumed(TOPIC_PARTITION_0, range(5L, 9L), Instant.ofEpochMilli(20L));
+
+        offsetsState.updateProcessed(TOPIC_PARTITION_0, range(3L, 7L));
+        offsetsState.updateProcessed(TOPIC_PARTITION_0, range(0L, 2L));
+
+        // when
+        Map<TopicPartition, OffsetAndMetadata> offsets = offsetsState.getOffsetsToCommit();
+
+        // then
+        assertThat(offsets).containsOnly(
+                entry(TOPIC_PARTITION_0, new OffsetAndMetadata(8L))
+        );
+    }
+
+    private Object[] parametersForShouldNotUpdateRangeWithNotConsumedOffset() {
+        return $(
+                $(range(0L, 11L), 11L),
+                $(range(8L, 12L), 11L),
+                $(range(11L, 15L), 11L),
+                $(range(15L, 25L), 20L),
+                $(range(18L, 20L), 20L)
+        );
+    }
+
+    @Test
+    @Parameters
+    public void shouldNotUpdateRangeWithNotConsumedOffset(ClosedRange processedRange,
+                                                          Long minNotConsumedOffset) throws InterruptedException {
+
+        // given (consumed: [0-10], [15-19])
+        Set<TopicPartition> partitions = ImmutableSet.of(TOPIC_PARTITION_0);
+        OffsetsState offsetsState = createOffsetsStateSubject();
+        offsetsState.register(partitions);
+        offsetsState.addConsumed(TOPIC_PARTITION_0, range(0L, 10L), Instant.ofEpochMilli(10L));
+        offsetsState.addConsumed(TOPIC_PARTITION_0, range(15L, 19L), Instant.ofEpochMilli(10L));
+
+        // then
+        assertThatThrownBy(() -> offsetsState.updateProcessed(TOPIC_PARTITION_0, processedRange))
+                .isInstanceOf(BadOffsetException.class)
+                .hasMessage("Offset: %s for partition: %s was not consumed before", minNotConsumedOffset, TOPIC_PARTITION_0);
+    }
+
+    private Object[] parametersForShouldNotUpdateRangeWithProcessedOffset() {
+        return $(
+                $(range(0L, 5L), 5L),
+                $(range(7L, 12L), 10L),
+                $(range(4L, 15L), 5L),
+                $(range(10L, 10L), 10L)
+        );
+    }
+
+    @Test
+    @Parameters
+    public void shouldNotUpdateRangeWithProcessedOffset(ClosedRange processedRange,
+                                                        Long minProcessedOffset) throws InterruptedException {
+
+        // given (consumed: [0-20], processed: [5-6], [10-12])
+        Set<TopicPartition> partitions = ImmutableSet.of(TOPIC_PARTITION_0);
+        OffsetsState offsetsState = createOffsetsStateSubject();
+        offsetsState.register(partitions);
+        offsetsState.addConsumed(TOPIC_PARTITION_0, range(0L, 20L), Instant.ofEpochMilli(10L));
+        offsetsState.updateProcessed(TOPIC_PARTITION_0, range(5L, 6L));
+        offsetsState.updateProcessed(TOPIC_PARTITION_0, range(10L, 12L));
+
+        // then
+        assertThatThrownBy(() -> offsetsState.updateProcessed(TOPIC_PARTITION_0, processedRange))
+                .isInstanceOf(BadOffsetException.class)
+                .hasMessage("Offset: %s for partition: %s was processed before", minProcessedOffset, TOPIC_PARTITION_0);
+    }
+
     private Object[] parametersForShouldTimeoutConsumedOffsets() {
         return $(
                 $(List.of(consumedOffsetRange(0L, 0L, epochMilli(10L)), consumedOffsetRange(1L, 1L, epochMilli(15L)), consumedOffsetRange(2L, 2L, epochMilli(20L))), List.of(0L), epochMilli(20L), 1L),
@@ -292,7 +415,7 @@ public abstract class OffsetsStateTest {
         OffsetsState offsetsState = createOffsetsStateSubject();
         offsetsState.register(partitions);
 
-        consumed.forEach(consumedOffsetRange -> offsetsState.addConsumed(partition, consumedOffsetRange, consumedOffsetRange.getConsumedAt()));
+        consumed.forEach(consumedOffsetRange -> offsetsState.addConsumed(partition, consumedOffsetRange, consumedOffsetRange.getConsumedAtMs()));
         //TODO: shuffle
         processed.forEach(processedOffset -> offsetsState.updateProcessed(partition, processedOffset));
 
@@ -302,6 +425,50 @@ public abstract class OffsetsStateTest {
                 String.format("Offset [%d] for partition [%s] exceeded timeout", expectedTimedOutOffset, partition));
     }
 
+    @Test
+    public void shouldReportAllTimedOutOffsets() throws InterruptedException {
+
+        // given (0 -> consumed: [0-9]@10, [10-19]@20, processed: 0,1,5,12; 1 -> consumed: [0-4]@15, processed: [0-4])
+        Set<TopicPartition> partitions = ImmutableSet.of(TOPIC_PARTITION_0, TOPIC_PARTITION_1);
+        OffsetsState offsetsState = createOffsetsStateSubject();
+        offsetsState.register(partitions);
+        offsetsState.addConsumed(TOPIC_PARTITION_0, range(0L, 9L), epochMilli(10L));
+        offsetsState.addConsumed(TOPIC_PARTITION_0, range(10L, 19L), epochMilli(20L));
+        offsetsState.addConsumed(TOPIC_PARTITION_1, range(0L, 4L), epochMilli(15L));
+        offsetsState.updateProcessed(TOPIC_PARTITION_0, range(0L, 1L));
+        offsetsState.updateProcessed(TOPIC_PARTITION_0, 5L);
+        offsetsState.updateProcessed(TOPIC_PARTITION_0, 12L);
+        offsetsState.updateProcessed(TOPIC_PARTITION_1, range(0L, 4L));
+
+        // then
+        assertThatCode(() -> offsetsState.timeoutRecordsConsumedBefore(epochMilli(10L)))
+                .doesNotThrowAnyException();
+        assertThatThrownBy(() -> offsetsState.timeoutRecordsConsumedBefore(epochMilli(30L)))
+                .isInstanceOf(ProcessingTimeoutException.class)
+                .hasMessageContaining("Offset [2] for partition [topic-0] exceeded timeout")
+                .hasMessageContaining("all timed out offsets: {topic-0=[ClosedRange{2, 4}, ClosedRange{6, 9}, "
+                        + "ClosedRange{10, 11}, ClosedRange{13, 19}]}");
+    }
+
+    @Test
+    public void shouldReportLimitedNumberOfTimedOutRanges() throws InterruptedException {
+
+        // given (consumed: [0-29]@10, processed: every odd offset, so there are 15 not processed ranges)
+        Set<TopicPartition> partitions = ImmutableSet.of(TOPIC_PARTITION_0);
+        OffsetsState offsetsState = createOffsetsStateSubject();
+        offsetsState.register(partitions);
+        offsetsState.addConsumed(TOPIC_PARTITION_0, range(0L, 29L), epochMilli(10L));
+        for (long offset = 1L; offset < 30L; offset += 2) {
+            offsetsState.updateProcessed(TOPIC_PARTITION_0, offset);
+        }
+
+        // then
+        assertThatThrownBy(() -> offsetsState.timeoutRecordsConsumedBefore(epochMilli(30L)))
+                .isInstanceOf(ProcessingTimeoutException.class)
+                .hasMessageContaining("Offset [0] for partition [topic-0] exceeded timeout")
+                .hasMessageContaining("ClosedRange{18, 18}]} and 5 more ranges");
+    }
+
     private Object[] parametersForShouldReturnOffsetToCommit() {
         return $(
                 $(List.of(range(0L, 5L), range(10L, 15L)), List.of(), forward(), null, null, null),
@@ -422,7 +589,7 @@ public abstract class OffsetsStateTest {
     }
 
     private ConsumedOffsetRange consumedOffsetRange(long lower, long upper, Instant createdAt) {
-        return new ConsumedOffsetRange(range(lower, upper), createdAt);
+        return new ConsumedOffsetRange(range(lower, upper), createdAt.toEpochMilli());
     }
 
     private Instant epochMilli(long epochMilli) {
@@ -0,0 +1,73 @@
+package com.rtbhouse.kafka.workers.impl.offsets;
+
+import static com.rtbhouse.kafka.workers.impl.range.ClosedRange.range;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.rtbhouse.kafka.workers.impl.range.ClosedRange;
+
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+
+@RunWith(JUnitParamsRunner.class)
+public class ProcessedOffsetsMetadataTest {
+
+    private Object[] parametersForShouldEncodeAndDecodeRanges() {
+        return new Object[] {
+                new Object[] {0L, List.of(), ""},
+                new Object[] {0L, List.of(range(1L, 3L)), "kw1:1.3"},
+                new Object[] {10L, List.of(range(12L, 12L), range(14L, 20L)), "kw1:2.1,1.7"},
+                new Object[] {100L, List.of(range(136L, 171L)), "kw1:10.10"},
+                new Object[] {1_000_000_000_000L, List.of(range(1_000_000_000_001L, 1_000_000_050_000L)), "kw1:1.12kw"}
+        };
+    }
+
+    @Test
+    @Parameters
+    public void shouldEncodeAndDecodeRanges(long committedOffset, List<ClosedRange> ranges, String expectedMetadata) {
+        //when
+        String metadata = ProcessedOffsetsMetadata.encode(committedOffset, ranges, 4096);
+
+        //then
+        assertThat(metadata).isEqualTo(expectedMetadata);
+        assertThat(ProcessedOffsetsMetadata.decode(committedOffset, metadata)).containsExactlyElementsOf(ranges);
+    }
+
+    @Test
+    public void shouldDropRangesExceedingMaxBytes() {
+        //given
+        List<ClosedRange> ranges = List.of(range(1L, 1L), range(3L, 3L), range(5L, 5L));
+
+        //when
+        String metadata = ProcessedOffsetsMetadata.encode(0L, ranges, "kw1:1.1,1.1".length());
+
+        //then
+        assertThat(ProcessedOffsetsMetadata.decode(0L, metadata)).containsExactly(range(1L, 1L), range(3L, 3L));
+    }
+
+    private Object[] parametersForShouldIgnoreUnknownMetadata() {
+        return new Object[] {
+                new Object[] {""},
+                new Object[] {"kw1:"},
+                new Object[] {"some user metadata"},
+                new Object[] {"kw1:1.0"},
+                new Object[] {"kw1:1.1,-2.1"},
+                new Object[] {"kw1:1"}
+        };
+    }
+
+    @Test
+    @Parameters
+    public void shouldIgnoreUnknownMetadata(String metadata) {
+        assertThat(ProcessedOffsetsMetadata.decode(0L, metadata)).isEmpty();
+    }
+
+    @Test
+    public void shouldIgnoreMissingMetadata() {
+        assertThat(ProcessedOffsetsMetadata.decode(0L, null)).isEmpty();
+    }
+}
@@ -0,0 +1,95 @@
+package com.rtbhouse.kafka.workers.impl.partitioner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Test;
+
+import com.rtbhouse.kafka.workers.api.WorkersConfig;
+import com.rtbhouse.kafka.workers.api.partitioner.ElasticHashFunctionPartitioner;
+import com.rtbhouse.kafka.workers.impl.offsets.OffsetsState;
+import com.rtbhouse.kafka.workers.integration.utils.TestProperties;
+
+public class ElasticSubpartitionsControllerTest {
+
+    private static final TopicPartition PARTITION_0 = new TopicPartition("topic", 0);
+    private static final TopicPartition PARTITION_1 = new TopicPartition("topic", 1);
+
+    private final ElasticHashFunctionPartitioner<byte[], byte[]> partitioner =
+            new ElasticHashFunctionPartitioner<>(ConsumerRecord::offset, 2, 8);
+    private final SubpartitionSupplier<byte[], byte[]> subpartitionSupplier = new SubpartitionSupplier<>(partitioner);
+    private final OffsetsState offsetsState = mock(OffsetsState.class);
+
+    private long currentTimeMs = 0L;
+
+    private ElasticSubpartitionsController<byte[], byte[]> createController() {
+        Properties properties = TestProperties.workersProperties();
+        properties.put(WorkersConfig.ELASTIC_SUBPARTITIONS_CHECK_INTERVAL_MS, 100L);
+        properties.put(WorkersConfig.ELASTIC_SUBPARTITIONS_SCALE_UP_LAG, 1000L);
+        properties.put(WorkersConfig.ELASTIC_SUBPARTITIONS_SCALE_UP_BACKLOG, 500L);
+        properties.put(WorkersConfig.ELASTIC_SUBPARTITIONS_SCALE_DOWN_LAG, 10L);
+        subpartitionSupplier.register(Arrays.asList(PARTITION_0, PARTITION_1));
+        return new ElasticSubpartitionsController<>(new WorkersConfig(properties), partitioner, subpartitionSupplier,
+                offsetsState, () -> currentTimeMs);
+    }
+
+    @Test
+    public void shouldCheckPeriodically() {
+
+        // given
+        ElasticSubpartitionsController<byte[], byte[]> controller = createController();
+
+        // then
+        assertThat(controller.shouldCheckNow()).isFalse();
+        currentTimeMs = 101L;
+        assertThat(controller.shouldCheckNow()).isTrue();
+        assertThat(controller.shouldCheckNow()).isFalse();
+    }
+
+    @Test
+    public void shouldResizeLaggingPartition() {
+
+        // given (partition 0 lags behind by 1000 records, partition 1 by 100 records)
+        ElasticSubpartitionsController<byte[], byte[]> controller = createController();
+        when(offsetsState.getNotProcessedCount(PARTITION_0)).thenReturn(20L);
+
+        // then
+        assertThat(controller.partitionsToResize(Map.of(PARTITION_0, 1000L, PARTITION_1, 100L)))
+                .containsExactly(entry(PARTITION_0, 8));
+    }
+
+    @Test
+    public void shouldResizePartitionWithBacklog() {
+
+        // given (partition 1 does not lag behind but it has 500 not processed records)
+        ElasticSubpartitionsController<byte[], byte[]> controller = createController();
+        when(offsetsState.getNotProcessedCount(PARTITION_1)).thenReturn(500L);
+
+        // then
+        assertThat(controller.partitionsToResize(Map.of(PARTITION_0, 0L, PARTITION_1, 0L)))
+                .containsExactly(entry(PARTITION_1, 8));
+    }
+
+    @Test
+    public void shouldLowerCountOfPartitionWhichCaughtUp() {
+
+        // given (partition 0 has max count already)
+        ElasticSubpartitionsController<byte[], byte[]> controller = createController();
+        subpartitionSupplier.resize(PARTITION_0, 8);
+        when(offsetsState.getNotProcessedCount(PARTITION_0)).thenReturn(11L);
+
+        // then (lag and backlog have to drop to the scale down threshold)
+        assertThat(controller.partitionsToResize(Map.of(PARTITION_0, 10L))).isEmpty();
+        when(offsetsState.getNotProcessedCount(PARTITION_0)).thenReturn(0L);
+        assertThat(controller.partitionsToResize(Map.of(PARTITION_0, 10L))).containsExactly(entry(PARTITION_0, 2));
+    }
+
+}
@@ -0,0 +1,121 @@
+package com.rtbhouse.kafka.workers.impl.partitioner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Test;
+
+import com.rtbhouse.kafka.workers.api.WorkersConfig;
+import com.rtbhouse.kafka.workers.api.partitioner.ElasticHashFunctionPartitioner;
+import com.rtbhouse.kafka.workers.impl.metrics.WorkersMetrics;
+import com.rtbhouse.kafka.workers.integration.utils.TestProperties;
+
+public class HotKeysDetectorTest {
+
+    private static final TopicPartition PARTITION_0 = new TopicPartition("topic", 0);
+    private static final TopicPartition PARTITION_1 = new TopicPartition("topic", 1);
+
+    private final SubpartitionSupplier<byte[], byte[]> subpartitionSupplier = new SubpartitionSupplier<>(
+            new ElasticHashFunctionPartitioner<>(ConsumerRecord::offset, 2, 4), 2);
+    private final WorkersMetrics metrics = mock(WorkersMetrics.class);
+
+    private long currentTimeMs = 0L;
+
+    private HotKeysDetector<byte[], byte[]> createDetector() {
+        Properties properties = TestProperties.workersProperties();
+        properties.put(WorkersConfig.HOT_KEYS_SKETCH_CAPACITY, 8);
+        properties.put(WorkersConfig.HOT_KEYS_MIN_SHARE, 0.2);
+        properties.put(WorkersConfig.HOT_KEYS_WINDOW_MS, 100L);
+        properties.put(WorkersConfig.HOT_KEYS_SUBPARTITIONS, 2);
+        subpartitionSupplier.register(Arrays.asList(PARTITION_0, PARTITION_1));
+        HotKeysDetector<byte[], byte[]> detector = new HotKeysDetector<>(new WorkersConfig(properties), metrics,
+                subpartitionSupplier, () -> currentTimeMs);
+        detector.register(Arrays.asList(PARTITION_0, PARTITION_1));
+        return detector;
+    }
+
+    private static void offer(SpaceSavingSketch sketch, int key, int times) {
+        for (int i = 0; i < times; i++) {
+            sketch.offer(key);
+        }
+    }
+
+    @Test
+    public void shouldCheckOncePerWindow() {
+
+        // given
+        HotKeysDetector<byte[], byte[]> detector = createDetector();
+
+        // then
+        assertThat(detector.shouldCheckNow()).isFalse();
+        currentTimeMs = 101L;
+        assertThat(detector.shouldCheckNow()).isTrue();
+        assertThat(detector.shouldCheckNow()).isFalse();
+    }
+
+    @Test
+    public void shouldDetectHotKeysToRoute() {
+
+        // given (key 1 has 50% of records of partition 0, partition 1 has no hot keys)
+        HotKeysDetector<byte[], byte[]> detector = createDetector();
+        offer(detector.sketch(PARTITION_0), 1, 50);
+        for (int key = 2; key < 52; key++) {
+            detector.sketch(PARTITION_0).offer(key);
+            detector.sketch(PARTITION_1).offer(key);
+        }
+
+        // when
+        Map<TopicPartition, int[]> hotKeysToRoute = detector.hotKeysToRoute(Set.of());
+
+        // then
+        assertThat(hotKeysToRoute).containsOnlyKeys(PARTITION_0);
+        assertThat(hotKeysToRoute.get(PARTITION_0)).containsExactly(1);
+        verify(metrics).recordSensor(WorkersMetrics.HOT_KEYS_COUNT_METRIC, PARTITION_0, 1L);
+        verify(metrics).recordSensor(WorkersMetrics.HOT_KEYS_COUNT_METRIC, PARTITION_1, 0L);
+        verify(metrics).recordSensor(eq(WorkersMetrics.HOT_KEYS_MAX_SHARE_METRIC), eq(PARTITION_0), eq(0.5));
+        assertThat(detector.sketch(PARTITION_0).total()).isEqualTo(50L);
+    }
+
+    @Test
+    public void shouldKeepRoutingKeysAboveHalfOfMinShare() {
+
+        // given (key 1 is routed already)
+        HotKeysDetector<byte[], byte[]> detector = createDetector();
+        subpartitionSupplier.routeHotKeys(PARTITION_0, new int[] { 1 });
+
+        // when (its share drops to 10%)
+        offer(detector.sketch(PARTITION_0), 1, 10);
+        offer(detector.sketch(PARTITION_0), 2, 90);
+
+        // then (it is still routed together with the new hot key)
+        assertThat(detector.hotKeysToRoute(Set.of()).get(PARTITION_0)).containsExactly(1, 2);
+
+        // when (its share drops to 5%)
+        subpartitionSupplier.routeHotKeys(PARTITION_0, new int[] { 1, 2 });
+        offer(detector.sketch(PARTITION_0), 2, 150);
+
+        // then
+        assertThat(detector.hotKeysToRoute(Set.of()).get(PARTITION_0)).containsExactly(2);
+    }
+
+    @Test
+    public void shouldSkipDrainingPartitions() {
+
+        // given
+        HotKeysDetector<byte[], byte[]> detector = createDetector();
+        offer(detector.sketch(PARTITION_0), 1, 10);
+
+        // then
+        assertThat(detector.hotKeysToRoute(Set.of(PARTITION_0))).isEmpty();
+    }
+
+}
@@ -0,0 +1,92 @@
+package com.rtbhouse.kafka.workers.impl.partitioner;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static junitparams.JUnitParamsRunner.$;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.utils.Bytes;
+import org.apache.kafka.common.utils.Utils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.rtbhouse.kafka.workers.api.partitioner.HashFunctionPartitioner;
+
+import junitparams.JUnitParamsRunner;
+import junitparams.Parameters;
+
+@RunWith(JUnitParamsRunner.class)
+public class Murmur2Test {
+
+    private Object[] parametersForShouldHashStringWithSuffixAsKafka() {
+        return $(
+                $("", 0),
+                $("a", 1),
+                $("ab", 12),
+                $("abc", 123),
+                $("some-key", 1_000_000),
+                $("zażółć gęślą jaźń", 7),
+                $("中文键", 3),
+                $("emoji 😀", 5),
+                $("unpaired \uD800 surrogate", 9),
+                $("unpaired \uDC00", Integer.MAX_VALUE),
+                $("negative", -15),
+                $("min", Integer.MIN_VALUE)
+        );
+    }
+
+    @Test
+    @Parameters
+    public void shouldHashStringWithSuffixAsKafka(String value, int number) {
+        assertThat(Murmur2.hashUtf8WithSuffix(value, number))
+                .isEqualTo(Utils.murmur2((value + ":" + number).getBytes(UTF_8)));
+    }
+
+    @Test
+    public void shouldHashBytesAsKafka() {
+        Random random = new Random(0L);
+        for (int length = 0; length < 64; length++) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+
+            int expected = Utils.murmur2(data);
+            assertThat(Murmur2.hash(data, Murmur2.DEFAULT_SEED)).isEqualTo(expected);
+            assertThat(Murmur2.hash(ByteBuffer.wrap(data), Murmur2.DEFAULT_SEED)).isEqualTo(expected);
+            ByteBuffer directBuffer = ByteBuffer.allocateDirect(length + 1).put((byte) 1).put(data);
+            directBuffer.flip().position(1);
+            assertThat(Murmur2.hash(directBuffer, Murmur2.DEFAULT_SEED)).isEqualTo(expected);
+            assertThat(directBuffer.position()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void shouldKeepMurmur2PartitionerDistribution() {
+        HashFunctionPartitioner<String, byte[]> partitioner = HashFunctionPartitioner.newMurmur2Partitioner(13);
+        for (int i = 0; i < 1000; i++) {
+            String key = "key-" + i;
+            int partition = i % 7;
+            int expected = Utils.toPositive(Utils.murmur2((key + ":" + partition).getBytes(UTF_8))) % 13;
+
+            assertThat(partitioner.subpartition(new ConsumerRecord<>("topic", partition, i, key, null)))
+                    .isEqualTo(expected);
+        }
+    }
+
+    @Test
+    public void shouldPartitionEqualKeyBytesEqually() {
+        HashFunctionPartitioner<Object, byte[]> partitioner = HashFunctionPartitioner.newMurmur2KeyBytesPartitioner(13);
+        for (int i = 0; i < 1000; i++) {
+            byte[] key = ("key-" + i).getBytes(UTF_8);
+            int subpartition = partitioner.subpartition(new ConsumerRecord<>("topic", 0, i, key, null));
+
+            assertThat(subpartition).isBetween(0, 12);
+            assertThat(partitioner.subpartition(new ConsumerRecord<>("topic", 0, i, ByteBuffer.wrap(key), null)))
+                    .isEqualTo(subpartition);
+            assertThat(partitioner.subpartition(new ConsumerRecord<>("topic", 0, i, Bytes.wrap(key), null)))
+                    .isEqualTo(subpartition);
+        }
+    }
+}
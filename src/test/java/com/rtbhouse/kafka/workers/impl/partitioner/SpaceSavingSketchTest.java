@@ -0,0 +1,80 @@
+package com.rtbhouse.kafka.workers.impl.partitioner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SpaceSavingSketchTest {
+
+    @Test
+    public void shouldCountKeysExactlyBelowCapacity() {
+
+        // given
+        SpaceSavingSketch sketch = new SpaceSavingSketch(4);
+
+        // when
+        for (int i = 0; i < 10; i++) {
+            sketch.offer(1);
+            if (i % 2 == 0) {
+                sketch.offer(2);
+            }
+        }
+        sketch.offer(3);
+        sketch.offer(4);
+
+        // then
+        assertThat(sketch.total()).isEqualTo(17L);
+        assertThat(sketch.heavyHitters(0.25)).containsExactly(1, 2);
+        assertThat(sketch.share(1)).isEqualTo(10.0 / 17);
+        assertThat(sketch.share(5)).isZero();
+        assertThat(sketch.maxShare()).isEqualTo(10.0 / 17);
+    }
+
+    @Test
+    public void shouldFindHeavyHittersAmongManyKeys() {
+
+        // given
+        SpaceSavingSketch sketch = new SpaceSavingSketch(16);
+        Random random = new Random(0);
+
+        // when (key 7 has 30% and key -3 has 15% of records, the rest is spread over 10000 keys)
+        for (int i = 0; i < 100_000; i++) {
+            int draw = random.nextInt(100);
+            if (draw < 30) {
+                sketch.offer(7);
+            } else if (draw < 45) {
+                sketch.offer(-3);
+            } else {
+                sketch.offer(100 + random.nextInt(10_000));
+            }
+        }
+
+        // then
+        assertThat(sketch.heavyHitters(0.1)).containsExactly(7, -3);
+        assertThat(sketch.share(7)).isBetween(0.25, 0.31);
+        assertThat(sketch.share(-3)).isBetween(0.1, 0.16);
+    }
+
+    @Test
+    public void shouldDecayCounts() {
+
+        // given
+        SpaceSavingSketch sketch = new SpaceSavingSketch(2);
+        for (int i = 0; i < 8; i++) {
+            sketch.offer(1);
+        }
+
+        // when
+        sketch.decay();
+        for (int i = 0; i < 6; i++) {
+            sketch.offer(2);
+        }
+
+        // then (recent key is the most frequent one)
+        assertThat(sketch.total()).isEqualTo(10L);
+        assertThat(sketch.heavyHitters(0.3)).containsExactly(2, 1);
+    }
+
+}
@@ -10,6 +10,7 @@ import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.common.TopicPartition;
 import org.junit.Test;
 
+import com.rtbhouse.kafka.workers.api.partitioner.ElasticHashFunctionPartitioner;
 import com.rtbhouse.kafka.workers.api.partitioner.WorkerPartitioner;
 import com.rtbhouse.kafka.workers.api.partitioner.WorkerSubpartition;
 import com.rtbhouse.kafka.workers.impl.errors.BadSubpartitionException;
@@ -92,4 +93,127 @@ public class SubpartitionSupplierTest {
         assertThat(subpartitions.get(4)).isEqualTo(WorkerSubpartition.getInstance("topic", 3, 2));
     }
 
+    @Test
+    public void shouldAssignDenseSubpartitionIds() {
+
+        // given
+        SubpartitionSupplier<byte[], byte[]> subpartitionSupplier = new SubpartitionSupplier<>(new WorkerPartitioner<byte[], byte[]>() {
+
+            @Override
+            public int subpartition(ConsumerRecord<byte[], byte[]> consumerRecord) {
+                return (int) consumerRecord.offset();
+            }
+
+            @Override
+            public int count(TopicPartition topicPartition) {
+                return topicPartition.partition();
+            }
+        });
+        TopicPartition partition2 = new TopicPartition("topic", 2);
+        TopicPartition partition3 = new TopicPartition("topic", 3);
+        TopicPartition partition4 = new TopicPartition("topic", 4);
+
+        // when
+        subpartitionSupplier.register(Arrays.asList(partition2, partition3));
+
+        // then
+        assertThat(subpartitionSupplier.maxSubpartitionsCount()).isGreaterThanOrEqualTo(5);
+        assertThat(subpartitionSupplier.subpartitionId(WorkerSubpartition.getInstance(partition2, 1))).isEqualTo(1);
+        assertThat(subpartitionSupplier.subpartitionId(WorkerSubpartition.getInstance(partition3, 0))).isEqualTo(2);
+        assertThat(subpartitionSupplier.subpartition(4)).isEqualTo(WorkerSubpartition.getInstance(partition3, 2));
+        SubpartitionSupplier.RegisteredSubpartitions subpartitions = subpartitionSupplier.registeredSubpartitions(partition3);
+        assertThat(subpartitionSupplier.subpartitionId(subpartitions, new ConsumerRecord<>("topic", 3, 1L, null, null)))
+                .isEqualTo(3);
+        assertThatThrownBy(() -> {
+            subpartitionSupplier.subpartitionId(subpartitions, new ConsumerRecord<>("topic", 3, 3L, null, null));
+        }).isInstanceOf(BadSubpartitionException.class).hasMessageContaining("Invalid subpartition: 3");
+
+        // when
+        subpartitionSupplier.unregister(Arrays.asList(partition2));
+        subpartitionSupplier.register(Arrays.asList(partition4));
+
+        // then (released ids are reused first)
+        assertThat(subpartitionSupplier.subpartition(0)).isEqualTo(WorkerSubpartition.getInstance(partition4, 0));
+        assertThat(subpartitionSupplier.subpartition(1)).isEqualTo(WorkerSubpartition.getInstance(partition4, 1));
+        assertThat(subpartitionSupplier.subpartitionId(WorkerSubpartition.getInstance(partition4, 2))).isEqualTo(5);
+        assertThat(subpartitionSupplier.subpartitionId(WorkerSubpartition.getInstance(partition4, 3))).isEqualTo(6);
+        assertThat(subpartitionSupplier.subpartitionId(WorkerSubpartition.getInstance(partition3, 0))).isEqualTo(2);
+        assertThatThrownBy(() -> {
+            subpartitionSupplier.registeredSubpartitions(partition2);
+        }).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void shouldResizeSubpartitions() {
+
+        // given
+        SubpartitionSupplier<byte[], byte[]> subpartitionSupplier = new SubpartitionSupplier<>(
+                new ElasticHashFunctionPartitioner<>(ConsumerRecord::offset, 2, 4));
+        TopicPartition partition0 = new TopicPartition("topic", 0);
+        TopicPartition partition1 = new TopicPartition("topic", 1);
+        subpartitionSupplier.register(Arrays.asList(partition0, partition1));
+        ConsumerRecord<byte[], byte[]> record = new ConsumerRecord<>("topic", 0, 3L, null, null);
+        assertThat(subpartitionSupplier.subpartitionId(subpartitionSupplier.registeredSubpartitions(partition0), record))
+                .isEqualTo(1);
+
+        // when
+        subpartitionSupplier.resize(partition0, 4);
+
+        // then (ids of the partition are released and assigned again)
+        SubpartitionSupplier.RegisteredSubpartitions subpartitions = subpartitionSupplier.registeredSubpartitions(partition0);
+        assertThat(subpartitions.count()).isEqualTo(4);
+        assertThat(subpartitionSupplier.subpartitionId(subpartitions, record)).isEqualTo(subpartitions.id(3));
+        assertThat(subpartitionSupplier.subpartition(subpartitions.id(3)))
+                .isEqualTo(WorkerSubpartition.getInstance(partition0, 3));
+        assertThat(subpartitionSupplier.subpartitions(partition0)).hasSize(4);
+        assertThat(subpartitionSupplier.registeredSubpartitions(partition1).count()).isEqualTo(2);
+        assertThat(subpartitionSupplier.subpartitionId(WorkerSubpartition.getInstance(partition1, 1))).isEqualTo(3);
+        assertThatThrownBy(() -> {
+            subpartitionSupplier.resize(partition0, 5);
+        }).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void shouldRouteHotKeysToDedicatedSubpartitions() {
+
+        // given (2 subpartitions by offset and 2 more for hot keys)
+        SubpartitionSupplier<String, byte[]> subpartitionSupplier = new SubpartitionSupplier<>(
+                new ElasticHashFunctionPartitioner<>(ConsumerRecord::offset, 2, 4), 2);
+        TopicPartition partition = new TopicPartition("topic", 0);
+        subpartitionSupplier.register(Arrays.asList(partition));
+        SubpartitionSupplier.RegisteredSubpartitions subpartitions = subpartitionSupplier.registeredSubpartitions(partition);
+        assertThat(subpartitions.count()).isEqualTo(4);
+        assertThat(subpartitions.baseCount()).isEqualTo(2);
+        ConsumerRecord<String, byte[]> hotRecord = new ConsumerRecord<>("topic", 0, 3L, "hot", null);
+        int hotKeyHash = SubpartitionSupplier.keyHash("hot");
+        assertThat(subpartitionSupplier.subpartitionId(subpartitions, hotRecord, hotKeyHash)).isEqualTo(subpartitions.id(1));
+
+        // when
+        subpartitionSupplier.routeHotKeys(partition, new int[] { SubpartitionSupplier.keyHash("other"), hotKeyHash });
+
+        // then (routing is kept after resize)
+        subpartitions = subpartitionSupplier.registeredSubpartitions(partition);
+        assertThat(subpartitionSupplier.subpartitionId(subpartitions, hotRecord, hotKeyHash)).isEqualTo(subpartitions.id(3));
+        subpartitionSupplier.resize(partition, 4);
+        subpartitions = subpartitionSupplier.registeredSubpartitions(partition);
+        assertThat(subpartitions.count()).isEqualTo(6);
+        assertThat(subpartitionSupplier.subpartitionId(subpartitions, hotRecord, hotKeyHash)).isEqualTo(subpartitions.id(5));
+        assertThat(subpartitionSupplier.subpartitionId(subpartitions, hotRecord)).isEqualTo(subpartitions.id(3));
+    }
+
+    @Test
+    public void shouldNotRouteHotKeysWithoutDedicatedSubpartitions() {
+
+        // given
+        SubpartitionSupplier<byte[], byte[]> subpartitionSupplier = new SubpartitionSupplier<>(
+                new ElasticHashFunctionPartitioner<>(ConsumerRecord::offset, 2, 4));
+        TopicPartition partition = new TopicPartition("topic", 0);
+        subpartitionSupplier.register(Arrays.asList(partition));
+
+        // then
+        assertThatThrownBy(() -> {
+            subpartitionSupplier.routeHotKeys(partition, new int[] { 1 });
+        }).isInstanceOf(IllegalStateException.class);
+    }
+
 }
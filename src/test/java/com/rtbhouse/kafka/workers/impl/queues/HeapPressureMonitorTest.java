@@ -0,0 +1,119 @@
+package com.rtbhouse.kafka.workers.impl.queues;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.management.MemoryUsage;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class HeapPressureMonitorTest {
+
+    @Test
+    public void shouldScaleLimitsDownUnderPressureAndRestoreThemAfterwards() {
+
+        // given
+        HeapPressureMonitor monitor = new HeapPressureMonitor(0.8, 0.1);
+
+        // when
+        monitor.update(true);
+        monitor.update(true);
+
+        // then
+        assertThat(monitor.scale()).isEqualTo(0.25);
+
+        // when
+        for (int i = 0; i < 10; i++) {
+            monitor.update(true);
+        }
+
+        // then
+        assertThat(monitor.scale()).isEqualTo(HeapPressureMonitor.MIN_SCALE);
+
+        // when
+        for (int i = 0; i < 10; i++) {
+            monitor.update(false);
+        }
+
+        // then
+        assertThat(monitor.scale()).isEqualTo(1.0);
+    }
+
+    @Test
+    public void shouldRestoreLimitsOnlyAfterMajorOrSeveralMinorGcsWithoutPressure() {
+
+        // given
+        HeapPressureMonitor monitor = new HeapPressureMonitor(0.8, 0.1);
+        monitor.onGc(true, false);
+        monitor.onGc(true, true);
+
+        // when
+        for (int i = 0; i < HeapPressureMonitor.RECOVERY_MINOR_GCS - 1; i++) {
+            monitor.onGc(false, false);
+        }
+
+        // then
+        assertThat(monitor.scale()).isEqualTo(0.25);
+
+        // when
+        monitor.onGc(false, false);
+
+        // then
+        assertThat(monitor.scale()).isEqualTo(0.5);
+
+        // when
+        monitor.onGc(false, true);
+
+        // then
+        assertThat(monitor.scale()).isEqualTo(1.0);
+    }
+
+    @Test
+    public void shouldCheckOccupancyOnlyAfterGcsOfCollectorsManagingTenuredPools() {
+
+        // given (old gen is occupied in 90% after the last major GC)
+        HeapPressureMonitor monitor = new HeapPressureMonitor(0.8, 0.0);
+        monitor.monitorCollector("PS Scavenge", List.of());
+        monitor.monitorCollector("PS MarkSweep", List.of("PS Old Gen"));
+        Map<String, MemoryUsage> usageAfterGc = Map.of(
+                "PS Eden Space", new MemoryUsage(0L, 0L, 100L, 100L),
+                "PS Old Gen", new MemoryUsage(0L, 90L, 100L, 100L));
+
+        // when (young GCs report the same, stale usage of old gen)
+        for (int i = 0; i < 3; i++) {
+            monitor.onGc("PS Scavenge", "end of minor GC", 10L * i, 10L * i + 1L, usageAfterGc);
+        }
+
+        // then
+        assertThat(monitor.scale()).isEqualTo(1.0);
+
+        // when (major GC is handled once)
+        monitor.onGc("PS MarkSweep", "end of major GC", 100L, 110L, usageAfterGc);
+
+        // then
+        assertThat(monitor.scale()).isEqualTo(0.5);
+    }
+
+    @Test
+    public void shouldComputeGcTimeRatio() {
+        assertThat(HeapPressureMonitor.gcTimeRatio(50L, 500L)).isEqualTo(0.1);
+        assertThat(HeapPressureMonitor.gcTimeRatio(50L, 0L)).isEqualTo(1.0);
+    }
+
+    @Test
+    public void shouldSubscribeToMemoryNotifications() {
+
+        // given
+        HeapPressureMonitor monitor = new HeapPressureMonitor(0.8, 0.1);
+
+        // when
+        monitor.start();
+        System.gc();
+        monitor.stop();
+
+        // then
+        assertThat(monitor.scale()).isBetween(HeapPressureMonitor.MIN_SCALE, 1.0);
+    }
+
+}
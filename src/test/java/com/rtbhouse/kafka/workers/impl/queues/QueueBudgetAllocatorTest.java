@@ -0,0 +1,63 @@
+package com.rtbhouse.kafka.workers.impl.queues;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class QueueBudgetAllocatorTest {
+
+    private static final long SECOND_NANOS = 1_000_000_000L;
+
+    @SuppressWarnings("unchecked")
+    private static RecordsQueue<byte[], byte[]>[] queues(int count) {
+        RecordsQueue<byte[], byte[]>[] queues = new RecordsQueue[count + 1];
+        for (int i = 0; i < count; i++) {
+            queues[i] = new RecordsQueue<>();
+        }
+        return queues;
+    }
+
+    @Test
+    public void shouldSplitBudgetEquallyWhenNothingWasDrained() {
+
+        // given
+        QueueBudgetAllocator allocator = new QueueBudgetAllocator(0.2);
+        RecordsQueue<byte[], byte[]>[] queues = queues(4);
+
+        // when
+        allocator.allocate(queues, 4000L, SECOND_NANOS);
+
+        // then
+        for (int i = 0; i < 4; i++) {
+            assertThat(queues[i].getSizeBytesToPause()).isEqualTo(1000L);
+        }
+    }
+
+    @Test
+    public void shouldGrantBudgetProportionallyToDrainRates() {
+
+        // given
+        QueueBudgetAllocator allocator = new QueueBudgetAllocator(0.2);
+        RecordsQueue<byte[], byte[]>[] queues = queues(4);
+        queues[0].addDrainedBytes(3000L);
+        queues[1].addDrainedBytes(1000L);
+
+        // when
+        allocator.allocate(queues, 4000L, SECOND_NANOS);
+
+        // then
+        assertThat(queues[0].getSizeBytesToPause()).isEqualTo(200L + 2400L);
+        assertThat(queues[1].getSizeBytesToPause()).isEqualTo(200L + 800L);
+        assertThat(queues[2].getSizeBytesToPause()).isEqualTo(200L);
+        assertThat(queues[3].getSizeBytesToPause()).isEqualTo(200L);
+
+        // when
+        queues[1].addDrainedBytes(2000L);
+        allocator.allocate(queues, 4000L, SECOND_NANOS);
+
+        // then
+        assertThat(queues[0].getSizeBytesToPause()).isEqualTo(200L + 1200L);
+        assertThat(queues[1].getSizeBytesToPause()).isEqualTo(200L + 2000L);
+    }
+
+}
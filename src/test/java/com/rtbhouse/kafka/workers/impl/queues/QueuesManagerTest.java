@@ -0,0 +1,149 @@
+package com.rtbhouse.kafka.workers.impl.queues;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import com.rtbhouse.kafka.workers.api.WorkersConfig;
+import com.rtbhouse.kafka.workers.api.partitioner.RoundRobinPartitioner;
+import com.rtbhouse.kafka.workers.api.partitioner.WorkerSubpartition;
+import com.rtbhouse.kafka.workers.api.record.WorkerRecord;
+import com.rtbhouse.kafka.workers.api.record.weigher.ByteArrayWeigher;
+import com.rtbhouse.kafka.workers.impl.metrics.WorkersMetrics;
+import com.rtbhouse.kafka.workers.impl.partitioner.SubpartitionSupplier;
+import com.rtbhouse.kafka.workers.impl.record.weigher.RecordWeigher;
+import com.rtbhouse.kafka.workers.impl.task.TaskManager;
+import com.rtbhouse.kafka.workers.integration.utils.TestProperties;
+
+@RunWith(MockitoJUnitRunner.class)
+public class QueuesManagerTest {
+
+    private static final TopicPartition PARTITION = new TopicPartition("topic", 0);
+
+    @Mock
+    private TaskManager<byte[], byte[]> taskManager;
+
+    private WorkersMetrics metrics;
+
+    private QueuesManager<byte[], byte[]> createQueuesManager(String limit, Object value) {
+        return createQueuesManager(limit, value, 1);
+    }
+
+    private QueuesManager<byte[], byte[]> createQueuesManager(String limit, Object value, int subpartitionsCount) {
+        Properties properties = TestProperties.workersProperties();
+        properties.put(limit, value);
+        WorkersConfig config = new WorkersConfig(properties);
+        SubpartitionSupplier<byte[], byte[]> subpartitionSupplier = new SubpartitionSupplier<>(
+                new RoundRobinPartitioner<>(subpartitionsCount));
+        subpartitionSupplier.register(List.of(PARTITION));
+        metrics = new WorkersMetrics(config);
+        QueuesManager<byte[], byte[]> queuesManager = new QueuesManager<>(config, metrics,
+                subpartitionSupplier, taskManager, new RecordWeigher<>(new ByteArrayWeigher(), new ByteArrayWeigher()));
+        queuesManager.register(List.of(PARTITION));
+        return queuesManager;
+    }
+
+    private static WorkerRecord<byte[], byte[]> record(long offset, long consumedAtNanos) {
+        return record(offset, 0, consumedAtNanos);
+    }
+
+    private static WorkerRecord<byte[], byte[]> record(long offset, int subpartition, long consumedAtNanos) {
+        return new WorkerRecord<>(new ConsumerRecord<>(PARTITION.topic(), PARTITION.partition(), offset, null,
+                new byte[0]), WorkerSubpartition.getInstance(PARTITION, subpartition), consumedAtNanos);
+    }
+
+    private double queuePauses(QueueLimit limit) {
+        return metrics.metrics().entrySet().stream()
+                .filter(entry -> entry.getKey().group().equals(WorkersMetrics.QUEUE_PAUSES_METRIC + "."
+                        + limit.metricSuffix()))
+                .mapToDouble(entry -> (Double) entry.getValue().metricValue())
+                .sum();
+    }
+
+    @Test
+    public void shouldPauseAndResumeOnRecordsCountLimit() {
+
+        // given
+        QueuesManager<byte[], byte[]> queuesManager = createQueuesManager(WorkersConfig.QUEUE_MAX_RECORDS, 2);
+        queuesManager.push(0, record(0L, System.nanoTime()));
+        assertThat(queuesManager.getPartitionsToPause(Set.of(PARTITION), Set.of())).isEmpty();
+
+        // when
+        queuesManager.push(0, record(1L, System.nanoTime()));
+
+        // then
+        assertThat(queuesManager.getPartitionsToPause(Set.of(PARTITION), Set.of())).containsExactly(PARTITION);
+        assertThat(queuesManager.getPartitionsToResume(Set.of(PARTITION))).isEmpty();
+
+        // when
+        queuesManager.poll(0);
+
+        // then
+        assertThat(queuesManager.getPartitionsToResume(Set.of(PARTITION))).containsExactly(PARTITION);
+    }
+
+    @Test
+    public void shouldPauseAndResumeOnOldestRecordAgeLimit() {
+
+        // given
+        QueuesManager<byte[], byte[]> queuesManager = createQueuesManager(WorkersConfig.QUEUE_MAX_AGE_MS, 1000L);
+        queuesManager.push(0, record(0L, System.nanoTime() - TimeUnit.SECONDS.toNanos(2)));
+        queuesManager.push(0, record(1L, System.nanoTime()));
+
+        // when
+        Set<TopicPartition> partitionsToPause = queuesManager.getPartitionsToPause(Set.of(PARTITION), Set.of());
+
+        // then
+        assertThat(partitionsToPause).containsExactly(PARTITION);
+        assertThat(queuesManager.getPartitionsToResume(Set.of(PARTITION))).isEmpty();
+
+        // when
+        queuesManager.poll(0);
+
+        // then
+        assertThat(queuesManager.getPartitionsToResume(Set.of(PARTITION))).containsExactly(PARTITION);
+    }
+
+    @Test
+    public void shouldCountPauseOfPartitionOnce() {
+
+        // given (both queues of the partition exceed records count limit)
+        QueuesManager<byte[], byte[]> queuesManager = createQueuesManager(WorkersConfig.QUEUE_MAX_RECORDS, 1, 2);
+        queuesManager.push(0, record(0L, 0, System.nanoTime()));
+        queuesManager.push(1, record(1L, 1, System.nanoTime()));
+
+        // when
+        Set<TopicPartition> partitionsToPause = queuesManager.getPartitionsToPause(Set.of(PARTITION), Set.of());
+
+        // then
+        assertThat(partitionsToPause).containsExactly(PARTITION);
+        assertThat(queuePauses(QueueLimit.SIZE_RECORDS)).isEqualTo(1.0);
+    }
+
+    @Test
+    public void shouldCountPausesOnTotalSizeLimit() {
+
+        // given
+        QueuesManager<byte[], byte[]> queuesManager = createQueuesManager(WorkersConfig.QUEUE_TOTAL_SIZE_HEAP_RATIO, 1e-9);
+        queuesManager.push(0, new WorkerRecord<>(new ConsumerRecord<>(PARTITION.topic(), PARTITION.partition(), 0L,
+                null, new byte[100]), WorkerSubpartition.getInstance(PARTITION, 0), System.nanoTime()));
+
+        // when
+        Set<TopicPartition> partitionsToPause = queuesManager.getPartitionsToPause(Set.of(PARTITION), Set.of());
+
+        // then
+        assertThat(partitionsToPause).containsExactly(PARTITION);
+        assertThat(queuePauses(QueueLimit.TOTAL_SIZE_BYTES)).isEqualTo(1.0);
+    }
+
+}
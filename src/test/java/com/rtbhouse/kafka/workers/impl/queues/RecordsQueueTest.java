@@ -0,0 +1,134 @@
+package com.rtbhouse.kafka.workers.impl.queues;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.Test;
+
+import com.rtbhouse.kafka.workers.api.partitioner.WorkerSubpartition;
+import com.rtbhouse.kafka.workers.api.record.WorkerRecord;
+
+public class RecordsQueueTest {
+
+    private static WorkerRecord<byte[], byte[]> record(long offset, String key) {
+        return new WorkerRecord<>(new ConsumerRecord<>("topic", 0, offset,
+                key != null ? key.getBytes(UTF_8) : null, new byte[0]), 0);
+    }
+
+    private static WorkerRecord<byte[], byte[]> push(RecordsQueue<byte[], byte[]> queue,
+            WorkerRecord<byte[], byte[]> record) {
+        WorkerRecord<byte[], byte[]> superseded = queue.coalesce(record.key(), record);
+        queue.add(record);
+        return superseded;
+    }
+
+    @Test
+    public void shouldSupersedeQueuedRecordsOfTheSameKey() {
+
+        // given
+        RecordsQueue<byte[], byte[]> queue = new RecordsQueue<>(null, null, true);
+        WorkerRecord<byte[], byte[]> first = record(0L, "a");
+        WorkerRecord<byte[], byte[]> second = record(1L, "b");
+        WorkerRecord<byte[], byte[]> third = record(2L, "a");
+
+        // when
+        assertThat(push(queue, first)).isNull();
+        assertThat(push(queue, second)).isNull();
+        WorkerRecord<byte[], byte[]> superseded = push(queue, third);
+
+        // then
+        assertThat(superseded).isSameAs(first);
+        assertThat(queue.take(first)).isFalse();
+        queue.poll();
+        assertThat(queue.take(second)).isTrue();
+        assertThat(queue.take(second)).isTrue();
+        queue.poll();
+        assertThat(queue.take(third)).isTrue();
+    }
+
+    @Test
+    public void shouldNotSupersedeRecordsAlreadyTakenOrWithoutKeys() {
+
+        // given
+        RecordsQueue<byte[], byte[]> queue = new RecordsQueue<>(null, null, true);
+        WorkerRecord<byte[], byte[]> first = record(0L, "a");
+        push(queue, first);
+
+        // when
+        assertThat(queue.take(first)).isTrue();
+
+        // then
+        assertThat(push(queue, record(1L, "a"))).isNull();
+        assertThat(push(queue, record(2L, null))).isNull();
+        assertThat(push(queue, record(3L, null))).isNull();
+    }
+
+    @Test
+    public void shouldNotAccessQueuedRecordsToTakeThem() {
+
+        // given (e.g. an off-heap record which would be materialized by reading its key)
+        RecordsQueue<byte[], byte[]> queue = new RecordsQueue<>(null, null, true);
+        byte[] key = "a".getBytes(UTF_8);
+        WorkerRecord<byte[], byte[]> queuedRecord = new WorkerRecord<>(
+                new ConsumerRecord<>("topic", 0, 0L, key, new byte[0]), 0) {
+            @Override
+            public byte[] key() {
+                throw new IllegalStateException("key of queued record read");
+            }
+        };
+
+        // when
+        queue.coalesce(key, queuedRecord);
+        queue.add(queuedRecord);
+
+        // then
+        assertThat(queue.take(queuedRecord)).isTrue();
+        assertThat(queue.poll()).isSameAs(queuedRecord);
+    }
+
+    @Test
+    public void shouldReportAgeOfHeadRecordKeptByQueue() {
+
+        // given
+        RecordsQueue<byte[], byte[]> queue = new RecordsQueue<>();
+        long nowNanos = System.nanoTime();
+        queue.add(new WorkerRecord<>(new ConsumerRecord<>("topic", 0, 0L, null, new byte[0]),
+                WorkerSubpartition.getInstance("topic", 0, 0), nowNanos - 5_000_000_000L));
+        queue.add(new WorkerRecord<>(new ConsumerRecord<>("topic", 0, 1L, null, new byte[0]),
+                WorkerSubpartition.getInstance("topic", 0, 0), nowNanos));
+
+        // then
+        assertThat(queue.getOldestRecordAgeMs()).isGreaterThanOrEqualTo(5_000L);
+
+        // when
+        queue.poll();
+
+        // then (the taken record could be reused, so the age is not read from it)
+        assertThat(queue.getOldestRecordAgeMs()).isLessThan(5_000L);
+
+        // when
+        queue.poll();
+
+        // then
+        assertThat(queue.getOldestRecordAgeMs()).isZero();
+    }
+
+    @Test
+    public void shouldNotCoalesceRecordsByDefault() {
+
+        // given
+        RecordsQueue<byte[], byte[]> queue = new RecordsQueue<>();
+        WorkerRecord<byte[], byte[]> first = record(0L, "a");
+        push(queue, first);
+
+        // when
+        WorkerRecord<byte[], byte[]> superseded = push(queue, record(1L, "a"));
+
+        // then
+        assertThat(superseded).isNull();
+        assertThat(queue.take(first)).isTrue();
+        assertThat(queue.getSizeInRecords()).isEqualTo(2);
+    }
+
+}
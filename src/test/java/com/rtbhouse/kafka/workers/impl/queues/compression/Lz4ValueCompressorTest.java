@@ -0,0 +1,78 @@
+package com.rtbhouse.kafka.workers.impl.queues.compression;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Random;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.utils.Bytes;
+import org.junit.Test;
+
+import com.rtbhouse.kafka.workers.api.record.WorkerRecord;
+import com.rtbhouse.kafka.workers.api.record.weigher.ByteArrayWeigher;
+import com.rtbhouse.kafka.workers.impl.record.weigher.RecordWeigher;
+
+public class Lz4ValueCompressorTest {
+
+    private static final byte[] JSON = "{\"level\":\"INFO\",\"message\":\"request processed\"}".repeat(20)
+            .getBytes(UTF_8);
+
+    private static <V> WorkerRecord<byte[], V> record(V value) {
+        return new WorkerRecord<>(new ConsumerRecord<>("topic", 0, 10L, "key".getBytes(UTF_8), value), 0);
+    }
+
+    @Test
+    public void shouldCompressAndDecompressByteArrayValue() {
+
+        // given
+        Lz4ValueCompressor compressor = new Lz4ValueCompressor();
+        RecordWeigher<byte[], byte[]> weigher = new RecordWeigher<>(ByteArrayWeigher.INSTANCE,
+                ByteArrayWeigher.INSTANCE);
+        WorkerRecord<byte[], byte[]> record = record(JSON);
+
+        // when
+        WorkerRecord<byte[], byte[]> compressedRecord = compressor.compress(record);
+
+        // then
+        assertThat(compressedRecord).isInstanceOf(CompressedWorkerRecord.class);
+        assertThat(((CompressedWorkerRecord<byte[], byte[]>) compressedRecord).compressedValueLength())
+                .isLessThan(JSON.length / 4);
+        assertThat(weigher.weigh(compressedRecord)).isLessThan(weigher.weigh(record) - JSON.length / 2);
+        assertThat(compressedRecord.offset()).isEqualTo(10L);
+        assertThat(compressedRecord.key()).isEqualTo(record.key());
+        assertThat(compressedRecord.value()).isEqualTo(JSON);
+    }
+
+    @Test
+    public void shouldCompressAndDecompressBytesValue() {
+
+        // given
+        Lz4ValueCompressor compressor = new Lz4ValueCompressor();
+
+        // when
+        WorkerRecord<byte[], Bytes> compressedRecord = compressor.compress(record(Bytes.wrap(JSON)));
+
+        // then
+        assertThat(compressedRecord).isInstanceOf(CompressedWorkerRecord.class);
+        assertThat(compressedRecord.value()).isEqualTo(Bytes.wrap(JSON));
+    }
+
+    @Test
+    public void shouldNotCompressSmallIncompressibleOrNotSerializedValues() {
+
+        // given
+        Lz4ValueCompressor compressor = new Lz4ValueCompressor();
+        byte[] random = new byte[1024];
+        new Random(0).nextBytes(random);
+        WorkerRecord<byte[], byte[]> small = record(new byte[Lz4ValueCompressor.MIN_VALUE_SIZE - 1]);
+        WorkerRecord<byte[], byte[]> incompressible = record(random);
+        WorkerRecord<byte[], String> string = record(new String(JSON, UTF_8));
+
+        // then
+        assertThat(compressor.compress(small)).isSameAs(small);
+        assertThat(compressor.compress(incompressible)).isSameAs(incompressible);
+        assertThat(compressor.compress(string)).isSameAs(string);
+    }
+
+}
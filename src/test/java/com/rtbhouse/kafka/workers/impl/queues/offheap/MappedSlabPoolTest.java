@@ -0,0 +1,55 @@
+package com.rtbhouse.kafka.workers.impl.queues.offheap;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.rtbhouse.kafka.workers.api.record.WorkerRecord;
+
+public class MappedSlabPoolTest {
+
+    private static final int SEGMENT_SIZE = 4096;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void shouldReplaySpilledRecordsInOrder() throws IOException {
+
+        // given
+        File directory = temporaryFolder.newFolder();
+        MappedSlabPool pool = new MappedSlabPool(directory, 2 * SEGMENT_SIZE, SEGMENT_SIZE);
+        OffHeapRecordsWriter<byte[], byte[]> writer = new OffHeapRecordsWriter<>(pool);
+        OffHeapWorkerRecord<byte[], byte[]>[] spilledRecords = newRecords(9);
+
+        // when
+        for (int i = 0; i < spilledRecords.length; i++) {
+            spilledRecords[i] = writer.write(new WorkerRecord<>(
+                    new ConsumerRecord<>("topic", 0, i, null, new byte[1000 + i]), 0));
+        }
+
+        // then
+        assertThat(directory.list()).isEmpty();
+        assertThat(spilledRecords[0]).isNotNull();
+        assertThat(spilledRecords[8]).isNull();
+        for (int i = 0; i < 8; i++) {
+            assertThat(spilledRecords[i].offset()).isEqualTo(i);
+            assertThat(spilledRecords[i].value()).hasSize(1000 + i);
+        }
+        writer.close();
+        assertThat(pool.usedBytes()).isEqualTo(0L);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static OffHeapWorkerRecord<byte[], byte[]>[] newRecords(int length) {
+        return (OffHeapWorkerRecord<byte[], byte[]>[]) new OffHeapWorkerRecord[length];
+    }
+
+}
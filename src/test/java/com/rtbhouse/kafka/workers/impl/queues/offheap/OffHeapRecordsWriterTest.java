@@ -0,0 +1,99 @@
+package com.rtbhouse.kafka.workers.impl.queues.offheap;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.record.TimestampType;
+import org.junit.Test;
+
+import com.rtbhouse.kafka.workers.api.record.WorkerRecord;
+
+public class OffHeapRecordsWriterTest {
+
+    private static final int SLAB_SIZE = 1024;
+
+    private static <K, V> WorkerRecord<K, V> record(long offset, K key, V value) {
+        RecordHeaders headers = new RecordHeaders();
+        headers.add("header", "header-value".getBytes(UTF_8));
+        headers.add("null-header", null);
+        return new WorkerRecord<>(new ConsumerRecord<>("topic", 1, offset, 123L, TimestampType.CREATE_TIME, 0L, 3, 5,
+                key, value, headers), 0);
+    }
+
+    @Test
+    public void shouldMaterializeRecordStoredOffHeap() {
+
+        // given
+        SlabPool pool = new SlabPool(4 * SLAB_SIZE, SLAB_SIZE);
+        OffHeapRecordsWriter<byte[], byte[]> writer = new OffHeapRecordsWriter<>(pool);
+        WorkerRecord<byte[], byte[]> record = record(10L, null, "value".getBytes(UTF_8));
+
+        // when
+        OffHeapWorkerRecord<byte[], byte[]> offHeapRecord = writer.write(record);
+
+        // then
+        assertThat(offHeapRecord).isNotNull();
+        assertThat(pool.usedBytes()).isEqualTo(SLAB_SIZE);
+        assertThat(offHeapRecord.offset()).isEqualTo(10L);
+        assertThat(offHeapRecord.timestamp()).isEqualTo(123L);
+        assertThat(offHeapRecord.workerSubpartition()).isEqualTo(record.workerSubpartition());
+        assertThat(offHeapRecord.serializedSize()).isEqualTo(8);
+        assertThat(offHeapRecord.key()).isNull();
+        assertThat(offHeapRecord.value()).isEqualTo("value".getBytes(UTF_8));
+        assertThat(offHeapRecord.headers().toArray()).isEqualTo(record.headers().toArray());
+    }
+
+    @Test
+    public void shouldNotStoreRecordsWhichAreNotByteArrays() {
+
+        // given
+        SlabPool pool = new SlabPool(4 * SLAB_SIZE, SLAB_SIZE);
+        OffHeapRecordsWriter<String, String> writer = new OffHeapRecordsWriter<>(pool);
+
+        // when
+        OffHeapWorkerRecord<String, String> offHeapRecord = writer.write(record(10L, "key", "value"));
+
+        // then
+        assertThat(offHeapRecord).isNull();
+        assertThat(pool.usedBytes()).isEqualTo(0L);
+    }
+
+    @Test
+    public void shouldReturnSlabsToPoolWhenAllTheirRecordsAreReleased() {
+
+        // given
+        SlabPool pool = new SlabPool(2 * SLAB_SIZE, SLAB_SIZE);
+        OffHeapRecordsWriter<byte[], byte[]> writer = new OffHeapRecordsWriter<>(pool);
+        OffHeapWorkerRecord<byte[], byte[]> first = writer.write(record(10L, null, new byte[600]));
+        OffHeapWorkerRecord<byte[], byte[]> second = writer.write(record(11L, null, new byte[600]));
+        assertThat(pool.usedBytes()).isEqualTo(2 * SLAB_SIZE);
+
+        // when
+        first.materialize();
+        second.discard();
+        writer.close();
+
+        // then
+        assertThat(pool.usedBytes()).isEqualTo(0L);
+        assertThat(first.value()).hasSize(600);
+    }
+
+    @Test
+    public void shouldNotStoreRecordsWhenBudgetIsExhausted() {
+
+        // given
+        SlabPool pool = new SlabPool(SLAB_SIZE, SLAB_SIZE);
+        OffHeapRecordsWriter<byte[], byte[]> writer = new OffHeapRecordsWriter<>(pool);
+        assertThat(writer.write(record(10L, null, new byte[600]))).isNotNull();
+
+        // when
+        OffHeapWorkerRecord<byte[], byte[]> offHeapRecord = writer.write(record(11L, null, new byte[600]));
+
+        // then
+        assertThat(offHeapRecord).isNull();
+        assertThat(writer.write(record(12L, null, new byte[2 * SLAB_SIZE]))).isNull();
+    }
+
+}
@@ -2,7 +2,9 @@ package com.rtbhouse.kafka.workers.impl.range;
 
 import static com.rtbhouse.kafka.workers.impl.range.ClosedRange.range;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import org.junit.Test;
@@ -37,4 +39,43 @@ public class RangeUtilsTest {
         //then
         assertThat(ranges).containsExactly(expectedRanges);
     }
+
+    private Object[] parametersForTestClosedRangesBuilder() {
+        List<Object> parameters = new ArrayList<>(List.of(parametersForTestRangesFromLongs()));
+        parameters.add(new Object[] {List.of(5L, 3L, 4L, 1L), new ClosedRange[] {range(1L, 1L), range(3L, 5L)}});
+        parameters.add(new Object[] {List.of(7L, 6L, 5L), new ClosedRange[] {range(5L, 7L)}});
+        return parameters.toArray();
+    }
+
+    @Test
+    @Parameters
+    public void testClosedRangesBuilder(List<Long> longs, ClosedRange[] expectedRanges) {
+        //given
+        ClosedRangesBuilder builder = new ClosedRangesBuilder();
+        builder.add(0L);
+        builder.drain(range -> { });
+
+        //when
+        longs.forEach(builder::add);
+        List<ClosedRange> ranges = new ArrayList<>();
+        builder.drain(ranges::add);
+
+        //then
+        assertThat(ranges).containsExactly(expectedRanges);
+        assertThat(builder.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void testClosedRangesBuilderWithDuplicatedOffset() {
+        //given
+        ClosedRangesBuilder builder = new ClosedRangesBuilder();
+        builder.add(2L);
+        builder.add(1L);
+        builder.add(2L);
+
+        //when then
+        assertThatThrownBy(() -> builder.drain(range -> { }))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("offset 2 added twice");
+    }
 }
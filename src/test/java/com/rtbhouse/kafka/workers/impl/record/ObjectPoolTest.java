@@ -0,0 +1,52 @@
+package com.rtbhouse.kafka.workers.impl.record;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+
+public class ObjectPoolTest {
+
+    @Test
+    public void shouldReuseObjectsReleasedByOwnerThread() {
+
+        // given
+        ObjectPool<Object> pool = new ObjectPool<>(2, p -> new Object());
+        Object first = pool.take();
+        Object second = pool.take();
+
+        // when
+        pool.release(first);
+        pool.release(second);
+
+        // then
+        assertThat(pool.take()).isSameAs(second);
+        assertThat(pool.take()).isSameAs(first);
+        assertThat(pool.take()).isNotIn(first, second);
+    }
+
+    @Test
+    public void shouldReuseObjectsReleasedByOtherThreads() throws InterruptedException {
+
+        // given
+        ObjectPool<Object> pool = new ObjectPool<>(2, p -> new Object());
+        Object first = pool.take();
+        Object second = pool.take();
+        Object third = pool.take();
+
+        // when
+        Thread thread = new Thread(() -> {
+            pool.release(first);
+            pool.release(second);
+            // dropped, as the pool is full
+            pool.release(third);
+        });
+        thread.start();
+        thread.join();
+
+        // then
+        assertThat(pool.take()).isSameAs(second);
+        assertThat(pool.take()).isSameAs(first);
+        assertThat(pool.take()).isNotIn(first, second, third);
+    }
+
+}
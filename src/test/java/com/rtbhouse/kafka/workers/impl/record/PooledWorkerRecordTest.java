@@ -0,0 +1,56 @@
+package com.rtbhouse.kafka.workers.impl.record;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.Test;
+
+import com.rtbhouse.kafka.workers.api.partitioner.WorkerSubpartition;
+
+public class PooledWorkerRecordTest {
+
+    private static final WorkerSubpartition SUBPARTITION = WorkerSubpartition.getInstance("topic", 0, 0);
+
+    private static ConsumerRecord<String, String> consumerRecord(long offset) {
+        return new ConsumerRecord<>("topic", 0, offset, "key", "value" + offset);
+    }
+
+    @Test
+    public void shouldReuseReleasedRecords() {
+
+        // given
+        ObjectPool<PooledWorkerRecord<String, String>> pool = new ObjectPool<>(1,
+                p -> new PooledWorkerRecord<>(p, false));
+        PooledWorkerRecord<String, String> record = pool.take().init(consumerRecord(0L), SUBPARTITION, 1L);
+
+        // when
+        record.release();
+        PooledWorkerRecord<String, String> reusedRecord = pool.take().init(consumerRecord(1L), SUBPARTITION, 2L);
+
+        // then
+        assertThat(reusedRecord).isSameAs(record);
+        assertThat(reusedRecord.offset()).isEqualTo(1L);
+        assertThat(reusedRecord.value()).isEqualTo("value1");
+        assertThat(reusedRecord.consumedAtNanos()).isEqualTo(2L);
+    }
+
+    @Test
+    public void shouldDetectUseAfterReleaseInDebugMode() {
+
+        // given
+        ObjectPool<PooledWorkerRecord<String, String>> pool = new ObjectPool<>(1,
+                p -> new PooledWorkerRecord<>(p, true));
+        PooledWorkerRecord<String, String> record = pool.take().init(consumerRecord(0L), SUBPARTITION, 1L);
+
+        // when
+        record.release();
+
+        // then
+        assertThatThrownBy(record::value).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(record::topicPartition).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(record::release).isInstanceOf(IllegalStateException.class);
+        assertThat(pool.take()).isNotSameAs(record);
+    }
+
+}
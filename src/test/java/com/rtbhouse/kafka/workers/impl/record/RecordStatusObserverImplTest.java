@@ -0,0 +1,91 @@
+package com.rtbhouse.kafka.workers.impl.record;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import com.rtbhouse.kafka.workers.api.WorkersConfig;
+import com.rtbhouse.kafka.workers.api.partitioner.WorkerSubpartition;
+import com.rtbhouse.kafka.workers.api.record.RecordProcessingGuarantee;
+import com.rtbhouse.kafka.workers.impl.errors.ProcessingFailureException;
+import com.rtbhouse.kafka.workers.impl.metrics.WorkersMetrics;
+import com.rtbhouse.kafka.workers.impl.offsets.OffsetsState;
+import com.rtbhouse.kafka.workers.impl.task.WorkerTaskImpl;
+import com.rtbhouse.kafka.workers.impl.task.WorkerThread;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RecordStatusObserverImplTest {
+
+    private static final WorkerSubpartition SUBPARTITION = WorkerSubpartition.getInstance("topic", 0, 0);
+
+    @Mock
+    private WorkersMetrics metrics;
+
+    @Mock
+    private WorkersConfig config;
+
+    @Mock
+    private OffsetsState offsetsState;
+
+    @Mock
+    private WorkerThread<String, String> workerThread;
+
+    @Mock
+    private WorkerTaskImpl<String, String> task;
+
+    private ObjectPool<PooledWorkerRecord<String, String>> pool;
+
+    private PooledWorkerRecord<String, String> record;
+
+    @Before
+    public void setUp() {
+        // records are marked as released instead of being reused, so any access after release fails
+        pool = new ObjectPool<>(1, p -> new PooledWorkerRecord<>(p, true));
+        record = pool.take().init(new ConsumerRecord<>("topic", 0, 5L, "key", "value"), SUBPARTITION, 1L);
+    }
+
+    private RecordStatusObserverImpl<String, String> observer(RecordProcessingGuarantee guarantee) {
+        when(config.getRecordProcessingGuarantee()).thenReturn(guarantee);
+        return new RecordStatusObserverImpl<>(record, task,
+                new RecordStatusObserverImpl.Context<>(metrics, config, offsetsState, workerThread));
+    }
+
+    @Test
+    public void shouldNotReleaseRecordFailedWithAtLeastOnceGuarantee() {
+
+        // given
+        RecordStatusObserverImpl<String, String> observer = observer(RecordProcessingGuarantee.AT_LEAST_ONCE);
+
+        // when
+        observer.onFailure(new RuntimeException("failure"));
+
+        // then
+        verify(workerThread).shutdown(any(ProcessingFailureException.class));
+        assertThat(record.value()).isEqualTo("value");
+    }
+
+    @Test
+    public void shouldReleaseRecordFailedWithNoGuarantee() {
+
+        // given
+        RecordStatusObserverImpl<String, String> observer = observer(RecordProcessingGuarantee.NONE);
+
+        // when
+        observer.onFailure(new RuntimeException("failure"));
+
+        // then
+        verify(offsetsState).updateProcessed(new TopicPartition("topic", 0), 5L);
+        assertThatThrownBy(record::value).isInstanceOf(IllegalStateException.class);
+    }
+
+}
@@ -3,6 +3,7 @@ package com.rtbhouse.kafka.workers.impl.task;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatCode;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.when;
 
 import java.time.Duration;
@@ -12,7 +13,6 @@ import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
-import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.common.TopicPartition;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -22,10 +22,11 @@ import org.mockito.junit.MockitoJUnitRunner;
 import com.rtbhouse.kafka.workers.api.WorkersConfig;
 import com.rtbhouse.kafka.workers.api.WorkersException;
 import com.rtbhouse.kafka.workers.api.partitioner.RoundRobinPartitioner;
-import com.rtbhouse.kafka.workers.api.record.WorkerRecord;
 import com.rtbhouse.kafka.workers.api.task.WorkerTask;
 import com.rtbhouse.kafka.workers.api.task.WorkerTaskFactory;
 import com.rtbhouse.kafka.workers.impl.KafkaWorkersImpl;
+import com.rtbhouse.kafka.workers.impl.clock.WorkersClock;
+import com.rtbhouse.kafka.workers.impl.metrics.SubpartitionMetrics;
 import com.rtbhouse.kafka.workers.impl.metrics.WorkersMetrics;
 import com.rtbhouse.kafka.workers.impl.offsets.OffsetsState;
 import com.rtbhouse.kafka.workers.impl.partitioner.SubpartitionSupplier;
@@ -55,18 +56,20 @@ public class TaskManagerTest {
     public void shouldRebalanceTasks() throws InterruptedException {
 
         // given
-        WorkerRecord<byte[], byte[]> record = new WorkerRecord<>(new ConsumerRecord<>("topic", 0, 0L, null, null), 0);
-        when(queueManager.peek(any())).thenReturn(record);
+        when(queueManager.hasRecords(anyInt())).thenReturn(true);
         when(config.getConsumerProcessingTimeout()).thenReturn(Duration.ofHours(1));
+        when(metrics.addWorkerThreadSubpartitionMetrics(any())).thenAnswer(invocation -> new SubpartitionMetrics());
 
         WorkerTaskFactory<byte[], byte[]> taskFactory = new TaskFactory();
         SubpartitionSupplier<byte[], byte[]> subpartitionSupplier = new SubpartitionSupplier<>(new RoundRobinPartitioner<>(10));
         List<WorkerThread<byte[], byte[]>> threads = new ArrayList<>();
 
-        TaskManager<byte[], byte[]> taskManager = new TaskManager<>(config, metrics, taskFactory, subpartitionSupplier, threads, offsetsState);
+        TaskManager<byte[], byte[]> taskManager = new TaskManager<>(config, metrics, taskFactory, subpartitionSupplier, threads, offsetsState,
+                WorkersClock.system());
 
         for (int i = 0; i < WORKER_THREADS_NUM; i++) {
-            threads.add(new WorkerThread<>(i, config, metrics, workers, taskManager, queueManager, offsetsState));
+            threads.add(new WorkerThread<>(i, config, metrics, workers, taskManager, queueManager, offsetsState,
+                    WorkersClock.system()));
         }
         ExecutorService executorService = Executors.newFixedThreadPool(WORKER_THREADS_NUM);
         for (WorkerThread<byte[], byte[]> workerThread : threads) {
@@ -75,6 +78,7 @@ public class TaskManagerTest {
 
         // when
         assertThatCode(() -> {
+            subpartitionSupplier.register(Arrays.asList(new TopicPartition("topic", 0)));
             taskManager.register(Arrays.asList(new TopicPartition("topic", 0)));
         }).doesNotThrowAnyException();
 
@@ -88,6 +92,7 @@ public class TaskManagerTest {
 
         // when
         assertThatCode(() -> {
+            subpartitionSupplier.register(Arrays.asList(new TopicPartition("topic", 0), new TopicPartition("topic", 1)));
             taskManager.register(Arrays.asList(new TopicPartition("topic", 0), new TopicPartition("topic", 1)));
         }).doesNotThrowAnyException();
 
@@ -0,0 +1,135 @@
+package com.rtbhouse.kafka.workers.integration;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import com.rtbhouse.kafka.workers.api.KafkaWorkers;
+import com.rtbhouse.kafka.workers.api.WorkersConfig;
+import com.rtbhouse.kafka.workers.api.record.RecordFilter;
+import com.rtbhouse.kafka.workers.api.record.RecordStatusObserver;
+import com.rtbhouse.kafka.workers.api.record.WorkerRecord;
+import com.rtbhouse.kafka.workers.api.record.weigher.StringWeigher;
+import com.rtbhouse.kafka.workers.api.task.WorkerTask;
+import com.rtbhouse.kafka.workers.integration.utils.KafkaServerRule;
+import com.rtbhouse.kafka.workers.integration.utils.KafkaUtils;
+import com.rtbhouse.kafka.workers.integration.utils.RequiresKafkaServer;
+import com.rtbhouse.kafka.workers.integration.utils.TestProperties;
+
+@RequiresKafkaServer
+public class RecordFilterTest {
+
+    private static final String TOPIC = "topic";
+    private static final String SKIP_HEADER = "skip";
+    private static final int RECORDS_COUNT = 10;
+
+    private static final Properties SERVER_PROPERTIES = TestProperties.serverProperties();
+    private static final Properties WORKERS_PROPERTIES = TestProperties.workersProperties(
+            StringDeserializer.class, StringDeserializer.class,
+            StringWeigher.class, StringWeigher.class,
+            TOPIC);
+    static {
+        WORKERS_PROPERTIES.put(WorkersConfig.CONSUMER_POLL_TIMEOUT_MS, 100L);
+        WORKERS_PROPERTIES.put(WorkersConfig.CONSUMER_COMMIT_INTERVAL_MS, 100L);
+        WORKERS_PROPERTIES.put(WorkersConfig.RECORD_FILTER_CLASS, SkipHeaderFilter.class);
+    }
+    private static final Properties PRODUCER_PROPERTIES = TestProperties.producerProperties(
+            StringSerializer.class, StringSerializer.class);
+
+    @Rule
+    public KafkaServerRule kafkaServerRule = new KafkaServerRule(SERVER_PROPERTIES);
+
+    private KafkaProducer<String, String> producer;
+
+    @Before
+    public void before() throws Exception {
+        KafkaUtils.createTopics(kafkaServerRule.getBootstrapServers(), 1, 1, TOPIC);
+        producer = new KafkaProducer<>(PRODUCER_PROPERTIES);
+    }
+
+    @After
+    public void after() {
+        producer.close();
+    }
+
+    @Test
+    public void shouldNotProcessFilteredOutRecordsButCommitTheirOffsets() throws Exception {
+
+        // given
+        for (int i = 0; i < RECORDS_COUNT; i++) {
+            ProducerRecord<String, String> record = new ProducerRecord<>(TOPIC, "value" + i);
+            if (i % 2 == 1) {
+                record.headers().add(SKIP_HEADER, "true".getBytes(UTF_8));
+            }
+            producer.send(record).get();
+        }
+
+        List<String> processedValues = new CopyOnWriteArrayList<>();
+        CountDownLatch latch = new CountDownLatch(RECORDS_COUNT / 2);
+        KafkaWorkers<String, String> kafkaWorkers = new KafkaWorkers<>(
+                new WorkersConfig(WORKERS_PROPERTIES),
+                config -> new WorkerTask<String, String>() {
+                    @Override
+                    public void process(WorkerRecord<String, String> record, RecordStatusObserver observer) {
+                        processedValues.add(record.value());
+                        latch.countDown();
+                        observer.onSuccess();
+                    }
+                });
+
+        // when
+        kafkaWorkers.start();
+
+        // then
+        assertThat(latch.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(processedValues).containsExactly("value0", "value2", "value4", "value6", "value8");
+        assertThat(awaitCommittedOffset(10_000L)).isEqualTo(RECORDS_COUNT);
+
+        kafkaWorkers.shutdown();
+    }
+
+    private long awaitCommittedOffset(long timeoutMs) throws Exception {
+        String groupId = (String) WORKERS_PROPERTIES.get("consumer.kafka.group.id");
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        long committedOffset = -1L;
+        try (AdminClient adminClient = KafkaUtils.createAdminClient(kafkaServerRule.getBootstrapServers())) {
+            while (committedOffset < RECORDS_COUNT && System.currentTimeMillis() < deadline) {
+                OffsetAndMetadata offsetAndMetadata = adminClient.listConsumerGroupOffsets(groupId)
+                        .partitionsToOffsetAndMetadata().get().get(new TopicPartition(TOPIC, 0));
+                if (offsetAndMetadata != null) {
+                    committedOffset = offsetAndMetadata.offset();
+                }
+                Thread.sleep(100L);
+            }
+        }
+        return committedOffset;
+    }
+
+    public static class SkipHeaderFilter implements RecordFilter<String, String> {
+
+        @Override
+        public boolean accept(ConsumerRecord<String, String> record) {
+            return record.headers().lastHeader(SKIP_HEADER) == null;
+        }
+
+    }
+
+}